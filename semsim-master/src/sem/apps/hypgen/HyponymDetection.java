@@ -122,7 +122,7 @@ public class HyponymDetection {
 		String modelPath = "/anfs/bigdisc/mr472/semsim_models/model1"; 
 		
 		SemModel semModel = new SemModel(modelPath, true, false);
-		semModel.makeTensorSymmetric();
+		semModel.makeTensorSymmetricView();
 		VectorSpace vectorSpace = new VectorSpace(semModel, VectorSpace.WEIGHT_PMI_LIM, true);
 		 
 		// We run it on many gold standard files in a row. Feel free to change this.
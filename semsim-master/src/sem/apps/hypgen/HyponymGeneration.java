@@ -15,6 +15,7 @@ import sem.sim.SimMeasure;
 import sem.util.FileReader;
 import sem.util.FileWriter;
 import sem.util.Tools;
+import sem.util.TopKCollector;
 
 /**
  * Class for running experiments with hyponym generation.
@@ -48,23 +49,51 @@ public class HyponymGeneration {
 	}
 	
 	public static double calculateAP(boolean isDistance, LinkedHashMap<String,Double> predictions, LinkedHashSet<String> gold){
-		double countReturned = 0.0, countCorrectReturned = 0.0, sumP = 0.0;
-		LinkedHashMap<String,Double> scores;
-		if(isDistance)
-			scores = Tools.sort(predictions, false);
-		else
-			scores = Tools.sort(predictions, true);
-		for(String w : scores.keySet()){
-			countReturned++;
-			if(gold.contains(w)){
-				countCorrectReturned++;
-				sumP += (double)countCorrectReturned / (double)countReturned;
+		// Only the ranks of the gold words are needed, so only the gold words are sorted.
+		// Every other prediction is counted at the first gold word that it is ranked above, which gives the same ranks as sorting all the predictions.
+		TopKCollector goldCollector = new TopKCollector(gold.size(), !isDistance);
+		int position = 0;
+		for(Entry<String,Double> e : predictions.entrySet()){
+			if(gold.contains(e.getKey()))
+				goldCollector.add(position, e.getValue());
+			position++;
+		}
+		int[] goldPositions = goldCollector.getPositions();
+		double[] goldScores = goldCollector.getScores();
+		
+		int[] countsAbove = new int[goldPositions.length + 1];
+		position = 0;
+		for(Entry<String,Double> e : predictions.entrySet()){
+			if(!gold.contains(e.getKey())){
+				int low = 0, high = goldPositions.length;
+				while(low < high){
+					int middle = (low + high) >>> 1;
+					if(isRankedAbove(isDistance, goldScores[middle], goldPositions[middle], e.getValue(), position))
+						low = middle + 1;
+					else
+						high = middle;
+				}
+				countsAbove[low]++;
 			}
+			position++;
+		}
+		
+		double countReturned = 0.0, countCorrectReturned = 0.0, sumP = 0.0;
+		for(int i = 0; i < goldPositions.length; i++){
+			countReturned += countsAbove[i] + 1;
+			countCorrectReturned++;
+			sumP += (double)countCorrectReturned / (double)countReturned;
 		}
 		double ap = (sumP / (double)gold.size());
 		return ap;
 	}
 	
+	private static boolean isRankedAbove(boolean isDistance, double score1, int position1, double score2, int position2){
+		if(score1 != score2)
+			return isDistance?(score1 < score2):(score1 > score2);
+		return position1 < position2;
+	}
+	
 	public static double calculateMAP(boolean isDistance, LinkedHashMap<String,LinkedHashMap<String,Double>> predictions, LinkedHashMap<String,LinkedHashSet<String>> gold){
 		double sum = 0.0;
 		for(String word : gold.keySet()){
@@ -120,7 +149,7 @@ public class HyponymGeneration {
 		String outputPath = null;
 		
 		SemModel semModel = new SemModel(modelPath, true, false); 
-		semModel.makeTensorSymmetric();
+		semModel.makeTensorSymmetricView();
 		VectorSpace vectorSpace = new VectorSpace(semModel, VectorSpace.WEIGHT_PMI_LIM, true);
 		
 		for(String dataset : Arrays.asList("dev", "test")){
@@ -141,7 +170,7 @@ public class HyponymGeneration {
 		String modelPath = "/anfs/bigdisc/mr472/semsim_models/model1";
 		
 		SemModel semModel = new SemModel(modelPath, true, false); 
-		semModel.makeTensorSymmetric();
+		semModel.makeTensorSymmetricView();
 		VectorSpace vectorSpace = new VectorSpace(semModel, VectorSpace.WEIGHT_PMI_LIM, true);
 		
 		LinkedHashMap<String,ArrayList<String>> examples = new LinkedHashMap<String,ArrayList<String>>();
@@ -175,10 +204,11 @@ public class HyponymGeneration {
 				for(SimMeasure simMeasure : Arrays.asList(SimMeasure.COSINE, SimMeasure.DICE_GEN_2, SimMeasure.BAL_AP_INC, SimMeasure.CLARKE_DE, SimMeasure.BAL_PREC, SimMeasure.WEIGHTED_COSINE)){
 					//System.out.println("#### : " + word + " " + simMeasure.getLabel());
 					System.out.print(Character.toUpperCase(simMeasure.getLabel().charAt(0)) + simMeasure.getLabel().substring(1) + " & ");
-					LinkedHashMap<String,LinkedHashMap<String,Double>> predictions = simFinder.getScores(new LinkedHashSet<String>(Arrays.asList(word)), candidateWords, simMeasure, false, threadCount);
+					// One more than needed, as the word itself can be among the candidates
+					LinkedHashMap<String,LinkedHashMap<String,Double>> predictions = simFinder.getTopK(new LinkedHashSet<String>(Arrays.asList(word)), 16, candidateWords, simMeasure, false, threadCount);
 					int count = 0;
 					ArrayList<String> topexamples = new ArrayList<String>();
-					for(Entry<String,Double> e : Tools.sort(predictions.get(word), true).entrySet()){
+					for(Entry<String,Double> e : predictions.get(word).entrySet()){
 						if(e.getKey().equals(word))
 							continue;
 						if(gold != null && gold.containsKey(word) && gold.get(word).contains(e.getKey()))
@@ -217,7 +247,7 @@ public class HyponymGeneration {
 			
 			SimMeasure simMeasure = SimMeasure.getType(simMeasureLabel);
 			SemModel semModel = new SemModel(modelPath, true, false); 
-			semModel.makeTensorSymmetric();
+			semModel.makeTensorSymmetricView();
 			VectorSpace vectorSpace = new VectorSpace(semModel, VectorSpace.WEIGHT_PMI_LIM, true);
 			
 			double map = run(simMeasure, pos, inputFile, semModel, vectorSpace, minFreq, threadCount, outputPath);
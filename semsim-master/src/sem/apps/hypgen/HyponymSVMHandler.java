@@ -1,5 +1,6 @@
 package sem.apps.hypgen;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -7,8 +8,12 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.Random;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -16,11 +21,13 @@ import java.util.concurrent.TimeUnit;
 
 import sem.model.SemModel;
 import sem.model.VectorSpace;
+import sem.sim.MultiMeasureScorer;
 import sem.sim.SimMeasure;
 import sem.util.FeatureNormaliser;
 import sem.util.FileReader;
 import sem.util.FileWriter;
 import sem.util.Pair;
+import sem.util.SparseVector;
 import sem.util.Tools;
 
 class SystemTask implements Runnable{
@@ -133,85 +140,147 @@ public class HyponymSVMHandler {
 		return candidateWords;
 	}
 	
+	// General features of a pair, in the order they are written
+	private static final String[] GENERAL_FEATURES = {"freq1", "freq2", "freqX", "feat1", "feat2", "featX", "ratio1", "ratio2", "ratioX", "common0", "common1", "common2", "commonX"};
+	
+	// Number of pairs that one task creates the lines for
+	private static final int SVM_BLOCK = 256;
+	
+	/**
+	 * Create the feature file for SVM training and testing, using all the available processors.
+	 */
+	public static void createSVMFile(LinkedHashMap<Pair<String>,Integer> goldPairs, String outputFile, String pos, VectorSpace vectorSpace, SemModel semModel, String cachePath){
+		createSVMFile(goldPairs, outputFile, pos, vectorSpace, semModel, cachePath, Runtime.getRuntime().availableProcessors());
+	}
+	
 	/**
 	 * Create the feature file for SVM training and testing.
+	 * If cachePath is null, the scores are calculated on the fly, and the file is written in one pass. 
+	 * Every pair is scored with all the measures at once by a MultiMeasureScorer, and blocks of pairs are processed in parallel, but written in the order of the pairs.
 	 * If cachePath is specified, it reads similarity scores from the corresponding cache file instead.
-	 * The file is generated iteratively, one feature at a time, since all the cache files don't fit into memory at once.
-	 * If cachePath is null, the scores are calculated on the fly.
+	 * In that case the file is generated iteratively, one feature at a time, since all the cache files don't fit into memory at once.
 	 */
-	public static void createSVMFile(LinkedHashMap<Pair<String>,Integer> goldPairs, String outputFile, String pos, VectorSpace vectorSpace, SemModel semModel, String cachePath){
-		String line;
-		Double score;
-		LinkedHashMap<Integer,Double> vector1 = null, vector2 = null, cacheVector2 = null;
-		String cacheNode = null;
-		//LinkedHashMap<String,LinkedHashMap<String,Double>> cachedScores = null;
-		LinkedHashMap<Pair<String>,Double> cachedScores = null;
-		HashSet<Integer> common = new HashSet<Integer>();
-		
-		
-		
-		// First printing the answers
+	public static void createSVMFile(final LinkedHashMap<Pair<String>,Integer> goldPairs, String outputFile, String pos, final VectorSpace vectorSpace, final SemModel semModel, String cachePath, int numThreads){
+		// The feature IDs are assigned here, in the order of the columns, as getFeatureId() is not thread-safe
+		final int[] generalIds = new int[GENERAL_FEATURES.length];
+		for(int i = 0; i < GENERAL_FEATURES.length; i++)
+			generalIds[i] = getFeatureId(GENERAL_FEATURES[i]);
+		final int[] measureIds = new int[measures.size()];
+		for(int i = 0; i < measures.size(); i++)
+			measureIds[i] = getFeatureId(measures.get(i).getLabel());
+		
+		final ArrayList<Pair<String>> pairs = new ArrayList<Pair<String>>(goldPairs.keySet());
+		final MultiMeasureScorer scorer = (cachePath == null)?new MultiMeasureScorer(measures):null;
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		LinkedList<Future<String>> pending = new LinkedList<Future<String>>();
 		FileWriter fileWriter = new FileWriter(outputFile);
-		for(Pair<String> wordPair : goldPairs.keySet()){
-			fileWriter.write("" + (goldPairs.get(wordPair).equals(1)?1:-1));
-			/*
-			vector1 = vectorSpace.getVector(wordPair.getItem1());
-			if(cacheVector2 != null && cacheNode != null && cacheNode.equals(wordPair.getItem2()))
-				vector2 = cacheVector2;
-			else{
-				vector2 = vectorSpace.getVector(wordPair.getItem2());
-				cacheVector2 = vector2;
-			} 
-			*/
-			vector1 = vectorSpace.getVector(wordPair.getItem1());
-			vector2 = vectorSpace.getVector(wordPair.getItem2()); 
-			
-			// General features
-			
-			fileWriter.write(" " + getFeatureId("freq1")+":"+semModel.getNodeCount(wordPair.getItem1()));
-			fileWriter.write(" " + getFeatureId("freq2")+":"+semModel.getNodeCount(wordPair.getItem2()));
-			fileWriter.write(" " + getFeatureId("freqX")+":"+((double)semModel.getNodeCount(wordPair.getItem1())*(double)semModel.getNodeCount(wordPair.getItem2())));
-			
-			fileWriter.write(" " + getFeatureId("feat1")+":"+vector1.size());
-			fileWriter.write(" " + getFeatureId("feat2")+":"+vector2.size());
-			fileWriter.write(" " + getFeatureId("featX")+":"+((double)vector1.size() * (double)vector2.size()));
-			
-			double ratio1 = (double)vector1.size() / (double)semModel.getNodeCount(wordPair.getItem1());
-			double ratio2 = (double)vector2.size() / (double)semModel.getNodeCount(wordPair.getItem2());
-			
-			fileWriter.write(" " + getFeatureId("ratio1")+":"+ratio1);
-			fileWriter.write(" " + getFeatureId("ratio2")+":"+ratio2);
-			fileWriter.write(" " + getFeatureId("ratioX")+":"+(ratio1*ratio2));
-			
-			common.clear();
-			common.addAll(vector1.keySet());
-			common.retainAll(vector2.keySet());
-			double common1 = (vector1.size() == 0)?0.0:((double)common.size() / (double)vector1.size());
-			double common2 = (vector2.size() == 0)?0.0:((double)common.size() / (double)vector2.size());
-			fileWriter.write(" " + getFeatureId("common0")+":"+common.size());
-			fileWriter.write(" " + getFeatureId("common1")+":"+common1);
-			fileWriter.write(" " + getFeatureId("common2")+":"+common2);
-			fileWriter.write(" " + getFeatureId("commonX")+":"+(common1 * common2));
-			
-			fileWriter.writeln("");
+		try{
+			for(int start = 0; start < pairs.size(); start += SVM_BLOCK){
+				final int from = start;
+				final int to = Math.min(pairs.size(), start + SVM_BLOCK);
+				pending.add(executor.submit(new Callable<String>(){
+					@Override
+					public String call(){
+						StringBuilder lines = new StringBuilder();
+						for(int i = from; i < to; i++){
+							Pair<String> wordPair = pairs.get(i);
+							SparseVector vector1 = vectorSpace.getSparseVector(wordPair.getItem1());
+							SparseVector vector2 = vectorSpace.getSparseVector(wordPair.getItem2());
+							lines.append(goldPairs.get(wordPair).equals(1)?1:-1);
+							lines.append(getGeneralFeatures(wordPair, vector1, vector2, semModel, generalIds));
+							if(scorer != null){
+								double[] scores = scorer.score(vector1, vector2);
+								for(int j = 0; j < scores.length; j++){
+									if(Double.isInfinite(scores[j]) || Double.isNaN(scores[j]))
+										throw new RuntimeException("Illegal score value: " + scores[j]);
+									lines.append(" " + measureIds[j] + ":" + scores[j]);
+								}
+							}
+							lines.append("\n");
+						}
+						return lines.toString();
+					}
+				}));
+				// Writes the finished blocks, so that only a few blocks are kept in memory
+				while(pending.size() > 2 * numThreads || (!pending.isEmpty() && pending.peek().isDone()))
+					fileWriter.write(pending.removeFirst().get());
+			}
+			while(!pending.isEmpty())
+				fileWriter.write(pending.removeFirst().get());
+		} catch(Exception e){
+			throw new RuntimeException(e);
+		} finally {
+			executor.shutdown();
+			fileWriter.close();
 		}
-		fileWriter.close();
-		
 		
-		// Now printing all the features, iteratively
-		for(SimMeasure simMeasure : measures){ 
+		if(cachePath != null)
+			addCachedScores(goldPairs, outputFile, cachePath, measureIds);
+	}
+	
+	/**
+	 * The general features of a pair, each with a space in front.
+	 */
+	private static String getGeneralFeatures(Pair<String> wordPair, SparseVector vector1, SparseVector vector2, SemModel semModel, int[] ids){
+		StringBuilder line = new StringBuilder();
+		line.append(" " + ids[0]+":"+semModel.getNodeCount(wordPair.getItem1()));
+		line.append(" " + ids[1]+":"+semModel.getNodeCount(wordPair.getItem2()));
+		line.append(" " + ids[2]+":"+((double)semModel.getNodeCount(wordPair.getItem1())*(double)semModel.getNodeCount(wordPair.getItem2())));
+		
+		line.append(" " + ids[3]+":"+vector1.size());
+		line.append(" " + ids[4]+":"+vector2.size());
+		line.append(" " + ids[5]+":"+((double)vector1.size() * (double)vector2.size()));
+		
+		double ratio1 = (double)vector1.size() / (double)semModel.getNodeCount(wordPair.getItem1());
+		double ratio2 = (double)vector2.size() / (double)semModel.getNodeCount(wordPair.getItem2());
+		
+		line.append(" " + ids[6]+":"+ratio1);
+		line.append(" " + ids[7]+":"+ratio2);
+		line.append(" " + ids[8]+":"+(ratio1*ratio2));
+		
+		// Features that are in both vectors
+		int[] ids1 = vector1.getIds(), ids2 = vector2.getIds();
+		int common = 0;
+		int i = 0, j = 0;
+		while(i < ids1.length && j < ids2.length){
+			if(ids1[i] < ids2[j])
+				i++;
+			else if(ids1[i] > ids2[j])
+				j++;
+			else {
+				common++;
+				i++;
+				j++;
+			}
+		}
+		double common1 = (vector1.size() == 0)?0.0:((double)common / (double)vector1.size());
+		double common2 = (vector2.size() == 0)?0.0:((double)common / (double)vector2.size());
+		line.append(" " + ids[9]+":"+common);
+		line.append(" " + ids[10]+":"+common1);
+		line.append(" " + ids[11]+":"+common2);
+		line.append(" " + ids[12]+":"+(common1 * common2));
+		return line.toString();
+	}
+	
+	/**
+	 * Add the scores from the cache files to the feature file, one measure at a time.
+	 */
+	private static void addCachedScores(LinkedHashMap<Pair<String>,Integer> goldPairs, String outputFile, String cachePath, int[] measureIds){
+		String line;
+		Double score;
+		LinkedHashMap<Pair<String>,Double> cachedScores = null;
+		File file = new File(outputFile), tempFile = new File(outputFile + ".temp");
+		for(int i = 0; i < measures.size(); i++){ 
+			SimMeasure simMeasure = measures.get(i);
 			System.out.println("Adding measure: " + simMeasure.getLabel());
 			
-			Tools.runCommand("rm " + outputFile +".temp");
-			Tools.runCommand("mv " + outputFile + " " + outputFile +".temp");
+			tempFile.delete();
+			if(!file.renameTo(tempFile))
+				throw new RuntimeException("Cannot rename " + file + " to " + tempFile);
 			
-			if(cachePath != null){
-				cachedScores = loadCachedScores(cachePath, simMeasure.getLabel(), goldPairs);
-			}
-			else
-				cachedScores = null;
+			cachedScores = loadCachedScores(cachePath, simMeasure.getLabel(), goldPairs);
 			
-			FileReader input = new FileReader(outputFile + ".temp");
+			FileReader input = new FileReader(tempFile.getPath());
 			FileWriter output = new FileWriter(outputFile);
 			
 			for(Pair<String> wordPair : goldPairs.keySet()){
@@ -219,34 +288,19 @@ public class HyponymSVMHandler {
 					throw new RuntimeException("No lines left in input file");
 				line = input.next();
 				
-				if(cachedScores != null){
-					score = cachedScores.get(wordPair);
-				}
-				else {
-					vector1 = vectorSpace.getVector(wordPair.getItem1());
-					vector2 = vectorSpace.getVector(wordPair.getItem2());
-					score = simMeasure.sim(vector1, vector2);
-				}
-				
+				score = cachedScores.get(wordPair);
 				if(score == null || score.isInfinite() || score.isNaN())
 					throw new RuntimeException("Illegal score value: " + score);
 
-				Integer featureId = getFeatureId(simMeasure.getLabel());
-				if(featureId == null)
-					throw new RuntimeException("Feature ID cannot be null");
-
-				output.writeln(line + " " + featureId + ":" + score);
+				output.writeln(line + " " + measureIds[i] + ":" + score);
 			}
 			
-			if(cachedScores != null){
-				cachedScores.clear();
-				cachedScores = null;
-				//System.gc();
-			}
+			cachedScores.clear();
+			cachedScores = null;
 			input.close();
 			output.close();
 		}
-		Tools.runCommand("rm " + outputFile +".temp");
+		tempFile.delete();
 	}
 	
 	public static LinkedHashMap<Pair<String>,Integer> readGenAsPairs(String path, boolean balanced, SemModel semModel, String pos){
@@ -438,7 +492,7 @@ public class HyponymSVMHandler {
 		String modelPath = "/anfs/bigdisc/mr472/semsim_models/model1"; 
 
 		SemModel semModel = new SemModel(modelPath, true, false);
-		semModel.makeTensorSymmetric();
+		semModel.makeTensorSymmetricView();
 		VectorSpace vectorSpace = new VectorSpace(semModel, VectorSpace.WEIGHT_PMI_LIM, true);
 		int normalisationType = 1; 
 		int kernel = 0;
@@ -16,6 +16,8 @@ import sem.exception.SemModelException;
 import sem.graphreader.GraphReader;
 import sem.graphreader.RaspXmlGraphReader;
 import sem.model.SemModel;
+import sem.model.SemModelBuilder;
+import sem.util.Tools;
 
 public class ModelBuilder {
 
@@ -59,7 +61,29 @@ public class ModelBuilder {
 		}
 	}
 	
+	/**
+	 * Create the model using several threads. Format errors and xparse graphs are skipped, as in the single-threaded version.
+	 */
+	public static void createModel(GraphReader graphReader, ArrayList<GraphEditor> graphEditors, String outputPath, int numThreads){
+		if(numThreads <= 1){
+			createModel(graphReader, graphEditors, outputPath);
+			return;
+		}
+		try{
+			System.out.println("Creating Model....");
+			SemModelBuilder builder = new SemModelBuilder(graphEditors, true, numThreads, true);
+			builder.setProgressInterval(50000);
+			SemModel semModel = builder.build(graphReader);
+			semModel.save(outputPath);
+		} catch (SemModelException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
 	public static void main(String[] args) {
+		int numThreads = 1;
+		if(args.length == 2 && args[0].equals("--threads"))
+			numThreads = Tools.getInt(args[1], 1);
 		
 		GraphReader graphReader;
 		String outputPath;
@@ -158,7 +182,7 @@ public class ModelBuilder {
 		
 		
 		
-		createModel(graphReader, graphEditors, outputPath);
+		createModel(graphReader, graphEditors, outputPath, numThreads);
 	}
 
 }
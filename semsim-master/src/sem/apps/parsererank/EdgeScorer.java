@@ -10,6 +10,7 @@ import sem.graph.Graph;
 import sem.model.SemModel;
 import sem.util.FileReader;
 import sem.util.Tools;
+import sem.util.TopKCollector;
 
 /**
  * Implements various alternative methods for assigning a score to every edge in a graph
@@ -189,7 +190,6 @@ public class EdgeScorer {
 	
 	public double eces(String head, String relation, String dep, String method, boolean includeMainWord, double lambda){
 		double score = 0.0, sum, weightSum, weight;
-		int count;
 		
 		LinkedHashMap<String,Double> substitutes;
 		
@@ -202,10 +202,7 @@ public class EdgeScorer {
 
 		sum = 0.0;
 		weightSum = 0.0;
-		count = 0;
-		for(Entry<String,Double> substitute : Tools.sort(substitutes, true).entrySet()){
-			if(count >= this.expansionLimit)
-				break;
+		for(Entry<String,Double> substitute : TopKCollector.select(substitutes, this.expansionLimit, true).entrySet()){
 			weight = Math.pow(substitute.getValue(), lambda);
 			
 			if(method.equalsIgnoreCase("ces1"))
@@ -216,7 +213,6 @@ public class EdgeScorer {
 				throw new RuntimeException("Unknown method: " + method);
 			
 			weightSum += weight;
-			count++;
 		}
 		if(weightSum > 0.0)
 			score += sum / weightSum;
@@ -231,10 +227,7 @@ public class EdgeScorer {
 
 		sum = 0.0;
 		weightSum = 0.0;
-		count=0;
-		for(Entry<String,Double> substitute : Tools.sort(substitutes, true).entrySet()){
-			if(count >= this.expansionLimit)
-				break;
+		for(Entry<String,Double> substitute : TopKCollector.select(substitutes, this.expansionLimit, true).entrySet()){
 			weight = Math.pow(substitute.getValue(), lambda);
 			
 			if(method.equalsIgnoreCase("ces1"))
@@ -245,7 +238,6 @@ public class EdgeScorer {
 				throw new RuntimeException("Unknown method: " + method);
 			
 			weightSum += weight;
-			count++;
 		}
 		if(weightSum > 0.0)
 			score += sum / weightSum;
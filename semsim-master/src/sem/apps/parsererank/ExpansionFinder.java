@@ -13,6 +13,7 @@ import sem.model.VectorSpace;
 import sem.sim.SimFinder;
 import sem.sim.SimMeasure;
 import sem.util.StringMap;
+import sem.util.TopKCollector;
 import sem.util.Tools;
 import sem.util.FileReader;
 
@@ -36,7 +37,7 @@ public class ExpansionFinder {
 		int minCandidateCount = 100;
 		
 		SemModel semModel = new SemModel(semModelPath, false); 
-		semModel.makeTensorSymmetric();
+		semModel.makeTensorSymmetricView();
 		StringMap lemmaMap = new StringMap(lemmaMapPath);
 		
 		//
@@ -133,25 +134,29 @@ public class ExpansionFinder {
 		VectorSpace vectorSpace = new VectorSpace(semModel, VectorSpace.WEIGHT_PMI_LIM, true);
 		SimFinder simFinder = new SimFinder(vectorSpace);
 		SimMeasure simMeasure = SimMeasure.getType(simMeasureType);
-		int count = 0;
 		
 		for(String p : mainWords.keySet()){
-			LinkedHashMap<String,LinkedHashMap<String,Double>> scores = simFinder.getScores(mainWords.get(p), candidateWords.get(p), simMeasure, findHypernyms, threadLimit);
+			// A word limit below 1 still prints the best word
+			LinkedHashMap<String,LinkedHashMap<String,Double>> scores;
+			if(simMeasure.isDistance()){
+				// The words are always listed from the highest score down, which for a distance measure are the farthest ones
+				scores = simFinder.getScores(mainWords.get(p), candidateWords.get(p), simMeasure, findHypernyms, threadLimit);
+				for(Entry<String,LinkedHashMap<String,Double>> e : scores.entrySet())
+					e.setValue(TopKCollector.select(e.getValue(), Math.max(1, wordLimit), true));
+			}
+			else
+				scores = simFinder.getTopK(mainWords.get(p), Math.max(1, wordLimit), candidateWords.get(p), simMeasure, findHypernyms, threadLimit);
 			
 			for(String mainWord : mainWords.get(p)){
 				System.out.print(mainWord);
-				count = 0;
-				for(Entry<String,Double> e : Tools.sort(scores.get(mainWord), true).entrySet()){
+				for(Entry<String,Double> e : scores.get(mainWord).entrySet())
 					System.out.print("\t" + e.getKey() + "\t" + e.getValue());
-					if(++count >= wordLimit)
-						break;
-				}
 				System.out.println();
 			}
 			
 			scores = null;
-			System.gc();
 		}
+		System.err.println("Vector cache: " + vectorSpace.getVectorCache());
 	}
 	
 	public static void main(String[] args){
@@ -258,11 +258,13 @@ public class ParseRerank {
 			int numThreads = 8;
 			
 			SemModel semModel = new SemModel(modelPath, true, true); 
+			semModel.freeze();
 			
 			
 			for(String edgeScorerType : Arrays.asList("I", "BASELINE", "UPPERBOUND", "RES", "CES1", "CES2", "ECES1", "ECES2", "CMB1", "CMB2")){
 				System.out.println("##### " + dataset + " " + edgeScorerType);
 				run(semModel, datasetPath, expansionListPath, posMapPath, edgeScorerType, graphScorerType, numThreads);
+				System.out.println("Count cache: " + semModel.getCache());
 			}
 			
 			semModel = null;
@@ -0,0 +1,117 @@
+package sem.benchmark;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import sem.util.ConcurrentIndex;
+import sem.util.FileReader;
+import sem.util.Index;
+import sem.util.Tools;
+
+/**
+ * Compares the throughput of Index and ConcurrentIndex.
+ * The labels are read from a whitespace-tokenised text file, or generated with a Zipfian distribution if no file is given.
+ * Every configuration is run a few times for warmup before it is measured.
+ */
+public class IndexBenchmark {
+
+	private static int WARMUP = 3;
+	private static int RUNS = 5;
+
+	public static ArrayList<String> readLabels(String path){
+		ArrayList<String> labels = new ArrayList<String>();
+		FileReader fr = new FileReader(path);
+		while(fr.hasNext()){
+			for(String token : fr.next().trim().split("\\s+"))
+				if(token.length() > 0)
+					labels.add(token);
+		}
+		fr.close();
+		return labels;
+	}
+
+	public static ArrayList<String> generateLabels(int count, int vocabulary){
+		ArrayList<String> labels = new ArrayList<String>(count);
+		Random random = new Random(1);
+		for(int i = 0; i < count; i++){
+			// Approximately Zipfian ranks, which is close to the distribution of words in a corpus
+			int rank = (int)Math.floor(Math.pow(vocabulary + 1, random.nextDouble())) - 1;
+			labels.add("w" + rank + "_NN1");
+		}
+		return labels;
+	}
+
+	private static long runAdd(final Index index, final ArrayList<String> labels, int numThreads) throws InterruptedException{
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		final int chunk = (labels.size() + numThreads - 1) / numThreads;
+		long start = System.nanoTime();
+		for(int t = 0; t < numThreads; t++){
+			final int from = t * chunk;
+			final int to = Math.min(labels.size(), from + chunk);
+			Thread thread = new Thread(new Runnable(){
+				public void run(){
+					for(int i = from; i < to; i++)
+						index.add(labels.get(i), 1.0);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for(Thread thread : threads)
+			thread.join();
+		return System.nanoTime() - start;
+	}
+
+	private static long runGetLabel(Index index){
+		int size = index.size();
+		long start = System.nanoTime();
+		int found = 0;
+		for(int r = 0; r < 10; r++)
+			for(int id = 1; id <= size; id++)
+				if(index.getLabel(id) != null)
+					found++;
+		if(found != size * 10)
+			throw new RuntimeException("Missing labels in the index");
+		return System.nanoTime() - start;
+	}
+
+	private static Index create(boolean concurrent){
+		return concurrent?new ConcurrentIndex():new Index();
+	}
+
+	public static void run(ArrayList<String> labels, int maxThreads) throws InterruptedException{
+		System.out.println("Labels: " + labels.size());
+		for(boolean concurrent : new boolean[]{false, true}){
+			String name = concurrent?"ConcurrentIndex":"Index";
+			for(int numThreads = 1; numThreads <= maxThreads; numThreads *= 2){
+				for(int i = 0; i < WARMUP; i++)
+					runAdd(create(concurrent), labels, numThreads);
+				long total = 0;
+				for(int i = 0; i < RUNS; i++)
+					total += runAdd(create(concurrent), labels, numThreads);
+				double seconds = (double)total / RUNS / 1e9;
+				System.out.println(name + "\tadd\tthreads=" + numThreads + "\t" + String.format("%.3f", seconds) + "s\t" + String.format("%.0f", labels.size() / seconds) + " ops/s");
+			}
+
+			Index index = create(concurrent);
+			runAdd(index, labels, 1);
+			runGetLabel(index);
+			long total = 0;
+			for(int i = 0; i < RUNS; i++)
+				total += runGetLabel(index);
+			double seconds = (double)total / RUNS / 1e9;
+			System.out.println(name + "\tgetLabel\t" + String.format("%.3f", seconds) + "s\t" + String.format("%.0f", index.size() * 10 / seconds) + " ops/s");
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		if(args.length == 1 || args.length == 2){
+			int maxThreads = Tools.getInt(args[0], 1);
+			ArrayList<String> labels = args.length == 2?readLabels(args[1]):generateLabels(2000000, 200000);
+			run(labels, maxThreads);
+		}
+		else {
+			System.out.println("IndexBenchmark <maxthreads> [textfile]");
+		}
+	}
+}
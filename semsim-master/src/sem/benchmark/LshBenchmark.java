@@ -0,0 +1,98 @@
+package sem.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Random;
+
+import sem.model.SemModel;
+import sem.model.VectorSpace;
+import sem.sim.LshIndex;
+import sem.sim.SimFinder;
+import sem.sim.SimMeasure;
+import sem.util.Tools;
+
+/**
+ * Compares the recall and latency of SimFinder.getApproximateMostSimilar() with an LSH index against the exhaustive search, for several band and row settings.
+ * Query words are sampled from the candidates in proportion to their frequency. An approximate result counts as found if its score is at least as good as the k-th exhaustive result, as many words have tied scores.
+ * The vectors are cached and created before measuring, so the times only cover finding and scoring the candidates, e.g.:
+ * <pre>LshBenchmark mymodel cosine 5 200 10 10x4 20x4 20x8</pre>
+ */
+public class LshBenchmark {
+
+	public static void run(VectorSpace vectorSpace, LinkedHashSet<String> candidateWords, SimMeasure simMeasure, int frequencyLimit, ArrayList<String> queries, int k, int[][] settings){
+		SimFinder simFinder = new SimFinder(vectorSpace);
+		vectorSpace.precompute(candidateWords, Runtime.getRuntime().availableProcessors());
+
+		ArrayList<LinkedHashMap<String,Double>> exact = new ArrayList<LinkedHashMap<String,Double>>();
+		for(String query : queries)
+			simFinder.getMostSimilar(query, candidateWords, simMeasure, k);
+		long start = System.nanoTime();
+		for(String query : queries)
+			exact.add(simFinder.getMostSimilar(query, candidateWords, simMeasure, k));
+		double exactMs = (System.nanoTime() - start) / 1e6 / queries.size();
+		System.out.println("Queries: " + queries.size() + "\tcandidates=" + candidateWords.size() + "\texhaustive=" + String.format("%.3f", exactMs) + "ms/query");
+
+		int type = (simMeasure == SimMeasure.COSINE)?LshIndex.SIMHASH:LshIndex.MINHASH;
+		for(int[] setting : settings){
+			long buildStart = System.nanoTime();
+			LshIndex lshIndex = LshIndex.build(vectorSpace, candidateWords, type, setting[0], setting[1], frequencyLimit, 1);
+			double buildMs = (System.nanoTime() - buildStart) / 1e6;
+
+			for(String query : queries)
+				simFinder.getApproximateMostSimilar(query, lshIndex, simMeasure, k);
+			ArrayList<LinkedHashMap<String,Double>> approximate = new ArrayList<LinkedHashMap<String,Double>>();
+			start = System.nanoTime();
+			for(String query : queries)
+				approximate.add(simFinder.getApproximateMostSimilar(query, lshIndex, simMeasure, k));
+			double lshMs = (System.nanoTime() - start) / 1e6 / queries.size();
+
+			double found = 0.0, total = 0.0, candidates = 0.0;
+			for(int i = 0; i < queries.size(); i++){
+				ArrayList<Double> exactScores = new ArrayList<Double>(exact.get(i).values());
+				total += exactScores.size();
+				if(exactScores.size() == 0)
+					continue;
+				double last = exactScores.get(exactScores.size() - 1);
+				for(double score : approximate.get(i).values())
+					if(simMeasure.isDistance()?(score <= last + 1e-9):(score >= last - 1e-9))
+						found++;
+				candidates += lshIndex.getCandidates(vectorSpace.getSparseVector(queries.get(i))).length;
+			}
+			System.out.println("bands=" + setting[0] + "\trows=" + setting[1]
+					+ "\trecall@" + k + "=" + String.format("%.3f", found / Math.max(total, 1.0))
+					+ "\tscored=" + String.format("%.1f", 100.0 * candidates / queries.size() / candidateWords.size()) + "%"
+					+ "\tlsh=" + String.format("%.3f", lshMs) + "ms/query"
+					+ "\tspeedup=" + String.format("%.1f", exactMs / lshMs) + "x"
+					+ "\tbuild=" + String.format("%.0f", buildMs) + "ms");
+		}
+	}
+
+	public static void main(String[] args) {
+		if(args.length >= 6){
+			SemModel semModel = new SemModel(args[0], false);
+			SimMeasure simMeasure = SimMeasure.getType(args[1]);
+			if(simMeasure == null)
+				throw new RuntimeException("SimMeasureType is null");
+			int frequencyLimit = Tools.getInt(args[2], 1);
+			int numQueries = Tools.getInt(args[3], 1);
+			int k = Tools.getInt(args[4], 1);
+			int[][] settings = new int[args.length - 5][];
+			for(int i = 5; i < args.length; i++){
+				String[] parts = args[i].split("x");
+				settings[i-5] = new int[]{Tools.getInt(parts[0], 1), Tools.getInt(parts[parts.length-1], 1)};
+			}
+
+			semModel.makeTensorSymmetricView();
+			VectorSpace vectorSpace = new VectorSpace(semModel, VectorSpace.WEIGHT_PMI_LIM, true);
+			LinkedHashSet<String> candidateWords = new LinkedHashSet<String>();
+			for(String s : semModel.getNodeIndex().getIdMap().keySet())
+				if(semModel.getNodeCount(s) >= frequencyLimit)
+					candidateWords.add(s);
+			run(vectorSpace, candidateWords, simMeasure, frequencyLimit, SimMeasureBenchmark.sampleWords(semModel, frequencyLimit, numQueries, new Random(1)), k, settings);
+		}
+		else {
+			System.out.println("LshBenchmark <modelpath> <similaritytype> <frequencylimit> <numqueries> <k> <bands>x<rows> [<bands>x<rows> ...]");
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package sem.benchmark;
+
+import java.io.File;
+
+import sem.model.SemModel;
+
+/**
+ * Measures the time it takes to load a SemModel and answer the first query, for the text and the binary format.
+ * The binary copy of the model is created next to the text model if it does not exist yet.
+ * For a true cold start, run each format in a separate process after dropping the page cache, e.g.:
+ * <pre>ModelLoadBenchmark mymodel text dance_NN1
+ * ModelLoadBenchmark mymodel binary dance_NN1</pre>
+ */
+public class ModelLoadBenchmark {
+	
+	public static void measure(String path, String format, String word){
+		long start = System.nanoTime();
+		SemModel semModel = new SemModel(path, false);
+		long loaded = System.nanoTime();
+		double nodeCount = semModel.getNodeCount(word);
+		double tripleCount = semModel.getTripleCount(word, null, null);
+		long queried = System.nanoTime();
+		System.out.println(format + "\tload=" + String.format("%.1f", (loaded - start) / 1e6) + "ms" 
+				+ "\tfirstquery=" + String.format("%.3f", (queried - loaded) / 1e6) + "ms"
+				+ "\tnodecount=" + nodeCount + "\ttriplecount=" + tripleCount);
+	}
+	
+	public static void main(String[] args) {
+		if(args.length == 2 || args.length == 3){
+			String textPath = args[0];
+			String binaryPath = textPath + "_binary";
+			String word = args[args.length-1];
+			
+			if(!(new File(binaryPath + "_tensor.bin")).exists())
+				new SemModel(textPath, false).save(binaryPath);
+			
+			if(args.length == 2 || args[1].equalsIgnoreCase("text"))
+				measure(textPath, "text", word);
+			if(args.length == 2 || args[1].equalsIgnoreCase("binary"))
+				measure(binaryPath, "binary", word);
+		}
+		else {
+			System.out.println("ModelLoadBenchmark <textmodelpath> [text|binary] <word>");
+		}
+	}
+}
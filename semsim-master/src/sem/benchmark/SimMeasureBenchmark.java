@@ -0,0 +1,137 @@
+package sem.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Random;
+
+import sem.model.SemModel;
+import sem.model.VectorSpace;
+import sem.sim.SimMeasure;
+import sem.util.SparseVector;
+import sem.util.Tools;
+
+/**
+ * Compares the time per comparison of the map and the SparseVector versions of every similarity measure.
+ * Word pairs are sampled from the model in proportion to their frequency, so the vector lengths follow the same distribution as in real queries.
+ * Every measure is run a few times for warmup before it is measured. Pairs where the map version throws an exception (e.g. kl with missing features) are left out for that measure.
+ */
+public class SimMeasureBenchmark {
+
+	private static int WARMUP = 3;
+	private static int RUNS = 5;
+
+	/**
+	 * Sample words with probability proportional to their frequency.
+	 */
+	public static ArrayList<String> sampleWords(SemModel semModel, int frequencyLimit, int count, Random random){
+		ArrayList<String> words = new ArrayList<String>();
+		ArrayList<Double> cumulative = new ArrayList<Double>();
+		double total = 0.0;
+		for(String word : semModel.getNodeIndex().getIdMap().keySet()){
+			double frequency = semModel.getNodeCount(word);
+			if(frequency >= frequencyLimit){
+				total += frequency;
+				words.add(word);
+				cumulative.add(total);
+			}
+		}
+		if(words.size() == 0)
+			throw new RuntimeException("No words with frequency " + frequencyLimit + " or more");
+
+		ArrayList<String> sample = new ArrayList<String>(count);
+		for(int i = 0; i < count; i++){
+			double target = random.nextDouble() * total;
+			int low = 0, high = cumulative.size() - 1;
+			while(low < high){
+				int middle = (low + high) >>> 1;
+				if(cumulative.get(middle) <= target)
+					low = middle + 1;
+				else
+					high = middle;
+			}
+			sample.add(words.get(low));
+		}
+		return sample;
+	}
+
+	private static double sum;
+
+	private static long runMaps(SimMeasure simMeasure, ArrayList<LinkedHashMap<Integer,Double>> vectors1, ArrayList<LinkedHashMap<Integer,Double>> vectors2){
+		long start = System.nanoTime();
+		for(int i = 0; i < vectors1.size(); i++)
+			sum += simMeasure.sim(vectors1.get(i), vectors2.get(i));
+		return System.nanoTime() - start;
+	}
+
+	private static long runSparse(SimMeasure simMeasure, ArrayList<SparseVector> vectors1, ArrayList<SparseVector> vectors2){
+		long start = System.nanoTime();
+		for(int i = 0; i < vectors1.size(); i++)
+			sum += simMeasure.sim(vectors1.get(i), vectors2.get(i));
+		return System.nanoTime() - start;
+	}
+
+	public static void run(VectorSpace vectorSpace, ArrayList<String> words){
+		double totalLength = 0.0;
+		int maxLength = 0;
+		for(String word : words){
+			int length = vectorSpace.getVector(word).size();
+			totalLength += length;
+			maxLength = Math.max(maxLength, length);
+		}
+		System.out.println("Pairs: " + (words.size() / 2) + "\tmean length=" + String.format("%.1f", totalLength / words.size()) + "\tmax length=" + maxLength);
+
+		for(SimMeasure simMeasure : SimMeasure.values()){
+			ArrayList<LinkedHashMap<Integer,Double>> maps1 = new ArrayList<LinkedHashMap<Integer,Double>>();
+			ArrayList<LinkedHashMap<Integer,Double>> maps2 = new ArrayList<LinkedHashMap<Integer,Double>>();
+			ArrayList<SparseVector> sparse1 = new ArrayList<SparseVector>();
+			ArrayList<SparseVector> sparse2 = new ArrayList<SparseVector>();
+			for(int i = 0; i + 1 < words.size(); i += 2){
+				LinkedHashMap<Integer,Double> a = vectorSpace.getVector(words.get(i));
+				LinkedHashMap<Integer,Double> b = vectorSpace.getVector(words.get(i+1));
+				try{
+					simMeasure.sim(a, b);
+				} catch(RuntimeException e){
+					continue;
+				}
+				maps1.add(a);
+				maps2.add(b);
+				sparse1.add(vectorSpace.getSparseVector(words.get(i)));
+				sparse2.add(vectorSpace.getSparseVector(words.get(i+1)));
+			}
+			if(maps1.size() == 0){
+				System.out.println(simMeasure.getLabel() + "\tno valid pairs");
+				continue;
+			}
+
+			for(int i = 0; i < WARMUP; i++){
+				runMaps(simMeasure, maps1, maps2);
+				runSparse(simMeasure, sparse1, sparse2);
+			}
+			long mapTime = 0, sparseTime = 0;
+			for(int i = 0; i < RUNS; i++){
+				mapTime += runMaps(simMeasure, maps1, maps2);
+				sparseTime += runSparse(simMeasure, sparse1, sparse2);
+			}
+			double mapNs = (double)mapTime / RUNS / maps1.size();
+			double sparseNs = (double)sparseTime / RUNS / maps1.size();
+			System.out.println(simMeasure.getLabel() + "\tmap=" + String.format("%.0f", mapNs) + "ns/op\tsparse=" + String.format("%.0f", sparseNs) + "ns/op\tspeedup=" + String.format("%.1f", mapNs / sparseNs) + "x");
+		}
+		// Keeps the results from being optimised away
+		if(Double.isNaN(sum))
+			System.out.println("NaN in results");
+	}
+
+	public static void main(String[] args) {
+		if(args.length == 2 || args.length == 3){
+			SemModel semModel = new SemModel(args[0], false);
+			int frequencyLimit = Tools.getInt(args[1], 1);
+			int numPairs = (args.length == 3)?Tools.getInt(args[2], 1):10000;
+			semModel.makeTensorSymmetricView();
+			VectorSpace vectorSpace = new VectorSpace(semModel, VectorSpace.WEIGHT_PMI_LIM, true);
+			run(vectorSpace, sampleWords(semModel, frequencyLimit, 2 * numPairs, new Random(1)));
+		}
+		else {
+			System.out.println("SimMeasureBenchmark <modelpath> <frequencylimit> [numpairs]");
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package sem.benchmark;
+
+import sem.model.SemModel;
+import sem.model.VectorSpace;
+
+/**
+ * Measures the startup time and heap size of a symmetric model, either with the reverse edges materialised (makeTensorSymmetric() and freeze()) or as a view (makeTensorSymmetricView()).
+ * Startup covers loading the model, making it symmetric, creating the vector space and the first vector.
+ * For comparable heap numbers, run each mode in a separate process, e.g.:
+ * <pre>SymmetricTensorBenchmark mymodel materialised man_NN1
+ * SymmetricTensorBenchmark mymodel view man_NN1</pre>
+ */
+public class SymmetricTensorBenchmark {
+
+	private static long usedHeap(){
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 3; i++)
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	public static void measure(String path, boolean view, String word){
+		long heapBefore = usedHeap();
+		long start = System.nanoTime();
+		SemModel semModel = new SemModel(path, false);
+		long loaded = System.nanoTime();
+		if(view)
+			semModel.makeTensorSymmetricView();
+		else {
+			semModel.makeTensorSymmetric();
+			semModel.freeze();
+		}
+		long symmetric = System.nanoTime();
+		VectorSpace vectorSpace = new VectorSpace(semModel, VectorSpace.WEIGHT_PMI_LIM, true);
+		int length = vectorSpace.getVector(word).size();
+		long ready = System.nanoTime();
+		long heap = usedHeap() - heapBefore;
+
+		System.out.println((view?"view":"materialised") + "\tload=" + String.format("%.1f", (loaded - start) / 1e6) + "ms"
+				+ "\tsymmetric=" + String.format("%.1f", (symmetric - loaded) / 1e6) + "ms"
+				+ "\tvectorspace=" + String.format("%.1f", (ready - symmetric) / 1e6) + "ms"
+				+ "\ttotal=" + String.format("%.1f", (ready - start) / 1e6) + "ms"
+				+ "\theap=" + String.format("%.1f", heap / 1048576.0) + "MB"
+				+ "\tvectorlength=" + length);
+		// Keeps the model reachable until the heap has been measured
+		if(semModel.getTensor() == null)
+			System.out.println("No tensor");
+	}
+
+	public static void main(String[] args) {
+		if(args.length == 2 || args.length == 3){
+			String word = args[args.length-1];
+			if(args.length == 2 || args[1].equalsIgnoreCase("materialised"))
+				measure(args[0], false, word);
+			if(args.length == 2 || args[1].equalsIgnoreCase("view"))
+				measure(args[0], true, word);
+		}
+		else {
+			System.out.println("SymmetricTensorBenchmark <modelpath> [materialised|view] <word>");
+		}
+	}
+}
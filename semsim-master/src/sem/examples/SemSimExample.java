@@ -18,7 +18,6 @@ import sem.model.SemModel;
 import sem.model.VectorSpace;
 import sem.sim.SimFinder;
 import sem.sim.SimMeasure;
-import sem.util.Tools;
 
 /**
  * Example class.
@@ -57,7 +56,7 @@ public class SemSimExample {
 			//semModel = new SemModel(false, "mymodel");
 			
 			// We make the tensor symmetric. For saving both memory and disk space, the relations are only saved in one direction (head,>rel,dep). However, for our vector space, we might want to use (dep,<rel,head) as well.
-			semModel.makeTensorSymmetric();
+			semModel.makeTensorSymmetricView();
 			
 			// We construct a new vector space, using the PMI weighting scheme. The PMI_LIM scheme discards features that occur only once.
 			VectorSpace vectorSpace = new VectorSpace(semModel, VectorSpace.WEIGHT_PMI_LIM, true);
@@ -85,18 +84,14 @@ public class SemSimExample {
 				}
 			}
 			
-			// We run the scoring, getting back a hashmap with all the similarity scores.
-			LinkedHashMap<String,LinkedHashMap<String,Double>> scores = simFinder.getScores(mainWords, candidateWords, SimMeasure.COSINE, false, 1);
+			// We run the scoring, getting back the 10 best candidates for every main word. The other candidates are dropped while they are scored, so their scores are never sorted.
+			LinkedHashMap<String,LinkedHashMap<String,Double>> scores = simFinder.getTopK(mainWords, 10, candidateWords, SimMeasure.COSINE, false, 1);
 			
-			// Now we just sort the results and print them out.
+			// Now we just print out the results, which are sorted from best to worst.
 			// The results are not especially accurate as we are using a very small corpus for this example.
 			System.out.println("The most similar words to woman_NN1:");
-			int count = 0;
-			for(Entry<String,Double> e : Tools.sort(scores.get("woman_NN1"), true).entrySet()){
+			for(Entry<String,Double> e : scores.get("woman_NN1").entrySet())
 				System.out.println(e.getKey() + "\t" + e.getValue());
-				if(++count >= 10)
-					break;
-			}
 			
 		} catch (GraphFormatException e) {
 			e.printLine();
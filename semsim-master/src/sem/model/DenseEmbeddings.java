@@ -0,0 +1,175 @@
+package sem.model;
+
+import java.nio.FloatBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import sem.util.BinaryReader;
+import sem.util.BinaryWriter;
+import sem.util.Hashing;
+
+/**
+ * Low-dimensional dense embeddings of every node in a VectorSpace, made with a sparse random projection of the weighted vectors.
+ * <p>Every feature is mapped to a few random dimensions with random signs, which are derived from the feature ID and the seed, so the projection matrix is never stored.
+ * Dot products, and therefore cosine and euclidean distances, are preserved approximately, and get more accurate with more dimensions.
+ * <p>The embeddings are meant for finding candidates quickly (see VectorSpace.setEmbeddings() and SimFinder.getMostSimilar()), which are then re-ranked with the exact measure on the sparse vectors.
+ * Like a VectorStore, the embeddings can only be used with a VectorSpace that has the same weight scheme and features as the one they were built from.
+ */
+public class DenseEmbeddings {
+
+	private static final int MAGIC = 0x53454D45;
+	private static final int VERSION = 1;
+
+	// Number of dimensions that every feature is projected onto
+	private static final int NONZEROS = 4;
+
+	private int weightScheme;
+	private int featureCount;
+	private double totalFeatureCount;
+	private int dimensions;
+	private long seed;
+
+	// Indexed by the node ID, row 0 is unused
+	private float[][] vectors;
+
+	private DenseEmbeddings(){
+	}
+
+	/**
+	 * Open embeddings that have been saved with save(). All the vectors are read into memory.
+	 * @param file Input file
+	 */
+	public DenseEmbeddings(String file){
+		BinaryReader reader = new BinaryReader(file);
+		FloatBuffer values;
+		try{
+			if(reader.readInt() != MAGIC)
+				throw new RuntimeException("Not an embeddings file: " + file);
+			int version = reader.readInt();
+			if(version != VERSION)
+				throw new RuntimeException("Unsupported embeddings version " + version + " in " + file);
+			this.weightScheme = reader.readInt();
+			this.dimensions = reader.readInt();
+			this.featureCount = reader.readInt();
+			this.seed = reader.readLong();
+			this.totalFeatureCount = reader.readDouble();
+			values = reader.readFloats();
+		} finally {
+			reader.close();
+		}
+
+		this.vectors = new float[values.limit() / this.dimensions][];
+		for(int nodeId = 0; nodeId < this.vectors.length; nodeId++){
+			this.vectors[nodeId] = new float[this.dimensions];
+			values.position(nodeId * this.dimensions);
+			values.get(this.vectors[nodeId]);
+		}
+	}
+
+	/**
+	 * Project the vector of every node in the model of the vector space.
+	 * @param vectorSpace Vector space
+	 * @param dimensions Number of dimensions
+	 * @param seed Seed of the random projection
+	 * @return The embeddings
+	 */
+	public static DenseEmbeddings build(VectorSpace vectorSpace, int dimensions, long seed){
+		if(dimensions <= 0)
+			throw new IllegalArgumentException("The number of dimensions has to be positive: " + dimensions);
+
+		// Node IDs run from 1 to the size of the index
+		int nodeCount = vectorSpace.getSemModel().getNodeIndex().size();
+		DenseEmbeddings embeddings = new DenseEmbeddings();
+		embeddings.weightScheme = vectorSpace.getWeightScheme();
+		embeddings.featureCount = vectorSpace.getNumFeatures();
+		embeddings.totalFeatureCount = vectorSpace.getTotalFeatureCount();
+		embeddings.dimensions = dimensions;
+		embeddings.seed = seed;
+		embeddings.vectors = new float[nodeCount + 1][];
+		embeddings.vectors[0] = new float[dimensions];
+		for(int nodeId = 1; nodeId <= nodeCount; nodeId++)
+			embeddings.vectors[nodeId] = embeddings.project(vectorSpace.createVector(nodeId));
+		return embeddings;
+	}
+
+	/**
+	 * Project a sparse vector, for example one that is not in the model, into the same space as the embeddings.
+	 * @param vector Vector with feature IDs from the vector space
+	 * @return Dense vector
+	 */
+	public float[] project(LinkedHashMap<Integer,Double> vector){
+		double[] sums = new double[this.dimensions];
+		for(Entry<Integer,Double> e : vector.entrySet()){
+			long featureHash = Hashing.featureHash(this.seed, e.getKey());
+			for(int i = 0; i < NONZEROS; i++){
+				long hash = Hashing.mix(featureHash + i);
+				int dimension = (int)((hash >>> 1) % this.dimensions);
+				sums[dimension] += ((hash & 1L) == 0)?e.getValue():-e.getValue();
+			}
+		}
+		float[] projected = new float[this.dimensions];
+		double scale = 1.0 / Math.sqrt(NONZEROS);
+		for(int i = 0; i < this.dimensions; i++)
+			projected[i] = (float)(sums[i] * scale);
+		return projected;
+	}
+
+	/**
+	 * Save the embeddings into a binary file.
+	 * @param file Output file
+	 */
+	public void save(String file){
+		FloatBuffer values = FloatBuffer.allocate(this.vectors.length * this.dimensions);
+		for(float[] vector : this.vectors)
+			values.put(vector);
+
+		BinaryWriter writer = new BinaryWriter(file);
+		writer.writeInt(MAGIC);
+		writer.writeInt(VERSION);
+		writer.writeInt(this.weightScheme);
+		writer.writeInt(this.dimensions);
+		writer.writeInt(this.featureCount);
+		writer.writeLong(this.seed);
+		writer.writeDouble(this.totalFeatureCount);
+		writer.writeFloats(values);
+		writer.close();
+	}
+
+	/**
+	 * Check whether the embeddings were built from a vector space with the same weight scheme and features.
+	 * @param vectorSpace Vector space
+	 * @return True if the embeddings can be used for this vector space
+	 */
+	public boolean matches(VectorSpace vectorSpace){
+		return this.weightScheme == vectorSpace.getWeightScheme()
+				&& this.featureCount == vectorSpace.getNumFeatures()
+				&& this.totalFeatureCount == vectorSpace.getTotalFeatureCount();
+	}
+
+	/**
+	 * Get the embedding of a node. The array is shared, so it should not be modified.
+	 * @param nodeId Node ID
+	 * @return The embedding, all zeros if the node does not exist.
+	 */
+	public float[] getVector(int nodeId){
+		if(nodeId <= 0 || nodeId >= this.vectors.length)
+			return this.vectors[0];
+		return this.vectors[nodeId];
+	}
+
+	public int getDimensions(){
+		return this.dimensions;
+	}
+
+	public int getWeightScheme(){
+		return this.weightScheme;
+	}
+
+	/**
+	 * Get the number of nodes that have an embedding.
+	 * @return Number of nodes
+	 */
+	public int size(){
+		return this.vectors.length - 1;
+	}
+}
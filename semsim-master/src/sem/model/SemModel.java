@@ -1,19 +1,22 @@
 package sem.model;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
-import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.util.Arrays;
+import java.io.File;
 import java.io.IOException;
 
 import sem.exception.SemModelException;
 import sem.graph.Edge;
 import sem.graph.Graph;
 import sem.graph.Node;
+import sem.util.CompressedTensor;
+import sem.util.ConcurrentIndex;
+import sem.util.CountCache;
 import sem.util.Index;
-import sem.util.IntegerMultiMap;
+import sem.util.MappedIndex;
+import sem.util.PostingLists;
+import sem.util.SymmetricTensor;
 import sem.util.Tensor;
 
 /**
@@ -26,20 +29,50 @@ public class SemModel {
 	private Index nodeIndex;
 	private Index edgeIndex;
 	
-	private IntegerMultiMap locations;
+	private PostingLists locations;
+	// The total number of co-occurrences, read from the sentence length file if the locations are not loaded
+	private double totalCoocCount = Double.NaN;
 	private int count;
 	
 	private String tensorFileName = "_tensor.vsm";
 	private String nodeIndexFileName = "_nodeindex.vsm";
 	private String edgeIndexFileName = "_edgeindex.vsm";
 	private String locationsFileName = "_locations.vsm";
+	private String sentenceLengthsFileName = "_sentencelengths.bin";
+	
+	private String tensorBinaryFileName = "_tensor.bin";
+	private String nodeIndexBinaryFileName = "_nodeindex.bin";
+	private String edgeIndexBinaryFileName = "_edgeindex.bin";
+	private String tripleFilterFileName = "_triplefilter.bin";
+	
+	// Only set for models loaded from the binary files, which cannot change
+	private volatile TripleFilter tripleFilter;
 	
 	boolean enableCache;
-	ConcurrentHashMap<String,Double> cache;
+	volatile CountCache cache;
+	int cacheCapacity = DEFAULT_CACHE_CAPACITY;
+	
+	public static int DEFAULT_CACHE_CAPACITY = 1 << 22;
+	
+	/*
+	 * Keys of the count cache are packed into a long: a 2-bit type in the highest bits, followed by the IDs.
+	 * ID 0 is not used by the indexes, so it stands for a wildcard (null label).
+	 * Counts with IDs that do not fit into their fields are not cached.
+	 */
+	private static final long KEY_TRIPLE = 1L << 62;
+	private static final long KEY_LOCATION_MATCH = 2L << 62;
+	private static final long KEY_TOTAL = 3L << 62;
+	private static final int NODE_BITS = 25;
+	private static final int EDGE_BITS = 12;
+	private static final long NO_KEY = 0L;
+	
+	private static final long KEY_TRIPLE_TYPE_COUNT = KEY_TOTAL | 1;
+	private static final long KEY_TOTAL_NODE_COUNT = KEY_TOTAL | 2;
+	private static final long KEY_TOTAL_EDGE_COUNT = KEY_TOTAL | 3;
 	
 	/**
 	 * 
-	 * @param keepLoc Setting this to true will keep track of in which sentences every word occurs. It can be useful when we need to find how many times two words occur together in a sentence. However, it requires quite a bit of extra memory.
+	 * @param keepLoc Setting this to true will keep track of in which sentences every word occurs. It can be useful when we need to find how many times two words occur together in a sentence. The locations are stored as compressed posting lists (see PostingLists), which take a few bytes per sentence of every word.
 	 */
 	public SemModel(boolean keepLoc){
 		this(keepLoc, false);
@@ -47,43 +80,125 @@ public class SemModel {
 	
 	public SemModel(boolean keepLoc, boolean enableCache){
 		this.tensor = new Tensor();
-		this.nodeIndex = new Index();
-		this.edgeIndex = new Index();
+		this.nodeIndex = new ConcurrentIndex();
+		this.edgeIndex = new ConcurrentIndex();
 		this.enableCache = enableCache;
-		this.cache = new ConcurrentHashMap<String,Double>();
+		this.cache = enableCache?new CountCache(this.cacheCapacity):null;
 		if(keepLoc)
-			this.locations = new IntegerMultiMap();
+			this.locations = new PostingLists();
 		else
 			this.locations = null;
 		this.count = 0;
 	}
 	
+	/**
+	 * Create a model from existing parts. Used by SemModelBuilder to assemble the merged model.
+	 */
+	SemModel(Tensor tensor, Index nodeIndex, Index edgeIndex, PostingLists locations, int count, boolean enableCache){
+		this.tensor = tensor;
+		this.nodeIndex = nodeIndex;
+		this.edgeIndex = edgeIndex;
+		this.locations = locations;
+		this.count = count;
+		this.enableCache = enableCache;
+		this.cache = enableCache?new CountCache(this.cacheCapacity):null;
+	}
+	
 	public SemModel(String path, boolean keepLoc){
 		this(path, keepLoc, false);
 	}
 	
+	/**
+	 * Load a model from disk. If the binary files created by save() exist, they are memory-mapped, which is nearly instant. 
+	 * Otherwise the model is read from the text files created by saveText().
+	 * A model loaded from the binary files is read-only, so no more graphs can be added to it.
+	 * @param path Path prefix of the model files
+	 * @param keepLoc Load the sentence locations of every word
+	 * @param enableCache Cache the counts that have been calculated
+	 */
 	public SemModel(String path, boolean keepLoc, boolean enableCache){
-		this.tensor = new Tensor(path + tensorFileName);
-		this.nodeIndex = new Index(path + nodeIndexFileName);
-		this.edgeIndex = new Index(path + edgeIndexFileName);
+		if((new File(path + tensorBinaryFileName)).exists()){
+			checkFile(path + nodeIndexBinaryFileName);
+			checkFile(path + edgeIndexBinaryFileName);
+			this.tensor = CompressedTensor.open(path + tensorBinaryFileName);
+			this.nodeIndex = new MappedIndex(path + nodeIndexBinaryFileName);
+			// The edge index is small and makeTensorSymmetric() needs to add to it
+			this.edgeIndex = new ConcurrentIndex(new MappedIndex(path + edgeIndexBinaryFileName));
+			// Models saved before the filter was added do not have it
+			if((new File(path + tripleFilterFileName)).exists())
+				this.tripleFilter = new TripleFilter(path + tripleFilterFileName);
+		}
+		else {
+			checkFile(path + tensorFileName);
+			checkFile(path + nodeIndexFileName);
+			checkFile(path + edgeIndexFileName);
+			this.tensor = new Tensor(path + tensorFileName);
+			this.nodeIndex = new ConcurrentIndex(path + nodeIndexFileName);
+			this.edgeIndex = new ConcurrentIndex(path + edgeIndexFileName);
+		}
 		this.enableCache = enableCache;
-		this.cache = new ConcurrentHashMap<String,Double>();
+		this.cache = enableCache?new CountCache(this.cacheCapacity):null;
 		if(keepLoc)
-			this.locations = new IntegerMultiMap(path + this.locationsFileName);
-		else
+			this.locations = new PostingLists(path + this.locationsFileName);
+		else {
 			this.locations = null;
+			if((new File(path + this.sentenceLengthsFileName)).exists())
+				this.totalCoocCount = PostingLists.readTotalCoocCount(path + this.sentenceLengthsFileName);
+		}
+	}
+	
+	/**
+	 * Throw an exception if a model file is missing, before any of the files are read.
+	 */
+	private static void checkFile(String file){
+		if(!(new File(file)).isFile())
+			throw new RuntimeException("Model file not found: " + file);
 	}
 	
+	/**
+	 * Save the model in the binary format. The tensor is compressed (see CompressedTensor) while saving, but the model itself is not modified.
+	 * A TripleFilter of the combinations in the tensor is saved with the model, and used by getTripleCount() when the model is loaded.
+	 * @param path Path prefix of the model files
+	 */
 	public void save(String path){
+		CompressedTensor frozen = this.tensor.freeze();
+		frozen.saveBinary(path + tensorBinaryFileName);
+		TripleFilter.build(frozen, this.nodeIndex, this.edgeIndex).save(path + tripleFilterFileName);
+		MappedIndex.write(this.nodeIndex, path + nodeIndexBinaryFileName);
+		MappedIndex.write(this.edgeIndex, path + edgeIndexBinaryFileName);
+		if(this.locations != null){
+			this.locations.save(path + this.locationsFileName);
+			this.locations.saveSentenceLengths(path + this.sentenceLengthsFileName);
+		}
+	}
+	
+	/**
+	 * Save the model in the text format.
+	 * @param path Path prefix of the model files
+	 */
+	public void saveText(String path){
 		this.tensor.save(path + tensorFileName);
 		this.nodeIndex.save(path + nodeIndexFileName);
 		this.edgeIndex.save(path + edgeIndexFileName);
-		if(this.locations != null)
+		if(this.locations != null){
 			this.locations.save(path + this.locationsFileName);
+			this.locations.saveSentenceLengths(path + this.sentenceLengthsFileName);
+		}
 	}
 
 	public synchronized void add(Graph graph) throws SemModelException{
 		count++;
+		add(graph, count);
+	}
+	
+	/**
+	 * Add a graph, recording its nodes under the given location instead of the next sentence number.
+	 * Used by SemModelBuilder, where every partial model only sees some of the sentences.
+	 * @param graph Graph
+	 * @param location Sentence number of the graph
+	 * @throws SemModelException
+	 */
+	synchronized void add(Graph graph, int location) throws SemModelException{
 		int inChar;
 		for(Node node : graph.getNodes()){
 			int nodeKey = nodeIndex.add(node.getLabel());
@@ -95,11 +210,8 @@ public class SemModel {
 			{
 				System.out.println("Error reading input");
 			}*/	
-			if(locations != null){
-				if(!locations.containsKey(nodeKey))
-					locations.put(nodeKey, new ArrayList<Integer>());
-				locations.get(nodeKey).add(count);
-			}
+			if(locations != null)
+				locations.add(nodeKey, location);
 		}
 		
 		Integer headId, edgeId, depId;
@@ -123,16 +235,60 @@ public class SemModel {
 		return this.edgeIndex.getCount(label);
 	}
 	
-	public synchronized void addToCache(String key, Double value){
-		this.cache.put(key, value);
+	/**
+	 * Add a count to the cache, if caching has been enabled.
+	 * @param key Packed key
+	 * @param value Count
+	 */
+	public void addToCache(long key, double value){
+		CountCache tempCache = this.cache;
+		if(key == NO_KEY || tempCache == null)
+			return;
+		tempCache.put(key, value);
+	}
+	
+	private double getFromCache(long key){
+		CountCache tempCache = this.cache;
+		if(key == NO_KEY || tempCache == null)
+			return Double.NaN;
+		return tempCache.get(key);
+	}
+	
+	/**
+	 * Get the cache of the counts, for example to read the hit rate.
+	 * @return The cache, or null if caching has not been enabled.
+	 */
+	public CountCache getCache(){
+		return this.cache;
+	}
+	
+	/**
+	 * Set the maximum number of counts in the cache. This empties the cache.
+	 * @param capacity Maximum number of entries
+	 */
+	public synchronized void setCacheCapacity(int capacity){
+		this.cacheCapacity = capacity;
+		if(this.cache != null)
+			this.cache = new CountCache(capacity);
+	}
+	
+	private static long getTripleKey(Integer headId, Integer edgeId, Integer depId){
+		long head = (headId == null)?0:headId, edge = (edgeId == null)?0:edgeId, dep = (depId == null)?0:depId;
+		if(head >= (1L << NODE_BITS) || edge >= (1L << EDGE_BITS) || dep >= (1L << NODE_BITS))
+			return NO_KEY;
+		return KEY_TRIPLE | (head << (EDGE_BITS + NODE_BITS)) | (edge << NODE_BITS) | dep;
+	}
+	
+	private static long getLocationMatchKey(Integer label1Id, Integer label2Id){
+		long id1 = (label1Id == null)?0:label1Id, id2 = (label2Id == null)?0:label2Id;
+		return KEY_LOCATION_MATCH | (id1 << 31) | id2;
 	}
 	
 	public double getTripleCount(String headLabel, String edgeLabel, String depLabel){
-		String key = "TRIPLE:" + (headLabel == null?"[[!!NULL!!]]":headLabel) + "\t" + (edgeLabel == null?"[[!!NULL!!]]":edgeLabel) + "\t" + (depLabel == null?"[[!!NULL!!]]":depLabel);
-		if(this.enableCache && this.cache.containsKey(key))
-			return this.cache.get(key);
+		TripleFilter tempFilter = this.tripleFilter;
+		if(tempFilter != null && !tempFilter.mightContain(headLabel, edgeLabel, depLabel))
+			return 0.0;
 		
-		double result = 0.0;
 		Integer headId = null, depId = null, edgeId = null;
 		
 		if(headLabel != null)
@@ -143,9 +299,16 @@ public class SemModel {
 			edgeId = this.edgeIndex.getId(edgeLabel);
 		
 		if((headLabel != null && headId == null) || (depLabel != null && depId == null) || (edgeLabel != null && edgeId == null))
-			result = 0.0;
-		else
-			result = this.tensor.get(headId, edgeId, depId);
+			return 0.0;
+		
+		long key = getTripleKey(headId, edgeId, depId);
+		if(this.enableCache){
+			double cached = getFromCache(key);
+			if(!Double.isNaN(cached))
+				return cached;
+		}
+		
+		double result = this.tensor.get(headId, edgeId, depId);
 		
 		if(this.enableCache)
 			addToCache(key, result);
@@ -158,10 +321,6 @@ public class SemModel {
 		if(this.locations == null)
 			throw new RuntimeException("This VSM does not support locations");
 		
-		String key = "LOCMATCH:" + (label1 == null?"[[!!NULL!!]]":label1) + "\t" + (label2 == null?"[[!!NULL!!]]":label2);
-		if(this.enableCache && this.cache.containsKey(key))
-			return this.cache.get(key);
-		
 		Integer label1Id = null, label2Id = null;
 		
 		if(label1 != null)
@@ -172,72 +331,24 @@ public class SemModel {
 		if((label1 != null && label1Id == null) || (label2 != null && label2Id == null))
 			return 0.0;
 		
-		ArrayList<Integer> locations1 = this.locations.get(label1Id);
-		ArrayList<Integer> locations2 = this.locations.get(label2Id);
+		if(label1 == null && label2 == null)
+			return getTotalCoocCount();
 		
-		double total = 0.0;
-		
-		if(label1 == null && label2 == null){
-			total = getTotalCoocCount();
-		}
-		else if((label1 == null && label2 != null) || (label1 != null && label2 == null)){
-			Integer labelId = null;
-			if(label1 != null)
-				labelId = label1Id;
-			else if(label2 != null)
-				labelId = label2Id;
-			
-			if(labelId == null)
-				total = 0.0;
-			else {
-				HashSet<Integer> locations = new HashSet<Integer>(this.locations.get(labelId));
-				for(Entry<Integer,ArrayList<Integer>> entry : this.locations.entrySet()){
-					if(entry.getKey().equals(labelId))
-						continue;
-
-					for(Integer sentence : entry.getValue()){
-						if(locations.contains(sentence))
-							total += 1;
-					}
-				}
-			}
-		}
-		else if(label1Id.equals(label2Id)){
-			double sequenceLength = 0.0;
-			for(int i = 1; i < locations1.size(); i++){
-				if(locations1.get(i).equals(locations1.get(i-1))){
-					sequenceLength++;
-					total += sequenceLength;
-				}
-				else
-					sequenceLength = 0.0;
-			}
-		}
-		else{
-			int pos1 = 0, pos2 = 0, count1 = 0, count2 = 0;
-			while(pos1 < locations1.size() && pos2 < locations2.size()){
-				if(locations1.get(pos1).equals(locations2.get(pos2))){
-					count1 = 1;
-					count2 = 1;
-					while(pos1+1 < locations1.size() && locations1.get(pos1).equals(locations1.get(pos1+1))){
-						pos1++;
-						count1++;
-					}
-					while(pos2+1 < locations2.size() && locations2.get(pos2).equals(locations2.get(pos2+1))){
-						pos2++;
-						count2++;
-					}
-					total += count1 * count2;
-					pos1++;
-					pos2++;
-				}
-				else if(locations1.get(pos1) < locations2.get(pos2))
-					pos1++;
-				else if(locations2.get(pos2) < locations1.get(pos1))
-					pos2++;
-			}
+		long key = getLocationMatchKey(label1Id, label2Id);
+		if(this.enableCache){
+			double cached = getFromCache(key);
+			if(!Double.isNaN(cached))
+				return cached;
 		}
 		
+		double total;
+		if(label1Id == null)
+			total = this.locations.getMatchCount(label2Id);
+		else if(label2Id == null)
+			total = this.locations.getMatchCount(label1Id);
+		else
+			total = this.locations.getMatchCount(label1Id, label2Id);
+		
 		if(this.enableCache)
 			addToCache(key, total);
 		
@@ -246,48 +357,17 @@ public class SemModel {
 	}
 
 	
-	private String getLocationMatchKey(String label1, String label2){
-		String key = "LOCMATCH:" + (label1 == null?"[[!!NULL!!]]":label1) + "\t" + (label2 == null?"[[!!NULL!!]]":label2);
-		return key;
-	}
-	
-	private synchronized double calculateTotalCoocCount(){
-		double total = 0.0;
-		LinkedHashMap<Integer,Double> sentenceLengths = new LinkedHashMap<Integer,Double>();
-		Double value;
-		for(ArrayList<Integer> list : this.locations.values()){
-			for(Integer sentence : list){
-				value = sentenceLengths.get(sentence);
-				sentenceLengths.put(sentence, (value==null?0.0:value)+1.0);
-			}
-		}
-		for(Double length : sentenceLengths.values())
-			if(length > 0.0)
-				total += length * (length-1.0);
-		
-		sentenceLengths = null;
-		return total;
-	}
-	
-	private synchronized double _getTotalCoocCount(){
-		String key = getLocationMatchKey(null, null);
-		if(this.cache.containsKey(key)){
-			return this.cache.get(key);
-		}
-		else{
-			double total = calculateTotalCoocCount();
-			if(this.enableCache)
-				addToCache(key, total);
-			return total;
-		}
-	}
-	
+	/**
+	 * Get the number of ordered pairs of words that occur in the same sentence. 
+	 * This is kept up to date while graphs are added, and saved with the model, so it is also available when the locations are not loaded.
+	 * @return The total number of co-occurrences
+	 */
 	public double getTotalCoocCount(){
-		String key = getLocationMatchKey(null, null);
-		if(this.cache.containsKey(key))
-			return this.cache.get(key);
-		else
-			return _getTotalCoocCount();
+		if(this.locations != null)
+			return this.locations.getTotalCoocCount();
+		if(!Double.isNaN(this.totalCoocCount))
+			return this.totalCoocCount;
+		throw new RuntimeException("This VSM does not support locations");
 	}
 	
 	private synchronized double calculateTripleTypeCount(){
@@ -301,47 +381,53 @@ public class SemModel {
 	}
 	
 	private synchronized double _getTripleTypeCount(){
-		String key = "TRIPLE_TYPE_COUNT";
-		if(this.cache.containsKey(key)){
-			return this.cache.get(key);
+		double cached = getFromCache(KEY_TRIPLE_TYPE_COUNT);
+		if(!Double.isNaN(cached)){
+			return cached;
 		}
 		else{
 			double total = calculateTripleTypeCount();
 			if(this.enableCache)
-				addToCache(key, total);
+				addToCache(KEY_TRIPLE_TYPE_COUNT, total);
 			return total;
 		}
 	}
 	
 	public double getTripleTypeCount(){
-		String key = "TRIPLE_TYPE_COUNT";
-		if(this.cache.containsKey(key))
-			return this.cache.get(key);
+		double cached = getFromCache(KEY_TRIPLE_TYPE_COUNT);
+		if(!Double.isNaN(cached))
+			return cached;
 		else
 			return _getTripleTypeCount();
 	}
 	
 	public double getTotalNodeCount(){
-		String key = "TOTAL_NODE_COUNT";
-		if(this.enableCache && this.cache.containsKey(key))
-			return this.cache.get(key);
+		if(this.enableCache){
+			double cached = getFromCache(KEY_TOTAL_NODE_COUNT);
+			if(!Double.isNaN(cached))
+				return cached;
+		}
 		double value = this.nodeIndex.getTotalCount();
 		if(this.enableCache)
-			addToCache(key, value);
+			addToCache(KEY_TOTAL_NODE_COUNT, value);
 		return value;
 	}
 	
 	public double getTotalEdgeCount(){
-		String key = "TOTAL_EDGE_COUNT";
-		if(this.enableCache && this.cache.containsKey(key))
-			return this.cache.get(key);
+		if(this.enableCache){
+			double cached = getFromCache(KEY_TOTAL_EDGE_COUNT);
+			if(!Double.isNaN(cached))
+				return cached;
+		}
 		double value = this.edgeIndex.getTotalCount();
 		if(this.enableCache)
-			addToCache(key, value);
+			addToCache(KEY_TOTAL_EDGE_COUNT, value);
 		return value;
 	}
 	
-	public void enableCache(){
+	public synchronized void enableCache(){
+		if(this.cache == null)
+			this.cache = new CountCache(this.cacheCapacity);
 		this.enableCache = true;
 	}
 	
@@ -351,23 +437,105 @@ public class SemModel {
 	
 	/**
 	 * This method needs to be called to make the tensor symmetric (adding dependency edges in the reverse direction).
+	 * If the tensor has been compressed, it is expanded for the duration of this method and compressed again afterwards.
+	 * The reverse edge labels get their IDs in the order of the IDs of the original labels, so the result is the same as with makeTensorSymmetricView().
 	 */
 	public void makeTensorSymmetric(){
-		int key2New;
-		String edgeLabel;
+		if(this.tensor instanceof SymmetricTensor){
+			// Already symmetric, only materialise it
+			this.tensor = this.tensor.freeze();
+			return;
+		}
+		if(this.tensor instanceof CompressedTensor){
+			this.tensor = ((CompressedTensor)this.tensor).thaw();
+			this.makeTensorSymmetric();
+			this.freeze();
+			return;
+		}
+		
+		TIntIntHashMap entryCounts = new TIntIntHashMap();
+		int count;
 		for(int key1 : tensor.getKeys()){
 			for(int key2 : tensor.getKeys(key1)){
-				edgeLabel = this.edgeIndex.getLabel(key2);
-				if(edgeLabel != null && !edgeLabel.startsWith("!")){
+				count = tensor.getKeys(key1, key2).length;
+				entryCounts.adjustOrPutValue(key2, count, count);
+			}
+		}
+		int[] reverseKeys = getReverseEdgeKeys(entryCounts.keys(), entryCounts);
+		
+		for(int key1 : tensor.getKeys()){
+			for(int key2 : tensor.getKeys(key1)){
+				if(key2 < reverseKeys.length && reverseKeys[key2] > 0){
 					for(int key3 : tensor.getKeys(key1, key2)){
-						key2New = edgeIndex.add("!" + edgeLabel, 1.0);
-						tensor.add(key3, key2New, key1, tensor.get(key1, key2, key3));
+						tensor.add(key3, reverseKeys[key2], key1, tensor.get(key1, key2, key3));
 					}
 				}
 			}
 		}
 	}
 	
+	/**
+	 * Make the tensor symmetric without storing the reverse edges. The tensor is frozen, and replaced with a SymmetricTensor view
+	 * that computes the reverse edges from the dep-major layout. The values are the same as after makeTensorSymmetric() and freeze(),
+	 * but the memory use does not grow and the tensor does not have to be rebuilt.
+	 * Like freeze(), no more graphs can be added after this.
+	 */
+	public synchronized void makeTensorSymmetricView(){
+		if(this.tensor instanceof SymmetricTensor)
+			return;
+		CompressedTensor base = this.tensor.freeze();
+		int[] counts = base.getEntryCountsByKey2();
+		TIntIntHashMap entryCounts = new TIntIntHashMap();
+		for(int key2 = 0; key2 < counts.length; key2++)
+			if(counts[key2] > 0)
+				entryCounts.put(key2, counts[key2]);
+		this.tensor = new SymmetricTensor(base, getReverseEdgeKeys(entryCounts.keys(), entryCounts));
+	}
+	
+	/**
+	 * Add the reverse edge labels ("!" + label) to the edge index, in the order of the original edge IDs. 
+	 * The count of a reverse label is increased by one for every entry in the tensor that it reverses.
+	 * @param edgeIds Edge IDs that occur in the tensor
+	 * @param entryCounts Number of tensor entries for every edge ID
+	 * @return For every edge ID, the ID of the reverse edge label, or 0 if the edge is not reversed
+	 */
+	private int[] getReverseEdgeKeys(int[] edgeIds, TIntIntHashMap entryCounts){
+		Arrays.sort(edgeIds);
+		int[] reverseKeys = new int[(edgeIds.length == 0)?0:edgeIds[edgeIds.length-1] + 1];
+		String edgeLabel;
+		for(int edgeId : edgeIds){
+			edgeLabel = this.edgeIndex.getLabel(edgeId);
+			if(edgeLabel != null && !edgeLabel.startsWith("!"))
+				reverseKeys[edgeId] = this.edgeIndex.add("!" + edgeLabel, (double)entryCounts.get(edgeId));
+		}
+		return reverseKeys;
+	}
+	
+	/**
+	 * Replace the tensor with an immutable, compressed version (see CompressedTensor). This saves memory and makes wildcard queries fast.
+	 * After this, no more graphs can be added, so it should be called after makeTensorSymmetric(), if needed.
+	 */
+	public synchronized void freeze(){
+		// A symmetric view is already read-only
+		if(!(this.tensor instanceof SymmetricTensor))
+			this.tensor = this.tensor.freeze();
+	}
+	
+	/**
+	 * Get the number of graphs that have been added to the model.
+	 * @return The number of graphs
+	 */
+	public int getGraphCount(){
+		return this.count;
+	}
+	
+	/**
+	 * Get the sentence locations of every node ID, or null if locations are not kept.
+	 */
+	PostingLists getLocations(){
+		return this.locations;
+	}
+	
 	public Index getNodeIndex(){
 		return this.nodeIndex;
 	}
@@ -376,6 +544,14 @@ public class SemModel {
 		return this.edgeIndex;
 	}
 	
+	/**
+	 * Get the filter that getTripleCount() checks before the indexes.
+	 * @return The filter, or null if the model was not loaded from binary files that include one
+	 */
+	public TripleFilter getTripleFilter(){
+		return this.tripleFilter;
+	}
+	
 	public Tensor getTensor(){
 		return this.tensor;
 	}
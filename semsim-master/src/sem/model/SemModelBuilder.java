@@ -0,0 +1,301 @@
+package sem.model;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import sem.exception.GraphFormatException;
+import sem.exception.SemModelException;
+import sem.graph.Graph;
+import sem.grapheditor.GraphEditor;
+import sem.graphreader.GraphReader;
+import sem.util.ConcurrentIndex;
+import sem.util.Index;
+import sem.util.PostingLists;
+import sem.util.Tensor;
+
+/**
+ * Builds a SemModel from a GraphReader using multiple threads.
+ * <p>The calling thread reads the graphs and passes them on in batches. Each worker thread applies the graph editors and counts the graphs into its own partial SemModel, so no locks are shared while counting.
+ * At the end, the partial models are merged. The IDs are remapped so that the merged model is identical to one built sequentially:
+ * every graph gets the same sentence number in the locations, and the node and edge IDs are assigned in the order of first occurrence.
+ */
+public class SemModelBuilder {
+	private ArrayList<GraphEditor> graphEditors;
+	private boolean keepLoc;
+	private int numThreads;
+	private boolean skipErrors;
+	private int batchSize;
+	private int progressInterval;
+
+	/**
+	 * A batch of consecutive graphs. A batch with no graphs tells the worker to stop.
+	 */
+	private static class Batch{
+		int firstLocation;
+		ArrayList<Graph> graphs;
+
+		Batch(int firstLocation, ArrayList<Graph> graphs){
+			this.firstLocation = firstLocation;
+			this.graphs = graphs;
+		}
+	}
+
+	/**
+	 * Worker thread that counts graphs into a partial model.
+	 * For every node and edge ID, it also remembers the location where the label was first seen, which is needed for assigning the IDs in the merged model.
+	 */
+	private class Shard implements Runnable{
+		BlockingQueue<Batch> queue;
+		SemModel semModel;
+		TIntArrayList nodeFirstSeen;
+		TIntArrayList edgeFirstSeen;
+		Exception error;
+
+		Shard(BlockingQueue<Batch> queue){
+			this.queue = queue;
+			this.semModel = new SemModel(keepLoc);
+			this.nodeFirstSeen = new TIntArrayList();
+			this.edgeFirstSeen = new TIntArrayList();
+			this.error = null;
+		}
+
+		@Override
+		public void run(){
+			while(true){
+				Batch batch;
+				try {
+					batch = this.queue.take();
+				} catch (InterruptedException e) {
+					this.error = e;
+					return;
+				}
+				if(batch.graphs == null)
+					return;
+				// After an error we keep draining the queue, so that the reader does not block
+				if(this.error != null)
+					continue;
+
+				try{
+					int location = batch.firstLocation;
+					for(Graph graph : batch.graphs){
+						for(GraphEditor graphEditor : graphEditors)
+							graphEditor.edit(graph);
+						this.semModel.add(graph, location);
+						for(int i = this.nodeFirstSeen.size(); i < this.semModel.getNodeIndex().size(); i++)
+							this.nodeFirstSeen.add(location);
+						for(int i = this.edgeFirstSeen.size(); i < this.semModel.getEdgeIndex().size(); i++)
+							this.edgeFirstSeen.add(location);
+						location++;
+					}
+				} catch(Exception e){
+					this.error = e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Create a new builder.
+	 * @param graphEditors Graph editors that are applied to every graph before counting. They are shared between the threads, so they must not keep any state between graphs.
+	 * @param keepLoc Keep track of the sentences every word occurs in (see SemModel)
+	 * @param numThreads Number of worker threads
+	 * @param skipErrors Skip graphs with format errors and graphs where the parser failed (xparse), instead of throwing an exception
+	 */
+	public SemModelBuilder(ArrayList<GraphEditor> graphEditors, boolean keepLoc, int numThreads, boolean skipErrors){
+		if(numThreads < 1)
+			throw new IllegalArgumentException("Number of threads has to be at least 1");
+		this.graphEditors = (graphEditors != null)?graphEditors:new ArrayList<GraphEditor>();
+		this.keepLoc = keepLoc;
+		this.numThreads = numThreads;
+		this.skipErrors = skipErrors;
+		this.batchSize = 1000;
+		this.progressInterval = 0;
+	}
+
+	/**
+	 * Print the number of graphs read after every so many graphs. 0 turns it off.
+	 * @param progressInterval Number of graphs
+	 */
+	public void setProgressInterval(int progressInterval){
+		this.progressInterval = progressInterval;
+	}
+
+	/**
+	 * Set the number of graphs that are passed to a worker thread at once. The default is 1000.
+	 * @param batchSize Number of graphs
+	 */
+	public void setBatchSize(int batchSize){
+		if(batchSize < 1)
+			throw new IllegalArgumentException("Batch size has to be at least 1");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Read all the graphs and build the model. The reader is closed at the end.
+	 * @param reader Graph reader
+	 * @return The model
+	 * @throws SemModelException
+	 */
+	public SemModel build(GraphReader reader) throws SemModelException{
+		BlockingQueue<Batch> queue = new ArrayBlockingQueue<Batch>(4 * this.numThreads);
+		ArrayList<Shard> shards = new ArrayList<Shard>();
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		for(int i = 0; i < this.numThreads; i++){
+			Shard shard = new Shard(queue);
+			Thread thread = new Thread(shard, "SemModelBuilder-" + i);
+			shards.add(shard);
+			threads.add(thread);
+			thread.start();
+		}
+
+		int count = 0, location = 0;
+		try{
+			try{
+				ArrayList<Graph> graphs = new ArrayList<Graph>(this.batchSize);
+				Graph graph;
+				while(reader.hasNext()){
+					count++;
+					if(this.progressInterval > 0 && count % this.progressInterval == 0)
+						System.out.println(count);
+					try{
+						graph = reader.next();
+					} catch(GraphFormatException e){
+						if(!this.skipErrors)
+							throw new SemModelException("Format error in graph " + count + ": " + e.getMessage() + "\nLine: " + e.getLine());
+						// Some corpora contain format errors.
+						// We catch and report them, but we'll skip these cases rather than halting.
+						System.out.println("ERR:" + e.getMessage() + "\nGraph: " + count + "\nLine: " + e.getLine());
+						continue;
+					}
+
+					// We also skip graphs that have an xparse, indicating that the parser failed.
+					if(this.skipErrors && graph.hasMetadata() && graph.getMetadata("xparse") != null && graph.getMetadata("xparse").equals("true")){
+						System.out.println("ERR: xparse");
+						continue;
+					}
+
+					graphs.add(graph);
+					if(graphs.size() >= this.batchSize){
+						queue.put(new Batch(location + 1, graphs));
+						location += graphs.size();
+						graphs = new ArrayList<Graph>(this.batchSize);
+					}
+				}
+				if(graphs.size() > 0){
+					queue.put(new Batch(location + 1, graphs));
+					location += graphs.size();
+				}
+			} finally {
+				reader.close();
+				for(int i = 0; i < this.numThreads; i++)
+					queue.put(new Batch(0, null));
+				for(Thread thread : threads)
+					thread.join();
+			}
+		} catch(InterruptedException e){
+			throw new SemModelException("Interrupted while building the model");
+		}
+
+		if(this.progressInterval > 0)
+			System.out.println("Total: " + count);
+
+		for(Shard shard : shards){
+			if(shard.error instanceof SemModelException)
+				throw (SemModelException)shard.error;
+			else if(shard.error != null)
+				throw new RuntimeException(shard.error);
+		}
+
+		return merge(shards, location);
+	}
+
+	/**
+	 * Merge the partial models into one.
+	 */
+	private SemModel merge(ArrayList<Shard> shards, int count){
+		Index nodeIndex = new ConcurrentIndex();
+		Index edgeIndex = new ConcurrentIndex();
+		int[][] nodeMap = mergeIndex(shards, nodeIndex, true);
+		int[][] edgeMap = mergeIndex(shards, edgeIndex, false);
+		Tensor tensor = new Tensor();
+		PostingLists locations = this.keepLoc?new PostingLists():null;
+		TIntArrayList[] nodeLocations = this.keepLoc?new TIntArrayList[nodeIndex.size() + 1]:null;
+
+		for(int s = 0; s < shards.size(); s++){
+			Tensor shardTensor = shards.get(s).semModel.getTensor();
+			for(int key1 : shardTensor.getKeys())
+				for(int key2 : shardTensor.getKeys(key1))
+					for(int key3 : shardTensor.getKeys(key1, key2))
+						tensor.add(nodeMap[s][key1], edgeMap[s][key2], nodeMap[s][key3], shardTensor.get(key1, key2, key3));
+
+			if(locations != null){
+				PostingLists shardLocations = shards.get(s).semModel.getLocations();
+				for(int key : shardLocations.keys()){
+					int nodeId = nodeMap[s][key];
+					if(nodeLocations[nodeId] == null)
+						nodeLocations[nodeId] = new TIntArrayList();
+					nodeLocations[nodeId].add(shardLocations.get(key));
+				}
+			}
+		}
+
+		// Every shard adds its locations in increasing order, but the shards are interleaved
+		if(locations != null){
+			for(int nodeId = 0; nodeId < nodeLocations.length; nodeId++){
+				if(nodeLocations[nodeId] == null)
+					continue;
+				nodeLocations[nodeId].sort();
+				locations.addAll(nodeId, nodeLocations[nodeId].toArray());
+				nodeLocations[nodeId] = null;
+			}
+		}
+
+		return new SemModel(tensor, nodeIndex, edgeIndex, locations, count, false);
+	}
+
+	/**
+	 * Merge the node or edge indices of the partial models into the target index.
+	 * The labels are ordered by the location where they were first seen, and then by their ID in that shard. This reproduces the order in which a sequential build would have assigned the IDs.
+	 * @return For each shard, an array mapping the shard IDs to the IDs in the target index.
+	 */
+	private int[][] mergeIndex(ArrayList<Shard> shards, Index target, boolean nodes){
+		HashMap<String,Long> firstSeen = new HashMap<String,Long>();
+		for(Shard shard : shards){
+			Index index = nodes?shard.semModel.getNodeIndex():shard.semModel.getEdgeIndex();
+			TIntArrayList shardFirstSeen = nodes?shard.nodeFirstSeen:shard.edgeFirstSeen;
+			for(int id = 1; id <= index.size(); id++){
+				String label = index.getLabel(id);
+				long key = ((long)shardFirstSeen.get(id-1) << 32) | id;
+				Long oldKey = firstSeen.get(label);
+				if(oldKey == null || key < oldKey)
+					firstSeen.put(label, key);
+			}
+		}
+
+		ArrayList<Entry<String,Long>> labels = new ArrayList<Entry<String,Long>>(firstSeen.entrySet());
+		Collections.sort(labels, new Comparator<Entry<String,Long>>(){
+			@Override
+			public int compare(Entry<String,Long> e1, Entry<String,Long> e2){
+				return e1.getValue().compareTo(e2.getValue());
+			}
+		});
+		for(Entry<String,Long> e : labels)
+			target.add(e.getKey(), 0.0);
+
+		int[][] idMap = new int[shards.size()][];
+		for(int s = 0; s < shards.size(); s++){
+			Index index = nodes?shards.get(s).semModel.getNodeIndex():shards.get(s).semModel.getEdgeIndex();
+			idMap[s] = new int[index.size() + 1];
+			for(int id = 1; id <= index.size(); id++)
+				idMap[s][id] = target.add(index.getLabel(id), index.getCount(id));
+		}
+		return idMap;
+	}
+}
@@ -0,0 +1,162 @@
+package sem.model;
+
+import gnu.trove.map.hash.TIntLongHashMap;
+
+import sem.util.BinaryReader;
+import sem.util.BinaryWriter;
+import sem.util.BloomFilter;
+import sem.util.Index;
+import sem.util.Tensor;
+
+/**
+ * A Bloom filter over the (head, relation, dep), (head, relation) and (relation, dep) label combinations that occur in the tensor of a model.
+ * <p>SemModel.getTripleCount() checks the filter before looking up the labels in the indexes, so a combination that never occurred returns 0 without touching the indexes, the count cache or the tensor.
+ * The labels are hashed directly, and about 1% of the combinations that never occurred still go through the normal lookup.
+ * <p>The filter is built by SemModel.save() and stored next to the model files.
+ * A reverse relation ("!" + label) is checked as the original relation with the head and the dep swapped, so the same filter works before and after makeTensorSymmetric().
+ */
+public class TripleFilter {
+
+	private static final int MAGIC = 0x53454D46;
+	private static final int VERSION = 1;
+
+	// Types of the combinations, which are hashed into the key
+	private static final long TRIPLE = 1;
+	private static final long HEAD_RELATION = 2;
+	private static final long RELATION_DEP = 3;
+
+	private BloomFilter filter;
+
+	private TripleFilter(){
+	}
+
+	/**
+	 * Open a filter that has been saved with save().
+	 * @param file Input file
+	 */
+	public TripleFilter(String file){
+		BinaryReader reader = new BinaryReader(file);
+		try{
+			if(reader.readInt() != MAGIC)
+				throw new RuntimeException("Not a triple filter file: " + file);
+			int version = reader.readInt();
+			if(version != VERSION)
+				throw new RuntimeException("Unsupported triple filter version " + version + " in " + file);
+			this.filter = new BloomFilter(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Add every combination that has an entry in the tensor.
+	 * @param tensor Tensor of the model
+	 * @param nodeIndex Node index of the model
+	 * @param edgeIndex Edge index of the model
+	 * @return The filter
+	 */
+	public static TripleFilter build(Tensor tensor, Index nodeIndex, Index edgeIndex){
+		// Every triple adds up to three keys, but most pairs are shared by several triples
+		long tripleCount = 0, pairCount = 0;
+		for(int head : tensor.getKeys()){
+			for(int edge : tensor.getKeys(head)){
+				pairCount++;
+				tripleCount += tensor.getKeys(head, edge).length;
+			}
+		}
+
+		TripleFilter tripleFilter = new TripleFilter();
+		tripleFilter.filter = new BloomFilter(tripleCount + pairCount + tripleCount, BloomFilter.DEFAULT_BITS_PER_KEY);
+		TIntLongHashMap nodeHashes = new TIntLongHashMap();
+		for(int head : tensor.getKeys()){
+			long headHash = getHash(nodeHashes, nodeIndex, head);
+			for(int edge : tensor.getKeys(head)){
+				String edgeLabel = edgeIndex.getLabel(edge);
+				if(edgeLabel == null)
+					continue;
+				boolean isReverse = edgeLabel.startsWith("!");
+				long edgeHash = hash(edgeLabel, isReverse?1:0);
+				for(int dep : tensor.getKeys(head, edge)){
+					long depHash = getHash(nodeHashes, nodeIndex, dep);
+					if(isReverse)
+						tripleFilter.add(depHash, edgeHash, headHash);
+					else
+						tripleFilter.add(headHash, edgeHash, depHash);
+				}
+			}
+		}
+		return tripleFilter;
+	}
+
+	private static long getHash(TIntLongHashMap nodeHashes, Index nodeIndex, int nodeId){
+		if(nodeHashes.containsKey(nodeId))
+			return nodeHashes.get(nodeId);
+		String label = nodeIndex.getLabel(nodeId);
+		long hash = (label == null)?0L:hash(label, 0);
+		nodeHashes.put(nodeId, hash);
+		return hash;
+	}
+
+	private void add(long headHash, long edgeHash, long depHash){
+		this.filter.add(key(TRIPLE, headHash, edgeHash, depHash));
+		this.filter.add(key(HEAD_RELATION, headHash, edgeHash, 0L));
+		this.filter.add(key(RELATION_DEP, 0L, edgeHash, depHash));
+	}
+
+	/**
+	 * Save the filter into a binary file.
+	 * @param file Output file
+	 */
+	public void save(String file){
+		BinaryWriter writer = new BinaryWriter(file);
+		writer.writeInt(MAGIC);
+		writer.writeInt(VERSION);
+		this.filter.write(writer);
+		writer.close();
+	}
+
+	/**
+	 * The 64-bit FNV-1a hash of a label, starting from a given character.
+	 */
+	private static long hash(String label, int start){
+		long hash = 0xCBF29CE484222325L;
+		for(int i = start; i < label.length(); i++){
+			hash ^= label.charAt(i);
+			hash *= 0x100000001B3L;
+		}
+		return hash;
+	}
+
+	private static long key(long type, long headHash, long edgeHash, long depHash){
+		long key = type;
+		key = key * 0x9E3779B97F4A7C15L + headHash;
+		key = Long.rotateLeft(key, 21) * 0x9E3779B97F4A7C15L + edgeHash;
+		key = Long.rotateLeft(key, 21) * 0x9E3779B97F4A7C15L + depHash;
+		return key;
+	}
+
+	/**
+	 * Check whether a combination of labels might have a count in the tensor. Null stands for any label, as in SemModel.getTripleCount().
+	 * Only combinations with a relation and at least one node are checked, the others are always reported.
+	 * @param headLabel Head label, or null
+	 * @param edgeLabel Relation label, or null
+	 * @param depLabel Dep label, or null
+	 * @return False if the combination certainly has no count
+	 */
+	public boolean mightContain(String headLabel, String edgeLabel, String depLabel){
+		if(edgeLabel == null || (headLabel == null && depLabel == null))
+			return true;
+		boolean isReverse = edgeLabel.startsWith("!");
+		long edgeHash = hash(edgeLabel, isReverse?1:0);
+		if(isReverse){
+			String label = headLabel;
+			headLabel = depLabel;
+			depLabel = label;
+		}
+		if(headLabel != null && depLabel != null)
+			return this.filter.mightContain(key(TRIPLE, hash(headLabel, 0), edgeHash, hash(depLabel, 0)));
+		else if(headLabel != null)
+			return this.filter.mightContain(key(HEAD_RELATION, hash(headLabel, 0), edgeHash, 0L));
+		return this.filter.mightContain(key(RELATION_DEP, 0L, edgeHash, hash(depLabel, 0)));
+	}
+}
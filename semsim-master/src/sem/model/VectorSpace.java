@@ -1,9 +1,19 @@
 package sem.model;
 
-import java.util.HashMap;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import sem.util.Index;
+import sem.util.SegmentedLruCache;
+import sem.util.SharedPool;
+import sem.util.SparseVector;
 import sem.util.Tools;
 
 /**
@@ -17,13 +27,35 @@ public class VectorSpace {
 	private int weightScheme;
 	private boolean enableCache;
 	
-	private Index featureIndex;
-	/* This 'nodeIndex' is different from the one kept in SemModel. This 'nodeIndex' captures the occurrences of nodes as 'heads' of edges,
-	 * which is required to produce the feature vector corresponding to that particular node at a later stage. 
+	/* Every feature is a (relation, dep) pair, packed into a long with the relation ID in the upper 32 bits.
+	 * The features are numbered from 1 in the order they are first seen in the tensor. 
 	 */
-	private Index nodeIndex;
+	private TLongIntHashMap featureIds;
+	private long[] featureKeys;
+	private double[] featureCounts;
+	private int featureCount;
+	// Only created when getFeatureIndex() is called
+	private volatile Index featureIndex;
 	private double totalFeatureCount;
-	private HashMap<Integer,LinkedHashMap<Integer,Double>> vectorCache;
+	private SegmentedLruCache<CachedVector> vectorCache;
+	private SegmentedLruCache.Loader<CachedVector> vectorLoader;
+	// For every feature ID, the IDs of the nodes that have this feature. Built on first use.
+	private volatile int[][] featureNodes;
+	// Precomputed vectors, if they have been set
+	private volatile VectorStore vectorStore;
+	// Dense embeddings for approximate search, if they have been set
+	private volatile DenseEmbeddings embeddings;
+	private int progressInterval;
+	
+	// Number of nodes in one chunk of precompute()
+	private static final int PRECOMPUTE_BATCH = 64;
+	
+	/* Estimated sizes of a cached vector on a 64-bit JVM, which the vector cache is bounded by.
+	 * A feature takes about 80 bytes in the map (entry, boxed Integer and Double, table slot), and 20 bytes in the SparseVector (id, weight and rank arrays).
+	 * Every vector also has the map, the SparseVector, their arrays and the cache node.
+	 */
+	private static final long CACHED_FEATURE_BYTES = 80 + 20;
+	private static final long CACHED_VECTOR_BYTES = 256;
 	
 	public static int WEIGHT_BINARY = 0;
 	public static int WEIGHT_FREQ = 1;
@@ -31,63 +63,358 @@ public class VectorSpace {
 	public static int WEIGHT_PMI = 3;
 	public static int WEIGHT_PMI_LIM = 4;
 	
+	/**
+	 * An entry in the vector cache. The SparseVector is created from the map when it is first needed.
+	 * Its weight in the cache includes the SparseVector from the start, as nearly every cached vector is scored in that form.
+	 */
+	private static class CachedVector{
+		LinkedHashMap<Integer,Double> vector;
+		volatile SparseVector sparseVector;
+		
+		CachedVector(LinkedHashMap<Integer,Double> vector){
+			this.vector = vector;
+			this.sparseVector = null;
+		}
+		
+		SparseVector getSparseVector(){
+			if(this.sparseVector == null)
+				this.sparseVector = SparseVector.fromMap(this.vector);
+			return this.sparseVector;
+		}
+	}
+	
+	/**
+	 * Get the default limit of the vector cache, which is about a quarter of the maximum heap size.
+	 * @return Maximum estimated size of the cached vectors in bytes
+	 */
+	public static long getDefaultCacheLimit(){
+		return Math.max(10000000, Runtime.getRuntime().maxMemory() / 4);
+	}
+	
+	/**
+	 * Get the estimated size of a cached vector with both of its forms, which counts towards the cache limit.
+	 * @param featureCount Number of features in the vector
+	 * @return Size in bytes
+	 */
+	public static long getCachedVectorBytes(int featureCount){
+		return CACHED_VECTOR_BYTES + featureCount * CACHED_FEATURE_BYTES;
+	}
+	
 	public VectorSpace(SemModel semModel, int weightScheme, boolean enableCache){
+		this(semModel, weightScheme, enableCache, getDefaultCacheLimit());
+	}
+	
+	/**
+	 * Create a new vector space.
+	 * @param semModel Model
+	 * @param weightScheme Weight scheme, for example WEIGHT_PMI_LIM
+	 * @param enableCache Cache the vectors that have been created
+	 * @param cacheLimit Maximum estimated size of the cached vectors in bytes, including both the map and the SparseVector form (see getCachedVectorBytes()). The least recently used vectors are evicted when the limit is reached.
+	 */
+	public VectorSpace(SemModel semModel, int weightScheme, boolean enableCache, long cacheLimit){
 		this.semModel = semModel;
 		this.weightScheme = weightScheme;
 		this.enableCache = enableCache;
-		this.vectorCache = new HashMap<Integer,LinkedHashMap<Integer,Double>>();
+		this.vectorCache = new SegmentedLruCache<CachedVector>(cacheLimit, new SegmentedLruCache.Weigher<CachedVector>(){
+			@Override
+			public long weigh(CachedVector value){
+				return getCachedVectorBytes(value.vector.size());
+			}
+		});
+		this.vectorLoader = new SegmentedLruCache.Loader<CachedVector>(){
+			@Override
+			public CachedVector load(int nodeId){
+				return new CachedVector(createVector(nodeId));
+			}
+		};
 		
 		this.featureIndex = null;
-		this.nodeIndex = null;
+		this.featureNodes = null;
+		this.vectorStore = null;
+		this.embeddings = null;
+		this.progressInterval = 0;
 		
 		init();
 	}
 	
+	private static long getFeatureKey(int relationId, int depId){
+		return ((long)relationId << 32) | (depId & 0xffffffffL);
+	}
+	
 	private void init(){
-		this.featureIndex = new Index();
-		this.nodeIndex = new Index();
-		String featureLabel;
+		this.featureIds = new TLongIntHashMap();
+		this.featureKeys = new long[1024];
+		this.featureCounts = new double[1024];
+		this.featureCount = 0;
+		this.totalFeatureCount = 0.0;
+		long featureKey;
+		int featureId;
 		double c;
 		for(int key1 : this.semModel.getTensor().getKeys()){
 			for(int key2 : this.semModel.getTensor().getKeys(key1)){
 				for(int key3 : this.semModel.getTensor().getKeys(key1, key2)){
-					featureLabel = key2 + "," + key3;
+					featureKey = getFeatureKey(key2, key3);
+					featureId = this.featureIds.get(featureKey);
+					if(featureId == 0){
+						featureId = ++this.featureCount;
+						if(featureId >= this.featureKeys.length){
+							this.featureKeys = Arrays.copyOf(this.featureKeys, this.featureKeys.length * 2);
+							this.featureCounts = Arrays.copyOf(this.featureCounts, this.featureCounts.length * 2);
+						}
+						this.featureIds.put(featureKey, featureId);
+						this.featureKeys[featureId] = featureKey;
+					}
 					c = this.semModel.getTensor().get(key1, key2, key3);
-					featureIndex.add(featureLabel, c);
-					nodeIndex.add("" + key1, c);
+					this.featureCounts[featureId] += c;
+					this.totalFeatureCount += c;
 				}
 			}
 		}
-		this.totalFeatureCount = this.featureIndex.getTotalCount();
 	}
 	
+	/**
+	 * Get the weight scheme ID from its name: binary, freq, relfreq, pmi or pmilim.
+	 * @param name Name of the weight scheme
+	 * @return The weight scheme, or -1 if the name is not known.
+	 */
+	public static int getWeightScheme(String name){
+		if(name.equalsIgnoreCase("binary"))
+			return WEIGHT_BINARY;
+		else if(name.equalsIgnoreCase("freq"))
+			return WEIGHT_FREQ;
+		else if(name.equalsIgnoreCase("relfreq"))
+			return WEIGHT_RELFREQ;
+		else if(name.equalsIgnoreCase("pmi"))
+			return WEIGHT_PMI;
+		else if(name.equalsIgnoreCase("pmilim"))
+			return WEIGHT_PMI_LIM;
+		return -1;
+	}
+	
+	public int getWeightScheme(){
+		return this.weightScheme;
+	}
+	
+	public SemModel getSemModel(){
+		return this.semModel;
+	}
+	
+	/**
+	 * Get the ID of a feature.
+	 * @param relationId Edge ID in the SemModel
+	 * @param depId Node ID in the SemModel
+	 * @return Feature ID, or 0 if the feature does not exist.
+	 */
+	public int getFeatureId(int relationId, int depId){
+		return this.featureIds.get(getFeatureKey(relationId, depId));
+	}
+	
+	/**
+	 * Get the edge ID of a feature.
+	 * @param featureId Feature ID
+	 */
+	public int getFeatureRelation(int featureId){
+		return (int)(this.featureKeys[featureId] >>> 32);
+	}
+	
+	/**
+	 * Get the dep node ID of a feature.
+	 * @param featureId Feature ID
+	 */
+	public int getFeatureDep(int featureId){
+		return (int)this.featureKeys[featureId];
+	}
+	
+	/**
+	 * Get the total count of a feature in the tensor.
+	 * @param featureId Feature ID
+	 * @return Count, 0 if the feature does not exist.
+	 */
+	public double getFeatureCount(int featureId){
+		return (featureId > 0 && featureId <= this.featureCount)?this.featureCounts[featureId]:0.0;
+	}
+	
+	/**
+	 * Get the number of features. The feature IDs run from 1 to getNumFeatures().
+	 */
+	public int getNumFeatures(){
+		return this.featureCount;
+	}
+	
+	/**
+	 * Get the features as an Index with the labels "relationId,depId" and the same IDs and counts.
+	 * It is only created when this is first called. For lookups, getFeatureId() does not need it.
+	 * @return The feature index
+	 */
 	public Index getFeatureIndex(){
-		return this.featureIndex;
+		Index tempFeatureIndex = this.featureIndex;
+		if(tempFeatureIndex == null){
+			synchronized(this){
+				tempFeatureIndex = this.featureIndex;
+				if(tempFeatureIndex == null){
+					tempFeatureIndex = new Index();
+					for(int featureId = 1; featureId <= this.featureCount; featureId++)
+						tempFeatureIndex.add(getFeatureRelation(featureId) + "," + getFeatureDep(featureId), this.featureCounts[featureId]);
+					this.featureIndex = tempFeatureIndex;
+				}
+			}
+		}
+		return tempFeatureIndex;
 	}
 	
 	public double getTotalFeatureCount(){
 		return this.totalFeatureCount;
 	}
 	
-	public synchronized void addToCache(Integer nodeId, LinkedHashMap<Integer,Double> sortedVector){
-		this.vectorCache.put(nodeId, sortedVector);
+	/**
+	 * Get the nodes that have a specific feature, from an inverted index of the feature vectors.
+	 * The index is built from the counts in the tensor, so it can also contain nodes where the feature gets no weight (for example, with WEIGHT_PMI_LIM).
+	 * @param featureId Feature ID
+	 * @return Node IDs in the SemModel node index, in increasing order. An empty array if the feature does not exist.
+	 */
+	public int[] getFeatureNodes(int featureId){
+		int[][] tempFeatureNodes = this.featureNodes;
+		if(tempFeatureNodes == null)
+			tempFeatureNodes = buildFeatureNodes();
+		if(featureId <= 0 || featureId >= tempFeatureNodes.length || tempFeatureNodes[featureId] == null)
+			return new int[0];
+		return tempFeatureNodes[featureId];
+	}
+	
+	/**
+	 * Get the nodes that share at least one feature with a vector, from the inverted index of getFeatureNodes().
+	 * For a measure that requires overlap, only these nodes can get a score other than 0.0.
+	 * @param vector Feature vector, for example of the main word of a query
+	 * @return Node IDs in the SemModel node index
+	 */
+	public TIntHashSet getSharedNodes(SparseVector vector){
+		TIntHashSet sharedNodes = new TIntHashSet();
+		for(int featureId : vector.getIds())
+			sharedNodes.addAll(getFeatureNodes(featureId));
+		return sharedNodes;
+	}
+	
+	private synchronized int[][] buildFeatureNodes(){
+		if(this.featureNodes != null)
+			return this.featureNodes;
+		
+		int maxFeatureId = this.featureCount;
+		TIntArrayList[] lists = new TIntArrayList[maxFeatureId + 1];
+		int[] keys1 = this.semModel.getTensor().getKeys();
+		Arrays.sort(keys1);
+		for(int key1 : keys1){
+			for(int key2 : this.semModel.getTensor().getKeys(key1)){
+				for(int key3 : this.semModel.getTensor().getKeys(key1, key2)){
+					int featureId = getFeatureId(key2, key3);
+					if(lists[featureId] == null)
+						lists[featureId] = new TIntArrayList(4);
+					lists[featureId].add(key1);
+				}
+			}
+		}
+		
+		int[][] tempFeatureNodes = new int[maxFeatureId + 1][];
+		for(int i = 0; i < lists.length; i++)
+			if(lists[i] != null)
+				tempFeatureNodes[i] = lists[i].toArray();
+		this.featureNodes = tempFeatureNodes;
+		return tempFeatureNodes;
+	}
+	
+	public void addToCache(Integer nodeId, LinkedHashMap<Integer,Double> sortedVector){
+		this.vectorCache.put(nodeId, new CachedVector(sortedVector));
 	}
 	
 	public LinkedHashMap<Integer,Double> getVectorFromCache(Integer nodeId){
-		return this.vectorCache.get(nodeId);
+		CachedVector cached = this.vectorCache.getIfPresent(nodeId);
+		return (cached == null)?null:cached.vector;
+	}
+	
+	/**
+	 * Serve the vectors from a store of precomputed vectors, instead of calculating the weights.
+	 * The vector cache is cleared.
+	 * @param vectorStore The store, which has to be built with the same weight scheme and features as this vector space. Null to calculate the vectors again.
+	 */
+	public void setVectorStore(VectorStore vectorStore){
+		if(vectorStore != null && !vectorStore.matches(this))
+			throw new RuntimeException("The vector store was built with a different weight scheme or model");
+		this.vectorStore = vectorStore;
+		this.vectorCache.clear();
+	}
+	
+	public VectorStore getVectorStore(){
+		return this.vectorStore;
+	}
+	
+	/**
+	 * Use dense embeddings for finding candidates approximately (see SimFinder.getMostSimilar()). The sparse vectors are still used for exact scores.
+	 * @param embeddings The embeddings, which have to be built with the same weight scheme and features as this vector space. Null to only use the sparse vectors.
+	 */
+	public void setEmbeddings(DenseEmbeddings embeddings){
+		if(embeddings != null && !embeddings.matches(this))
+			throw new RuntimeException("The embeddings were built with a different weight scheme or model");
+		this.embeddings = embeddings;
+	}
+	
+	public DenseEmbeddings getEmbeddings(){
+		return this.embeddings;
+	}
+	
+	/**
+	 * Get the dense embedding of a node.
+	 * @param nodeLabel Node label
+	 * @return The embedding, all zeros if the node does not exist.
+	 */
+	public float[] getEmbedding(String nodeLabel){
+		DenseEmbeddings tempEmbeddings = this.embeddings;
+		if(tempEmbeddings == null)
+			throw new RuntimeException("No embeddings have been set");
+		Integer nodeId = this.semModel.getNodeIndex().getId(nodeLabel);
+		return tempEmbeddings.getVector((nodeId == null)?0:nodeId);
+	}
+	
+	/**
+	 * Get the vector cache, for example to read the hit, miss and eviction counts.
+	 */
+	public SegmentedLruCache<?> getVectorCache(){
+		return this.vectorCache;
 	}
 
+	/**
+	 * Get the labels of the nodes whose vectors are used the most, according to the cache.
+	 * They can be passed to precompute() of a vector space for a newer model, so that it starts with the same working set.
+	 * @param limit Maximum number of labels
+	 * @return Labels from the most used to the least used
+	 */
+	public ArrayList<String> getHotNodes(int limit){
+		ArrayList<String> labels = new ArrayList<String>();
+		for(int nodeId : this.vectorCache.getHotKeys(limit)){
+			String label = this.semModel.getNodeIndex().getLabel(nodeId);
+			if(label != null)
+				labels.add(label);
+		}
+		return labels;
+	}
+	
 	public LinkedHashMap<Integer,Double> getVector(String nodeLabel){
 		Integer nodeId = this.semModel.getNodeIndex().getId(nodeLabel);
 		if(nodeId == null)
 			return new LinkedHashMap<Integer,Double>();
 		
-		LinkedHashMap<Integer,Double> vector = null;
 		if(this.enableCache)
-			vector = getVectorFromCache(nodeId);
-		if(vector != null)
-			return vector;
+			return this.vectorCache.get(nodeId, this.vectorLoader).vector;
+		return createVector(nodeId);
+	}
+	
+	/**
+	 * Create the vector of a node, with the features sorted by decreasing weight. If a vector store has been set, the vector is read from it.
+	 */
+	LinkedHashMap<Integer,Double> createVector(int nodeId){
+		VectorStore tempVectorStore = this.vectorStore;
+		if(tempVectorStore != null)
+			return tempVectorStore.getVector(nodeId);
 		
+		LinkedHashMap<Integer,Double> vector;
 		if(this.weightScheme == WEIGHT_BINARY)
 			vector = getVectorBinary(nodeId);
 		else if(this.weightScheme == WEIGHT_FREQ)
@@ -101,17 +428,30 @@ public class VectorSpace {
 		else
 			throw new RuntimeException("Unknown weight scheme: " + this.weightScheme);
 		
-		LinkedHashMap<Integer,Double> sortedVector = Tools.sort(vector, true);
-		if(this.enableCache){
-			addToCache(nodeId, sortedVector);
-		}
-		return sortedVector;
+		return Tools.sort(vector, true);
+	}
+	
+	/**
+	 * Get the feature vector of a node as a SparseVector. It contains the same weights as getVector().
+	 * @param nodeLabel Node label
+	 * @return The vector. An empty vector if the node does not exist.
+	 */
+	public SparseVector getSparseVector(String nodeLabel){
+		Integer nodeId = this.semModel.getNodeIndex().getId(nodeLabel);
+		if(nodeId == null)
+			return new SparseVector(new int[0], new double[0]);
+		
+		VectorStore tempVectorStore = this.vectorStore;
+		if(tempVectorStore != null)
+			return tempVectorStore.getSparseVector(nodeId);
+		if(this.enableCache)
+			return this.vectorCache.get(nodeId, this.vectorLoader).getSparseVector();
+		return SparseVector.fromMap(createVector(nodeId));
 	}
 	
 	private LinkedHashMap<Integer,Double> getVectorPMI(Integer nodeId){
 		LinkedHashMap<Integer,Double> vector = new LinkedHashMap<Integer,Double>();
-		String featureLabel;
-		Integer featureId;
+		int featureId;
 		
 		if(!this.semModel.getTensor().containsKey(nodeId))
 			return vector;
@@ -121,10 +461,9 @@ public class VectorSpace {
 		
 		for(int key2 : this.semModel.getTensor().getKeys(nodeId)){
 			for(int key3 : this.semModel.getTensor().getKeys(nodeId, key2)){
-				featureLabel = key2 + "," + key3;
-				featureId = this.getFeatureIndex().getId(featureLabel);
+				featureId = getFeatureId(key2, key3);
 				Double weight = Math.log((this.semModel.getTensor().get(nodeId, key2, key3)/totalFeatureCount) 
-								/ ((nodeCount / totalFeatureCount) * (this.featureIndex.getCount(featureId)/totalFeatureCount)));
+								/ ((nodeCount / totalFeatureCount) * (this.featureCounts[featureId]/totalFeatureCount)));
 				vector.put(featureId, weight);
 			}
 		}
@@ -136,8 +475,7 @@ public class VectorSpace {
 	
 	private LinkedHashMap<Integer,Double> getVectorPMILim(Integer nodeId){
 		LinkedHashMap<Integer,Double> vector = new LinkedHashMap<Integer,Double>();
-		String featureLabel;
-		Integer featureId;
+		int featureId;
 		
 		if(!this.semModel.getTensor().containsKey(nodeId))
 			return vector;
@@ -147,9 +485,8 @@ public class VectorSpace {
 		double featureCount;
 		for(int key2 : this.semModel.getTensor().getKeys(nodeId)){
 			for(int key3 : this.semModel.getTensor().getKeys(nodeId, key2)){
-				featureLabel = key2 + "," + key3;
-				featureId = this.getFeatureIndex().getId(featureLabel);
-				featureCount = this.featureIndex.getCount(featureId);
+				featureId = getFeatureId(key2, key3);
+				featureCount = this.featureCounts[featureId];
 				
 				if(featureCount < 2)
 					continue;
@@ -166,16 +503,14 @@ public class VectorSpace {
 	
 	private LinkedHashMap<Integer,Double> getVectorBinary(Integer nodeId){
 		LinkedHashMap<Integer,Double> vector = new LinkedHashMap<Integer,Double>();
-		String featureLabel;
-		Integer featureId;
+		int featureId;
 		
 		if(!this.semModel.getTensor().containsKey(nodeId))
 			return vector;
 		
 		for(int key2 : this.semModel.getTensor().getKeys(nodeId)){
 			for(int key3 : this.semModel.getTensor().getKeys(nodeId, key2)){
-				featureLabel = key2 + "," + key3;
-				featureId = this.getFeatureIndex().getId(featureLabel);
+				featureId = getFeatureId(key2, key3);
 				Double weight = 1.0;
 				vector.put(featureId, weight);
 			}
@@ -186,16 +521,14 @@ public class VectorSpace {
 	
 	private LinkedHashMap<Integer,Double> getVectorFreq(Integer nodeId){
 		LinkedHashMap<Integer,Double> vector = new LinkedHashMap<Integer,Double>();
-		String featureLabel;
-		Integer featureId;
+		int featureId;
 		
 		if(!this.semModel.getTensor().containsKey(nodeId))
 			return vector;
 		
 		for(int key2 : this.semModel.getTensor().getKeys(nodeId)){
 			for(int key3 : this.semModel.getTensor().getKeys(nodeId, key2)){
-				featureLabel = key2 + "," + key3;
-				featureId = this.getFeatureIndex().getId(featureLabel);
+				featureId = getFeatureId(key2, key3);
 				Double weight = this.semModel.getTensor().get(nodeId, key2, key3);
 				vector.put(featureId, weight);
 			}
@@ -206,8 +539,7 @@ public class VectorSpace {
 	
 	private LinkedHashMap<Integer,Double> getVectorRelFreq(Integer nodeId){
 		LinkedHashMap<Integer,Double> vector = new LinkedHashMap<Integer,Double>();
-		String featureLabel;
-		Integer featureId;
+		int featureId;
 		
 		if(!this.semModel.getTensor().containsKey(nodeId))
 			return vector;
@@ -215,8 +547,7 @@ public class VectorSpace {
 		Double nodeCount = this.semModel.getTensor().get(nodeId, null, null);
 		for(int key2 : this.semModel.getTensor().getKeys(nodeId)){
 			for(int key3 : this.semModel.getTensor().getKeys(nodeId, key2)){
-				featureLabel = key2 + "," + key3;
-				featureId = this.getFeatureIndex().getId(featureLabel);
+				featureId = getFeatureId(key2, key3);
 				Double weight = this.semModel.getTensor().get(nodeId, key2, key3) / nodeCount;
 				vector.put(featureId, weight);
 			}
@@ -225,6 +556,75 @@ public class VectorSpace {
 		return vector;
 	}
 	
+	/**
+	 * Print the progress of precompute() after every given number of vectors, and the throughput at the end. 0 turns this off, which is the default.
+	 * @param progressInterval Number of vectors
+	 */
+	public void setProgressInterval(int progressInterval){
+		this.progressInterval = progressInterval;
+	}
+	
+	/**
+	 * Create the vectors of every node that has features, in parallel, and put them into the cache (see precompute()).
+	 * @param numThreads Number of threads
+	 * @return The number of vectors
+	 */
+	public int precomputeAll(int numThreads){
+		int[] nodeIds = this.semModel.getTensor().getKeys();
+		Arrays.sort(nodeIds);
+		return precompute(nodeIds, numThreads);
+	}
+	
+	/**
+	 * Create the vectors of the given nodes in parallel, with up to numThreads threads of the SharedPool, and put them into the cache together with their SparseVector form.
+	 * Later calls to getVector() and getSparseVector() for these nodes are then cache hits, as long as the cache is large enough to hold all of them.
+	 * Nothing is done if a vector store has been set, as the vectors are then read directly from the store.
+	 * @param nodeLabels Node labels. Labels that are not in the model are skipped.
+	 * @param numThreads Number of threads
+	 * @return The number of vectors
+	 */
+	public int precompute(Collection<String> nodeLabels, int numThreads){
+		TIntArrayList nodeIds = new TIntArrayList(nodeLabels.size());
+		for(String nodeLabel : nodeLabels){
+			Integer nodeId = this.semModel.getNodeIndex().getId(nodeLabel);
+			if(nodeId != null)
+				nodeIds.add(nodeId);
+		}
+		return precompute(nodeIds.toArray(), numThreads);
+	}
+	
+	private int precompute(int[] nodeIds, int numThreads){
+		if(!this.enableCache)
+			throw new RuntimeException("Vectors can only be precomputed when the cache is enabled");
+		if(this.vectorStore != null)
+			return 0;
+		
+		long start = System.nanoTime();
+		final int[] ids = nodeIds;
+		final AtomicInteger done = new AtomicInteger(0);
+		SharedPool.run((ids.length + PRECOMPUTE_BATCH - 1) / PRECOMPUTE_BATCH, numThreads, new SharedPool.Chunks(){
+			@Override
+			public void run(int chunk){
+				for(int i = chunk * PRECOMPUTE_BATCH; i < Math.min(ids.length, (chunk + 1) * PRECOMPUTE_BATCH); i++){
+					vectorCache.get(ids[i], vectorLoader).getSparseVector();
+					int count = done.incrementAndGet();
+					if(progressInterval > 0 && count % progressInterval == 0)
+						System.out.println("Precomputed " + count + "/" + ids.length + " vectors");
+				}
+			}
+		});
+		
+		if(this.progressInterval > 0){
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.println("Precomputed " + nodeIds.length + " vectors in " + String.format("%.1f", seconds) + "s, " + String.format("%.0f", nodeIds.length / Math.max(seconds, 1e-9)) + " vectors/s, cache " + this.vectorCache);
+		}
+		return nodeIds.length;
+	}
+	
+	public boolean isCacheEnabled(){
+		return this.enableCache;
+	}
+	
 	public void enableCache(){
 		this.enableCache = true;
 	}
@@ -0,0 +1,205 @@
+package sem.model;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import sem.util.BinaryReader;
+import sem.util.BinaryWriter;
+import sem.util.SparseVector;
+
+/**
+ * The weighted feature vectors of every node in a VectorSpace, computed once and stored in a binary file.
+ * <p>The file contains an offset table indexed by the node ID, and the feature IDs and weights of all the vectors, each sorted by decreasing weight as in VectorSpace.getVector().
+ * The weights are stored as floats by default, which halves the size of the file but rounds the weights slightly.
+ * <p>The file is memory-mapped when it is opened, so a VectorSpace that uses the store (see VectorSpace.setVectorStore()) serves vectors without calculating any weights.
+ * The store can only be used with a VectorSpace that has the same weight scheme and features as the one it was built from, which is checked with matches().
+ */
+public class VectorStore {
+
+	private static final int MAGIC = 0x53454D56;
+	private static final int VERSION = 1;
+
+	private int weightScheme;
+	private int featureCount;
+	private double totalFeatureCount;
+
+	private IntBuffer offsets;
+	private IntBuffer ids;
+	private FloatBuffer floatWeights;
+	private DoubleBuffer doubleWeights;
+
+	private VectorStore(){
+	}
+
+	/**
+	 * Open a store that has been saved with save().
+	 * @param file Input file
+	 */
+	public VectorStore(String file){
+		BinaryReader reader = new BinaryReader(file);
+		try{
+			if(reader.readInt() != MAGIC)
+				throw new RuntimeException("Not a vector store file: " + file);
+			int version = reader.readInt();
+			if(version != VERSION)
+				throw new RuntimeException("Unsupported vector store version " + version + " in " + file);
+			this.weightScheme = reader.readInt();
+			boolean useFloat = (reader.readInt() == 1);
+			this.featureCount = reader.readInt();
+			this.totalFeatureCount = reader.readDouble();
+			this.offsets = reader.readInts();
+			this.ids = reader.readInts();
+			if(useFloat)
+				this.floatWeights = reader.readFloats();
+			else
+				this.doubleWeights = reader.readDoubles();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Compute the vector of every node in the model of the vector space.
+	 * @param vectorSpace Vector space
+	 * @param useFloat Store the weights as floats instead of doubles
+	 * @return The store
+	 */
+	public static VectorStore build(VectorSpace vectorSpace, boolean useFloat){
+		// Node IDs run from 1 to the size of the index
+		int nodeCount = vectorSpace.getSemModel().getNodeIndex().size();
+		int[] offsets = new int[nodeCount + 2];
+		int[] ids = new int[1024];
+		double[] weights = new double[1024];
+		long length = 0;
+		for(int nodeId = 1; nodeId <= nodeCount; nodeId++){
+			LinkedHashMap<Integer,Double> vector = vectorSpace.createVector(nodeId);
+			if(length + vector.size() > Integer.MAX_VALUE)
+				throw new RuntimeException("Vectors are too large for the vector store format");
+			if(length + vector.size() > ids.length){
+				int newLength = (int)Math.min(Integer.MAX_VALUE, Math.max(2L * ids.length, length + vector.size()));
+				ids = Arrays.copyOf(ids, newLength);
+				weights = Arrays.copyOf(weights, newLength);
+			}
+			for(Entry<Integer,Double> e : vector.entrySet()){
+				ids[(int)length] = e.getKey();
+				weights[(int)length] = e.getValue();
+				length++;
+			}
+			offsets[nodeId+1] = (int)length;
+		}
+
+		VectorStore store = new VectorStore();
+		store.weightScheme = vectorSpace.getWeightScheme();
+		store.featureCount = vectorSpace.getNumFeatures();
+		store.totalFeatureCount = vectorSpace.getTotalFeatureCount();
+		store.offsets = IntBuffer.wrap(offsets);
+		store.ids = IntBuffer.wrap(Arrays.copyOf(ids, (int)length));
+		if(useFloat){
+			float[] floatWeights = new float[(int)length];
+			for(int i = 0; i < length; i++)
+				floatWeights[i] = (float)weights[i];
+			store.floatWeights = FloatBuffer.wrap(floatWeights);
+		}
+		else
+			store.doubleWeights = DoubleBuffer.wrap(Arrays.copyOf(weights, (int)length));
+		return store;
+	}
+
+	/**
+	 * Save the store into a binary file.
+	 * @param file Output file
+	 */
+	public void save(String file){
+		BinaryWriter writer = new BinaryWriter(file);
+		writer.writeInt(MAGIC);
+		writer.writeInt(VERSION);
+		writer.writeInt(this.weightScheme);
+		writer.writeInt(this.floatWeights != null?1:0);
+		writer.writeInt(this.featureCount);
+		writer.writeDouble(this.totalFeatureCount);
+		writer.writeInts(this.offsets);
+		writer.writeInts(this.ids);
+		if(this.floatWeights != null)
+			writer.writeFloats(this.floatWeights);
+		else
+			writer.writeDoubles(this.doubleWeights);
+		writer.close();
+	}
+
+	/**
+	 * Check whether the store was built from a vector space with the same weight scheme and features.
+	 * @param vectorSpace Vector space
+	 * @return True if the store can be used for this vector space
+	 */
+	public boolean matches(VectorSpace vectorSpace){
+		return this.weightScheme == vectorSpace.getWeightScheme()
+				&& this.featureCount == vectorSpace.getNumFeatures()
+				&& this.totalFeatureCount == vectorSpace.getTotalFeatureCount();
+	}
+
+	private double getWeight(int pos){
+		return (this.floatWeights != null)?this.floatWeights.get(pos):this.doubleWeights.get(pos);
+	}
+
+	/**
+	 * Get the number of features in the vector of a node.
+	 * @param nodeId Node ID
+	 * @return Vector length, 0 if the node does not exist.
+	 */
+	public int getVectorLength(int nodeId){
+		if(nodeId <= 0 || nodeId >= this.offsets.limit() - 1)
+			return 0;
+		return this.offsets.get(nodeId+1) - this.offsets.get(nodeId);
+	}
+
+	/**
+	 * Get the vector of a node, with the features sorted by decreasing weight.
+	 * @param nodeId Node ID
+	 * @return The vector, empty if the node does not exist.
+	 */
+	public LinkedHashMap<Integer,Double> getVector(int nodeId){
+		LinkedHashMap<Integer,Double> vector = new LinkedHashMap<Integer,Double>();
+		int length = getVectorLength(nodeId);
+		if(length > 0){
+			int start = this.offsets.get(nodeId);
+			for(int i = 0; i < length; i++)
+				vector.put(this.ids.get(start + i), getWeight(start + i));
+		}
+		return vector;
+	}
+
+	/**
+	 * Get the vector of a node as a SparseVector.
+	 * @param nodeId Node ID
+	 * @return The vector, empty if the node does not exist.
+	 */
+	public SparseVector getSparseVector(int nodeId){
+		int length = getVectorLength(nodeId);
+		int[] vectorIds = new int[length];
+		double[] vectorWeights = new double[length];
+		if(length > 0){
+			int start = this.offsets.get(nodeId);
+			for(int i = 0; i < length; i++){
+				vectorIds[i] = this.ids.get(start + i);
+				vectorWeights[i] = getWeight(start + i);
+			}
+		}
+		return SparseVector.fromWeightOrder(vectorIds, vectorWeights);
+	}
+
+	public int getWeightScheme(){
+		return this.weightScheme;
+	}
+
+	/**
+	 * Get the number of nodes that have a vector in the store, including empty vectors.
+	 * @return Number of nodes
+	 */
+	public int size(){
+		return this.offsets.limit() - 2;
+	}
+}
@@ -0,0 +1,37 @@
+package sem.run;
+
+import sem.model.DenseEmbeddings;
+import sem.model.SemModel;
+import sem.model.VectorSpace;
+import sem.util.Tools;
+
+/**
+ * Projects the weighted vector of every word in the model to a dense embedding, and saves them as DenseEmbeddings.
+ * The model is prepared in the same way as in MostSimilar, so the embeddings can be used with its --embeddings option.
+ */
+public class BuildEmbeddings {
+	public static void main(String[] args) {
+		if(args.length >= 3 && args.length <= 4){
+			SemModel semModel = new SemModel(args[0], false);
+			String outputPath = args[1];
+			int dimensions = Tools.getInt(args[2], 1);
+			int weightScheme = VectorSpace.WEIGHT_PMI_LIM;
+			if(args.length == 4){
+				weightScheme = VectorSpace.getWeightScheme(args[3]);
+				if(weightScheme < 0)
+					throw new RuntimeException("Unknown weight scheme: " + args[3]);
+			}
+			
+			semModel.makeTensorSymmetricView();
+			VectorSpace vectorSpace = new VectorSpace(semModel, weightScheme, false);
+			
+			long start = System.currentTimeMillis();
+			DenseEmbeddings embeddings = DenseEmbeddings.build(vectorSpace, dimensions, 1);
+			embeddings.save(outputPath);
+			System.out.println("Projected " + embeddings.size() + " vectors to " + dimensions + " dimensions in " + (System.currentTimeMillis() - start) + "ms");
+		}
+		else {
+			System.out.println("BuildEmbeddings <modelpath> <outputpath> <dimensions> [weightscheme]");
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package sem.run;
+
+import java.util.LinkedHashSet;
+
+import sem.model.SemModel;
+import sem.model.VectorSpace;
+import sem.sim.LshIndex;
+import sem.util.Tools;
+
+/**
+ * Builds an LSH index over the candidate words of the model, and saves it as an LshIndex.
+ * Use minhash for the set measures (jaccardSet, diceSet, cosineSet) and simhash for cosine.
+ * The model is prepared in the same way as in MostSimilar.
+ */
+public class BuildLshIndex {
+	public static void main(String[] args) {
+		if(args.length == 6 || args.length == 7){
+			SemModel semModel = new SemModel(args[0], false);
+			
+			int type;
+			if(args[1].equalsIgnoreCase("minhash"))
+				type = LshIndex.MINHASH;
+			else if(args[1].equalsIgnoreCase("simhash"))
+				type = LshIndex.SIMHASH;
+			else
+				throw new RuntimeException("Unknown LSH type: " + args[1]);
+			
+			int frequencyLimit = Integer.parseInt(args[2]);
+			int bands = Tools.getInt(args[3], 1);
+			int rows = Tools.getInt(args[4], 1);
+			String outputPath = args[5];
+			int weightScheme = VectorSpace.WEIGHT_PMI_LIM;
+			if(args.length == 7){
+				weightScheme = VectorSpace.getWeightScheme(args[6]);
+				if(weightScheme < 0)
+					throw new RuntimeException("Unknown weight scheme: " + args[6]);
+			}
+			
+			semModel.makeTensorSymmetricView();
+			VectorSpace vectorSpace = new VectorSpace(semModel, weightScheme, false);
+			
+			LinkedHashSet<String> candidateWords = new LinkedHashSet<String>();
+			for(String s : semModel.getNodeIndex().getIdMap().keySet())
+				if(semModel.getNodeCount(s) >= frequencyLimit)
+					candidateWords.add(s);
+			
+			LshIndex lshIndex = LshIndex.build(vectorSpace, candidateWords, type, bands, rows, frequencyLimit, 1);
+			lshIndex.save(outputPath);
+		}
+		else {
+			System.out.println("BuildLshIndex <modelpath> <minhash|simhash> <frequencylimit> <bands> <rows> <outputpath> [weightscheme]");
+		}
+	}
+}
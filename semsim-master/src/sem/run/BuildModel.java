@@ -1,16 +1,25 @@
 package sem.run;
 
-import sem.graph.Graph;
+import java.util.Arrays;
+
 import sem.graphreader.GraphReader;
 import sem.graphreader.GraphReaderType;
 import sem.model.SemModel;
+import sem.model.SemModelBuilder;
+import sem.util.Tools;
 
 /**
  * Builds a SemModel
- *
+ * <p>With --threads, the graphs are counted by several threads in parallel (see SemModelBuilder). The resulting model is identical.
  */
 public class BuildModel {
 	public static void main(String[] args) {
+		int numThreads = 1;
+		if(args.length >= 2 && args[0].equals("--threads")){
+			numThreads = Tools.getInt(args[1], 1);
+			args = Arrays.copyOfRange(args, 2, args.length);
+		}
+		
 		if(args.length == 3){
 			try{
 				GraphReaderType graphReaderType = GraphReaderType.getType(args[0]);
@@ -21,15 +30,9 @@ public class BuildModel {
 					throw new RuntimeException("Invalid corpus type");
 				GraphReader reader = graphReaderType.makeGraphReader(corpusPath);
 				
-				// Creating a new empty model
-				SemModel semModel = new SemModel(false);
-
-				// Adding all the graphs to the model
-				while(reader.hasNext()){
-					Graph graph = reader.next();
-					semModel.add(graph);
-				}
-				reader.close();
+				// Adding all the graphs to a new model
+				SemModelBuilder builder = new SemModelBuilder(null, false, numThreads, false);
+				SemModel semModel = builder.build(reader);
 				
 				semModel.save(outputPath);
 				
@@ -38,7 +41,7 @@ public class BuildModel {
 			}
 		}
 		else {
-			System.out.println("BuildModel <corpustype> <corpuspath> <outputpath>");
+			System.out.println("BuildModel [--threads N] <corpustype> <corpuspath> <outputpath>");
 		}
 	}
 
@@ -0,0 +1,53 @@
+package sem.run;
+
+import java.util.LinkedHashSet;
+
+import sem.model.SemModel;
+import sem.model.VectorSpace;
+import sem.sim.NeighbourTable;
+import sem.sim.SimMeasure;
+import sem.util.Tools;
+
+/**
+ * Precomputes the most similar words for every word in the model, and saves them as a NeighbourTable.
+ * The model is prepared in the same way as in MostSimilar, so the table can be used with MostSimilar --table.
+ */
+public class BuildNeighbourTable {
+	public static void main(String[] args) {
+		if(args.length == 6 || args.length == 7){
+			SemModel semModel = new SemModel(args[0], false);
+			
+			SimMeasure simMeasure = SimMeasure.getType(args[1]);
+			if(simMeasure == null)
+				throw new RuntimeException("SimMeasureType is null");
+			
+			int frequencyLimit = Integer.parseInt(args[2]);
+			int k = Integer.parseInt(args[3]);
+			int numThreads = Tools.getInt(args[4], 1);
+			String outputPath = args[5];
+			int weightScheme = VectorSpace.WEIGHT_PMI_LIM;
+			if(args.length == 7){
+				weightScheme = VectorSpace.getWeightScheme(args[6]);
+				if(weightScheme < 0)
+					throw new RuntimeException("Unknown weight scheme: " + args[6]);
+			}
+			
+			semModel.makeTensorSymmetricView();
+			VectorSpace vectorSpace = new VectorSpace(semModel, weightScheme, false);
+			
+			LinkedHashSet<String> words = new LinkedHashSet<String>();
+			LinkedHashSet<String> candidateWords = new LinkedHashSet<String>();
+			for(String s : semModel.getNodeIndex().getIdMap().keySet()){
+				words.add(s);
+				if(semModel.getNodeCount(s) >= frequencyLimit)
+					candidateWords.add(s);
+			}
+			
+			NeighbourTable neighbourTable = NeighbourTable.build(vectorSpace, words, candidateWords, simMeasure, frequencyLimit, k, numThreads);
+			neighbourTable.save(outputPath);
+		}
+		else {
+			System.out.println("BuildNeighbourTable <modelpath> <similaritytype> <frequencylimit> <k> <numthreads> <outputpath> [weightscheme]");
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package sem.run;
+
+import sem.model.SemModel;
+import sem.model.VectorSpace;
+import sem.model.VectorStore;
+
+/**
+ * Computes the weighted vector of every word in the model, and saves them as a VectorStore.
+ * The model is prepared in the same way as in Similarity and MostSimilar, so the store can be used with their --vectors option.
+ * The weights are stored as floats, unless the last argument is "double".
+ */
+public class BuildVectorStore {
+	public static void main(String[] args) {
+		if(args.length >= 2 && args.length <= 4){
+			SemModel semModel = new SemModel(args[0], false);
+			String outputPath = args[1];
+			int weightScheme = VectorSpace.WEIGHT_PMI_LIM;
+			if(args.length >= 3){
+				weightScheme = VectorSpace.getWeightScheme(args[2]);
+				if(weightScheme < 0)
+					throw new RuntimeException("Unknown weight scheme: " + args[2]);
+			}
+			boolean useFloat = !(args.length == 4 && args[3].equalsIgnoreCase("double"));
+			
+			semModel.makeTensorSymmetricView();
+			VectorSpace vectorSpace = new VectorSpace(semModel, weightScheme, false);
+			
+			long start = System.currentTimeMillis();
+			VectorStore vectorStore = VectorStore.build(vectorSpace, useFloat);
+			vectorStore.save(outputPath);
+			System.out.println("Stored " + vectorStore.size() + " vectors in " + (System.currentTimeMillis() - start) + "ms");
+		}
+		else {
+			System.out.println("BuildVectorStore <modelpath> <outputpath> [weightscheme] [float|double]");
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package sem.run;
+
+import java.io.File;
+
+import sem.model.SemModel;
+
+/**
+ * Converts a SemModel between the text and the binary format.
+ * The input format is detected automatically.
+ */
+public class ConvertModel {
+	public static void main(String[] args) {
+		if(args.length == 3){
+			String inputPath = args[0];
+			String outputPath = args[1];
+			String format = args[2];
+			boolean keepLoc = (new File(inputPath + "_locations.vsm")).exists();
+			
+			SemModel semModel = new SemModel(inputPath, keepLoc);
+			if(format.equalsIgnoreCase("binary"))
+				semModel.save(outputPath);
+			else if(format.equalsIgnoreCase("text"))
+				semModel.saveText(outputPath);
+			else
+				throw new RuntimeException("Unknown format: " + format);
+		}
+		else {
+			System.out.println("ConvertModel <inputpath> <outputpath> <binary|text>");
+		}
+	}
+
+}
@@ -2,21 +2,38 @@ package sem.run;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map.Entry;
 
+import sem.model.DenseEmbeddings;
 import sem.model.SemModel;
 import sem.model.VectorSpace;
+import sem.model.VectorStore;
+import sem.sim.NeighbourTable;
 import sem.sim.SimFinder;
 import sem.sim.SimMeasure;
-import sem.util.Tools;
 
 /**
  * Given a word, find most similar words.
+ * <p>With --table, the results are read from a neighbour table created by BuildNeighbourTable, if it was built with the same settings. Words that are not in the table are compared against every candidate.
+ * <p>With --vectors, the vectors are read from a vector store created by BuildVectorStore.
+ * <p>With --embeddings, the candidates are found with dense embeddings created by BuildEmbeddings, and the best ones are re-ranked with the exact measure. This only works with cosine and euclidean.
  */
 public class MostSimilar {
 	public static void main(String[] args) {
+		String tablePath = null, vectorsPath = null, embeddingsPath = null;
+		while(args.length >= 2 && (args[0].equals("--table") || args[0].equals("--vectors") || args[0].equals("--embeddings"))){
+			if(args[0].equals("--table"))
+				tablePath = args[1];
+			else if(args[0].equals("--vectors"))
+				vectorsPath = args[1];
+			else
+				embeddingsPath = args[1];
+			args = Arrays.copyOfRange(args, 2, args.length);
+		}
+		
 		if(args.length == 4 || args.length == 5){
 			SemModel semModel = new SemModel(args[0], false);
 			if(semModel == null)
@@ -29,9 +46,25 @@ public class MostSimilar {
 			int frequencyLimit = Integer.parseInt(args[2]);
 			int resultLimit = Integer.parseInt(args[3]);
 			
-			semModel.makeTensorSymmetric();
+			semModel.makeTensorSymmetricView();
 			VectorSpace vectorSpace = new VectorSpace(semModel, VectorSpace.WEIGHT_PMI_LIM, true);
+			if(vectorsPath != null)
+				vectorSpace.setVectorStore(new VectorStore(vectorsPath));
+			if(embeddingsPath != null){
+				if(!simMeasure.supportsDense())
+					System.err.println("Embeddings do not support " + simMeasure.getLabel() + ", ignoring them");
+				else
+					vectorSpace.setEmbeddings(new DenseEmbeddings(embeddingsPath));
+			}
 			SimFinder simFinder = new SimFinder(vectorSpace);
+			simFinder.setParallelism(Runtime.getRuntime().availableProcessors());
+			if(tablePath != null){
+				NeighbourTable neighbourTable = new NeighbourTable(tablePath);
+				if(neighbourTable.matches(simMeasure, VectorSpace.WEIGHT_PMI_LIM, frequencyLimit))
+					simFinder.setNeighbourTable(neighbourTable);
+				else
+					System.err.println("Neighbour table was built with different settings, ignoring it");
+			}
 			
 			LinkedHashSet<String> candidateWords = new LinkedHashSet<String>();
 			for(String s : semModel.getNodeIndex().getIdMap().keySet()){
@@ -41,28 +74,21 @@ public class MostSimilar {
 			}
 			
 			if(args.length == 5){
-				LinkedHashMap<String,Double> results = simFinder.getScores(args[4], candidateWords, simMeasure, false);
-				int count = 0;
-				for(Entry<String,Double> e : Tools.sort(results, !simMeasure.isDistance()).entrySet()){
+				LinkedHashMap<String,Double> results = simFinder.getMostSimilar(args[4], candidateWords, simMeasure, resultLimit);
+				for(Entry<String,Double> e : results.entrySet())
 					System.out.println(e.getKey() + "\t" + e.getValue());
-					if(++count >= resultLimit)
-						break;
-				}
 			}
 			else {
+				simFinder.precomputeCandidates(candidateWords, simMeasure, Runtime.getRuntime().availableProcessors());
 				try{
 					BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
 					while(true){
 						String line = br.readLine();
 						if(line.equalsIgnoreCase("q") || line.equalsIgnoreCase("quit") || line.equalsIgnoreCase("exit"))
 							break;
-						LinkedHashMap<String,Double> results = simFinder.getScores(line.trim(), candidateWords, simMeasure, false);
-						int count = 0;
-						for(Entry<String,Double> e : Tools.sort(results, !simMeasure.isDistance()).entrySet()){
+						LinkedHashMap<String,Double> results = simFinder.getMostSimilar(line.trim(), candidateWords, simMeasure, resultLimit);
+						for(Entry<String,Double> e : results.entrySet())
 							System.out.println(e.getKey() + "\t" + e.getValue());
-							if(++count >= resultLimit)
-								break;
-						}
 					}
 				} catch(Exception e){
 					throw new RuntimeException(e);
@@ -70,7 +96,7 @@ public class MostSimilar {
 			}
 		}
 		else {
-			System.out.println("MostSimilar <modelpath> <similaritytype> <frequencylimit> <resultlimit> [word1]");
+			System.out.println("MostSimilar [--table <tablepath>] [--vectors <vectorspath>] [--embeddings <embeddingspath>] <modelpath> <similaritytype> <frequencylimit> <resultlimit> [word1]");
 		}
 	}
 
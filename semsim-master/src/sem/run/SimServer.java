@@ -0,0 +1,345 @@
+package sem.run;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import sem.model.DenseEmbeddings;
+import sem.model.SemModel;
+import sem.model.VectorSpace;
+import sem.model.VectorStore;
+import sem.sim.ModelHandle;
+import sem.sim.NeighbourTable;
+import sem.sim.SimFinder;
+import sem.sim.SimMeasure;
+import sem.util.LatencyHistogram;
+
+/**
+ * A resident HTTP server that loads a model once and answers similarity queries from many clients at the same time.
+ * <p>Every endpoint takes queries of whitespace-separated words, and returns one line for every query:
+ * <ul>
+ * <li>/similarity: "word1 word2", returns the score</li>
+ * <li>/mostsimilar: "word", returns the word followed by the most similar candidates and their scores, separated by tabs</li>
+ * <li>/count: "head relation dep", returns the triple count. A * stands for any label.</li>
+ * <li>/stats: no queries, returns the current model generation and the latency histogram of every endpoint</li>
+ * <li>/reload: no queries, starts loading the model again in the background, from the path parameter or the path of the current model. The new model is swapped in when it is ready (see ModelHandle).</li>
+ * </ul>
+ * <p>A GET request has one query in the q parameter, for example /similarity?q=dance_NN1+ball_NN1.
+ * A POST request is a batch, with one query per line in the body. The lines of the response are written as soon as they are ready, in the order of the queries.
+ * The optional parameters measure and limit override the similarity measure and the result limit of the server.
+ * <p>Requests are handled by a fixed pool of threads. Latencies are recorded for every query, not every request.
+ * All the queries of one request are answered with the same model, even if it is reloaded in the meantime.
+ */
+public class SimServer {
+
+	public static final String[] ENDPOINTS = {"similarity", "mostsimilar", "count"};
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private ModelHandle modelHandle;
+	private SimMeasure simMeasure;
+	private int resultLimit;
+
+	private LinkedHashMap<String,LatencyHistogram> latencies;
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/**
+	 * Thrown for queries that cannot be answered, which are reported to the client with status 400.
+	 */
+	private static class BadRequestException extends RuntimeException{
+		private static final long serialVersionUID = 1L;
+
+		BadRequestException(String message){
+			super(message);
+		}
+	}
+
+	/**
+	 * Create a server for a model.
+	 * @param modelHandle Handle to the model, with a symmetric tensor
+	 * @param simMeasure Default similarity measure
+	 * @param resultLimit Default number of results for /mostsimilar
+	 */
+	public SimServer(ModelHandle modelHandle, SimMeasure simMeasure, int resultLimit){
+		this.modelHandle = modelHandle;
+		this.simMeasure = simMeasure;
+		this.resultLimit = resultLimit;
+		this.latencies = new LinkedHashMap<String,LatencyHistogram>();
+		for(String endpoint : ENDPOINTS)
+			this.latencies.put(endpoint, new LatencyHistogram());
+	}
+
+	/**
+	 * Start listening. The server keeps running until stop() is called.
+	 * @param host Address to bind to, for example "localhost"
+	 * @param port Port, or 0 for any free port
+	 * @param numThreads Number of threads that handle requests
+	 * @return The port that the server listens on
+	 */
+	public synchronized int start(String host, int port, int numThreads){
+		if(this.server != null)
+			throw new RuntimeException("The server is already running");
+		try{
+			this.server = HttpServer.create(new InetSocketAddress(host, port), 0);
+		} catch(IOException e){
+			throw new RuntimeException(e);
+		}
+		for(final String endpoint : ENDPOINTS){
+			this.server.createContext("/" + endpoint, new HttpHandler(){
+				@Override
+				public void handle(HttpExchange exchange) throws IOException{
+					handleQueries(endpoint, exchange);
+				}
+			});
+		}
+		this.server.createContext("/stats", new HttpHandler(){
+			@Override
+			public void handle(HttpExchange exchange) throws IOException{
+				ModelHandle.Generation generation = modelHandle.getCurrent();
+				StringBuilder stats = new StringBuilder();
+				stats.append("generation\t").append(generation.getNumber()).append('\t').append(generation.getPath()).append('\n');
+				String reloadError = modelHandle.getLastReloadError();
+				if(reloadError != null)
+					stats.append("reloaderror\t").append(reloadError.replace('\n', ' ')).append('\n');
+				for(Entry<String,LatencyHistogram> e : latencies.entrySet())
+					stats.append(e.getKey()).append('\t').append(e.getValue()).append('\n');
+				byte[] body = stats.toString().getBytes(UTF8);
+				exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				exchange.getResponseBody().write(body);
+				exchange.close();
+			}
+		});
+		this.server.createContext("/reload", new HttpHandler(){
+			@Override
+			public void handle(HttpExchange exchange) throws IOException{
+				String path = parseParameters(exchange.getRequestURI().getRawQuery()).get("path");
+				if(path == null)
+					path = modelHandle.getCurrent().getPath();
+				byte[] body;
+				if(path == null){
+					body = "No model path to reload from\n".getBytes(UTF8);
+					exchange.sendResponseHeaders(400, body.length);
+				}
+				else {
+					modelHandle.reloadAsync(path);
+					body = ("Reloading " + path + "\n").getBytes(UTF8);
+					exchange.sendResponseHeaders(202, body.length);
+				}
+				exchange.getResponseBody().write(body);
+				exchange.close();
+			}
+		});
+		this.executor = Executors.newFixedThreadPool(Math.max(1, numThreads));
+		this.server.setExecutor(this.executor);
+		this.server.start();
+		return this.server.getAddress().getPort();
+	}
+
+	/**
+	 * Stop listening, and wait up to a second for the requests that are being handled.
+	 */
+	public synchronized void stop(){
+		if(this.server == null)
+			return;
+		this.server.stop(1);
+		this.executor.shutdown();
+		try{
+			this.executor.awaitTermination(1, TimeUnit.SECONDS);
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		this.server = null;
+		this.executor = null;
+	}
+
+	/**
+	 * Get the latencies of an endpoint.
+	 * @param endpoint Name of the endpoint, without the slash
+	 * @return Histogram, or null if there is no such endpoint
+	 */
+	public LatencyHistogram getLatencies(String endpoint){
+		return this.latencies.get(endpoint);
+	}
+
+	private static HashMap<String,String> parseParameters(String query){
+		HashMap<String,String> parameters = new HashMap<String,String>();
+		if(query == null)
+			return parameters;
+		try{
+			for(String parameter : query.split("&")){
+				int separator = parameter.indexOf('=');
+				if(separator < 0)
+					parameters.put(URLDecoder.decode(parameter, "UTF-8"), "");
+				else
+					parameters.put(URLDecoder.decode(parameter.substring(0, separator), "UTF-8"), URLDecoder.decode(parameter.substring(separator + 1), "UTF-8"));
+			}
+		} catch(UnsupportedEncodingException e){
+			throw new RuntimeException(e);
+		}
+		return parameters;
+	}
+
+	private void handleQueries(String endpoint, HttpExchange exchange) throws IOException{
+		ModelHandle.Generation generation = null;
+		try{
+			HashMap<String,String> parameters = parseParameters(exchange.getRequestURI().getRawQuery());
+			SimMeasure simMeasure = this.simMeasure;
+			if(parameters.containsKey("measure")){
+				simMeasure = SimMeasure.getType(parameters.get("measure"));
+				if(simMeasure == null)
+					throw new BadRequestException("Unknown similarity measure: " + parameters.get("measure"));
+			}
+			int limit = this.resultLimit;
+			if(parameters.containsKey("limit")){
+				try{
+					limit = Integer.parseInt(parameters.get("limit"));
+				} catch(NumberFormatException e){
+					throw new BadRequestException("Invalid limit: " + parameters.get("limit"));
+				}
+			}
+
+			// All the queries are checked before the response is started, so that a bad query can still be reported with a status
+			ArrayList<String[]> queries = new ArrayList<String[]>();
+			if(exchange.getRequestMethod().equalsIgnoreCase("POST")){
+				BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), UTF8));
+				String line;
+				while((line = reader.readLine()) != null)
+					if(line.trim().length() > 0)
+						queries.add(parseQuery(endpoint, line));
+			}
+			else if(parameters.containsKey("q"))
+				queries.add(parseQuery(endpoint, parameters.get("q")));
+			else
+				throw new BadRequestException("No query, use the q parameter or POST one query per line");
+
+			generation = this.modelHandle.acquire();
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+			exchange.sendResponseHeaders(200, 0);
+			OutputStream output = exchange.getResponseBody();
+			LatencyHistogram histogram = this.latencies.get(endpoint);
+			for(String[] query : queries){
+				long start = System.nanoTime();
+				String answer = answer(generation, endpoint, query, simMeasure, limit);
+				histogram.record(System.nanoTime() - start);
+				output.write((answer + "\n").getBytes(UTF8));
+				output.flush();
+			}
+		} catch(BadRequestException e){
+			byte[] body = (e.getMessage() + "\n").getBytes(UTF8);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+			exchange.sendResponseHeaders(400, body.length);
+			exchange.getResponseBody().write(body);
+		} finally {
+			if(generation != null)
+				generation.release();
+			exchange.close();
+		}
+	}
+
+	private static String[] parseQuery(String endpoint, String line){
+		String[] words = line.trim().split("\\s+");
+		int expected = endpoint.equals("similarity")?2:(endpoint.equals("mostsimilar")?1:3);
+		if(words.length != expected)
+			throw new BadRequestException("Query for /" + endpoint + " should contain " + expected + " words separated by whitespace: " + line);
+		return words;
+	}
+
+	/**
+	 * Answer one query.
+	 * @param generation Model that answers the query
+	 * @param endpoint Name of the endpoint
+	 * @param query Words of the query
+	 * @param simMeasure Similarity measure
+	 * @param limit Number of results for /mostsimilar
+	 * @return One line without the line break
+	 */
+	private static String answer(ModelHandle.Generation generation, String endpoint, String[] query, SimMeasure simMeasure, int limit){
+		if(endpoint.equals("similarity"))
+			return Double.toString(generation.getSimFinder().getScore(simMeasure, query[0], query[1]));
+		else if(endpoint.equals("mostsimilar")){
+			StringBuilder line = new StringBuilder(query[0]);
+			for(Entry<String,Double> e : generation.getSimFinder().getMostSimilar(query[0], generation.getCandidateWords(), simMeasure, limit).entrySet())
+				line.append('\t').append(e.getKey()).append('\t').append(e.getValue());
+			return line.toString();
+		}
+		else if(endpoint.equals("count"))
+			return Double.toString(generation.getSemModel().getTripleCount(wildcard(query[0]), wildcard(query[1]), wildcard(query[2])));
+		throw new BadRequestException("Unknown endpoint: " + endpoint);
+	}
+
+	private static String wildcard(String label){
+		return label.equals("*")?null:label;
+	}
+
+	public ModelHandle getModelHandle(){
+		return this.modelHandle;
+	}
+
+	public static void main(String[] args){
+		String tablePath = null, vectorsPath = null, embeddingsPath = null;
+		while(args.length >= 2 && (args[0].equals("--table") || args[0].equals("--vectors") || args[0].equals("--embeddings"))){
+			if(args[0].equals("--table"))
+				tablePath = args[1];
+			else if(args[0].equals("--vectors"))
+				vectorsPath = args[1];
+			else
+				embeddingsPath = args[1];
+			args = Arrays.copyOfRange(args, 2, args.length);
+		}
+
+		if(args.length == 5 || args.length == 6){
+			SemModel semModel = new SemModel(args[0], false);
+			SimMeasure simMeasure = SimMeasure.getType(args[1]);
+			if(simMeasure == null)
+				throw new RuntimeException("SimMeasureType is null");
+			int frequencyLimit = Integer.parseInt(args[2]);
+			int resultLimit = Integer.parseInt(args[3]);
+			int port = Integer.parseInt(args[4]);
+			int numThreads = (args.length == 6)?Integer.parseInt(args[5]):Runtime.getRuntime().availableProcessors();
+
+			semModel.makeTensorSymmetricView();
+			VectorSpace vectorSpace = new VectorSpace(semModel, VectorSpace.WEIGHT_PMI_LIM, true);
+			if(vectorsPath != null)
+				vectorSpace.setVectorStore(new VectorStore(vectorsPath));
+			if(embeddingsPath != null)
+				vectorSpace.setEmbeddings(new DenseEmbeddings(embeddingsPath));
+			SimFinder simFinder = new SimFinder(vectorSpace);
+			if(tablePath != null){
+				NeighbourTable neighbourTable = new NeighbourTable(tablePath);
+				if(neighbourTable.matches(simMeasure, VectorSpace.WEIGHT_PMI_LIM, frequencyLimit))
+					simFinder.setNeighbourTable(neighbourTable);
+				else
+					System.err.println("Neighbour table was built with different settings, ignoring it");
+			}
+
+			ModelHandle modelHandle = new ModelHandle(simFinder, args[0], frequencyLimit);
+			modelHandle.setNumThreads(numThreads);
+			simFinder.precomputeCandidates(modelHandle.getCurrent().getCandidateWords(), simMeasure, numThreads);
+			SimServer simServer = new SimServer(modelHandle, simMeasure, resultLimit);
+			int boundPort = simServer.start("localhost", port, numThreads);
+			System.err.println("Listening on http://localhost:" + boundPort + "/");
+		}
+		else {
+			System.out.println("SimServer [--table <tablepath>] [--vectors <vectorspath>] [--embeddings <embeddingspath>] <modelpath> <similaritytype> <frequencylimit> <resultlimit> <port> [threads]");
+		}
+	}
+}
@@ -2,18 +2,26 @@ package sem.run;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.util.Arrays;
 
 import sem.model.SemModel;
 import sem.model.VectorSpace;
+import sem.model.VectorStore;
 import sem.sim.SimFinder;
 import sem.sim.SimMeasure;
 
 /**
  * Find the similarity between two words.
- *
+ * <p>With --vectors, the vectors are read from a vector store created by BuildVectorStore.
  */
 public class Similarity {
 	public static void main(String[] args) {
+		String vectorsPath = null;
+		if(args.length >= 2 && args[0].equals("--vectors")){
+			vectorsPath = args[1];
+			args = Arrays.copyOfRange(args, 2, args.length);
+		}
+		
 		if(args.length == 2 || args.length == 4){
 			SemModel semModel = new SemModel(args[0], false);
 			if(semModel == null)
@@ -23,8 +31,10 @@ public class Similarity {
 			if(simMeasure == null)
 				throw new RuntimeException("SimMeasureType is null");
 			
-			semModel.makeTensorSymmetric();
+			semModel.makeTensorSymmetricView();
 			VectorSpace vectorSpace = new VectorSpace(semModel, VectorSpace.WEIGHT_PMI_LIM, true);
+			if(vectorsPath != null)
+				vectorSpace.setVectorStore(new VectorStore(vectorsPath));
 			SimFinder simFinder = new SimFinder(vectorSpace);
 			
 			if(args.length == 4){
@@ -48,7 +58,7 @@ public class Similarity {
 			}
 		}
 		else {
-			System.out.println("Similarity <modelpath> <similaritytype> [word1] [word2]");
+			System.out.println("Similarity [--vectors <vectorspath>] <modelpath> <similaritytype> [word1] [word2]");
 		}
 	}
 
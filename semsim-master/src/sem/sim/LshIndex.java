@@ -0,0 +1,283 @@
+package sem.sim;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+
+import sem.model.VectorSpace;
+import sem.util.BinaryReader;
+import sem.util.BinaryWriter;
+import sem.util.Hashing;
+import sem.util.SparseVector;
+
+/**
+ * A locality-sensitive hashing index over the vectors of a set of candidate words, for finding near neighbours without scoring every candidate.
+ * <p>Every vector gets a signature of bands * rows hash values, and the candidates that have the same hash for all the rows of at least one band are returned for a query.
+ * More rows per band make the buckets more selective, and more bands find more of the true neighbours.
+ * <ul>
+ * <li>MINHASH signatures estimate the Jaccard similarity of the feature sets, so they work with jaccardSet, diceSet and cosineSet, which only depend on the sets.</li>
+ * <li>SIMHASH signatures are the signs of random projections of the weighted vectors, which estimate the angle between them, so they work with cosine.</li>
+ * </ul>
+ * <p>The index is built once with build() and saved in a binary file. The candidates are then scored with the exact measure in SimFinder.getApproximateMostSimilar().
+ * Vectors without any features are not put into the index.
+ */
+public class LshIndex {
+
+	public static final int MINHASH = 0;
+	public static final int SIMHASH = 1;
+
+	private static final int MAGIC = 0x53454D48;
+	private static final int VERSION = 1;
+
+	private int type;
+	private int weightScheme;
+	private int frequencyLimit;
+	private int bands;
+	private int rows;
+	private long seed;
+
+	private String[] labels;
+	// For every band, the bucket keys of the indexed candidates in increasing order, and the candidates in the same order
+	private IntBuffer bucketKeys;
+	private IntBuffer bucketMembers;
+
+	private LshIndex(){
+	}
+
+	/**
+	 * Open an index that has been saved with save().
+	 * @param file Input file
+	 */
+	public LshIndex(String file){
+		BinaryReader reader = new BinaryReader(file);
+		try{
+			if(reader.readInt() != MAGIC)
+				throw new RuntimeException("Not an LSH index file: " + file);
+			int version = reader.readInt();
+			if(version != VERSION)
+				throw new RuntimeException("Unsupported LSH index version " + version + " in " + file);
+			this.type = reader.readInt();
+			this.weightScheme = reader.readInt();
+			this.frequencyLimit = reader.readInt();
+			this.bands = reader.readInt();
+			this.rows = reader.readInt();
+			this.seed = reader.readLong();
+			this.labels = NeighbourTable.readLabels(reader);
+			this.bucketKeys = reader.readInts();
+			this.bucketMembers = reader.readInts();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Build the index for the candidate words.
+	 * @param vectorSpace Vector space
+	 * @param candidateWords Words that can be returned as neighbours
+	 * @param type MINHASH or SIMHASH
+	 * @param bands Number of bands
+	 * @param rows Number of rows in every band
+	 * @param frequencyLimit The frequency limit that was used for choosing the candidates. Only stored, so that queries can check it.
+	 * @param seed Seed of the hash functions
+	 * @return The index
+	 */
+	public static LshIndex build(VectorSpace vectorSpace, Collection<String> candidateWords, int type, int bands, int rows, int frequencyLimit, long seed){
+		if(type != MINHASH && type != SIMHASH)
+			throw new IllegalArgumentException("Unknown LSH type: " + type);
+		if(bands <= 0 || rows <= 0)
+			throw new IllegalArgumentException("The number of bands and rows has to be positive");
+
+		LshIndex index = new LshIndex();
+		index.type = type;
+		index.weightScheme = vectorSpace.getWeightScheme();
+		index.frequencyLimit = frequencyLimit;
+		index.bands = bands;
+		index.rows = rows;
+		index.seed = seed;
+		index.labels = candidateWords.toArray(new String[candidateWords.size()]);
+
+		// The key and the candidate are packed into one long, so that sorting orders the candidates of every bucket together
+		long[][] entries = new long[bands][index.labels.length];
+		int count = 0;
+		for(int i = 0; i < index.labels.length; i++){
+			SparseVector vector = vectorSpace.getSparseVector(index.labels[i]);
+			if(vector.size() == 0)
+				continue;
+			int[] keys = index.getBucketKeys(vector);
+			for(int band = 0; band < bands; band++)
+				entries[band][count] = ((long)keys[band] << 32) | i;
+			count++;
+		}
+
+		int[] keyArray = new int[bands * count];
+		int[] memberArray = new int[bands * count];
+		for(int band = 0; band < bands; band++){
+			long[] bandEntries = Arrays.copyOf(entries[band], count);
+			Arrays.sort(bandEntries);
+			for(int i = 0; i < count; i++){
+				keyArray[band * count + i] = (int)(bandEntries[i] >> 32);
+				memberArray[band * count + i] = (int)bandEntries[i];
+			}
+		}
+		index.bucketKeys = IntBuffer.wrap(keyArray);
+		index.bucketMembers = IntBuffer.wrap(memberArray);
+		return index;
+	}
+
+	/**
+	 * Save the index into a binary file.
+	 * @param file Output file
+	 */
+	public void save(String file){
+		BinaryWriter writer = new BinaryWriter(file);
+		writer.writeInt(MAGIC);
+		writer.writeInt(VERSION);
+		writer.writeInt(this.type);
+		writer.writeInt(this.weightScheme);
+		writer.writeInt(this.frequencyLimit);
+		writer.writeInt(this.bands);
+		writer.writeInt(this.rows);
+		writer.writeLong(this.seed);
+		NeighbourTable.writeLabels(writer, this.labels);
+		writer.writeInts(this.bucketKeys);
+		writer.writeInts(this.bucketMembers);
+		writer.close();
+	}
+
+	/**
+	 * Compute the signature of a vector, and hash the rows of every band into one key.
+	 */
+	private int[] getBucketKeys(SparseVector vector){
+		int[] ids = vector.getIds();
+		double[] weights = vector.getWeights();
+		int length = this.bands * this.rows;
+		long[] signature = new long[length];
+		double[] sums = null;
+		if(this.type == MINHASH)
+			Arrays.fill(signature, Long.MAX_VALUE);
+		else
+			sums = new double[length];
+
+		for(int i = 0; i < ids.length; i++){
+			long featureHash = Hashing.featureHash(this.seed, ids[i]);
+			for(int j = 0; j < length; j++){
+				long hash = Hashing.mix(featureHash + j);
+				if(this.type == MINHASH){
+					if(hash < signature[j])
+						signature[j] = hash;
+				}
+				else
+					sums[j] += ((hash & 1L) == 0)?weights[i]:-weights[i];
+			}
+		}
+		if(this.type == SIMHASH)
+			for(int j = 0; j < length; j++)
+				signature[j] = (sums[j] >= 0.0)?1:0;
+
+		int[] keys = new int[this.bands];
+		for(int band = 0; band < this.bands; band++){
+			long key = Hashing.mix(this.seed ^ band);
+			for(int row = 0; row < this.rows; row++)
+				key = Hashing.mix(key + signature[band * this.rows + row]);
+			keys[band] = (int)key;
+		}
+		return keys;
+	}
+
+	/**
+	 * Find the candidates that share a bucket with a vector in at least one band.
+	 * @param vector The vector of the query word
+	 * @return Positions of the candidates in the order of the candidate words, see getLabel().
+	 */
+	public int[] getCandidates(SparseVector vector){
+		if(vector.size() == 0)
+			return new int[0];
+		int[] keys = getBucketKeys(vector);
+		int count = this.bucketKeys.limit() / this.bands;
+		boolean[] found = new boolean[this.labels.length];
+		int foundCount = 0;
+		for(int band = 0; band < this.bands; band++){
+			int start = band * count;
+			int low = start, high = start + count;
+			while(low < high){
+				int middle = (low + high) >>> 1;
+				if(this.bucketKeys.get(middle) < keys[band])
+					low = middle + 1;
+				else
+					high = middle;
+			}
+			for(int i = low; i < start + count && this.bucketKeys.get(i) == keys[band]; i++){
+				int member = this.bucketMembers.get(i);
+				if(!found[member]){
+					found[member] = true;
+					foundCount++;
+				}
+			}
+		}
+
+		int[] candidates = new int[foundCount];
+		int position = 0;
+		for(int i = 0; i < found.length && position < foundCount; i++)
+			if(found[i])
+				candidates[position++] = i;
+		return candidates;
+	}
+
+	/**
+	 * Check whether the index can be used for finding neighbours with a similarity measure.
+	 * @param simMeasure Similarity measure
+	 * @return True for the set measures with MINHASH, and cosine with SIMHASH
+	 */
+	public boolean supports(SimMeasure simMeasure){
+		if(this.type == MINHASH)
+			return simMeasure == SimMeasure.JACCARD_SET || simMeasure == SimMeasure.DICE_SET || simMeasure == SimMeasure.COSINE_SET;
+		return simMeasure == SimMeasure.COSINE;
+	}
+
+	/**
+	 * Check whether the index was built with the given settings.
+	 * @param weightScheme Weight scheme of the vector space
+	 * @param frequencyLimit Frequency limit of the candidates
+	 * @return True if the index can be used for these settings
+	 */
+	public boolean matches(int weightScheme, int frequencyLimit){
+		return this.weightScheme == weightScheme && this.frequencyLimit == frequencyLimit;
+	}
+
+	/**
+	 * Get a candidate word.
+	 * @param position Position in the order of the candidate words
+	 * @return The word
+	 */
+	public String getLabel(int position){
+		return this.labels[position];
+	}
+
+	public int getType(){
+		return this.type;
+	}
+
+	public int getWeightScheme(){
+		return this.weightScheme;
+	}
+
+	public int getFrequencyLimit(){
+		return this.frequencyLimit;
+	}
+
+	public int getBands(){
+		return this.bands;
+	}
+
+	public int getRows(){
+		return this.rows;
+	}
+
+	/**
+	 * Get the number of candidate words, including the ones that are not in the index.
+	 * @return Number of candidates
+	 */
+	public int size(){
+		return this.labels.length;
+	}
+}
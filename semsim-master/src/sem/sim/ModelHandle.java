@@ -0,0 +1,255 @@
+package sem.sim;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import sem.model.SemModel;
+import sem.model.VectorSpace;
+
+/**
+ * A handle to the current model of a long-running service, which can be replaced with a newer model without stopping the queries.
+ * <p>Queries call acquire() to get the current Generation, and release() it when they are done, so that a query sees the same model from start to end.
+ * reload() loads a new model directory in the background, and warms up its vector cache with the nodes that were used the most in the current model.
+ * The new generation is then swapped in atomically. The old one is closed once the last query that acquired it has released it.
+ * <p>Vector stores, embeddings and neighbour tables are built for one model, so they are not carried over to the reloaded models.
+ */
+public class ModelHandle {
+
+	/**
+	 * A model together with its vector space, similarity finder and candidate words.
+	 */
+	public static class Generation{
+		private int number;
+		private String path;
+		private SemModel semModel;
+		private VectorSpace vectorSpace;
+		private SimFinder simFinder;
+		private LinkedHashSet<String> candidateWords;
+		private AtomicInteger readers;
+		private volatile boolean retired;
+		private AtomicBoolean closed;
+
+		private Generation(int number, String path, SimFinder simFinder, int frequencyLimit){
+			this.number = number;
+			this.path = path;
+			this.simFinder = simFinder;
+			this.vectorSpace = simFinder.getVectorSpace();
+			this.semModel = this.vectorSpace.getSemModel();
+			this.candidateWords = new LinkedHashSet<String>();
+			for(String s : this.semModel.getNodeIndex().getIdMap().keySet())
+				if(this.semModel.getNodeCount(s) >= frequencyLimit)
+					this.candidateWords.add(s);
+			this.readers = new AtomicInteger(0);
+			this.retired = false;
+			this.closed = new AtomicBoolean(false);
+		}
+
+		/**
+		 * Finish a query that acquired this generation.
+		 */
+		public void release(){
+			if(this.readers.decrementAndGet() == 0 && this.retired)
+				close();
+		}
+
+		private void close(){
+			if(this.closed.compareAndSet(false, true)){
+				this.vectorSpace.clearCache();
+			}
+		}
+
+		/**
+		 * Get the number of the generation, which starts from 1 and grows by one with every reload.
+		 */
+		public int getNumber(){
+			return this.number;
+		}
+
+		/**
+		 * Get the path that the model was loaded from, or null if it was created in memory.
+		 */
+		public String getPath(){
+			return this.path;
+		}
+
+		public SemModel getSemModel(){
+			return this.semModel;
+		}
+
+		public VectorSpace getVectorSpace(){
+			return this.vectorSpace;
+		}
+
+		public SimFinder getSimFinder(){
+			return this.simFinder;
+		}
+
+		/**
+		 * Get the words that occur at least frequencyLimit times in the model.
+		 */
+		public LinkedHashSet<String> getCandidateWords(){
+			return this.candidateWords;
+		}
+
+		/**
+		 * Check whether the generation has been replaced and all its queries have finished.
+		 */
+		public boolean isClosed(){
+			return this.closed.get();
+		}
+	}
+
+	private volatile Generation current;
+	private int frequencyLimit;
+	private int warmupLimit;
+	private int numThreads;
+	private ExecutorService loader;
+	private volatile String lastReloadError;
+
+	/**
+	 * Create a handle for a model that has already been loaded.
+	 * @param simFinder Similarity finder for the vector space of the model
+	 * @param path Path of the model, or null
+	 * @param frequencyLimit Minimum frequency of the candidate words
+	 */
+	public ModelHandle(SimFinder simFinder, String path, int frequencyLimit){
+		this.frequencyLimit = frequencyLimit;
+		this.warmupLimit = Integer.MAX_VALUE;
+		this.numThreads = Runtime.getRuntime().availableProcessors();
+		this.current = new Generation(1, path, simFinder, frequencyLimit);
+		this.loader = Executors.newSingleThreadExecutor(new ThreadFactory(){
+			@Override
+			public Thread newThread(Runnable runnable){
+				Thread thread = new Thread(runnable, "model-loader");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Set the number of hot nodes whose vectors are created in a new model before it is swapped in. The default is all the nodes in the vector cache.
+	 * @param warmupLimit Number of nodes, 0 to turn off warming up
+	 */
+	public void setWarmupLimit(int warmupLimit){
+		this.warmupLimit = warmupLimit;
+	}
+
+	/**
+	 * Set the number of threads for warming up the vector cache. The default is the number of processors.
+	 * @param numThreads Number of threads
+	 */
+	public void setNumThreads(int numThreads){
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * Get the current generation for a query. It has to be released with Generation.release() when the query is done, also when the query fails.
+	 * @return The generation
+	 */
+	public Generation acquire(){
+		while(true){
+			Generation generation = this.current;
+			generation.readers.incrementAndGet();
+			// A reload may have swapped the generation out in the meantime, in which case the new one is used
+			if(generation == this.current)
+				return generation;
+			generation.release();
+		}
+	}
+
+	/**
+	 * Get the current generation without acquiring it, for example for reporting. It can be closed at any time.
+	 * @return The generation
+	 */
+	public Generation getCurrent(){
+		return this.current;
+	}
+
+	/**
+	 * Replace the model with one that has already been loaded. The old generation is closed when its queries have finished.
+	 * @param simFinder Similarity finder for the vector space of the new model
+	 * @param path Path of the new model, or null
+	 * @return The new generation
+	 */
+	public synchronized Generation swap(SimFinder simFinder, String path){
+		Generation old = this.current;
+		Generation generation = new Generation(old.number + 1, path, simFinder, this.frequencyLimit);
+		this.current = generation;
+		old.retired = true;
+		if(old.readers.get() == 0)
+			old.close();
+		return generation;
+	}
+
+	/**
+	 * Load a model, warm up its vector cache, and swap it in, in the calling thread.
+	 * The vector space has the same weight scheme as the current one, and the similarity finder the same parallelism.
+	 * @param path Path of the new model
+	 * @return The new generation
+	 */
+	public Generation reload(String path){
+		Generation old = acquire();
+		VectorSpace vectorSpace;
+		SimFinder simFinder;
+		try{
+			SemModel semModel = new SemModel(path, false);
+			semModel.makeTensorSymmetricView();
+			vectorSpace = new VectorSpace(semModel, old.vectorSpace.getWeightScheme(), true);
+			simFinder = new SimFinder(vectorSpace);
+			simFinder.setParallelism(old.simFinder.getParallelism());
+			if(this.warmupLimit > 0){
+				ArrayList<String> hotNodes = old.vectorSpace.getHotNodes(this.warmupLimit);
+				vectorSpace.precompute(hotNodes, this.numThreads);
+			}
+		} finally {
+			old.release();
+		}
+		return swap(simFinder, path);
+	}
+
+	/**
+	 * Start reload() in a background thread. Reloads are done one at a time, in the order they were started.
+	 * If the model cannot be loaded, the error is printed and kept for getLastReloadError(), and the current generation stays in use.
+	 * @param path Path of the new model
+	 * @return The new generation when it has been swapped in, or the current one if the reload failed
+	 */
+	public Future<Generation> reloadAsync(final String path){
+		return this.loader.submit(new Callable<Generation>(){
+			@Override
+			public Generation call(){
+				try{
+					Generation generation = reload(path);
+					lastReloadError = null;
+					return generation;
+				} catch(RuntimeException e){
+					System.err.println("Reloading the model from " + path + " failed, keeping generation " + current.number);
+					e.printStackTrace();
+					lastReloadError = path + ": " + e;
+					return current;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Get the error of the last background reload, or null if it succeeded or there has not been one.
+	 */
+	public String getLastReloadError(){
+		return this.lastReloadError;
+	}
+
+	/**
+	 * Stop the background loader. Reloads that have already started are finished.
+	 */
+	public void shutdown(){
+		this.loader.shutdown();
+	}
+}
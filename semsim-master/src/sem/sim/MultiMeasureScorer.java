@@ -0,0 +1,172 @@
+package sem.sim;
+
+import java.util.Collection;
+
+import sem.util.SparseVector;
+
+/**
+ * Scores a pair of vectors with several similarity measures at once.
+ * <p>The measures that only depend on the shared features and the sums cached in the vectors (cosine, the set measures, lin, jaccardGen, diceGen, diceGen2, clarkeDE, the weeds measures, linD and balPrec) are derived from statistics that are collected in one walk over the shared features.
+ * The other measures are calculated with SimMeasure.sim(), and share the rank orders that are cached in the vectors.
+ * <p>The scores are the same as from SimMeasure.sim(), except for rounding differences from adding up the values in a different order. A scorer can be used by several threads at the same time.
+ */
+public class MultiMeasureScorer {
+
+	private SimMeasure[] measures;
+	private boolean needsStatistics;
+
+	/**
+	 * Statistics of the shared features of two vectors a and b.
+	 */
+	private static class PairStatistics{
+		// Sum of a*b
+		private double dotProduct;
+		// Sum of min(a,b)
+		private double minSum;
+		// Features with a non-zero weight in a, in b, and in both
+		private int nonZeroA;
+		private int nonZeroB;
+		private int nonZeroBoth;
+		// Sums over the features that are positive in both vectors
+		private double positiveA;
+		private double positiveB;
+	}
+
+	public MultiMeasureScorer(Collection<SimMeasure> measures){
+		this.measures = measures.toArray(new SimMeasure[measures.size()]);
+		this.needsStatistics = false;
+		for(SimMeasure simMeasure : this.measures)
+			if(isDerived(simMeasure))
+				this.needsStatistics = true;
+	}
+
+	/**
+	 * Check whether a measure is derived from the shared statistics, instead of being calculated separately.
+	 */
+	private static boolean isDerived(SimMeasure simMeasure){
+		switch(simMeasure){
+		case COSINE:
+		case JACCARD_SET:
+		case LIN:
+		case DICE_SET:
+		case OVERLAP_SET:
+		case COSINE_SET:
+		case JACCARD_GEN:
+		case DICE_GEN:
+		case DICE_GEN_2:
+		case CLARKE_DE:
+		case WEEDS_PREC:
+		case WEEDS_REC:
+		case WEEDS_F:
+		case LIN_D:
+		case BAL_PREC:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private static PairStatistics getStatistics(SparseVector a, SparseVector b){
+		PairStatistics statistics = new PairStatistics();
+		int[] aIds = a.getIds(), bIds = b.getIds();
+		double[] aWeights = a.getWeights(), bWeights = b.getWeights();
+		int i = 0, j = 0;
+		while(i < aIds.length && j < bIds.length){
+			if(aIds[i] < bIds[j])
+				i++;
+			else if(aIds[i] > bIds[j])
+				j++;
+			else {
+				double aWeight = aWeights[i++], bWeight = bWeights[j++];
+				statistics.dotProduct += aWeight * bWeight;
+				statistics.minSum += Math.min(aWeight, bWeight);
+				if(aWeight != 0.0)
+					statistics.nonZeroA++;
+				if(bWeight != 0.0)
+					statistics.nonZeroB++;
+				if(aWeight != 0.0 && bWeight != 0.0)
+					statistics.nonZeroBoth++;
+				if(aWeight > 0.0 && bWeight > 0.0){
+					statistics.positiveA += aWeight;
+					statistics.positiveB += bWeight;
+				}
+			}
+		}
+		return statistics;
+	}
+
+	private static double divide(double value, double total){
+		return (total == 0.0)?0.0:(value / total);
+	}
+
+	private static double derive(SimMeasure simMeasure, PairStatistics statistics, SparseVector a, SparseVector b){
+		// The set measures count the features that are non-zero in the larger vector, as in SimMeasure
+		double sharedCount = (a.size() > b.size())?statistics.nonZeroA:statistics.nonZeroB;
+		switch(simMeasure){
+		case COSINE:
+			if(a.getSumOfSquares() == 0.0 || b.getSumOfSquares() == 0.0)
+				return 0.0;
+			return statistics.dotProduct / Math.sqrt(a.getSumOfSquares() * b.getSumOfSquares());
+		case JACCARD_SET:
+			return divide(sharedCount, a.getNonZeroCount() + b.getNonZeroCount() - statistics.nonZeroBoth);
+		case LIN:
+			return divide(statistics.positiveA + statistics.positiveB, a.getPositiveSum() + b.getPositiveSum());
+		case DICE_SET:
+			return divide(2 * sharedCount, a.getNonZeroCount() + b.getNonZeroCount());
+		case OVERLAP_SET:
+			return divide(sharedCount, Math.min(a.getNonZeroCount(), b.getNonZeroCount()));
+		case COSINE_SET:
+			if(a.getNonZeroCount() == 0 || b.getNonZeroCount() == 0)
+				return 0.0;
+			return sharedCount / Math.sqrt((double)a.getNonZeroCount() * b.getNonZeroCount());
+		case JACCARD_GEN:
+			// The larger weights of the shared features and all the other weights add up to the two sums minus the smaller weights
+			return divide(statistics.minSum, a.getSum() + b.getSum() - statistics.minSum);
+		case DICE_GEN:
+			return divide(2 * statistics.minSum, a.getSum() + b.getSum());
+		case DICE_GEN_2:
+			return divide(statistics.dotProduct, a.getSum() + b.getSum());
+		case CLARKE_DE:
+			return divide(statistics.minSum, a.getSum());
+		case WEEDS_PREC:
+			return divide(statistics.positiveA, a.getPositiveSum());
+		case WEEDS_REC:
+			return divide(statistics.positiveB, b.getPositiveSum());
+		case WEEDS_F:
+			double prec = divide(statistics.positiveA, a.getPositiveSum());
+			double rec = divide(statistics.positiveB, b.getPositiveSum());
+			return divide(2 * prec * rec, prec + rec);
+		case LIN_D:
+			return divide(statistics.positiveA + statistics.positiveB, a.getPositiveSum() + statistics.positiveB);
+		case BAL_PREC:
+			return Math.sqrt(derive(SimMeasure.LIN, statistics, a, b) * derive(SimMeasure.WEEDS_PREC, statistics, a, b));
+		default:
+			throw new RuntimeException("Similarity measure " + simMeasure.getLabel() + " is not derived from the statistics");
+		}
+	}
+
+	/**
+	 * Score a pair of vectors with every measure, in the order the measures were given.
+	 * @param a First argument of the similarity measures
+	 * @param b Second argument of the similarity measures
+	 * @return The scores
+	 */
+	public double[] score(SparseVector a, SparseVector b){
+		SimMeasure.validateVectors(a, b);
+		PairStatistics statistics = this.needsStatistics?getStatistics(a, b):null;
+		double[] scores = new double[this.measures.length];
+		for(int i = 0; i < this.measures.length; i++){
+			if(isDerived(this.measures[i])){
+				scores[i] = derive(this.measures[i], statistics, a, b);
+				SimMeasure.validateResult(scores[i]);
+			}
+			else
+				scores[i] = this.measures[i].sim(a, b);
+		}
+		return scores;
+	}
+
+	public SimMeasure[] getMeasures(){
+		return this.measures.clone();
+	}
+}
@@ -0,0 +1,311 @@
+package sem.sim;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import sem.model.VectorSpace;
+import sem.util.BinaryReader;
+import sem.util.BinaryWriter;
+import sem.util.Hashing;
+import sem.util.SparseVector;
+import sem.util.TopKCollector;
+
+/**
+ * A precomputed table of the k most similar candidates for every word, under one similarity measure and weight scheme.
+ * <p>The table is built offline with build() and saved in a binary file. Looking up the neighbours of a word is then a hash lookup and an array slice, instead of comparing against every candidate.
+ * The neighbours are in the same order as returned by sorting the scores with Tools.sort(), with ties broken by the order of the candidates.
+ * <p>Only queries with the same candidate words, similarity measure and weight scheme can be answered from the table. The table stores a fingerprint of the candidate words, which SimFinder checks, and falls back to computing the scores in other cases.
+ */
+public class NeighbourTable {
+
+	private static final int MAGIC = 0x53454D4E;
+	private static final int VERSION = 2;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private SimMeasure simMeasure;
+	private int weightScheme;
+	private int frequencyLimit;
+	private long candidateFingerprint;
+	private int k;
+
+	private String[] labels;
+	private HashMap<String,Integer> ids;
+	private IntBuffer rowOffsets;
+	private IntBuffer neighbours;
+	private DoubleBuffer scores;
+
+	private NeighbourTable(){
+	}
+
+	/**
+	 * Open a table that has been saved with save().
+	 * @param file Input file
+	 */
+	public NeighbourTable(String file){
+		BinaryReader reader = new BinaryReader(file);
+		try{
+			if(reader.readInt() != MAGIC)
+				throw new RuntimeException("Not a neighbour table file: " + file);
+			int version = reader.readInt();
+			if(version != VERSION)
+				throw new RuntimeException("Unsupported neighbour table version " + version + " in " + file);
+			this.weightScheme = reader.readInt();
+			this.frequencyLimit = reader.readInt();
+			this.candidateFingerprint = reader.readLong();
+			this.k = reader.readInt();
+			this.simMeasure = SimMeasure.getType(decode(reader.readBytes()));
+			if(this.simMeasure == null)
+				throw new RuntimeException("Unknown similarity measure in " + file);
+
+			this.labels = readLabels(reader);
+			this.rowOffsets = reader.readInts();
+			this.neighbours = reader.readInts();
+			this.scores = reader.readDoubles();
+		} finally {
+			reader.close();
+		}
+
+		this.ids = new HashMap<String,Integer>();
+		for(int i = 0; i < this.labels.length; i++)
+			this.ids.put(this.labels[i], i);
+	}
+
+	/**
+	 * Read labels that have been written with writeLabels().
+	 */
+	static String[] readLabels(BinaryReader reader){
+		IntBuffer labelOffsets = reader.readInts();
+		ByteBuffer labelBytes = reader.readBytes();
+		String[] labels = new String[labelOffsets.limit() - 1];
+		for(int i = 0; i < labels.length; i++){
+			byte[] bytes = new byte[labelOffsets.get(i+1) - labelOffsets.get(i)];
+			for(int j = 0; j < bytes.length; j++)
+				bytes[j] = labelBytes.get(labelOffsets.get(i) + j);
+			labels[i] = new String(bytes, UTF8);
+		}
+		return labels;
+	}
+
+	/**
+	 * Write labels as an offset table and the UTF-8 bytes of all the labels.
+	 */
+	static void writeLabels(BinaryWriter writer, String[] labels){
+		int[] labelOffsets = new int[labels.length + 1];
+		byte[][] encoded = new byte[labels.length][];
+		long byteCount = 0;
+		for(int i = 0; i < labels.length; i++){
+			encoded[i] = labels[i].getBytes(UTF8);
+			byteCount += encoded[i].length;
+			if(byteCount > Integer.MAX_VALUE)
+				throw new RuntimeException("Labels are too large for the file format");
+			labelOffsets[i+1] = (int)byteCount;
+		}
+		byte[] labelBytes = new byte[(int)byteCount];
+		for(int i = 0; i < labels.length; i++)
+			System.arraycopy(encoded[i], 0, labelBytes, labelOffsets[i], encoded[i].length);
+		writer.writeInts(labelOffsets);
+		writer.writeBytes(labelBytes);
+	}
+
+	private static String decode(ByteBuffer buffer){
+		byte[] bytes = new byte[buffer.limit()];
+		for(int i = 0; i < bytes.length; i++)
+			bytes[i] = buffer.get(i);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Build the table by comparing every word against every candidate.
+	 * The main word is in the second argument position of the similarity measure, as in MostSimilar.
+	 * The vectors of the candidates are created once in the calling thread, and the vectors of the rows are created by the worker threads.
+	 * @param vectorSpace Vector space
+	 * @param words Words that get a row in the table
+	 * @param candidateWords Words that can be neighbours. The order is used for breaking ties.
+	 * @param simMeasure Similarity measure
+	 * @param frequencyLimit The frequency limit that was used for choosing the candidates. Only stored, so that queries can check it.
+	 * @param k Number of neighbours kept for every word
+	 * @param numThreads Number of threads
+	 * @return The table
+	 */
+	public static NeighbourTable build(final VectorSpace vectorSpace, Collection<String> words, Collection<String> candidateWords, final SimMeasure simMeasure, int frequencyLimit, final int k, int numThreads){
+		final NeighbourTable table = new NeighbourTable();
+		table.simMeasure = simMeasure;
+		table.weightScheme = vectorSpace.getWeightScheme();
+		table.frequencyLimit = frequencyLimit;
+		table.candidateFingerprint = getFingerprint(candidateWords);
+		table.k = k;
+
+		// Every word that occurs in the table gets an ID, first the rows and then the other candidates
+		table.ids = new HashMap<String,Integer>();
+		ArrayList<String> labelList = new ArrayList<String>();
+		for(String word : words){
+			if(!table.ids.containsKey(word)){
+				table.ids.put(word, labelList.size());
+				labelList.add(word);
+			}
+		}
+		final int numRows = labelList.size();
+		final int[] candidateIds = new int[candidateWords.size()];
+		final SparseVector[] candidateVectors = new SparseVector[candidateWords.size()];
+		int c = 0;
+		for(String candidate : candidateWords){
+			if(!table.ids.containsKey(candidate)){
+				table.ids.put(candidate, labelList.size());
+				labelList.add(candidate);
+			}
+			candidateVectors[c] = vectorSpace.getSparseVector(candidate);
+			candidateIds[c++] = table.ids.get(candidate);
+		}
+		table.labels = labelList.toArray(new String[labelList.size()]);
+
+		final int[][] rowNeighbours = new int[numRows][];
+		final double[][] rowScores = new double[numRows][];
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+		final int chunk = Math.max(1, numRows / (numThreads * 16));
+		for(int start = 0; start < numRows; start += chunk){
+			final int from = start;
+			final int to = Math.min(numRows, start + chunk);
+			futures.add(executor.submit(new Runnable(){
+				@Override
+				public void run(){
+					double[] candidateScores = new double[candidateIds.length];
+					for(int row = from; row < to; row++){
+						SparseVector mainVector = vectorSpace.getSparseVector(table.labels[row]);
+						for(int i = 0; i < candidateIds.length; i++)
+							candidateScores[i] = simMeasure.sim(candidateVectors[i], mainVector);
+						int[] best = TopKCollector.select(candidateScores, k, !simMeasure.isDistance());
+						rowNeighbours[row] = new int[best.length];
+						rowScores[row] = new double[best.length];
+						for(int i = 0; i < best.length; i++){
+							rowNeighbours[row][i] = candidateIds[best[i]];
+							rowScores[row][i] = candidateScores[best[i]];
+						}
+					}
+				}
+			}));
+		}
+		try{
+			for(Future<?> future : futures)
+				future.get();
+		} catch(Exception e){
+			throw new RuntimeException(e);
+		} finally {
+			executor.shutdown();
+		}
+
+		int[] offsets = new int[numRows + 1];
+		for(int row = 0; row < numRows; row++)
+			offsets[row+1] = offsets[row] + rowNeighbours[row].length;
+		int[] neighbourArray = new int[offsets[numRows]];
+		double[] scoreArray = new double[offsets[numRows]];
+		for(int row = 0; row < numRows; row++){
+			System.arraycopy(rowNeighbours[row], 0, neighbourArray, offsets[row], rowNeighbours[row].length);
+			System.arraycopy(rowScores[row], 0, scoreArray, offsets[row], rowScores[row].length);
+		}
+		table.rowOffsets = IntBuffer.wrap(offsets);
+		table.neighbours = IntBuffer.wrap(neighbourArray);
+		table.scores = DoubleBuffer.wrap(scoreArray);
+		return table;
+	}
+
+	/**
+	 * Save the table into a binary file.
+	 * @param file Output file
+	 */
+	public void save(String file){
+		BinaryWriter writer = new BinaryWriter(file);
+		writer.writeInt(MAGIC);
+		writer.writeInt(VERSION);
+		writer.writeInt(this.weightScheme);
+		writer.writeInt(this.frequencyLimit);
+		writer.writeLong(this.candidateFingerprint);
+		writer.writeInt(this.k);
+		writer.writeBytes(this.simMeasure.getLabel().getBytes(UTF8));
+		writeLabels(writer, this.labels);
+		writer.writeInts(this.rowOffsets);
+		writer.writeInts(this.neighbours);
+		writer.writeDoubles(this.scores);
+		writer.close();
+	}
+
+	/**
+	 * Check whether the table was built with the given settings.
+	 * @param simMeasure Similarity measure
+	 * @param weightScheme Weight scheme of the vector space
+	 * @param frequencyLimit Frequency limit of the candidates
+	 * @return True if the table can be used for these settings
+	 */
+	public boolean matches(SimMeasure simMeasure, int weightScheme, int frequencyLimit){
+		return this.simMeasure == simMeasure && this.weightScheme == weightScheme && this.frequencyLimit == frequencyLimit;
+	}
+
+	/**
+	 * Get the most similar candidates for a word, sorted from best to worst.
+	 * @param word Word
+	 * @param limit Maximum number of neighbours
+	 * @return The neighbours and their scores. Null if the word does not have a row in the table, or the limit is larger than the table.
+	 */
+	public LinkedHashMap<String,Double> getNeighbours(String word, int limit){
+		Integer id = this.ids.get(word);
+		if(id == null || id >= this.rowOffsets.limit() - 1 || limit > this.k)
+			return null;
+		LinkedHashMap<String,Double> result = new LinkedHashMap<String,Double>();
+		int end = Math.min(this.rowOffsets.get(id+1), this.rowOffsets.get(id) + limit);
+		for(int i = this.rowOffsets.get(id); i < end; i++)
+			result.put(this.labels[this.neighbours.get(i)], this.scores.get(i));
+		return result;
+	}
+
+	/**
+	 * Get a fingerprint of a list of candidate words, which depends on the words and their order.
+	 * @param candidateWords Candidate words
+	 * @return Fingerprint
+	 */
+	public static long getFingerprint(Collection<String> candidateWords){
+		long fingerprint = Hashing.mix(candidateWords.size());
+		for(String word : candidateWords)
+			fingerprint = Hashing.mix(fingerprint + word.hashCode());
+		return fingerprint;
+	}
+
+	/**
+	 * Get the fingerprint of the candidate words that the table was built with (see getFingerprint()).
+	 */
+	public long getCandidateFingerprint(){
+		return this.candidateFingerprint;
+	}
+
+	public SimMeasure getSimMeasure(){
+		return this.simMeasure;
+	}
+
+	public int getWeightScheme(){
+		return this.weightScheme;
+	}
+
+	public int getFrequencyLimit(){
+		return this.frequencyLimit;
+	}
+
+	public int getK(){
+		return this.k;
+	}
+
+	/**
+	 * Get the number of words that have a row in the table.
+	 * @return Number of rows
+	 */
+	public int size(){
+		return this.rowOffsets.limit() - 1;
+	}
+}
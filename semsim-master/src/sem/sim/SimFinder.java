@@ -1,16 +1,21 @@
 package sem.sim;
 
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.set.hash.TIntHashSet;
+
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
+import sem.model.DenseEmbeddings;
 import sem.model.VectorSpace;
+import sem.util.Index;
 import sem.util.Pair;
+import sem.util.SharedPool;
+import sem.util.SparseVector;
+import sem.util.TopKCollector;
 
 class SimGeneratorTask implements Runnable{
 	String mainWord;
@@ -41,17 +46,46 @@ class SimGeneratorTask implements Runnable{
 
 	@Override
 	public void run() { 
-		LinkedHashMap<Integer,Double> mainVector = vectorSpace.getVector(mainWord);
+		SparseVector mainVector = vectorSpace.getSparseVector(mainWord);
+		if(this.simMeasure.requiresOverlap()){
+			runOverlapping(mainVector);
+			return;
+		}
 		for(String candidateWord : candidateWords){
 			double val;
 			if(!this.findHypernyms)
-				val = this.simMeasure.sim(vectorSpace.getVector(candidateWord), mainVector);
+				val = this.simMeasure.sim(vectorSpace.getSparseVector(candidateWord), mainVector);
 			else
-				val = this.simMeasure.sim(mainVector, vectorSpace.getVector(candidateWord));
+				val = this.simMeasure.sim(mainVector, vectorSpace.getSparseVector(candidateWord));
 
 			result.put(candidateWord, val);
 		}
 	}
+	
+	/**
+	 * Only compare against the candidates that share at least one feature with the main word, found through the inverted feature index of the vector space.
+	 * All the other candidates get a score of 0.0, which is what the similarity measure would return for them.
+	 * The result has the same order as candidateWords.
+	 */
+	private void runOverlapping(SparseVector mainVector){
+		Index nodeIndex = vectorSpace.getSemModel().getNodeIndex();
+		HashMap<String,Double> scores = new HashMap<String,Double>();
+		TIntIterator iterator = vectorSpace.getSharedNodes(mainVector).iterator();
+		while(iterator.hasNext()){
+			String candidateWord = nodeIndex.getLabel(iterator.next());
+			if(candidateWord == null || !candidateWords.contains(candidateWord))
+				continue;
+			if(!this.findHypernyms)
+				scores.put(candidateWord, this.simMeasure.sim(vectorSpace.getSparseVector(candidateWord), mainVector));
+			else
+				scores.put(candidateWord, this.simMeasure.sim(mainVector, vectorSpace.getSparseVector(candidateWord)));
+		}
+		
+		for(String candidateWord : candidateWords){
+			Double val = scores.get(candidateWord);
+			result.put(candidateWord, (val != null)?val:0.0);
+		}
+	}
 }
 
 /**
@@ -60,9 +94,86 @@ class SimGeneratorTask implements Runnable{
  */
 public class SimFinder {
 	private VectorSpace vectorSpace;
+	private NeighbourTable neighbourTable;
+	private int rerankLimit;
+	private volatile CandidateArray candidateArray;
+	private volatile int parallelism;
+	
+	public static final int DEFAULT_RERANK_LIMIT = 200;
+	
+	// Smallest number of candidates in one chunk of a parallel query
+	private static final int MIN_CHUNK = 64;
+	
+	/**
+	 * A set of candidate words as arrays, with their node IDs and optionally their embeddings, so that they are only looked up once for many queries.
+	 */
+	private static class CandidateArray{
+		private LinkedHashSet<String> candidateWords;
+		private String[] labels;
+		private int[] nodeIds;
+		private DenseEmbeddings embeddings;
+		private float[][] vectors;
+		// Fingerprint of the candidate words, for checking the neighbour table
+		private long fingerprint;
+	}
 	
 	public SimFinder(VectorSpace vectorSpace){
 		this.vectorSpace = vectorSpace;
+		this.neighbourTable = null;
+		this.rerankLimit = DEFAULT_RERANK_LIMIT;
+		this.parallelism = 1;
+	}
+	
+	/**
+	 * Split the candidates of a single query between several threads, in getMostSimilar() and getScores() for one main word.
+	 * The threads come from the SharedPool, which is kept between queries. The default is 1, which scores the candidates in the calling thread.
+	 * @param parallelism Number of threads
+	 */
+	public void setParallelism(int parallelism){
+		this.parallelism = Math.max(1, parallelism);
+	}
+	
+	public int getParallelism(){
+		return this.parallelism;
+	}
+	
+	/**
+	 * Use a precomputed table for getMostSimilar(). The table is only used for queries with the same candidate words, similarity measure and weight scheme that it was built with.
+	 * @param neighbourTable The table, or null to always compute the scores.
+	 */
+	public void setNeighbourTable(NeighbourTable neighbourTable){
+		this.neighbourTable = neighbourTable;
+	}
+	
+	public NeighbourTable getNeighbourTable(){
+		return this.neighbourTable;
+	}
+
+	public VectorSpace getVectorSpace(){
+		return this.vectorSpace;
+	}
+	
+	/**
+	 * Create the vectors of the candidate words up front, for a session of getMostSimilar() queries that each compare against all of them.
+	 * Nothing is done if the queries are answered from a neighbour table or embeddings, or if the measure requires overlap, as only the candidates that share a feature with the query are then scored.
+	 * @param candidateWords
+	 * @param simMeasure Measure of the queries
+	 * @param numThreads Number of threads
+	 * @return The number of vectors that were created
+	 */
+	public int precomputeCandidates(LinkedHashSet<String> candidateWords, SimMeasure simMeasure, int numThreads){
+		if(this.neighbourTable != null || this.vectorSpace.getEmbeddings() != null || simMeasure.requiresOverlap() || !this.vectorSpace.isCacheEnabled())
+			return 0;
+		return this.vectorSpace.precompute(candidateWords, numThreads);
+	}
+	
+	/**
+	 * Set the number of candidates that are re-ranked with the exact measure, after finding them with the dense embeddings of the vector space.
+	 * A higher limit gives results closer to the exact search, but takes longer.
+	 * @param rerankLimit Number of candidates. It is raised to the result limit of getMostSimilar() if it is lower.
+	 */
+	public void setRerankLimit(int rerankLimit){
+		this.rerankLimit = rerankLimit;
 	}
 	
 	/**
@@ -73,9 +184,17 @@ public class SimFinder {
 	 * @return
 	 */
 	public double getScore(SimMeasure simMeasure, String label1, String label2){
-		LinkedHashMap<Integer,Double> vector1 = vectorSpace.getVector(label1);
-		LinkedHashMap<Integer,Double> vector2 = vectorSpace.getVector(label2);
-		
+		return getScore(simMeasure, vectorSpace.getSparseVector(label1), vectorSpace.getSparseVector(label2));
+	}
+	
+	/**
+	 * Get the similarity between two vectors, using the specified similarity measure.
+	 * @param simMeasure
+	 * @param vector1
+	 * @param vector2
+	 * @return
+	 */
+	public double getScore(SimMeasure simMeasure, SparseVector vector1, SparseVector vector2){
 		double score = simMeasure.sim(vector1, vector2);
 		if(Double.isInfinite(score) || Double.isNaN(score))
 			throw new RuntimeException("Illegal score value: " + score);
@@ -101,7 +220,7 @@ public class SimFinder {
 	 * Find the all the similarity scores for the cartesian product of "main words" and "candidate words".
 	 * For example, if we want to find hyponyms for "liquid", we would put the word "liquid" in the set of main words, and a large number of other words into the candidate set.
 	 * This function then find the similarity scores between "liquid" and all the other words.
-	 * If several main words are specified together, and numThreads is set to > 1, each main word is parallelized to a different thread.
+	 * If several main words are specified together, and numThreads is set to > 1, the main words are shared between up to numThreads threads of the SharedPool.
 	 * The output is scored but unsorted.
 	 * @param mainWords
 	 * @param candidateWords
@@ -113,34 +232,43 @@ public class SimFinder {
 	public LinkedHashMap<String,LinkedHashMap<String,Double>> getScores(LinkedHashSet<String> mainWords, LinkedHashSet<String> candidateWords, SimMeasure simMeasure, boolean findHypernyms, int numThreads){
 		LinkedHashMap<String,LinkedHashMap<String,Double>> results = new LinkedHashMap<String,LinkedHashMap<String,Double>>();
 		
-		BlockingQueue<Runnable> queue = new LinkedBlockingQueue<Runnable>();
-		ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
-		ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads, 30, TimeUnit.SECONDS, queue);
+		precomputeVectors(mainWords, candidateWords, simMeasure, numThreads);
 		
+		final ArrayList<SimGeneratorTask> tasks = new ArrayList<SimGeneratorTask>();
 		for(String mainWord : mainWords){
 			LinkedHashMap<String,Double> result = new LinkedHashMap<String,Double>();
 			results.put(mainWord, result);
-			SimGeneratorTask task = new SimGeneratorTask(mainWord, candidateWords, simMeasure, findHypernyms, vectorSpace, result);
-			Future<?> future = executor.submit(task);
-			futures.add(future);
+			tasks.add(new SimGeneratorTask(mainWord, candidateWords, simMeasure, findHypernyms, vectorSpace, result));
 		}
 		
-		// Wait to finish
 		try {
-			for (Future<?> future : futures) {
-				future.get();
-			}
+			SharedPool.run(tasks.size(), numThreads, new SharedPool.Chunks(){
+				@Override
+				public void run(int chunk){
+					tasks.get(chunk).run();
+				}
+			});
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 		
-		futures.clear();
-		queue.clear();
-		executor.shutdown();
-		
 		return results;
 	}
 	
+	/**
+	 * Create the vectors up front for the batch calls, so that the tasks do not each create the same vectors.
+	 * The candidate vectors are only created when every candidate is scored. With a measure that requires overlap, only the candidates that share a feature with a main word are scored, and the others do not need a vector.
+	 */
+	private void precomputeVectors(LinkedHashSet<String> mainWords, LinkedHashSet<String> candidateWords, SimMeasure simMeasure, int numThreads){
+		if(numThreads <= 1 || !vectorSpace.isCacheEnabled())
+			return;
+		ArrayList<String> words = new ArrayList<String>();
+		if(!simMeasure.requiresOverlap())
+			words.addAll(candidateWords);
+		words.addAll(mainWords);
+		vectorSpace.precompute(words, numThreads);
+	}
+	
 	/**
 	 * A simplified function for finding the similarities for only one main words.
 	 * @param mainWord
@@ -150,10 +278,257 @@ public class SimFinder {
 	 * @return
 	 */
 	public LinkedHashMap<String,Double> getScores(String mainWord, LinkedHashSet<String> candidateWords, SimMeasure simMeasure, boolean findHypernyms){
+		if(this.parallelism > 1){
+			final CandidateArray candidates = getCandidateArray(candidateWords);
+			final ScoreContext context = getScoreContext(mainWord, simMeasure, findHypernyms);
+			final double[] scores = new double[candidates.labels.length];
+			final int chunkSize = getChunkSize(scores.length);
+			SharedPool.run((scores.length + chunkSize - 1) / chunkSize, this.parallelism, new SharedPool.Chunks(){
+				@Override
+				public void run(int chunk){
+					for(int i = chunk * chunkSize; i < Math.min(scores.length, (chunk + 1) * chunkSize); i++)
+						scores[i] = context.score(candidates, i);
+				}
+			});
+			LinkedHashMap<String,Double> result = new LinkedHashMap<String,Double>();
+			for(int i = 0; i < scores.length; i++)
+				result.put(candidates.labels[i], scores[i]);
+			return result;
+		}
+		
 		LinkedHashSet<String> mainWords = new LinkedHashSet<String>();
 		mainWords.add(mainWord);
 		
 		LinkedHashMap<String,LinkedHashMap<String,Double>> results = getScores(mainWords, candidateWords, simMeasure, findHypernyms, 1);
 		return results.get(mainWord);
 	}
+	
+	/**
+	 * Find the most similar candidates for one main word, sorted from best to worst.
+	 * If a neighbour table has been set and it was built with the same candidate words, similarity measure and weight scheme, the result is read from the table.
+	 * Otherwise, or if the main word is not in the table, the scores are computed against every candidate.
+	 * If the vector space has dense embeddings and the measure supports them, the best candidates are first found with the embeddings, and only those are scored with the sparse vectors (see setRerankLimit()).
+	 * The candidate embeddings are looked up once for the same candidate set, so the set should not be changed between calls.
+	 * @param mainWord
+	 * @param candidateWords
+	 * @param simMeasure
+	 * @param limit Maximum number of results
+	 * @return
+	 */
+	public LinkedHashMap<String,Double> getMostSimilar(String mainWord, LinkedHashSet<String> candidateWords, SimMeasure simMeasure, int limit){
+		NeighbourTable neighbourTable = this.neighbourTable;
+		if(neighbourTable != null && neighbourTable.getSimMeasure() == simMeasure && neighbourTable.getWeightScheme() == this.vectorSpace.getWeightScheme()
+				&& neighbourTable.getCandidateFingerprint() == getCandidateArray(candidateWords).fingerprint){
+			LinkedHashMap<String,Double> neighbours = neighbourTable.getNeighbours(mainWord, limit);
+			if(neighbours != null)
+				return neighbours;
+		}
+		
+		DenseEmbeddings embeddings = this.vectorSpace.getEmbeddings();
+		if(embeddings != null && simMeasure.supportsDense())
+			return TopKCollector.select(getRerankedScores(mainWord, candidateWords, simMeasure, embeddings, Math.max(this.rerankLimit, limit)), limit, !simMeasure.isDistance());
+		return getTopK(mainWord, limit, candidateWords, simMeasure, false);
+	}
+	
+	/**
+	 * Find the k best candidates for one main word, sorted from best to worst, with ties broken by the order of the candidates.
+	 * The candidates are selected while they are scored, so the scores of the other candidates are never put into a map or sorted.
+	 * The result is the same as sorting the output of getScores() and keeping the first k entries. Higher scores are better, except for distance measures.
+	 * If the parallelism is more than 1, the candidates are split into chunks, which are scored by up to that many threads of the SharedPool.
+	 * @param mainWord
+	 * @param k Maximum number of results
+	 * @param candidateWords
+	 * @param simMeasure
+	 * @param findHypernyms Value FALSE will put the mainWord in the second argument position of the similarity measure, and find hyponyms. Setting it to TRUE will put mainWord in the first argument position and find hypernyms. This only affects non-symmetric measures.
+	 * @return
+	 */
+	public LinkedHashMap<String,Double> getTopK(String mainWord, final int k, LinkedHashSet<String> candidateWords, SimMeasure simMeasure, boolean findHypernyms){
+		final CandidateArray candidates = getCandidateArray(candidateWords);
+		final ScoreContext context = getScoreContext(mainWord, simMeasure, findHypernyms);
+		if(this.parallelism <= 1)
+			return toMap(candidates, collectTopK(candidates, context, 0, candidates.labels.length, k));
+		
+		// Every chunk keeps its own best candidates, and they are merged at the end
+		final int length = candidates.labels.length;
+		final int chunkSize = getChunkSize(length);
+		final TopKCollector[] collectors = new TopKCollector[Math.max(1, (length + chunkSize - 1) / chunkSize)];
+		SharedPool.run(collectors.length, this.parallelism, new SharedPool.Chunks(){
+			@Override
+			public void run(int chunk){
+				collectors[chunk] = collectTopK(candidates, context, Math.min(length, chunk * chunkSize), Math.min(length, (chunk + 1) * chunkSize), k);
+			}
+		});
+		for(int i = 1; i < collectors.length; i++)
+			collectors[0].addAll(collectors[i]);
+		return toMap(candidates, collectors[0]);
+	}
+	
+	/**
+	 * Find the k best candidates for each of the main words, as in getTopK() for one main word.
+	 * The main words are shared between up to numThreads threads of the SharedPool, and the candidates of one main word are scored in the same thread.
+	 * @param mainWords
+	 * @param k Maximum number of results for each main word
+	 * @param candidateWords
+	 * @param simMeasure
+	 * @param findHypernyms Value FALSE will put the mainWord in the second argument position of the similarity measure, and find hyponyms. Setting it to TRUE will put mainWord in the first argument position and find hypernyms. This only affects non-symmetric measures.
+	 * @param numThreads
+	 * @return The best candidates for each main word, in the order of the main words
+	 */
+	public LinkedHashMap<String,LinkedHashMap<String,Double>> getTopK(LinkedHashSet<String> mainWords, final int k, LinkedHashSet<String> candidateWords, final SimMeasure simMeasure, final boolean findHypernyms, int numThreads){
+		precomputeVectors(mainWords, candidateWords, simMeasure, numThreads);
+		
+		final CandidateArray candidates = getCandidateArray(candidateWords);
+		final String[] words = mainWords.toArray(new String[mainWords.size()]);
+		final ArrayList<LinkedHashMap<String,Double>> topK = new ArrayList<LinkedHashMap<String,Double>>();
+		for(int i = 0; i < words.length; i++)
+			topK.add(null);
+		SharedPool.run(words.length, numThreads, new SharedPool.Chunks(){
+			@Override
+			public void run(int chunk){
+				topK.set(chunk, toMap(candidates, collectTopK(candidates, getScoreContext(words[chunk], simMeasure, findHypernyms), 0, candidates.labels.length, k)));
+			}
+		});
+		
+		LinkedHashMap<String,LinkedHashMap<String,Double>> results = new LinkedHashMap<String,LinkedHashMap<String,Double>>();
+		for(int i = 0; i < words.length; i++)
+			results.put(words[i], topK.get(i));
+		return results;
+	}
+	
+	/**
+	 * Score a range of the candidates in the calling thread, and keep the k best.
+	 */
+	private static TopKCollector collectTopK(CandidateArray candidates, ScoreContext context, int from, int to, int k){
+		TopKCollector collector = new TopKCollector(k, !context.simMeasure.isDistance());
+		for(int i = from; i < to; i++)
+			collector.add(i, context.score(candidates, i));
+		return collector;
+	}
+	
+	private static LinkedHashMap<String,Double> toMap(CandidateArray candidates, TopKCollector collector){
+		int[] best = collector.getPositions();
+		double[] scores = collector.getScores();
+		LinkedHashMap<String,Double> results = new LinkedHashMap<String,Double>();
+		for(int i = 0; i < best.length; i++)
+			results.put(candidates.labels[best[i]], scores[i]);
+		return results;
+	}
+	
+	/**
+	 * Find the most similar candidates for one main word approximately, by only scoring the candidates that share a bucket with it in an LSH index.
+	 * The candidates are the ones the index was built with. The results are sorted from best to worst, with ties broken by the order of the candidates.
+	 * @param mainWord
+	 * @param lshIndex Index, which has to support the similarity measure
+	 * @param simMeasure
+	 * @param limit Maximum number of results
+	 * @return
+	 */
+	public LinkedHashMap<String,Double> getApproximateMostSimilar(String mainWord, LshIndex lshIndex, SimMeasure simMeasure, int limit){
+		if(!lshIndex.supports(simMeasure))
+			throw new RuntimeException("The LSH index does not support " + simMeasure.getLabel());
+		
+		SparseVector mainVector = this.vectorSpace.getSparseVector(mainWord);
+		TopKCollector collector = new TopKCollector(limit, !simMeasure.isDistance());
+		for(int candidate : lshIndex.getCandidates(mainVector))
+			collector.add(candidate, getScore(simMeasure, this.vectorSpace.getSparseVector(lshIndex.getLabel(candidate)), mainVector));
+		
+		int[] best = collector.getPositions();
+		double[] scores = collector.getScores();
+		LinkedHashMap<String,Double> results = new LinkedHashMap<String,Double>();
+		for(int i = 0; i < best.length; i++)
+			results.put(lshIndex.getLabel(best[i]), scores[i]);
+		return results;
+	}
+	
+	/**
+	 * Find the best candidates with the dense embeddings, and score them with the exact measure on the sparse vectors.
+	 * The scores are in the order of the candidates, as in getScores().
+	 */
+	private LinkedHashMap<String,Double> getRerankedScores(String mainWord, LinkedHashSet<String> candidateWords, SimMeasure simMeasure, DenseEmbeddings embeddings, int rerankLimit){
+		CandidateArray candidates = getDenseCandidates(candidateWords, embeddings);
+		float[] mainEmbedding = this.vectorSpace.getEmbedding(mainWord);
+		double[] approximateScores = new double[candidates.vectors.length];
+		for(int i = 0; i < candidates.vectors.length; i++)
+			approximateScores[i] = simMeasure.sim(candidates.vectors[i], mainEmbedding);
+		int[] best = TopKCollector.select(approximateScores, rerankLimit, !simMeasure.isDistance());
+		Arrays.sort(best);
+		
+		SparseVector mainVector = this.vectorSpace.getSparseVector(mainWord);
+		LinkedHashMap<String,Double> scores = new LinkedHashMap<String,Double>();
+		for(int i : best)
+			scores.put(candidates.labels[i], getScore(simMeasure, this.vectorSpace.getSparseVector(candidates.labels[i]), mainVector));
+		return scores;
+	}
+	
+	private CandidateArray getCandidateArray(LinkedHashSet<String> candidateWords){
+		CandidateArray candidates = this.candidateArray;
+		if(candidates != null && candidates.candidateWords == candidateWords)
+			return candidates;
+		
+		candidates = new CandidateArray();
+		candidates.candidateWords = candidateWords;
+		candidates.labels = candidateWords.toArray(new String[candidateWords.size()]);
+		candidates.fingerprint = NeighbourTable.getFingerprint(candidateWords);
+		candidates.nodeIds = new int[candidates.labels.length];
+		for(int i = 0; i < candidates.labels.length; i++){
+			Integer nodeId = this.vectorSpace.getSemModel().getNodeIndex().getId(candidates.labels[i]);
+			candidates.nodeIds[i] = (nodeId == null)?0:nodeId;
+		}
+		this.candidateArray = candidates;
+		return candidates;
+	}
+	
+	private CandidateArray getDenseCandidates(LinkedHashSet<String> candidateWords, DenseEmbeddings embeddings){
+		CandidateArray candidates = getCandidateArray(candidateWords);
+		if(candidates.embeddings == embeddings)
+			return candidates;
+		
+		// A new object, as the old one can be in use by other threads
+		CandidateArray denseCandidates = new CandidateArray();
+		denseCandidates.candidateWords = candidates.candidateWords;
+		denseCandidates.labels = candidates.labels;
+		denseCandidates.nodeIds = candidates.nodeIds;
+		denseCandidates.embeddings = embeddings;
+		denseCandidates.vectors = new float[candidates.labels.length][];
+		for(int i = 0; i < candidates.labels.length; i++)
+			denseCandidates.vectors[i] = embeddings.getVector(candidates.nodeIds[i]);
+		this.candidateArray = denseCandidates;
+		return denseCandidates;
+	}
+	
+	private int getChunkSize(int candidateCount){
+		return Math.max(MIN_CHUNK, candidateCount / (this.parallelism * 8));
+	}
+	
+	/**
+	 * Everything that the tasks of one query need for scoring a candidate.
+	 */
+	private static class ScoreContext{
+		private VectorSpace vectorSpace;
+		private SimMeasure simMeasure;
+		private boolean findHypernyms;
+		private SparseVector mainVector;
+		// Nodes that share a feature with the main word, if the measure requires overlap
+		private TIntHashSet sharedNodes;
+		
+		private double score(CandidateArray candidates, int i){
+			if(this.sharedNodes != null && !this.sharedNodes.contains(candidates.nodeIds[i]))
+				return 0.0;
+			SparseVector candidateVector = this.vectorSpace.getSparseVector(candidates.labels[i]);
+			if(!this.findHypernyms)
+				return this.simMeasure.sim(candidateVector, this.mainVector);
+			return this.simMeasure.sim(this.mainVector, candidateVector);
+		}
+	}
+	
+	private ScoreContext getScoreContext(String mainWord, SimMeasure simMeasure, boolean findHypernyms){
+		ScoreContext context = new ScoreContext();
+		context.vectorSpace = this.vectorSpace;
+		context.simMeasure = simMeasure;
+		context.findHypernyms = findHypernyms;
+		context.mainVector = this.vectorSpace.getSparseVector(mainWord);
+		if(simMeasure.requiresOverlap())
+			context.sharedNodes = this.vectorSpace.getSharedNodes(context.mainVector);
+		return context;
+	}
 }
@@ -1,6 +1,7 @@
 package sem.sim;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -9,6 +10,7 @@ import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map.Entry;
 
+import sem.util.SparseVector;
 import sem.util.Tools;
 
 /**
@@ -71,6 +73,47 @@ public enum SimMeasure {
 		return this.isDistance;
 	}
 	
+	/**
+	 * Check whether the measure can be calculated on dense embeddings, with sim(float[], float[]).
+	 * @return True for cosine and euclidean
+	 */
+	public boolean supportsDense(){
+		return this == COSINE || this == EUCLIDEAN;
+	}
+	
+	/**
+	 * Check whether the measure only depends on the shared features.
+	 * For these measures, two vectors that have no feature in common always get a score of 0.0, so they do not need to be compared at all.
+	 * @return True if the score is 0.0 for vectors without shared features
+	 */
+	public boolean requiresOverlap(){
+		switch(this){
+		case COSINE:
+		case JACCARD_SET:
+		case LIN:
+		case DICE_SET:
+		case OVERLAP_SET:
+		case COSINE_SET:
+		case JACCARD_GEN:
+		case DICE_GEN:
+		case DICE_GEN_2:
+		case CLARKE_DE:
+		case WEEDS_PREC:
+		case WEEDS_REC:
+		case WEEDS_F:
+		case AP:
+		case AP_INC:
+		case BAL_AP_INC:
+		case LIN_D:
+		case BAL_PREC:
+		case WEIGHTED_COSINE:
+		case WEIGHTED_COSINE_2:
+			return true;
+		default:
+			return false;
+		}
+	}
+	
 	
 	
 	public static <T> void validateVectors(HashMap<T,Double> a, HashMap<T,Double> b){
@@ -1109,66 +1152,1147 @@ public enum SimMeasure {
 	}
 	
 	
-	public <T> double sim(LinkedHashMap<T,Double> v1, LinkedHashMap<T,Double> v2){
-		switch(this){
-		case COSINE:
-			return SimMeasure.cosine(v1, v2);
-		case PEARSON:
-			return SimMeasure.pearson(v1, v2);
-		case SPEARMAN:
-			return SimMeasure.spearman(v1, v2);
-		case JACCARD_SET:
-			return SimMeasure.jaccardSet(v1, v2);
-		case LIN:
-			return SimMeasure.lin(v1, v2);
-		case DICE_SET:
-			return SimMeasure.diceSet(v1, v2);
-		case OVERLAP_SET:
-			return SimMeasure.overlapSet(v1, v2);
-		case COSINE_SET:
-			return SimMeasure.cosineSet(v1, v2);
-		case JACCARD_GEN:
-			return SimMeasure.jaccardGen(v1, v2);
-		case DICE_GEN:
-			return SimMeasure.diceGen(v1, v2);
-		case DICE_GEN_2:
-			return SimMeasure.diceGen2(v1, v2);
-		case KENDALLS_TAU:
-			return SimMeasure.kendallsTau(v1, v2);
-		case CLARKE_DE:
-			return SimMeasure.clarkeDE(v1, v2);
-		case WEEDS_PREC:
-			return SimMeasure.weedsPrec(v1, v2);
-		case WEEDS_REC:
-			return SimMeasure.weedsRec(v1, v2);
-		case WEEDS_F:
-			return SimMeasure.weedsF(v1, v2);
-		case AP:
-			return SimMeasure.ap(v1, v2);
-		case AP_INC:
-			return SimMeasure.apInc(v1, v2);
-		case BAL_AP_INC:
-			return SimMeasure.balAPInc(v1, v2);
-		case LIN_D:
-			return SimMeasure.linD(v1, v2);
-		case BAL_PREC:
-			return SimMeasure.balPrec(v1, v2);
-		case KL_DIVERGENCE:
-			return SimMeasure.klDivergence(v1, v2);
-		case KL_DIVERGENCE_R:
-			return SimMeasure.klDivergenceR(v1, v2);
-		case JS_DIVERGENCE:
-			return SimMeasure.jsDivergence(v1, v2);
-		case ALPHA_SKEW:
-			return SimMeasure.alphaSkew(v1, v2);
-		case ALPHA_SKEW_R:
-			return SimMeasure.alphaSkewR(v1, v2);
-		case MANHATTAN:
-			return SimMeasure.manhattan(v1, v2);
-		case EUCLIDEAN:
-			return SimMeasure.euclidean(v1, v2);
-		case CHEBYSHEV:
-			return SimMeasure.chebyshev(v1, v2);
+	/*
+	 * Versions of the measures for SparseVector.
+	 * They walk through both vectors at the same time (merge-join over the sorted feature IDs), and use the sums that are cached in the vectors.
+	 * The results are the same as with the map versions, except for rounding differences from adding up the values in a different order.
+	 */
+	
+	public static void validateVectors(SparseVector a, SparseVector b){
+		if(a == null || b == null)
+			throw new IllegalArgumentException("Vectors cannot be null");
+	}
+	
+	public static double cosine(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		int[] aIds = a.getIds(), bIds = b.getIds();
+		double[] aWeights = a.getWeights(), bWeights = b.getWeights();
+		double dotProduct = 0.0;
+		int i = 0, j = 0;
+		while(i < aIds.length && j < bIds.length){
+			if(aIds[i] < bIds[j])
+				i++;
+			else if(aIds[i] > bIds[j])
+				j++;
+			else
+				dotProduct += aWeights[i++] * bWeights[j++];
+		}
+		
+		double result;
+		if(a.getSumOfSquares() == 0.0 || b.getSumOfSquares() == 0.0)
+			result = 0.0;
+		else
+			result = dotProduct / Math.sqrt(a.getSumOfSquares() * b.getSumOfSquares());
+		validateResult(result);
+		return result;
+	}
+	
+	/**
+	 * Count the features that are in both vectors, and have a non-zero weight in the larger vector.
+	 * This is how the map versions of the set measures count the shared features.
+	 */
+	private static int sharedCount(SparseVector a, SparseVector b){
+		if(a.size() > b.size())
+			return sharedCount(b, a);
+		int[] aIds = a.getIds(), bIds = b.getIds();
+		double[] bWeights = b.getWeights();
+		int count = 0;
+		int i = 0, j = 0;
+		while(i < aIds.length && j < bIds.length){
+			if(aIds[i] < bIds[j])
+				i++;
+			else if(aIds[i] > bIds[j])
+				j++;
+			else {
+				if(bWeights[j] != 0.0)
+					count++;
+				i++;
+				j++;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Count the features that have a non-zero weight in both vectors.
+	 */
+	private static int nonZeroSharedCount(SparseVector a, SparseVector b){
+		int[] aIds = a.getIds(), bIds = b.getIds();
+		double[] aWeights = a.getWeights(), bWeights = b.getWeights();
+		int count = 0;
+		int i = 0, j = 0;
+		while(i < aIds.length && j < bIds.length){
+			if(aIds[i] < bIds[j])
+				i++;
+			else if(aIds[i] > bIds[j])
+				j++;
+			else {
+				if(aWeights[i] != 0.0 && bWeights[j] != 0.0)
+					count++;
+				i++;
+				j++;
+			}
+		}
+		return count;
+	}
+	
+	public static double jaccardSet(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		double intersectionSize = sharedCount(a, b);
+		int unionSize = a.getNonZeroCount() + b.getNonZeroCount() - nonZeroSharedCount(a, b);
+		
+		double result;
+		if(unionSize == 0)
+			result = 0.0;
+		else
+			result = intersectionSize / (double)unionSize;
+		validateResult(result);
+		return result;
+	}
+	
+	public static double lin(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		int[] aIds = a.getIds(), bIds = b.getIds();
+		double[] aWeights = a.getWeights(), bWeights = b.getWeights();
+		double combinedSum = 0.0;
+		int i = 0, j = 0;
+		while(i < aIds.length && j < bIds.length){
+			if(aIds[i] < bIds[j])
+				i++;
+			else if(aIds[i] > bIds[j])
+				j++;
+			else {
+				if(aWeights[i] > 0.0 && bWeights[j] > 0.0)
+					combinedSum += aWeights[i] + bWeights[j];
+				i++;
+				j++;
+			}
+		}
+		
+		double result;
+		if(a.getPositiveSum() + b.getPositiveSum() == 0.0)
+			result = 0.0;
+		else
+			result = combinedSum / (a.getPositiveSum() + b.getPositiveSum());
+		validateResult(result);
+		return result;
+	}
+	
+	public static double diceSet(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		double sharedCount = sharedCount(a, b);
+		double aCount = a.getNonZeroCount(), bCount = b.getNonZeroCount();
+		
+		double result;
+		if(aCount + bCount == 0.0)
+			result = 0.0;
+		else
+			result = 2 * sharedCount / (aCount + bCount);
+		validateResult(result);
+		return result;
+	}
+	
+	public static double overlapSet(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		double sharedCount = sharedCount(a, b);
+		double minCount = Math.min(a.getNonZeroCount(), b.getNonZeroCount());
+		
+		double result;
+		if(minCount == 0.0)
+			result = 0.0;
+		else
+			result = sharedCount / minCount;
+		validateResult(result);
+		return result;
+	}
+	
+	public static double cosineSet(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		double sharedCount = sharedCount(a, b);
+		double aCount = a.getNonZeroCount(), bCount = b.getNonZeroCount();
+		
+		double result;
+		if(aCount == 0.0 || bCount == 0.0)
+			result = 0.0;
+		else
+			result = sharedCount / Math.sqrt(aCount * bCount);
+		validateResult(result);
+		return result;
+	}
+	
+	public static double jaccardGen(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		int[] aIds = a.getIds(), bIds = b.getIds();
+		double[] aWeights = a.getWeights(), bWeights = b.getWeights();
+		double minSum = 0.0, maxSum = 0.0;
+		int i = 0, j = 0;
+		while(i < aIds.length || j < bIds.length){
+			if(j >= bIds.length || (i < aIds.length && aIds[i] < bIds[j]))
+				maxSum += aWeights[i++];
+			else if(i >= aIds.length || aIds[i] > bIds[j])
+				maxSum += bWeights[j++];
+			else {
+				minSum += Math.min(aWeights[i], bWeights[j]);
+				maxSum += Math.max(aWeights[i], bWeights[j]);
+				i++;
+				j++;
+			}
+		}
+		
+		double result;
+		if(maxSum == 0.0)
+			result = 0.0;
+		else
+			result = minSum / maxSum;
+		validateResult(result);
+		return result;
+	}
+	
+	/**
+	 * Sum of the smaller weight of every shared feature.
+	 */
+	private static double minSum(SparseVector a, SparseVector b){
+		int[] aIds = a.getIds(), bIds = b.getIds();
+		double[] aWeights = a.getWeights(), bWeights = b.getWeights();
+		double minSum = 0.0;
+		int i = 0, j = 0;
+		while(i < aIds.length && j < bIds.length){
+			if(aIds[i] < bIds[j])
+				i++;
+			else if(aIds[i] > bIds[j])
+				j++;
+			else
+				minSum += Math.min(aWeights[i++], bWeights[j++]);
+		}
+		return minSum;
+	}
+	
+	public static double diceGen(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		double minSum = minSum(a, b);
+		double sum = a.getSum() + b.getSum();
+		
+		double result;
+		if(sum == 0.0)
+			result = 0.0;
+		else
+			result = 2 * minSum / sum;
+		validateResult(result);
+		return result;
+	}
+	
+	public static double diceGen2(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		int[] aIds = a.getIds(), bIds = b.getIds();
+		double[] aWeights = a.getWeights(), bWeights = b.getWeights();
+		double uSum = 0.0;
+		int i = 0, j = 0;
+		while(i < aIds.length && j < bIds.length){
+			if(aIds[i] < bIds[j])
+				i++;
+			else if(aIds[i] > bIds[j])
+				j++;
+			else
+				uSum += aWeights[i++] * bWeights[j++];
+		}
+		double sum = a.getSum() + b.getSum();
+		
+		double result;
+		if(sum == 0.0)
+			result = 0.0;
+		else
+			result = uSum / sum;
+		validateResult(result);
+		return result;
+	}
+	
+	public static double clarkeDE(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		double minSum = minSum(a, b);
+		
+		double result;
+		if(a.getSum() == 0.0)
+			result = 0.0;
+		else
+			result = minSum / a.getSum();
+		validateResult(result);
+		return result;
+	}
+	
+	public static double weedsPrec(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		int[] aIds = a.getIds(), bIds = b.getIds();
+		double[] aWeights = a.getWeights(), bWeights = b.getWeights();
+		double sumBoth = 0.0;
+		int i = 0, j = 0;
+		while(i < aIds.length && j < bIds.length){
+			if(aIds[i] < bIds[j])
+				i++;
+			else if(aIds[i] > bIds[j])
+				j++;
+			else {
+				if(aWeights[i] > 0.0 && bWeights[j] > 0.0)
+					sumBoth += aWeights[i];
+				i++;
+				j++;
+			}
+		}
+		
+		double result;
+		if(a.getPositiveSum() == 0.0)
+			result = 0.0;
+		else
+			result = sumBoth / a.getPositiveSum();
+		validateResult(result);
+		return result;
+	}
+	
+	public static double weedsRec(SparseVector a, SparseVector b){
+		return weedsPrec(b, a);
+	}
+	
+	public static double weedsF(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		double prec = weedsPrec(a, b);
+		double rec = weedsRec(a, b);
+		
+		double result;
+		if(prec + rec == 0.0)
+			result = 0.0;
+		else
+			result = 2 * prec * rec / (prec + rec);
+		validateResult(result);
+		return result;
+	}
+	
+	public static double linD(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		int[] aIds = a.getIds(), bIds = b.getIds();
+		double[] aWeights = a.getWeights(), bWeights = b.getWeights();
+		double bSum = 0.0, combinedSum = 0.0;
+		int i = 0, j = 0;
+		while(i < aIds.length && j < bIds.length){
+			if(aIds[i] < bIds[j])
+				i++;
+			else if(aIds[i] > bIds[j])
+				j++;
+			else {
+				if(aWeights[i] > 0.0 && bWeights[j] > 0.0){
+					combinedSum += aWeights[i] + bWeights[j];
+					bSum += bWeights[j];
+				}
+				i++;
+				j++;
+			}
+		}
+		double aSum = a.getPositiveSum();
+		
+		double result;
+		if(aSum + bSum == 0.0)
+			result = 0.0;
+		else
+			result = combinedSum / (aSum + bSum);
+		validateResult(result);
+		return result;
+	}
+	
+	public static double balPrec(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		double result = Math.sqrt(lin(a, b) * weedsPrec(a, b));
+		validateResult(result);
+		return result;
+	}
+	
+	public static double klDivergence(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		int[] aIds = a.getIds(), bIds = b.getIds();
+		double[] aWeights = a.getWeights(), bWeights = b.getWeights();
+		double divergence = 0.0;
+		int i = 0, j = 0;
+		while(i < aIds.length && j < bIds.length){
+			if(aIds[i] < bIds[j])
+				i++;
+			else if(aIds[i] > bIds[j])
+				j++;
+			else {
+				if(aWeights[i] > 0.0 && bWeights[j] > 0.0)
+					divergence += bWeights[j] * Math.log(bWeights[j] / aWeights[i]);
+				i++;
+				j++;
+			}
+		}
+		
+		validateResult(divergence);
+		return divergence;
+	}
+	
+	public static double klDivergenceR(SparseVector a, SparseVector b){
+		return klDivergence(b, a);
+	}
+	
+	public static double jsDivergence(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		int[] aIds = a.getIds(), bIds = b.getIds();
+		double[] aWeights = a.getWeights(), bWeights = b.getWeights();
+		double divergence = 0.0;
+		double aValue, bValue;
+		int i = 0, j = 0;
+		while(i < aIds.length || j < bIds.length){
+			if(j >= bIds.length || (i < aIds.length && aIds[i] < bIds[j])){
+				aValue = aWeights[i++];
+				bValue = 0.0;
+			}
+			else if(i >= aIds.length || aIds[i] > bIds[j]){
+				aValue = 0.0;
+				bValue = bWeights[j++];
+			}
+			else {
+				aValue = aWeights[i++];
+				bValue = bWeights[j++];
+			}
+			
+			if(aValue > 0.0 && bValue > 0.0)
+				divergence += aValue * Math.log(aValue / ((aValue + bValue) / 2)) + bValue * Math.log(bValue / ((bValue + aValue) / 2));
+			else if(aValue > 0.0 && bValue == 0.0)
+				divergence += aValue * Math.log(aValue / (aValue / 2));
+			else if(bValue > 0.0 && aValue == 0.0)
+				divergence += bValue * Math.log(bValue / (bValue / 2));
+		}
+		
+		validateResult(divergence);
+		return divergence;
+	}
+	
+	public static double alphaSkew(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		double alpha = 0.99;
+		
+		int[] aIds = a.getIds(), bIds = b.getIds();
+		double[] aWeights = a.getWeights(), bWeights = b.getWeights();
+		double divergence = 0.0;
+		int i = 0, j = 0;
+		while(j < bIds.length){
+			if(i < aIds.length && aIds[i] < bIds[j])
+				i++;
+			else if(i >= aIds.length || aIds[i] > bIds[j]){
+				// Feature only in b
+				if(bWeights[j] > 0.0)
+					divergence += bWeights[j] * Math.log(bWeights[j] / ((1-alpha) * bWeights[j]));
+				j++;
+			}
+			else {
+				if(aWeights[i] > 0.0 && bWeights[j] > 0.0)
+					divergence += bWeights[j] * Math.log(bWeights[j] / ((1-alpha) * bWeights[j] + alpha * aWeights[i]));
+				i++;
+				j++;
+			}
+		}
+		
+		validateResult(divergence);
+		return divergence;
+	}
+	
+	public static double alphaSkewR(SparseVector a, SparseVector b){
+		return alphaSkew(b, a);
+	}
+	
+	public static double manhattan(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		int[] aIds = a.getIds(), bIds = b.getIds();
+		double[] aWeights = a.getWeights(), bWeights = b.getWeights();
+		double sum = 0.0;
+		int i = 0, j = 0;
+		while(i < aIds.length || j < bIds.length){
+			if(j >= bIds.length || (i < aIds.length && aIds[i] < bIds[j]))
+				sum += Math.abs(aWeights[i++]);
+			else if(i >= aIds.length || aIds[i] > bIds[j])
+				sum += Math.abs(bWeights[j++]);
+			else
+				sum += Math.abs(aWeights[i++] - bWeights[j++]);
+		}
+		
+		validateResult(sum);
+		return sum;
+	}
+	
+	public static double euclidean(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		int[] aIds = a.getIds(), bIds = b.getIds();
+		double[] aWeights = a.getWeights(), bWeights = b.getWeights();
+		double sum = 0.0, diff;
+		int i = 0, j = 0;
+		while(i < aIds.length || j < bIds.length){
+			if(j >= bIds.length || (i < aIds.length && aIds[i] < bIds[j]))
+				diff = aWeights[i++];
+			else if(i >= aIds.length || aIds[i] > bIds[j])
+				diff = bWeights[j++];
+			else
+				diff = aWeights[i++] - bWeights[j++];
+			sum += diff * diff;
+		}
+		
+		double result = Math.sqrt(sum);
+		validateResult(result);
+		return result;
+	}
+	
+	public static double chebyshev(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		int[] aIds = a.getIds(), bIds = b.getIds();
+		double[] aWeights = a.getWeights(), bWeights = b.getWeights();
+		double max = 0.0, diff;
+		int i = 0, j = 0;
+		while(i < aIds.length || j < bIds.length){
+			if(j >= bIds.length || (i < aIds.length && aIds[i] < bIds[j]))
+				diff = Math.abs(aWeights[i++]);
+			else if(i >= aIds.length || aIds[i] > bIds[j])
+				diff = Math.abs(bWeights[j++]);
+			else
+				diff = Math.abs(aWeights[i++] - bWeights[j++]);
+			if(diff > max)
+				max = diff;
+		}
+		
+		validateResult(max);
+		return max;
+	}
+	
+	/**
+	 * Work arrays for the sparse measures that need more than a merge-join. Every thread has its own, and they only grow, so the measures do not allocate memory once the arrays are large enough.
+	 */
+	private static class Scratch{
+		double[] x = new double[0];
+		double[] y = new double[0];
+		double[] rx = new double[0];
+		double[] ry = new double[0];
+		double[] sorted = new double[0];
+		int[] indices = new int[0];
+		int[] tempIndices = new int[0];
+		int[] match = new int[0];
+		
+		void ensureCapacity(int n){
+			if(x.length >= n)
+				return;
+			int size = Math.max(n, 2 * x.length);
+			x = new double[size];
+			y = new double[size];
+			rx = new double[size];
+			ry = new double[size];
+			sorted = new double[size];
+			indices = new int[size];
+			tempIndices = new int[size];
+			match = new int[size];
+		}
+	}
+	
+	private static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>(){
+		@Override
+		protected Scratch initialValue(){
+			return new Scratch();
+		}
+	};
+	
+	private static Scratch getScratch(int n){
+		Scratch s = scratch.get();
+		s.ensureCapacity(n);
+		return s;
+	}
+	
+	/**
+	 * Write the values of both vectors over the union of their features into x and y, using 0.0 for missing features.
+	 * @return The size of the union
+	 */
+	private static int fillUnion(SparseVector a, SparseVector b, double[] x, double[] y){
+		int[] aIds = a.getIds(), bIds = b.getIds();
+		double[] aWeights = a.getWeights(), bWeights = b.getWeights();
+		int i = 0, j = 0, n = 0;
+		while(i < aIds.length || j < bIds.length){
+			if(j >= bIds.length || (i < aIds.length && aIds[i] < bIds[j])){
+				x[n] = aWeights[i++];
+				y[n] = 0.0;
+			}
+			else if(i >= aIds.length || aIds[i] > bIds[j]){
+				x[n] = 0.0;
+				y[n] = bWeights[j++];
+			}
+			else {
+				x[n] = aWeights[i++];
+				y[n] = bWeights[j++];
+			}
+			n++;
+		}
+		return n;
+	}
+	
+	/**
+	 * For every feature in a, write the position of the same feature in b into match, or -1 if b does not have it.
+	 */
+	private static void matchPositions(SparseVector a, SparseVector b, int[] match){
+		int[] aIds = a.getIds(), bIds = b.getIds();
+		int i = 0, j = 0;
+		while(i < aIds.length){
+			if(j >= bIds.length || aIds[i] < bIds[j])
+				match[i++] = -1;
+			else if(aIds[i] > bIds[j])
+				j++;
+			else
+				match[i++] = j++;
+		}
+	}
+	
+	/**
+	 * Pearson correlation of two dense arrays, calculated in the same way as Tools.pearson().
+	 */
+	private static double pearson(double[] x, double[] y, int n){
+		if(n == 0)
+			return 0.0;
+		double mean1 = 0.0, mean2 = 0.0;
+		for(int i = 0; i < n; i++){
+			mean1 += x[i];
+			mean2 += y[i];
+		}
+		mean1 /= n;
+		mean2 /= n;
+		
+		double a = 0.0, b = 0.0, c = 0.0;
+		for(int i = 0; i < n; i++){
+			a += (x[i] - mean1) * (y[i] - mean2);
+			b += (x[i] - mean1) * (x[i] - mean1);
+			c += (y[i] - mean2) * (y[i] - mean2);
+		}
+		if(b == 0.0 || c == 0.0)
+			return 0.0;
+		return a / Math.sqrt(b * c);
+	}
+	
+	public static double pearson(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		Scratch s = getScratch(a.size() + b.size());
+		int n = fillUnion(a, b, s.x, s.y);
+		double result = pearson(s.x, s.y, n);
+		validateResult(result);
+		return result;
+	}
+	
+	/**
+	 * Replace the values with their ranks in decreasing order, giving tied values the average of their ranks (as in Tools._convert_to_ranks()).
+	 */
+	private static void ranks(double[] values, int n, double[] sorted, double[] ranks){
+		for(int i = 0; i < n; i++)
+			sorted[i] = values[i] + 0.0; // turns -0.0 into 0.0, which are equal in the comparisons
+		Arrays.sort(sorted, 0, n);
+		for(int i = 0; i < n; i++){
+			double value = values[i] + 0.0;
+			// Find the range [low, high) of this value in the sorted array
+			int low = 0, high = n;
+			while(low < high){
+				int middle = (low + high) >>> 1;
+				if(sorted[middle] < value)
+					low = middle + 1;
+				else
+					high = middle;
+			}
+			int end = low;
+			high = n;
+			while(end < high){
+				int middle = (end + high) >>> 1;
+				if(sorted[middle] <= value)
+					end = middle + 1;
+				else
+					high = middle;
+			}
+			// In decreasing order, the tied values take the positions from n-end+1 to n-low
+			ranks[i] = (double)((n - end) + 1 + (n - low)) / 2.0;
+		}
+	}
+	
+	public static double spearman(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		Scratch s = getScratch(a.size() + b.size());
+		int n = fillUnion(a, b, s.x, s.y);
+		ranks(s.x, n, s.sorted, s.rx);
+		ranks(s.y, n, s.sorted, s.ry);
+		double result = pearson(s.rx, s.ry, n);
+		validateResult(result);
+		return result;
+	}
+	
+	/**
+	 * Stable merge sort of the indices, by the values in x and then the values in y.
+	 */
+	private static void sortIndices(int[] indices, int[] temp, int from, int to, double[] x, double[] y){
+		if(to - from < 2)
+			return;
+		int middle = (from + to) >>> 1;
+		sortIndices(indices, temp, from, middle, x, y);
+		sortIndices(indices, temp, middle, to, x, y);
+		int i = from, j = middle, k = from;
+		while(i < middle || j < to){
+			boolean takeLeft;
+			if(j >= to)
+				takeLeft = true;
+			else if(i >= middle)
+				takeLeft = false;
+			else {
+				int left = indices[i], right = indices[j];
+				takeLeft = x[left] < x[right] || (!(x[left] > x[right]) && !(y[left] > y[right]));
+			}
+			temp[k++] = takeLeft?indices[i++]:indices[j++];
+		}
+		System.arraycopy(temp, from, indices, from, to - from);
+	}
+	
+	/**
+	 * Sort the values with merge sort and count the number of exchanges, as in kendallsTauMergeSort().
+	 */
+	private static double countExchanges(double[] values, double[] temp, int from, int to){
+		if(to - from < 2)
+			return 0;
+		int middle = (from + to) >>> 1;
+		double exchanges = countExchanges(values, temp, from, middle) + countExchanges(values, temp, middle, to);
+		int i = from, j = middle, k = from;
+		while(i < middle || j < to){
+			if(j >= to || (i < middle && values[i] <= values[j]))
+				temp[k++] = values[i++];
+			else {
+				temp[k++] = values[j++];
+				exchanges += middle - i;
+			}
+		}
+		System.arraycopy(temp, from, values, from, to - from);
+		return exchanges;
+	}
+	
+	public static double kendallsTau(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		Scratch s = getScratch(a.size() + b.size());
+		int n = fillUnion(a, b, s.x, s.y);
+		
+		// Sort by values of a and, if tied, by values of b.
+		for(int i = 0; i < n; i++)
+			s.indices[i] = i;
+		sortIndices(s.indices, s.tempIndices, 0, n, s.x, s.y);
+		double[] sortedA = s.rx, sortedB = s.ry;
+		for(int i = 0; i < n; i++){
+			sortedA[i] = s.x[s.indices[i]];
+			sortedB[i] = s.y[s.indices[i]];
+		}
+		
+		// Compute joint ties and ties in a
+		double t = 0, u = 0;
+		int i = 0;
+		for(int j = 1; j < n; j++){
+			if(sortedA[i] == sortedA[j] && sortedB[i] == sortedB[j])
+				t += j-i;
+			else
+				i = j;
+		}
+		i = 0;
+		for(int j = 1; j < n; j++){
+			if(sortedA[i] == sortedA[j])
+				u += j-i;
+			else
+				i = j;
+		}
+		
+		// Count exchanges, which also sorts the values of b
+		double exchanges = countExchanges(sortedB, s.sorted, 0, n);
+		
+		// Compute ties in b
+		i = 0;
+		double v = 0;
+		for(int j = 1; j < n; j++){
+			if(sortedB[i] == sortedB[j])
+				v += j-i;
+			else
+				i = j;
+		}
+		
+		double total = ((double)n * (n-1)) / 2;
+		if(total == u || total == v)
+			return 1.0;
+		
+		double tau = ((total-(v+u-t)) - 2.0 * exchanges) / Math.sqrt((total-u) * (total-v));
+		validateResult(tau);
+		return tau;
+	}
+	
+	public static double ap(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		Scratch s = getScratch(a.size());
+		matchPositions(a, b, s.match);
+		int[] aOrder = a.getRankOrder();
+		double sum = 0.0, correctReturned = 0.0;
+		for(int r = 1; r <= aOrder.length; r++){
+			if(s.match[aOrder[r-1]] >= 0){
+				correctReturned++;
+				sum += correctReturned / r;
+			}
+		}
+		
+		double result;
+		if(b.size() == 0)
+			result = 0.0;
+		else
+			result = sum / (double)b.size();
+		validateResult(result);
+		return result;
+	}
+	
+	public static double apInc(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		Scratch s = getScratch(a.size());
+		matchPositions(a, b, s.match);
+		int[] aOrder = a.getRankOrder();
+		int[] bRanks = b.getRankPositions();
+		double sum = 0.0, correctReturned = 0.0, p, rel;
+		for(int r = 1; r <= aOrder.length; r++){
+			int j = s.match[aOrder[r-1]];
+			if(j >= 0){
+				correctReturned++;
+				p = correctReturned / r;
+				rel = 1.0 - ((double)(bRanks[j] + 1) / ((double)b.size() + 1.0));
+				sum += p * rel;
+			}
+		}
+		
+		double result;
+		if(a.size() == 0)
+			result = 0.0;
+		else
+			result = sum / (double)a.size();
+		validateResult(result);
+		return result;
+	}
+	
+	public static double balAPInc(SparseVector a, SparseVector b){
+		double result = Math.sqrt(lin(a, b) * apInc(a, b));
+		validateResult(result);
+		return result;
+	}
+	
+	/**
+	 * Add the squared and weighted values of the features that are only in a.
+	 */
+	private static double sumOfSquaresOnlyInA(SparseVector a, SparseVector b, double weight){
+		int[] aIds = a.getIds(), bIds = b.getIds();
+		double[] aWeights = a.getWeights();
+		double sum = 0.0;
+		int i = 0, j = 0;
+		while(i < aIds.length){
+			if(j >= bIds.length || aIds[i] < bIds[j])
+				sum += Math.pow(weight * aWeights[i++], 2.0);
+			else if(aIds[i] > bIds[j])
+				j++;
+			else {
+				i++;
+				j++;
+			}
+		}
+		return sum;
+	}
+	
+	public static double weightedCosine(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		double C = 0.5;
+		double aLength = 0.0, bLength = 0.0, dotProduct = 0.0;
+		
+		Scratch s = getScratch(b.size());
+		matchPositions(b, a, s.match);
+		int[] bOrder = b.getRankOrder();
+		double[] aWeights = a.getWeights(), bWeights = b.getWeights();
+		int n = bOrder.length;
+		double rank = 0.0, aValue, bValue;
+		int groupEnd = 0;
+		for(int k = 0; k < n; k++){
+			if(k == groupEnd){
+				// Tied values get the average of their ranks
+				do{
+					groupEnd++;
+				} while(groupEnd < n && bWeights[bOrder[k]] == bWeights[bOrder[groupEnd]]);
+				rank = (double)(k + 1 + groupEnd) / 2.0;
+			}
+			
+			bValue = bWeights[bOrder[k]];
+			int aPosition = s.match[bOrder[k]];
+			if(aPosition >= 0){
+				aValue = aWeights[aPosition];
+				double w = (1.0 - (rank / ((double)n + 1.0)))*(1.0 - C) + C;
+				dotProduct += (bValue * w) * (aValue * w);
+				aLength += Math.pow(aValue * w, 2.0);
+				bLength += Math.pow(bValue * w, 2.0);
+			}
+			else
+				bLength += Math.pow(bValue * C, 2.0);
+		}
+		aLength += sumOfSquaresOnlyInA(a, b, C);
+		
+		double result;
+		if(aLength == 0.0 || bLength == 0.0)
+			result = 0.0;
+		else
+			result = dotProduct / Math.sqrt(aLength * bLength);
+		validateResult(result);
+		return result;
+	}
+	
+	public static double weightedCosine2(SparseVector a, SparseVector b){
+		validateVectors(a, b);
+		
+		double C = 0.5;
+		double aLength = 0.0, bLength = 0.0, dotProduct = 0.0;
+		
+		Scratch s = getScratch(b.size());
+		matchPositions(b, a, s.match);
+		int[] bOrder = b.getRankOrder();
+		double[] aWeights = a.getWeights(), bWeights = b.getWeights();
+		int n = bOrder.length;
+		double rank = 0.0, previousValue = 0.0, aValue, bValue;
+		for(int k = 0; k < n; k++){
+			bValue = bWeights[bOrder[k]];
+			if(k == 0 || Double.doubleToLongBits(bValue) != Double.doubleToLongBits(previousValue)){
+				rank = k + 1;
+				previousValue = bValue;
+			}
+			
+			double w = (1.0 - (rank / ((double)n + 1.0)))*(1.0 - C) + C;
+			int aPosition = s.match[bOrder[k]];
+			if(aPosition >= 0){
+				aValue = aWeights[aPosition];
+				dotProduct += (bValue * w) * (aValue * w);
+				aLength += Math.pow(aValue * w, 2.0);
+				bLength += Math.pow(bValue * w, 2.0);
+			}
+			else
+				bLength += Math.pow(bValue * C, 2.0);
+		}
+		aLength += sumOfSquaresOnlyInA(a, b, C);
+		
+		double result;
+		if(aLength == 0.0 || bLength == 0.0)
+			result = 0.0;
+		else
+			result = dotProduct / Math.sqrt(aLength * bLength);
+		validateResult(result);
+		return result;
+	}
+	
+	public <T> double sim(LinkedHashMap<T,Double> v1, LinkedHashMap<T,Double> v2){
+		switch(this){
+		case COSINE:
+			return SimMeasure.cosine(v1, v2);
+		case PEARSON:
+			return SimMeasure.pearson(v1, v2);
+		case SPEARMAN:
+			return SimMeasure.spearman(v1, v2);
+		case JACCARD_SET:
+			return SimMeasure.jaccardSet(v1, v2);
+		case LIN:
+			return SimMeasure.lin(v1, v2);
+		case DICE_SET:
+			return SimMeasure.diceSet(v1, v2);
+		case OVERLAP_SET:
+			return SimMeasure.overlapSet(v1, v2);
+		case COSINE_SET:
+			return SimMeasure.cosineSet(v1, v2);
+		case JACCARD_GEN:
+			return SimMeasure.jaccardGen(v1, v2);
+		case DICE_GEN:
+			return SimMeasure.diceGen(v1, v2);
+		case DICE_GEN_2:
+			return SimMeasure.diceGen2(v1, v2);
+		case KENDALLS_TAU:
+			return SimMeasure.kendallsTau(v1, v2);
+		case CLARKE_DE:
+			return SimMeasure.clarkeDE(v1, v2);
+		case WEEDS_PREC:
+			return SimMeasure.weedsPrec(v1, v2);
+		case WEEDS_REC:
+			return SimMeasure.weedsRec(v1, v2);
+		case WEEDS_F:
+			return SimMeasure.weedsF(v1, v2);
+		case AP:
+			return SimMeasure.ap(v1, v2);
+		case AP_INC:
+			return SimMeasure.apInc(v1, v2);
+		case BAL_AP_INC:
+			return SimMeasure.balAPInc(v1, v2);
+		case LIN_D:
+			return SimMeasure.linD(v1, v2);
+		case BAL_PREC:
+			return SimMeasure.balPrec(v1, v2);
+		case KL_DIVERGENCE:
+			return SimMeasure.klDivergence(v1, v2);
+		case KL_DIVERGENCE_R:
+			return SimMeasure.klDivergenceR(v1, v2);
+		case JS_DIVERGENCE:
+			return SimMeasure.jsDivergence(v1, v2);
+		case ALPHA_SKEW:
+			return SimMeasure.alphaSkew(v1, v2);
+		case ALPHA_SKEW_R:
+			return SimMeasure.alphaSkewR(v1, v2);
+		case MANHATTAN:
+			return SimMeasure.manhattan(v1, v2);
+		case EUCLIDEAN:
+			return SimMeasure.euclidean(v1, v2);
+		case CHEBYSHEV:
+			return SimMeasure.chebyshev(v1, v2);
+		case WEIGHTED_COSINE:
+			return SimMeasure.weightedCosine(v1, v2);
+		case WEIGHTED_COSINE_2:
+			return SimMeasure.weightedCosine2(v1, v2);
+		default:
+			throw new RuntimeException("Unknown similarity measure: " + this);
+		}
+	}
+	
+	/*
+	 * Measures on dense vectors, such as the embeddings in DenseEmbeddings. Both vectors need to have the same number of dimensions.
+	 */
+	
+	public static double cosine(float[] a, float[] b){
+		if(a.length != b.length)
+			throw new IllegalArgumentException("Vectors have different dimensions: " + a.length + " and " + b.length);
+		
+		double dotProduct = 0.0, aLength = 0.0, bLength = 0.0;
+		for(int i = 0; i < a.length; i++){
+			dotProduct += a[i] * b[i];
+			aLength += a[i] * a[i];
+			bLength += b[i] * b[i];
+		}
+		
+		double result;
+		if(aLength == 0.0 || bLength == 0.0)
+			result = 0.0;
+		else
+			result = dotProduct / Math.sqrt(aLength * bLength);
+		validateResult(result);
+		return result;
+	}
+	
+	public static double euclidean(float[] a, float[] b){
+		if(a.length != b.length)
+			throw new IllegalArgumentException("Vectors have different dimensions: " + a.length + " and " + b.length);
+		
+		double sum = 0.0, diff;
+		for(int i = 0; i < a.length; i++){
+			diff = a[i] - b[i];
+			sum += diff * diff;
+		}
+		
+		double result = Math.sqrt(sum);
+		validateResult(result);
+		return result;
+	}
+	
+	/**
+	 * Calculate the similarity between two dense vectors. Only the measures where supportsDense() is true can be used.
+	 * @param v1
+	 * @param v2
+	 * @return
+	 */
+	public double sim(float[] v1, float[] v2){
+		switch(this){
+		case COSINE:
+			return SimMeasure.cosine(v1, v2);
+		case EUCLIDEAN:
+			return SimMeasure.euclidean(v1, v2);
+		default:
+			throw new RuntimeException("Similarity measure " + this.label + " does not support dense vectors");
+		}
+	}
+	
+	/**
+	 * Calculate the similarity between two sparse vectors.
+	 * @param v1
+	 * @param v2
+	 * @return
+	 */
+	public double sim(SparseVector v1, SparseVector v2){
+		switch(this){
+		case COSINE:
+			return SimMeasure.cosine(v1, v2);
+		case JACCARD_SET:
+			return SimMeasure.jaccardSet(v1, v2);
+		case LIN:
+			return SimMeasure.lin(v1, v2);
+		case DICE_SET:
+			return SimMeasure.diceSet(v1, v2);
+		case OVERLAP_SET:
+			return SimMeasure.overlapSet(v1, v2);
+		case COSINE_SET:
+			return SimMeasure.cosineSet(v1, v2);
+		case JACCARD_GEN:
+			return SimMeasure.jaccardGen(v1, v2);
+		case DICE_GEN:
+			return SimMeasure.diceGen(v1, v2);
+		case DICE_GEN_2:
+			return SimMeasure.diceGen2(v1, v2);
+		case CLARKE_DE:
+			return SimMeasure.clarkeDE(v1, v2);
+		case WEEDS_PREC:
+			return SimMeasure.weedsPrec(v1, v2);
+		case WEEDS_REC:
+			return SimMeasure.weedsRec(v1, v2);
+		case WEEDS_F:
+			return SimMeasure.weedsF(v1, v2);
+		case LIN_D:
+			return SimMeasure.linD(v1, v2);
+		case BAL_PREC:
+			return SimMeasure.balPrec(v1, v2);
+		case KL_DIVERGENCE:
+			return SimMeasure.klDivergence(v1, v2);
+		case KL_DIVERGENCE_R:
+			return SimMeasure.klDivergenceR(v1, v2);
+		case JS_DIVERGENCE:
+			return SimMeasure.jsDivergence(v1, v2);
+		case ALPHA_SKEW:
+			return SimMeasure.alphaSkew(v1, v2);
+		case ALPHA_SKEW_R:
+			return SimMeasure.alphaSkewR(v1, v2);
+		case MANHATTAN:
+			return SimMeasure.manhattan(v1, v2);
+		case EUCLIDEAN:
+			return SimMeasure.euclidean(v1, v2);
+		case CHEBYSHEV:
+			return SimMeasure.chebyshev(v1, v2);
+		case PEARSON:
+			return SimMeasure.pearson(v1, v2);
+		case SPEARMAN:
+			return SimMeasure.spearman(v1, v2);
+		case KENDALLS_TAU:
+			return SimMeasure.kendallsTau(v1, v2);
+		case AP:
+			return SimMeasure.ap(v1, v2);
+		case AP_INC:
+			return SimMeasure.apInc(v1, v2);
+		case BAL_AP_INC:
+			return SimMeasure.balAPInc(v1, v2);
 		case WEIGHTED_COSINE:
 			return SimMeasure.weightedCosine(v1, v2);
 		case WEIGHTED_COSINE_2:
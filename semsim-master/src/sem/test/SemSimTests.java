@@ -5,15 +5,39 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 import sem.test.model.ModelTest;
+import sem.test.run.SimServerTest;
+import sem.test.sim.LshIndexTest;
+import sem.test.sim.ModelHandleTest;
+import sem.test.sim.NeighbourTableTest;
+import sem.test.sim.SimFinderTest;
 import sem.test.sim.SimilarityTest;
+import sem.test.util.BinaryReaderTest;
+import sem.test.util.ConcurrentIndexTest;
 import sem.test.util.IndexTest;
+import sem.test.util.PostingListsTest;
+import sem.test.util.SegmentedLruCacheTest;
+import sem.test.util.SharedPoolTest;
+import sem.test.util.SparseVectorTest;
 import sem.test.util.TensorTest;
+import sem.test.util.TopKCollectorTest;
 
 @RunWith(Suite.class)
 @SuiteClasses({ ModelTest.class, 
 				SimilarityTest.class,
+				NeighbourTableTest.class,
+				SimFinderTest.class,
+				LshIndexTest.class,
+				ModelHandleTest.class,
 				IndexTest.class,
-				TensorTest.class
+				ConcurrentIndexTest.class,
+				TensorTest.class,
+				SparseVectorTest.class,
+				SegmentedLruCacheTest.class,
+				PostingListsTest.class,
+				TopKCollectorTest.class,
+				SharedPoolTest.class,
+				BinaryReaderTest.class,
+				SimServerTest.class
 				})
 
 public class SemSimTests {
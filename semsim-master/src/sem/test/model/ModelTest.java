@@ -2,14 +2,28 @@ package sem.test.model;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import sem.exception.GraphFormatException;
 import sem.exception.SemModelException;
 import sem.graph.Graph;
 import sem.graph.Node;
+import sem.graphreader.GraphReader;
+import sem.model.DenseEmbeddings;
 import sem.model.SemModel;
+import sem.model.SemModelBuilder;
+import sem.model.VectorSpace;
+import sem.model.VectorStore;
+import sem.util.SparseVector;
+import sem.util.StringContainer;
+import sem.util.SymmetricTensor;
+import sem.util.Tensor;
 import sem.test.util.ToolsTest;
 
 public class ModelTest {
@@ -149,4 +163,279 @@ public class ModelTest {
 		assertTrue(vsm2.getTripleCount(null, null, null) == 8);
 	}
 
+	@Test
+	public void testSaveText(){
+		SemModel vsm = new SemModel(true);
+		try {
+			vsm.add(createGraph());
+		} catch (SemModelException e) {
+			e.printStackTrace();
+		}
+		
+		vsm.saveText(file);
+		
+		SemModel vsm2 = new SemModel(file, true);
+		testBasic(vsm2);
+		assertTrue(vsm2.getTripleCount(null, "1", "A_A") == 2);
+		assertTrue(vsm2.getTripleCount(null, null, null) == 8);
+	}
+	
+	@Test
+	public void testSaveBinarySymmetric(){
+		SemModel vsm = new SemModel(false);
+		try {
+			vsm.add(createGraph());
+		} catch (SemModelException e) {
+			e.printStackTrace();
+		}
+		vsm.save(file);
+		
+		SemModel vsm2 = new SemModel(file, false);
+		assertTrue(vsm2.getNodeIndex().getLabel(vsm2.getNodeIndex().getId("D_D")).equals("D_D"));
+		assertTrue(vsm2.getNodeIndex().getId("X_X") == null);
+		vsm2.makeTensorSymmetric();
+		assertTrue(vsm2.getTripleCount("D_D", "!2", "B_B") == 1);
+		assertTrue(vsm2.getTripleCount("C_C", "!3", "D_D") == 2);
+		assertTrue(vsm2.getTripleCount(null, null, null) == 16);
+	}
+
+	private ArrayList<Graph> createRandomGraphs(int count){
+		return RandomModels.createGraphs(5, count, 5, 40, 5);
+	}
+	
+	public GraphReader createListReader(final ArrayList<Graph> graphs){
+		return new GraphReader(){
+			int position = 0;
+			public boolean hasNext(){ return position < graphs.size(); }
+			public Graph next() throws GraphFormatException { return graphs.get(position++); }
+			public Graph next(StringContainer sContainer) throws GraphFormatException { return next(); }
+			public ArrayList<Graph> nextSentence() throws GraphFormatException { return null; }
+			public void reset() throws GraphFormatException { position = 0; }
+			public void close() {}
+		};
+	}
+	
+	@Test
+	public void testParallelBuilder() throws SemModelException{
+		ArrayList<Graph> graphs = createRandomGraphs(500);
+		SemModel serial = new SemModel(true);
+		for(Graph graph : graphs)
+			serial.add(graph);
+		
+		SemModelBuilder builder = new SemModelBuilder(null, true, 4, false);
+		builder.setBatchSize(7);
+		SemModel parallel = builder.build(createListReader(graphs));
+		
+		assertEquals(serial.getGraphCount(), parallel.getGraphCount());
+		assertEquals(serial.getNodeIndex().getLabelMap(), parallel.getNodeIndex().getLabelMap());
+		assertEquals(serial.getNodeIndex().getCountMap(), parallel.getNodeIndex().getCountMap());
+		assertEquals(serial.getEdgeIndex().getLabelMap(), parallel.getEdgeIndex().getLabelMap());
+		assertEquals(serial.getEdgeIndex().getCountMap(), parallel.getEdgeIndex().getCountMap());
+		assertTrue(serial.getLocationMatchCount("w1_N", "w2_N") > 0.0);
+		for(int i = 1; i <= 20; i++)
+			for(int j = 1; j <= 20; j++)
+				assertEquals(serial.getLocationMatchCount("w" + i + "_N", "w" + j + "_N"), parallel.getLocationMatchCount("w" + i + "_N", "w" + j + "_N"), 0.0);
+		for(int key1 : serial.getTensor().getKeys())
+			for(int key2 : serial.getTensor().getKeys(key1))
+				for(int key3 : serial.getTensor().getKeys(key1, key2))
+					assertEquals(serial.getTensor().get(key1, key2, key3), parallel.getTensor().get(key1, key2, key3), 0.0);
+		assertEquals(serial.getTripleCount(null, null, null), parallel.getTripleCount(null, null, null), 0.0);
+	}
+	
+	@Test
+	public void testTotalCoocCount() throws SemModelException{
+		ArrayList<Graph> graphs = createRandomGraphs(200);
+		SemModel semModel = new SemModel(true);
+		for(Graph graph : graphs)
+			semModel.add(graph);
+		
+		double expected = 0.0;
+		for(Graph graph : graphs)
+			expected += graph.getNodes().size() * (graph.getNodes().size() - 1.0);
+		assertEquals(expected, semModel.getTotalCoocCount(), 0.0);
+		
+		semModel.save(file);
+		assertEquals(expected, new SemModel(file, true).getTotalCoocCount(), 0.0);
+		// Without the locations, the total comes from the sentence length file
+		assertEquals(expected, new SemModel(file, false).getTotalCoocCount(), 0.0);
+	}
+	
+	@Test
+	public void testVectorStore() throws SemModelException{
+		SemModel semModel = new SemModel(false);
+		for(Graph graph : createRandomGraphs(300))
+			semModel.add(graph);
+		semModel.makeTensorSymmetricView();
+		VectorSpace calculated = new VectorSpace(semModel, VectorSpace.WEIGHT_PMI, false);
+		VectorStore.build(calculated, false).save(file + "_vectors.bin");
+		VectorStore.build(calculated, true).save(file + "_vectors_float.bin");
+		
+		VectorSpace stored = new VectorSpace(semModel, VectorSpace.WEIGHT_PMI, true);
+		stored.setVectorStore(new VectorStore(file + "_vectors.bin"));
+		VectorSpace storedFloat = new VectorSpace(semModel, VectorSpace.WEIGHT_PMI, false);
+		storedFloat.setVectorStore(new VectorStore(file + "_vectors_float.bin"));
+		for(String word : semModel.getNodeIndex().getIdMap().keySet()){
+			LinkedHashMap<Integer,Double> vector = calculated.getVector(word);
+			assertEquals(new ArrayList<Entry<Integer,Double>>(vector.entrySet()), new ArrayList<Entry<Integer,Double>>(stored.getVector(word).entrySet()));
+			SparseVector sparseVector = calculated.getSparseVector(word);
+			assertArrayEquals(sparseVector.getIds(), stored.getSparseVector(word).getIds());
+			assertArrayEquals(sparseVector.getRankOrder(), stored.getSparseVector(word).getRankOrder());
+			assertArrayEquals(sparseVector.getWeights(), storedFloat.getSparseVector(word).getWeights(), 1e-5);
+		}
+		assertEquals(0, stored.getVector("missing_N").size());
+		
+		try{
+			new VectorSpace(semModel, VectorSpace.WEIGHT_PMI_LIM, false).setVectorStore(new VectorStore(file + "_vectors.bin"));
+			fail("A store with a different weight scheme should not be accepted");
+		} catch(RuntimeException e){
+		}
+	}
+	
+	@Test
+	public void testDenseEmbeddings() throws SemModelException{
+		SemModel semModel = new SemModel(false);
+		for(Graph graph : createRandomGraphs(300))
+			semModel.add(graph);
+		semModel.makeTensorSymmetricView();
+		VectorSpace vectorSpace = new VectorSpace(semModel, VectorSpace.WEIGHT_PMI, false);
+		DenseEmbeddings embeddings = DenseEmbeddings.build(vectorSpace, 64, 3);
+		embeddings.save(file + "_embeddings.bin");
+		
+		DenseEmbeddings loaded = new DenseEmbeddings(file + "_embeddings.bin");
+		assertEquals(64, loaded.getDimensions());
+		assertEquals(semModel.getNodeIndex().size(), loaded.size());
+		assertTrue(loaded.matches(vectorSpace));
+		for(int nodeId = 0; nodeId <= loaded.size() + 1; nodeId++)
+			assertArrayEquals(embeddings.getVector(nodeId), loaded.getVector(nodeId), 0.0f);
+		for(String word : semModel.getNodeIndex().getIdMap().keySet())
+			assertArrayEquals(loaded.getVector(semModel.getNodeIndex().getId(word)), loaded.project(vectorSpace.getVector(word)), 0.0f);
+		
+		// The same seed gives the same projection
+		assertArrayEquals(embeddings.getVector(1), DenseEmbeddings.build(vectorSpace, 64, 3).getVector(1), 0.0f);
+	}
+	
+	@Test
+	public void testCache() throws SemModelException{
+		ArrayList<Graph> graphs = createRandomGraphs(300);
+		SemModel uncached = new SemModel(true, false);
+		SemModel cached = new SemModel(true, true);
+		cached.setCacheCapacity(100);
+		for(Graph graph : graphs){
+			uncached.add(graph);
+			cached.add(graph);
+		}
+		assertNull(uncached.getCache());
+		
+		for(int r = 0; r < 2; r++){
+			for(int i = 1; i <= 20; i++){
+				for(int j = 1; j <= 20; j++){
+					String label1 = "w" + i + "_N", label2 = "w" + j + "_N";
+					assertEquals(uncached.getLocationMatchCount(label1, label2), cached.getLocationMatchCount(label1, label2), 0.0);
+					assertEquals(uncached.getTripleCount(label1, null, label2), cached.getTripleCount(label1, null, label2), 0.0);
+				}
+				assertEquals(uncached.getTripleCount("w" + i + "_N", null, null), cached.getTripleCount("w" + i + "_N", null, null), 0.0);
+				assertEquals(uncached.getLocationMatchCount(null, "w" + i + "_N"), cached.getLocationMatchCount(null, "w" + i + "_N"), 0.0);
+			}
+		}
+		assertEquals(uncached.getTotalCoocCount(), cached.getTotalCoocCount(), 0.0);
+		assertEquals(uncached.getTotalNodeCount(), cached.getTotalNodeCount(), 0.0);
+		
+		assertTrue(cached.getCache().getHitCount() > 0);
+		assertTrue(cached.getCache().getEvictionCount() > 0);
+		assertTrue(cached.getCache().size() <= cached.getCache().getCapacity());
+	}
+	
+	@Test
+	public void testSymmetricView() throws SemModelException{
+		ArrayList<Graph> graphs = createRandomGraphs(300);
+		// An edge label that is already reversed, which is not reversed again
+		Graph graph = new Graph();
+		graph.addEdge("!e1", graph.addNode("w1", "N"), graph.addNode("w2", "N"));
+		graphs.add(graph);
+		
+		SemModel materialised = new SemModel(false);
+		SemModel view = new SemModel(false);
+		for(Graph g : graphs){
+			materialised.add(g);
+			view.add(g);
+		}
+		materialised.makeTensorSymmetric();
+		materialised.freeze();
+		view.makeTensorSymmetricView();
+		
+		assertEquals(materialised.getEdgeIndex().getLabelMap(), view.getEdgeIndex().getLabelMap());
+		assertEquals(materialised.getEdgeIndex().getCountMap(), view.getEdgeIndex().getCountMap());
+		
+		Tensor t1 = materialised.getTensor(), t2 = view.getTensor();
+		assertTrue(t2 instanceof SymmetricTensor);
+		assertArrayEquals(t1.getKeys(), t2.getKeys());
+		for(int key1 : t1.getKeys()){
+			assertArrayEquals(t1.getKeys(key1), t2.getKeys(key1));
+			for(int key2 : t1.getKeys(key1)){
+				assertArrayEquals(t1.getKeys(key1, key2), t2.getKeys(key1, key2));
+				for(int key3 : t1.getKeys(key1, key2))
+					assertEquals(t1.get(key1, key2, key3), t2.get(key1, key2, key3), 0.0);
+			}
+		}
+		
+		Integer[] nodeIds = {null, 1, 2, 5, 17};
+		Integer[] edgeIds = new Integer[materialised.getEdgeIndex().size() + 1];
+		for(int i = 1; i < edgeIds.length; i++)
+			edgeIds[i] = i;
+		for(Integer key1 : nodeIds)
+			for(Integer key2 : edgeIds)
+				for(Integer key3 : nodeIds)
+					assertEquals(t1.get(key1, key2, key3), t2.get(key1, key2, key3), 1e-9);
+		
+		VectorSpace vs1 = new VectorSpace(materialised, VectorSpace.WEIGHT_PMI, false);
+		VectorSpace vs2 = new VectorSpace(view, VectorSpace.WEIGHT_PMI, false);
+		for(String label : materialised.getNodeIndex().getIdMap().keySet())
+			assertEquals(new ArrayList<Entry<Integer,Double>>(vs1.getVector(label).entrySet()), new ArrayList<Entry<Integer,Double>>(vs2.getVector(label).entrySet()));
+	}
+
+	@Test
+	public void testTripleFilter() throws SemModelException{
+		ArrayList<Graph> graphs = createRandomGraphs(300);
+		Graph graph = new Graph();
+		graph.addEdge("!e1", graph.addNode("w1", "N"), graph.addNode("w2", "N"));
+		graphs.add(graph);
+		SemModel semModel = new SemModel(false);
+		for(Graph g : graphs)
+			semModel.add(g);
+		assertNull(semModel.getTripleFilter());
+		semModel.save(file);
+		SemModel loaded = new SemModel(file, false);
+		assertNotNull(loaded.getTripleFilter());
+		
+		String[] nodeLabels = new String[42];
+		for(int i = 0; i < 40; i++)
+			nodeLabels[i] = "w" + i + "_N";
+		nodeLabels[40] = "unknown_N";
+		String[] edgeLabels = {null, "e0", "e1", "e2", "e3", "e4", "!e1", "!e3", "unknown"};
+		int zeroCount = 0, rejectedCount = 0;
+		for(String head : nodeLabels){
+			for(String edge : edgeLabels){
+				for(String dep : nodeLabels){
+					double count = semModel.getTripleCount(head, edge, dep);
+					assertEquals(count, loaded.getTripleCount(head, edge, dep), 0.0);
+					if(count == 0.0 && head != null && edge != null && dep != null){
+						zeroCount++;
+						if(!loaded.getTripleFilter().mightContain(head, edge, dep))
+							rejectedCount++;
+					}
+				}
+			}
+		}
+		// Most of the triples that never occurred are rejected by the filter
+		assertTrue(rejectedCount > 0.9 * zeroCount);
+		
+		// The reverse edges are checked through the original ones
+		semModel.makeTensorSymmetricView();
+		loaded.makeTensorSymmetricView();
+		for(String head : nodeLabels)
+			for(String edge : new String[]{"!e0", "!e2", "!e4"})
+				for(String dep : nodeLabels)
+					assertEquals(semModel.getTripleCount(head, edge, dep), loaded.getTripleCount(head, edge, dep), 0.0);
+	}
+
 }
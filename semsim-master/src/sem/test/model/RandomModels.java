@@ -0,0 +1,55 @@
+package sem.test.model;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import sem.exception.SemModelException;
+import sem.graph.Graph;
+import sem.graph.Node;
+import sem.model.SemModel;
+
+/**
+ * Random models for the tests that need more words and features than the hand-made graphs have.
+ */
+public class RandomModels {
+
+	/**
+	 * Create a model from random tree-shaped graphs. The labels of the nodes are "w0".."w[wordCount-1]" with the tag "N", and the edges "e0".."e[edgeCount-1]".
+	 * @param seed Seed of the random generator, the same seed gives the same model
+	 * @param graphCount Number of graphs
+	 * @param graphSize Number of nodes in every graph
+	 * @param wordCount Number of different words
+	 * @param edgeCount Number of different edge labels
+	 * @return A model with the graphs added, which is not symmetric yet
+	 */
+	public static SemModel createModel(long seed, int graphCount, int graphSize, int wordCount, int edgeCount) throws SemModelException{
+		SemModel semModel = new SemModel(false);
+		for(Graph graph : createGraphs(seed, graphCount, graphSize, wordCount, edgeCount))
+			semModel.add(graph);
+		return semModel;
+	}
+	
+	/**
+	 * Create the random graphs of createModel(), for the tests that add them to a model themselves.
+	 * @param seed Seed of the random generator, the same seed gives the same graphs
+	 * @param graphCount Number of graphs
+	 * @param graphSize Number of nodes in every graph
+	 * @param wordCount Number of different words
+	 * @param edgeCount Number of different edge labels
+	 * @return The graphs
+	 */
+	public static ArrayList<Graph> createGraphs(long seed, int graphCount, int graphSize, int wordCount, int edgeCount){
+		ArrayList<Graph> graphs = new ArrayList<Graph>();
+		Random random = new Random(seed);
+		for(int i = 0; i < graphCount; i++){
+			Graph graph = new Graph();
+			Node[] nodes = new Node[graphSize];
+			for(int j = 0; j < graphSize; j++)
+				nodes[j] = graph.addNode("w" + random.nextInt(wordCount), "N");
+			for(int j = 1; j < graphSize; j++)
+				graph.addEdge("e" + random.nextInt(edgeCount), nodes[(j == 1)?0:random.nextInt(j)], nodes[j]);
+			graphs.add(graph);
+		}
+		return graphs;
+	}
+}
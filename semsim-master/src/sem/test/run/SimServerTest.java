@@ -0,0 +1,183 @@
+package sem.test.run;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sem.model.SemModel;
+import sem.model.VectorSpace;
+import sem.run.SimServer;
+import sem.sim.ModelHandle;
+import sem.sim.SimFinder;
+import sem.sim.SimMeasure;
+import sem.test.model.RandomModels;
+import sem.test.util.ToolsTest;
+import sem.util.LatencyHistogram;
+
+public class SimServerTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private String dir = "semtests/";
+	private String file = dir + "model";
+
+	private SemModel semModel;
+	private SimFinder simFinder;
+	private ModelHandle modelHandle;
+	private SimServer simServer;
+	private String url;
+
+	@Before
+	public void setUp() throws Exception {
+		ToolsTest.initTestDir(dir);
+		semModel = RandomModels.createModel(5, 200, 2, 30, 5);
+		semModel.makeTensorSymmetricView();
+		simFinder = new SimFinder(new VectorSpace(semModel, VectorSpace.WEIGHT_PMI_LIM, true));
+		modelHandle = new ModelHandle(simFinder, file, 5);
+		simServer = new SimServer(modelHandle, SimMeasure.COSINE, 3);
+		url = "http://localhost:" + simServer.start("localhost", 0, 4) + "/";
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		simServer.stop();
+		modelHandle.shutdown();
+		ToolsTest.removeTestDir(dir);
+	}
+
+	private static String read(InputStream input) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int length;
+		while((length = input.read(buffer)) > 0)
+			bytes.write(buffer, 0, length);
+		input.close();
+		return new String(bytes.toByteArray(), UTF8);
+	}
+
+	private String get(String path) throws Exception {
+		HttpURLConnection connection = (HttpURLConnection)new URL(url + path).openConnection();
+		assertEquals(200, connection.getResponseCode());
+		return read(connection.getInputStream());
+	}
+
+	private String post(String path, String body) throws Exception {
+		HttpURLConnection connection = (HttpURLConnection)new URL(url + path).openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		OutputStream output = connection.getOutputStream();
+		output.write(body.getBytes(UTF8));
+		output.close();
+		assertEquals(200, connection.getResponseCode());
+		return read(connection.getInputStream());
+	}
+
+	private String mostSimilarLine(String word, SimMeasure simMeasure, int limit){
+		StringBuilder line = new StringBuilder(word);
+		for(Entry<String,Double> e : simFinder.getMostSimilar(word, modelHandle.getCurrent().getCandidateWords(), simMeasure, limit).entrySet())
+			line.append('\t').append(e.getKey()).append('\t').append(e.getValue());
+		return line.toString();
+	}
+
+	@Test
+	public void testQueries() throws Exception {
+		assertEquals(simFinder.getScore(SimMeasure.COSINE, "w1_N", "w2_N") + "\n", get("similarity?q=w1_N+w2_N"));
+		assertEquals(simFinder.getScore(SimMeasure.LIN, "w1_N", "w2_N") + "\n", get("similarity?q=w1_N%20w2_N&measure=lin"));
+		assertEquals(mostSimilarLine("w3_N", SimMeasure.COSINE, 3) + "\n", get("mostsimilar?q=w3_N"));
+		assertEquals(mostSimilarLine("w3_N", SimMeasure.COSINE, 7) + "\n", get("mostsimilar?q=w3_N&limit=7"));
+		assertEquals(semModel.getTripleCount("w1_N", null, null) + "\n", get("count?q=w1_N+*+*"));
+		assertEquals(semModel.getTripleCount(null, "e1", "w4_N") + "\n", get("count?q=*+e1+w4_N"));
+		assertEquals("0.0\n", get("count?q=unknown_N+e1+w4_N"));
+	}
+
+	@Test
+	public void testBatch() throws Exception {
+		StringBuilder body = new StringBuilder(), expected = new StringBuilder();
+		for(int i = 0; i < 30; i++){
+			body.append("w").append(i).append("_N\n");
+			expected.append(mostSimilarLine("w" + i + "_N", SimMeasure.WEEDS_PREC, 4)).append('\n');
+		}
+		assertEquals(expected.toString(), post("mostsimilar?measure=weedsPrec&limit=4", body.toString()));
+		assertEquals(simFinder.getScore(SimMeasure.COSINE, "w1_N", "w2_N") + "\n" + simFinder.getScore(SimMeasure.COSINE, "w2_N", "w5_N") + "\n", post("similarity", "w1_N w2_N\n\nw2_N\tw5_N\n"));
+
+		LatencyHistogram latencies = simServer.getLatencies("mostsimilar");
+		assertEquals(30, latencies.getCount());
+		assertTrue(latencies.getPercentile(50) <= latencies.getPercentile(99));
+		assertTrue(get("stats").contains("\nsimilarity\tcount=2 "));
+	}
+
+	@Test
+	public void testConcurrentClients() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		ArrayList<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+		for(int i = 0; i < 40; i++){
+			final String word = "w" + (i % 30) + "_N";
+			futures.add(executor.submit(new Callable<Boolean>(){
+				@Override
+				public Boolean call() throws Exception {
+					return get("mostsimilar?q=" + word).equals(mostSimilarLine(word, SimMeasure.COSINE, 3) + "\n");
+				}
+			}));
+		}
+		for(Future<Boolean> future : futures)
+			assertTrue(future.get());
+		executor.shutdown();
+		assertEquals(40, simServer.getLatencies("mostsimilar").getCount());
+	}
+
+	@Test
+	public void testBadRequests() throws Exception {
+		for(String path : new String[]{"similarity?q=w1_N", "similarity?q=w1_N+w2_N&measure=unknown", "mostsimilar", "count?q=w1_N+e1&limit=x"}){
+			HttpURLConnection connection = (HttpURLConnection)new URL(url + path).openConnection();
+			assertEquals(400, connection.getResponseCode());
+		}
+	}
+
+	@Test
+	public void testReload() throws Exception {
+		RandomModels.createModel(9, 200, 2, 30, 5).save(file);
+		SemModel newModel = new SemModel(file, false);
+		newModel.makeTensorSymmetricView();
+		String expected = newModel.getTripleCount("w1_N", null, null) + "\n";
+		assertFalse(expected.equals(get("count?q=w1_N+*+*")));
+
+		HttpURLConnection connection = (HttpURLConnection)new URL(url + "reload").openConnection();
+		assertEquals(202, connection.getResponseCode());
+		for(int i = 0; i < 100 && modelHandle.getCurrent().getNumber() == 1; i++)
+			Thread.sleep(50);
+		assertEquals(2, modelHandle.getCurrent().getNumber());
+		assertEquals(expected, get("count?q=w1_N+*+*"));
+		assertTrue(get("stats").startsWith("generation\t2\t" + file + "\n"));
+	}
+
+	@Test
+	public void testLatencyHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(50));
+		for(int i = 1; i <= 100; i++)
+			histogram.record(i * 1000L);
+		assertEquals(100, histogram.getCount());
+		assertEquals(50.5, histogram.getMean(), 1e-9);
+		assertEquals(100, histogram.getMax());
+		// 50 falls into the bucket from 32 to 63
+		assertEquals(63, histogram.getPercentile(50));
+		assertEquals(100, histogram.getPercentile(99));
+		histogram.clear();
+		assertEquals(0, histogram.getCount());
+	}
+}
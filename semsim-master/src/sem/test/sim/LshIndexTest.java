@@ -0,0 +1,106 @@
+package sem.test.sim;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map.Entry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sem.model.SemModel;
+import sem.model.VectorSpace;
+import sem.sim.LshIndex;
+import sem.sim.SimFinder;
+import sem.sim.SimMeasure;
+import sem.test.model.RandomModels;
+import sem.test.util.ToolsTest;
+
+public class LshIndexTest {
+	
+	private String dir = "semtests/";
+	private String file = dir + "lsh.bin";
+	private SemModel semModel;
+	private VectorSpace vectorSpace;
+	private LinkedHashSet<String> candidateWords;
+
+	@Before
+	public void setUp() throws Exception {
+		ToolsTest.initTestDir(dir);
+		
+		semModel = RandomModels.createModel(3, 300, 5, 40, 4);
+		semModel.makeTensorSymmetric();
+		vectorSpace = new VectorSpace(semModel, VectorSpace.WEIGHT_PMI_LIM, true);
+		
+		candidateWords = new LinkedHashSet<String>(semModel.getNodeIndex().getIdMap().keySet());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		ToolsTest.removeTestDir(dir);
+	}
+	
+	/**
+	 * Check that the approximate results have exact scores, and count the ones that are as good as the exhaustive results.
+	 */
+	private double getRecall(LshIndex lshIndex, SimMeasure simMeasure, int limit){
+		SimFinder simFinder = new SimFinder(vectorSpace);
+		double found = 0.0, total = 0.0;
+		for(String word : candidateWords){
+			ArrayList<Double> expected = new ArrayList<Double>(simFinder.getMostSimilar(word, candidateWords, simMeasure, limit).values());
+			LinkedHashMap<String,Double> actual = simFinder.getApproximateMostSimilar(word, lshIndex, simMeasure, limit);
+			assertTrue(actual.size() <= limit);
+			for(Entry<String,Double> e : actual.entrySet()){
+				assertEquals(simFinder.getScore(simMeasure, e.getKey(), word), e.getValue(), 1e-9);
+				if(e.getValue() >= expected.get(expected.size() - 1) - 1e-9)
+					found++;
+			}
+			total += expected.size();
+		}
+		return found / total;
+	}
+	
+	@Test
+	public void testMinHash(){
+		LshIndex lshIndex = LshIndex.build(vectorSpace, candidateWords, LshIndex.MINHASH, 32, 1, 1, 1);
+		assertTrue(lshIndex.supports(SimMeasure.JACCARD_SET));
+		assertFalse(lshIndex.supports(SimMeasure.COSINE));
+		assertTrue(getRecall(lshIndex, SimMeasure.JACCARD_SET, 5) > 0.9);
+		assertTrue(getRecall(lshIndex, SimMeasure.DICE_SET, 5) > 0.9);
+	}
+	
+	@Test
+	public void testSimHash(){
+		LshIndex lshIndex = LshIndex.build(vectorSpace, candidateWords, LshIndex.SIMHASH, 32, 2, 1, 1);
+		assertTrue(lshIndex.supports(SimMeasure.COSINE));
+		assertTrue(getRecall(lshIndex, SimMeasure.COSINE, 5) > 0.9);
+		
+		// A word is always in the same buckets as itself
+		for(String word : candidateWords){
+			boolean found = false;
+			for(int candidate : lshIndex.getCandidates(vectorSpace.getSparseVector(word)))
+				if(lshIndex.getLabel(candidate).equals(word))
+					found = true;
+			assertTrue(found);
+		}
+		assertEquals(0, lshIndex.getCandidates(vectorSpace.getSparseVector("X_X")).length);
+	}
+	
+	@Test
+	public void testSave(){
+		LshIndex lshIndex = LshIndex.build(vectorSpace, candidateWords, LshIndex.SIMHASH, 8, 4, 30, 5);
+		lshIndex.save(file);
+		LshIndex lshIndex2 = new LshIndex(file);
+		assertTrue(lshIndex2.matches(VectorSpace.WEIGHT_PMI_LIM, 30));
+		assertFalse(lshIndex2.matches(VectorSpace.WEIGHT_PMI_LIM, 10));
+		assertEquals(LshIndex.SIMHASH, lshIndex2.getType());
+		assertEquals(8, lshIndex2.getBands());
+		assertEquals(4, lshIndex2.getRows());
+		assertEquals(candidateWords.size(), lshIndex2.size());
+		for(String word : candidateWords)
+			assertArrayEquals(lshIndex.getCandidates(vectorSpace.getSparseVector(word)), lshIndex2.getCandidates(vectorSpace.getSparseVector(word)));
+	}
+}
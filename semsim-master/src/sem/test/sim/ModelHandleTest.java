@@ -0,0 +1,175 @@
+package sem.test.sim;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sem.model.SemModel;
+import sem.model.VectorSpace;
+import sem.sim.ModelHandle;
+import sem.sim.SimFinder;
+import sem.sim.SimMeasure;
+import sem.test.model.RandomModels;
+import sem.test.util.ToolsTest;
+
+public class ModelHandleTest {
+
+	private String dir = "semtests/";
+	private String file = dir + "model";
+
+	@Before
+	public void setUp() throws Exception {
+		ToolsTest.initTestDir(dir);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		ToolsTest.removeTestDir(dir);
+	}
+
+	private static SemModel createModel(long seed) throws Exception {
+		return RandomModels.createModel(seed, 200, 2, 30, 5);
+	}
+
+	private static SimFinder createSimFinder(SemModel semModel){
+		semModel.makeTensorSymmetricView();
+		return new SimFinder(new VectorSpace(semModel, VectorSpace.WEIGHT_PMI_LIM, true));
+	}
+
+	@Test
+	public void testAcquireAndSwap() throws Exception {
+		ModelHandle modelHandle = new ModelHandle(createSimFinder(createModel(1)), null, 5);
+		ModelHandle.Generation first = modelHandle.acquire();
+		assertEquals(1, first.getNumber());
+		assertSame(first, modelHandle.getCurrent());
+
+		ModelHandle.Generation second = modelHandle.swap(createSimFinder(createModel(2)), null);
+		assertEquals(2, second.getNumber());
+		assertSame(second, modelHandle.acquire());
+		// The old generation is kept until its reader has finished
+		assertFalse(first.isClosed());
+		assertTrue(first.getSimFinder().getScore(SimMeasure.COSINE, "w1_N", "w1_N") > 0.0);
+		first.release();
+		assertTrue(first.isClosed());
+
+		// A generation without readers is closed right away
+		ModelHandle.Generation third = modelHandle.swap(createSimFinder(createModel(3)), null);
+		second.release();
+		assertTrue(second.isClosed());
+		assertFalse(third.isClosed());
+		modelHandle.shutdown();
+	}
+
+	@Test
+	public void testReload() throws Exception {
+		createModel(4).save(file);
+		SemModel semModel = createModel(5);
+		SimFinder simFinder = createSimFinder(semModel);
+		simFinder.setParallelism(2);
+		ModelHandle modelHandle = new ModelHandle(simFinder, null, 5);
+		for(String word : new String[]{"w1_N", "w2_N", "w3_N"})
+			for(int i = 0; i < 2; i++)
+				simFinder.getVectorSpace().getSparseVector(word);
+		// Both forms of the cached vectors count towards the cache limit
+		long weight = 0;
+		for(String word : new String[]{"w1_N", "w2_N", "w3_N"})
+			weight += VectorSpace.getCachedVectorBytes(simFinder.getVectorSpace().getVector(word).size());
+		assertEquals(weight, simFinder.getVectorSpace().getVectorCache().getWeight());
+		ArrayList<String> hotNodes = simFinder.getVectorSpace().getHotNodes(10);
+		assertEquals(3, hotNodes.size());
+		assertTrue(hotNodes.contains("w1_N"));
+
+		ModelHandle.Generation old = modelHandle.getCurrent();
+		ModelHandle.Generation reloaded = modelHandle.reload(file);
+		assertEquals(2, reloaded.getNumber());
+		assertEquals(file, reloaded.getPath());
+		assertSame(reloaded, modelHandle.getCurrent());
+		assertTrue(old.isClosed());
+		assertEquals(2, reloaded.getSimFinder().getParallelism());
+		// The hot nodes of the old model are already in the cache of the new one
+		assertEquals(3, reloaded.getVectorSpace().getVectorCache().size());
+		SimFinder expected = createSimFinder(new SemModel(file, false));
+		assertEquals(expected.getScore(SimMeasure.COSINE, "w1_N", "w5_N"), reloaded.getSimFinder().getScore(SimMeasure.COSINE, "w1_N", "w5_N"), 0.0);
+
+		// Queries keep running while the model is reloaded in the background
+		final ModelHandle handle = modelHandle;
+		final AtomicBoolean running = new AtomicBoolean(true);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		ArrayList<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for(int t = 0; t < 4; t++){
+			futures.add(executor.submit(new Callable<Integer>(){
+				@Override
+				public Integer call(){
+					int count = 0;
+					while(running.get() || count == 0){
+						ModelHandle.Generation generation = handle.acquire();
+						try{
+							assertFalse(generation.isClosed());
+							generation.getSimFinder().getMostSimilar("w" + (count % 30) + "_N", generation.getCandidateWords(), SimMeasure.COSINE, 5);
+						} finally {
+							generation.release();
+						}
+						count++;
+					}
+					return count;
+				}
+			}));
+		}
+
+		old = modelHandle.getCurrent();
+		reloaded = modelHandle.reloadAsync(file).get();
+		running.set(false);
+		for(Future<Integer> future : futures)
+			assertTrue(future.get() > 0);
+		executor.shutdown();
+		assertEquals(3, reloaded.getNumber());
+		assertTrue(old.isClosed());
+		assertFalse(reloaded.isClosed());
+		modelHandle.shutdown();
+	}
+
+	@Test
+	public void testReloadFailure() throws Exception {
+		ModelHandle modelHandle = new ModelHandle(createSimFinder(createModel(6)), null, 5);
+		ModelHandle.Generation current = modelHandle.getCurrent();
+		assertNull(modelHandle.getLastReloadError());
+
+		// A missing model is reported instead of ending the process
+		assertSame(current, modelHandle.reloadAsync(dir + "missing").get());
+		assertTrue(modelHandle.getLastReloadError().startsWith(dir + "missing: "));
+
+		// A model that is still being written
+		createModel(7).save(file);
+		new File(file + "_edgeindex.bin").delete();
+		assertSame(current, modelHandle.reloadAsync(file).get());
+		assertTrue(modelHandle.getLastReloadError().contains("_edgeindex.bin"));
+		createModel(7).save(file);
+		RandomAccessFile tensorFile = new RandomAccessFile(file + "_tensor.bin", "rw");
+		tensorFile.setLength(tensorFile.length() / 2);
+		tensorFile.close();
+		assertSame(current, modelHandle.reloadAsync(file).get());
+		assertNotNull(modelHandle.getLastReloadError());
+
+		assertSame(current, modelHandle.getCurrent());
+		assertFalse(current.isClosed());
+		assertTrue(current.getSimFinder().getScore(SimMeasure.COSINE, "w1_N", "w1_N") > 0.0);
+
+		// A successful reload clears the error
+		createModel(7).save(file);
+		ModelHandle.Generation reloaded = modelHandle.reloadAsync(file).get();
+		assertEquals(2, reloaded.getNumber());
+		assertNull(modelHandle.getLastReloadError());
+		modelHandle.shutdown();
+	}
+}
@@ -0,0 +1,110 @@
+package sem.test.sim;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map.Entry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sem.exception.SemModelException;
+import sem.model.SemModel;
+import sem.model.VectorSpace;
+import sem.sim.NeighbourTable;
+import sem.sim.SimFinder;
+import sem.sim.SimMeasure;
+import sem.test.model.RandomModels;
+import sem.test.util.ToolsTest;
+
+public class NeighbourTableTest {
+	
+	private String dir = "semtests/";
+	private String file = dir + "neighbours.bin";
+	private SemModel semModel;
+	private VectorSpace vectorSpace;
+	private LinkedHashSet<String> words;
+	private LinkedHashSet<String> candidateWords;
+
+	@Before
+	public void setUp() throws Exception {
+		ToolsTest.initTestDir(dir);
+		
+		semModel = RandomModels.createModel(3, 300, 5, 40, 4);
+		semModel.makeTensorSymmetric();
+		vectorSpace = new VectorSpace(semModel, VectorSpace.WEIGHT_PMI_LIM, false);
+		
+		words = new LinkedHashSet<String>();
+		candidateWords = new LinkedHashSet<String>();
+		for(String s : semModel.getNodeIndex().getIdMap().keySet()){
+			words.add(s);
+			if(semModel.getNodeCount(s) >= 30)
+				candidateWords.add(s);
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		ToolsTest.removeTestDir(dir);
+	}
+	
+	private void compare(NeighbourTable table, SimMeasure simMeasure, int limit){
+		SimFinder simFinder = new SimFinder(vectorSpace);
+		for(String word : words){
+			LinkedHashMap<String,Double> expected = simFinder.getMostSimilar(word, candidateWords, simMeasure, limit);
+			LinkedHashMap<String,Double> actual = table.getNeighbours(word, limit);
+			assertEquals(new ArrayList<Entry<String,Double>>(expected.entrySet()), new ArrayList<Entry<String,Double>>(actual.entrySet()));
+		}
+	}
+	
+	@Test
+	public void testBuild() throws SemModelException{
+		NeighbourTable table = NeighbourTable.build(vectorSpace, words, candidateWords, SimMeasure.COSINE, 30, 5, 3);
+		assertEquals(words.size(), table.size());
+		compare(table, SimMeasure.COSINE, 5);
+		compare(table, SimMeasure.COSINE, 2);
+		assertNull(table.getNeighbours("w1_N", 6));
+		assertNull(table.getNeighbours("X_X", 1));
+	}
+	
+	@Test
+	public void testDistance(){
+		NeighbourTable table = NeighbourTable.build(vectorSpace, words, candidateWords, SimMeasure.MANHATTAN, 30, 4, 2);
+		compare(table, SimMeasure.MANHATTAN, 4);
+	}
+	
+	@Test
+	public void testSave(){
+		NeighbourTable table = NeighbourTable.build(vectorSpace, words, candidateWords, SimMeasure.COSINE, 30, 5, 2);
+		table.save(file);
+		NeighbourTable table2 = new NeighbourTable(file);
+		assertTrue(table2.matches(SimMeasure.COSINE, VectorSpace.WEIGHT_PMI_LIM, 30));
+		assertFalse(table2.matches(SimMeasure.COSINE, VectorSpace.WEIGHT_PMI_LIM, 10));
+		assertEquals(5, table2.getK());
+		compare(table2, SimMeasure.COSINE, 5);
+		
+		SimFinder simFinder = new SimFinder(vectorSpace);
+		simFinder.setNeighbourTable(table2);
+		assertEquals(table2.getNeighbours("w1_N", 3), simFinder.getMostSimilar("w1_N", candidateWords, SimMeasure.COSINE, 3));
+	}
+	
+	@Test
+	public void testOtherCandidates(){
+		NeighbourTable table = NeighbourTable.build(vectorSpace, words, candidateWords, SimMeasure.COSINE, 30, 5, 2);
+		assertEquals(NeighbourTable.getFingerprint(candidateWords), table.getCandidateFingerprint());
+		
+		LinkedHashSet<String> otherWords = new LinkedHashSet<String>(candidateWords);
+		otherWords.remove(table.getNeighbours("w1_N", 1).keySet().iterator().next());
+		assertTrue(NeighbourTable.getFingerprint(otherWords) != table.getCandidateFingerprint());
+		
+		SimFinder simFinder = new SimFinder(vectorSpace);
+		LinkedHashMap<String,Double> expected = simFinder.getMostSimilar("w1_N", otherWords, SimMeasure.COSINE, 3);
+		simFinder.setNeighbourTable(table);
+		assertEquals(expected, simFinder.getMostSimilar("w1_N", otherWords, SimMeasure.COSINE, 3));
+		assertFalse(expected.containsKey(table.getNeighbours("w1_N", 1).keySet().iterator().next()));
+		assertEquals(table.getNeighbours("w1_N", 3), simFinder.getMostSimilar("w1_N", candidateWords, SimMeasure.COSINE, 3));
+	}
+}
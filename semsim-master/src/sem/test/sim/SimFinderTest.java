@@ -0,0 +1,249 @@
+package sem.test.sim;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sem.model.DenseEmbeddings;
+import sem.model.SemModel;
+import sem.model.VectorSpace;
+import sem.sim.SimFinder;
+import sem.sim.SimMeasure;
+import sem.test.model.RandomModels;
+import sem.util.Tensor;
+import sem.util.Tools;
+
+public class SimFinderTest {
+	
+	private SemModel semModel;
+	private VectorSpace vectorSpace;
+	private LinkedHashSet<String> candidateWords;
+
+	@Before
+	public void setUp() throws Exception {
+		// Sparse random graphs, so that many pairs of words have no features in common
+		semModel = RandomModels.createModel(7, 200, 2, 60, 20);
+		semModel.makeTensorSymmetric();
+		vectorSpace = new VectorSpace(semModel, VectorSpace.WEIGHT_PMI, true);
+		
+		candidateWords = new LinkedHashSet<String>();
+		for(int i = 0; i < 65; i++)
+			candidateWords.add("w" + i + "_N");
+	}
+	
+	@Test
+	public void testScoresWithoutOverlap(){
+		SimFinder simFinder = new SimFinder(vectorSpace);
+		LinkedHashSet<String> mainWords = new LinkedHashSet<String>(new ArrayList<String>(candidateWords).subList(0, 10));
+		for(SimMeasure simMeasure : SimMeasure.values()){
+			if(!simMeasure.requiresOverlap())
+				continue;
+			for(boolean findHypernyms : new boolean[]{false, true}){
+				LinkedHashMap<String,LinkedHashMap<String,Double>> scores = simFinder.getScores(mainWords, candidateWords, simMeasure, findHypernyms, 2);
+				for(String mainWord : mainWords){
+					ArrayList<String> order = new ArrayList<String>();
+					for(Entry<String,Double> e : scores.get(mainWord).entrySet()){
+						order.add(e.getKey());
+						double expected;
+						if(!findHypernyms)
+							expected = simMeasure.sim(vectorSpace.getVector(e.getKey()), vectorSpace.getVector(mainWord));
+						else
+							expected = simMeasure.sim(vectorSpace.getVector(mainWord), vectorSpace.getVector(e.getKey()));
+						assertEquals(simMeasure.getLabel(), expected, e.getValue(), 1e-9);
+					}
+					assertEquals(new ArrayList<String>(candidateWords), order);
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testFeatureNodes(){
+		for(String word : candidateWords){
+			Integer nodeId = semModel.getNodeIndex().getId(word);
+			for(Integer featureId : vectorSpace.getVector(word).keySet()){
+				boolean found = false;
+				for(int id : vectorSpace.getFeatureNodes(featureId))
+					if(id == nodeId)
+						found = true;
+				assertTrue(found);
+			}
+			if(vectorSpace.getVector(word).size() > 0)
+				assertTrue(vectorSpace.getSharedNodes(vectorSpace.getSparseVector(word)).contains(nodeId));
+		}
+		assertEquals(0, vectorSpace.getFeatureNodes(-1).length);
+	}
+	
+	@Test
+	public void testFeatureIds(){
+		Tensor tensor = semModel.getTensor();
+		double total = 0.0;
+		for(int featureId = 1; featureId <= vectorSpace.getNumFeatures(); featureId++){
+			int relationId = vectorSpace.getFeatureRelation(featureId), depId = vectorSpace.getFeatureDep(featureId);
+			assertEquals(featureId, vectorSpace.getFeatureId(relationId, depId));
+			assertEquals(tensor.get(null, relationId, depId), vectorSpace.getFeatureCount(featureId), 1e-9);
+			assertEquals(featureId, (int)vectorSpace.getFeatureIndex().getId(relationId + "," + depId));
+			total += vectorSpace.getFeatureCount(featureId);
+		}
+		assertEquals(tensor.get(null, null, null), vectorSpace.getTotalFeatureCount(), 1e-9);
+		assertEquals(total, vectorSpace.getTotalFeatureCount(), 1e-9);
+		assertEquals(0, vectorSpace.getFeatureId(12345, 1));
+		assertEquals(0.0, vectorSpace.getFeatureCount(0), 0.0);
+	}
+	
+	@Test
+	public void testPrecompute(){
+		VectorSpace precomputed = new VectorSpace(semModel, VectorSpace.WEIGHT_PMI, true);
+		assertEquals(semModel.getTensor().getKeys().length, precomputed.precomputeAll(4));
+		assertEquals(semModel.getTensor().getKeys().length, precomputed.getVectorCache().size());
+		long misses = precomputed.getVectorCache().getMissCount();
+		for(String word : candidateWords){
+			assertEquals(vectorSpace.getVector(word), precomputed.getVector(word));
+			assertEquals(vectorSpace.getSparseVector(word).size(), precomputed.getSparseVector(word).size());
+		}
+		assertEquals(misses, precomputed.getVectorCache().getMissCount());
+		
+		// Labels that are not in the model are skipped
+		ArrayList<String> words = new ArrayList<String>(candidateWords);
+		words.add("unknown_N");
+		assertEquals(semModel.getTensor().getKeys().length, new VectorSpace(semModel, VectorSpace.WEIGHT_PMI, true).precompute(words, 2));
+	}
+	
+	@Test
+	public void testDenseSearch(){
+		SimFinder simFinder = new SimFinder(vectorSpace);
+		LinkedHashMap<String,LinkedHashMap<String,Double>> exact = new LinkedHashMap<String,LinkedHashMap<String,Double>>();
+		for(String word : candidateWords)
+			exact.put(word, simFinder.getMostSimilar(word, candidateWords, SimMeasure.COSINE, 5));
+		
+		DenseEmbeddings embeddings = DenseEmbeddings.build(vectorSpace, 1024, 1);
+		VectorSpace denseSpace = new VectorSpace(semModel, VectorSpace.WEIGHT_PMI, true);
+		denseSpace.setEmbeddings(embeddings);
+		
+		// The embeddings approximate the exact cosine
+		double error = 0.0;
+		for(String word : candidateWords)
+			error += Math.abs(SimMeasure.COSINE.sim(denseSpace.getEmbedding(word), denseSpace.getEmbedding("w1_N")) - SimMeasure.COSINE.sim(vectorSpace.getSparseVector(word), vectorSpace.getSparseVector("w1_N")));
+		assertTrue(error / candidateWords.size() < 0.1);
+		
+		// Re-ranking every candidate gives the exact results, re-ranking a few gives exact scores
+		SimFinder denseFinder = new SimFinder(denseSpace);
+		denseFinder.setRerankLimit(candidateWords.size());
+		for(String word : candidateWords)
+			assertEquals(exact.get(word), denseFinder.getMostSimilar(word, candidateWords, SimMeasure.COSINE, 5));
+		denseFinder.setRerankLimit(10);
+		// Counts the results that are as good as the exact fifth result, as there are many ties
+		int found = 0;
+		for(String word : candidateWords){
+			double fifth = new ArrayList<Double>(exact.get(word).values()).get(4);
+			LinkedHashMap<String,Double> results = denseFinder.getMostSimilar(word, candidateWords, SimMeasure.COSINE, 5);
+			assertEquals(5, results.size());
+			for(Entry<String,Double> e : results.entrySet()){
+				assertEquals(simFinder.getScore(SimMeasure.COSINE, e.getKey(), word), e.getValue(), 1e-9);
+				if(e.getValue() >= fifth - 1e-9)
+					found++;
+			}
+		}
+		assertTrue(found > 0.9 * 5 * candidateWords.size());
+		
+		try{
+			new VectorSpace(semModel, VectorSpace.WEIGHT_PMI_LIM, false).setEmbeddings(embeddings);
+			fail("Embeddings with a different weight scheme should not be accepted");
+		} catch(RuntimeException e){
+		}
+	}
+	
+	@Test
+	public void testParallelQuery(){
+		SimFinder simFinder = new SimFinder(vectorSpace);
+		SimFinder parallelFinder = new SimFinder(vectorSpace);
+		parallelFinder.setParallelism(4);
+		for(SimMeasure simMeasure : new SimMeasure[]{SimMeasure.COSINE, SimMeasure.WEEDS_PREC, SimMeasure.LIN, SimMeasure.EUCLIDEAN}){
+			for(String word : new String[]{"w1_N", "w7_N", "w30_N", "unknown_N"}){
+				for(int limit : new int[]{1, 5, 100}){
+					LinkedHashMap<String,Double> expected = simFinder.getMostSimilar(word, candidateWords, simMeasure, limit);
+					assertEquals(new ArrayList<Entry<String,Double>>(expected.entrySet()), new ArrayList<Entry<String,Double>>(parallelFinder.getMostSimilar(word, candidateWords, simMeasure, limit).entrySet()));
+				}
+				for(boolean findHypernyms : new boolean[]{false, true}){
+					LinkedHashMap<String,Double> expected = simFinder.getScores(word, candidateWords, simMeasure, findHypernyms);
+					assertEquals(new ArrayList<Entry<String,Double>>(expected.entrySet()), new ArrayList<Entry<String,Double>>(parallelFinder.getScores(word, candidateWords, simMeasure, findHypernyms).entrySet()));
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testTopK(){
+		SimFinder simFinder = new SimFinder(vectorSpace);
+		SimFinder parallelFinder = new SimFinder(vectorSpace);
+		parallelFinder.setParallelism(4);
+		LinkedHashSet<String> mainWords = new LinkedHashSet<String>();
+		for(String word : new String[]{"w1_N", "w7_N", "w30_N", "unknown_N"})
+			mainWords.add(word);
+		for(SimMeasure simMeasure : new SimMeasure[]{SimMeasure.COSINE, SimMeasure.WEEDS_PREC, SimMeasure.EUCLIDEAN}){
+			for(boolean findHypernyms : new boolean[]{false, true}){
+				for(int k : new int[]{0, 1, 5, 100}){
+					LinkedHashMap<String,LinkedHashMap<String,Double>> topK = simFinder.getTopK(mainWords, k, candidateWords, simMeasure, findHypernyms, 2);
+					for(String word : mainWords){
+						ArrayList<Entry<String,Double>> expected = new ArrayList<Entry<String,Double>>();
+						for(Entry<String,Double> e : Tools.sort(simFinder.getScores(word, candidateWords, simMeasure, findHypernyms), !simMeasure.isDistance()).entrySet())
+							if(expected.size() < k)
+								expected.add(e);
+						assertEquals(expected, new ArrayList<Entry<String,Double>>(simFinder.getTopK(word, k, candidateWords, simMeasure, findHypernyms).entrySet()));
+						assertEquals(expected, new ArrayList<Entry<String,Double>>(parallelFinder.getTopK(word, k, candidateWords, simMeasure, findHypernyms).entrySet()));
+						assertEquals(expected, new ArrayList<Entry<String,Double>>(topK.get(word).entrySet()));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testMixedThreadCounts() throws Exception {
+		// Single queries and batch calls with different thread counts share the same pool, on the same finder at the same time
+		final SimFinder simFinder = new SimFinder(vectorSpace);
+		simFinder.setParallelism(4);
+		final LinkedHashSet<String> mainWords = new LinkedHashSet<String>(new ArrayList<String>(candidateWords).subList(0, 5));
+		final LinkedHashMap<String,Double> expected = new SimFinder(vectorSpace).getTopK("w1_N", 5, candidateWords, SimMeasure.COSINE, false);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+		for(int t = 0; t < 4; t++){
+			final int numThreads = t + 1;
+			futures.add(executor.submit(new Callable<Object>(){
+				@Override
+				public Object call(){
+					for(int i = 0; i < 20; i++){
+						assertEquals(expected, simFinder.getTopK("w1_N", 5, candidateWords, SimMeasure.COSINE, false));
+						assertEquals(expected, simFinder.getTopK(mainWords, 5, candidateWords, SimMeasure.COSINE, false, numThreads).get("w1_N"));
+					}
+					return null;
+				}
+			}));
+		}
+		for(Future<?> future : futures)
+			future.get();
+		executor.shutdown();
+	}
+
+	@Test
+	public void testPrecomputeCandidates(){
+		VectorSpace cachedSpace = new VectorSpace(semModel, VectorSpace.WEIGHT_PMI, true);
+		SimFinder simFinder = new SimFinder(cachedSpace);
+		// Only the candidates that share a feature with the query are scored, so nothing is created up front
+		assertEquals(0, simFinder.precomputeCandidates(candidateWords, SimMeasure.COSINE, 2));
+		assertEquals(0, cachedSpace.getVectorCache().size());
+		// Every candidate is scored with euclidean distance
+		assertTrue(simFinder.precomputeCandidates(candidateWords, SimMeasure.EUCLIDEAN, 2) > 0);
+		assertTrue(cachedSpace.getVectorCache().size() > 0);
+	}
+}
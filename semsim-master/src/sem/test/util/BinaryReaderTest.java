@@ -0,0 +1,83 @@
+package sem.test.util;
+
+import static org.junit.Assert.*;
+
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sem.util.BinaryReader;
+import sem.util.BinaryWriter;
+
+public class BinaryReaderTest {
+
+	private String dir = "semtests/";
+	private String file = dir + "binary.bin";
+
+	@Before
+	public void setUp() throws Exception {
+		ToolsTest.initTestDir(dir);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		ToolsTest.removeTestDir(dir);
+	}
+
+	private void write(int count){
+		BinaryWriter writer = new BinaryWriter(file);
+		writer.writeInt(7);
+		writer.writeLong(-3L);
+		writer.writeDouble(0.25);
+		int[] values = new int[count];
+		for(int i = 0; i < count; i++)
+			values[i] = i * i;
+		writer.writeInts(values);
+		// Enough single values that they do not fit into one window
+		for(int i = 0; i < 2000; i++)
+			writer.writeLong(i);
+		writer.close();
+	}
+
+	@Test
+	public void testRead() {
+		write(1000);
+		BinaryReader reader = new BinaryReader(file);
+		try{
+			assertEquals(7, reader.readInt());
+			assertEquals(-3L, reader.readLong());
+			assertEquals(0.25, reader.readDouble(), 0.0);
+			IntBuffer values = reader.readInts();
+			assertEquals(1000, values.limit());
+			for(int i = 0; i < 1000; i++)
+				assertEquals(i * i, values.get(i));
+			for(int i = 0; i < 2000; i++)
+				assertEquals(i, reader.readLong());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testTruncated() throws Exception {
+		write(1000);
+		RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+		truncated.setLength(1000);
+		truncated.close();
+		BinaryReader reader = new BinaryReader(file);
+		try{
+			reader.readInt();
+			reader.readLong();
+			reader.readDouble();
+			reader.readInts();
+			fail();
+		} catch(RuntimeException e){
+			assertTrue(e.getMessage().startsWith("Truncated binary file: " + file));
+		} finally {
+			reader.close();
+		}
+	}
+}
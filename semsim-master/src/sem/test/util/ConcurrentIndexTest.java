@@ -0,0 +1,142 @@
+package sem.test.util;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sem.util.ConcurrentIndex;
+import sem.util.Index;
+
+public class ConcurrentIndexTest {
+	
+	private String dir = "semtests/";
+	private String file = dir + "test-concurrentindex.txt";
+
+	@Before
+	public void setUp() throws Exception {
+		File d = new File(dir);
+		if(!d.exists())
+			d.mkdir();
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		(new File(file)).delete();
+		(new File(dir)).delete();
+	}
+
+	@Test
+	public void testAdd() {
+		Index index = new ConcurrentIndex();
+		assertTrue(index.getCount("str1") == 0.0);
+		
+		index.add("str1", 3.0);
+		assertTrue(index.getCount("str1") == 3.0);
+		
+		index.add("str2", 5.0);
+		assertTrue(index.getCount("str2") == 5.0);
+		
+		index.add("str1", 8.0);
+		assertTrue(index.getCount("str1") == 11.0);
+		
+		index.add("str1");
+		assertTrue(index.getCount("str1") == 12.0);
+		assertTrue(index.getTotalCount() == 17.0);
+	}
+
+	@Test
+	public void testGetIdAndLabel() {
+		Index index = new ConcurrentIndex();
+		assertTrue(index.getId("str1") == null);
+		assertTrue(index.getLabel(1) == null);
+		
+		index.add("str1", 3.0);
+		index.add("str2", 5.0);
+		index.add("str3", 1.0);
+		index.add("str1", 8.0);
+		
+		assertTrue(index.getId("str1") == 1);
+		assertTrue(index.getId("str2") == 2);
+		assertTrue(index.getId("str3") == 3);
+		assertTrue(index.getId("str4") == null);
+		assertTrue(index.getLabel(2).equals("str2"));
+		assertTrue(index.getCount(1) == 11.0);
+		assertTrue(index.getCount(4) == 0.0);
+		assertTrue(index.size() == 3);
+		
+		HashMap<Integer,String> labelMap = index.getLabelMap();
+		assertTrue(labelMap.size() == 3);
+		assertTrue(labelMap.get(3).equals("str3"));
+		
+		index.clear();
+		assertTrue(index.size() == 0);
+		assertTrue(index.getLabel(1) == null);
+	}
+	
+	@Test
+	public void testManyPages() {
+		ConcurrentIndex index = new ConcurrentIndex();
+		for(int i = 0; i < 100000; i++)
+			index.add("str" + i, (double)i);
+		assertTrue(index.size() == 100000);
+		assertTrue(index.getMaxId() == 100000);
+		assertTrue(index.getLabel(index.getId("str77777")).equals("str77777"));
+		assertTrue(index.getCount("str77777") == 77777.0);
+	}
+
+	@Test
+	public void testConcurrentAdd() throws InterruptedException {
+		final ConcurrentIndex index = new ConcurrentIndex();
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		for(int t = 0; t < 8; t++){
+			Thread thread = new Thread(new Runnable(){
+				public void run(){
+					for(int i = 0; i < 20000; i++)
+						index.add("str" + (i % 1000), 1.0);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for(Thread thread : threads)
+			thread.join();
+		
+		assertTrue(index.size() == 1000);
+		assertTrue(index.getMaxId() == 1000);
+		assertTrue(index.getTotalCount() == 160000.0);
+		for(int i = 0; i < 1000; i++){
+			assertTrue(index.getCount("str" + i) == 160.0);
+			assertTrue(index.getLabel(index.getId("str" + i)).equals("str" + i));
+		}
+	}
+
+	@Test
+	public void testSave() {
+		Index index = new ConcurrentIndex();
+		index.add("str1", 3.0);
+		index.add("str2", 5.0);
+		index.add("str1", 8.0);
+		index.add("str3", 10.0);
+		
+		index.save(file);
+		
+		Index index2 = new ConcurrentIndex(file);
+		assertTrue(index2.getCount("str1") == 11.0);
+		assertTrue(index2.getCount("str2") == 5.0);
+		assertTrue(index2.getCount("str3") == 10.0);
+		assertTrue(index2.getLabel(3).equals("str3"));
+		assertTrue(index2.getTotalCount() == 26.0);
+		assertTrue(new ConcurrentIndex(index2).getTotalCount() == 26.0);
+		
+		Index index3 = new Index(file);
+		assertTrue(index3.getCount("str1") == 11.0);
+		assertTrue(index3.getId("str2") == 2);
+	}
+
+}
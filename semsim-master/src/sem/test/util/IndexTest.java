@@ -124,6 +124,22 @@ public class IndexTest {
 		assertTrue(index.size() == 0);
 	}
 
+	@Test
+	public void testGetTotalCount() {
+		Index index = new Index();
+		assertTrue(index.getTotalCount() == 0.0);
+		index.add("str1", 3.0);
+		index.add("str2", 5.0);
+		index.add("str1", 8.0);
+		assertTrue(index.getTotalCount() == 16.0);
+		
+		index.save(file);
+		assertTrue(new Index(file).getTotalCount() == 16.0);
+		
+		index.clear();
+		assertTrue(index.getTotalCount() == 0.0);
+	}
+
 	@Test
 	public void testGetIdMap() {
 		Index index = new Index();
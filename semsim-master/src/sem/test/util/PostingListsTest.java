@@ -0,0 +1,110 @@
+package sem.test.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sem.util.PostingLists;
+
+public class PostingListsTest {
+
+	private String dir = "semtests/";
+	private String file = dir + "test-locations.txt";
+
+	@Before
+	public void setUp() throws Exception {
+		File d = new File(dir);
+		if(!d.exists())
+			d.mkdir();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		(new File(file)).delete();
+		(new File(dir)).delete();
+	}
+
+	/**
+	 * Random occurrences of 40 keys in 3000 sentences. Some keys are frequent, so that the intersections use the skip points.
+	 */
+	private ArrayList<ArrayList<Integer>> createLocations(PostingLists postingLists){
+		Random random = new Random(5);
+		ArrayList<ArrayList<Integer>> locations = new ArrayList<ArrayList<Integer>>();
+		for(int key = 0; key < 40; key++)
+			locations.add(new ArrayList<Integer>());
+		for(int sentence = 1; sentence <= 3000; sentence++){
+			int length = 1 + random.nextInt(12);
+			for(int i = 0; i < length; i++){
+				int key = (random.nextInt(3) == 0)?random.nextInt(3):random.nextInt(40);
+				postingLists.add(key, sentence);
+				locations.get(key).add(sentence);
+			}
+		}
+		return locations;
+	}
+
+	private static double countMatches(ArrayList<Integer> locations1, ArrayList<Integer> locations2, boolean same){
+		double total = 0.0;
+		for(int i = 0; i < locations1.size(); i++)
+			for(int j = same?i+1:0; j < locations2.size(); j++)
+				if(locations1.get(i).equals(locations2.get(j)))
+					total++;
+		return total;
+	}
+
+	@Test
+	public void testMatchCount() {
+		PostingLists postingLists = new PostingLists();
+		ArrayList<ArrayList<Integer>> locations = createLocations(postingLists);
+
+		for(int key1 = 0; key1 < 40; key1 += 3)
+			for(int key2 = 0; key2 < 40; key2 += 2)
+				assertEquals(countMatches(locations.get(key1), locations.get(key2), key1 == key2), postingLists.getMatchCount(key1, key2), 0.0);
+
+		for(int key = 0; key < 40; key++){
+			HashSet<Integer> sentences = new HashSet<Integer>(locations.get(key));
+			double expected = 0.0;
+			for(int other = 0; other < 40; other++)
+				if(other != key)
+					for(Integer sentence : locations.get(other))
+						if(sentences.contains(sentence))
+							expected++;
+			assertEquals(expected, postingLists.getMatchCount(key), 0.0);
+		}
+
+		assertEquals(0.0, postingLists.getMatchCount(1, 99), 0.0);
+		assertEquals(0.0, postingLists.getMatchCount(99), 0.0);
+	}
+
+	@Test
+	public void testSave() {
+		PostingLists postingLists = new PostingLists();
+		ArrayList<ArrayList<Integer>> locations = createLocations(postingLists);
+		postingLists.save(file);
+
+		PostingLists loaded = new PostingLists(file);
+		assertEquals(40, loaded.size());
+		for(int key = 0; key < 40; key++){
+			int[] sentences = loaded.get(key);
+			assertEquals(locations.get(key).size(), sentences.length);
+			for(int i = 0; i < sentences.length; i++)
+				assertEquals((int)locations.get(key).get(i), sentences[i]);
+		}
+		assertEquals(postingLists.getTotalCoocCount(), loaded.getTotalCoocCount(), 0.0);
+		assertTrue(loaded.getByteCount() < 4 * 3000 * 6);
+	}
+
+	@Test(expected=RuntimeException.class)
+	public void testOrder() {
+		PostingLists postingLists = new PostingLists();
+		postingLists.add(1, 5);
+		postingLists.add(1, 3);
+	}
+}
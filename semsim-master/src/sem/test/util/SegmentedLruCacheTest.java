@@ -0,0 +1,197 @@
+package sem.test.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import sem.util.SegmentedLruCache;
+
+public class SegmentedLruCacheTest {
+
+	private SegmentedLruCache.Loader<String> loader = new SegmentedLruCache.Loader<String>(){
+		@Override
+		public String load(int key){
+			return "v" + key;
+		}
+	};
+
+	@Test
+	public void testGet() {
+		SegmentedLruCache<String> cache = new SegmentedLruCache<String>(1000, null);
+		assertNull(cache.getIfPresent(5));
+		assertEquals("v5", cache.get(5, loader));
+		assertEquals("v5", cache.getIfPresent(5));
+		cache.put(5, "other");
+		assertEquals("other", cache.get(5, loader));
+
+		assertEquals(1, cache.size());
+		assertEquals(2, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(1, cache.getLoadCount());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertNull(cache.getIfPresent(5));
+	}
+
+	@Test
+	public void testBounded() {
+		SegmentedLruCache<String> cache = new SegmentedLruCache<String>(160, new SegmentedLruCache.Weigher<String>(){
+			@Override
+			public long weigh(String value){
+				return value.length();
+			}
+		});
+		for(int i = 0; i < 10000; i++)
+			cache.get(i, loader);
+		assertTrue(cache.getWeight() <= 160);
+		assertTrue(cache.getEvictionCount() > 0);
+		assertEquals(10000, cache.getLoadCount());
+
+		// Values heavier than a shard are not cached
+		cache.put(1, "a value that is longer than the limit of one shard");
+		assertNull(cache.getIfPresent(1));
+	}
+
+	@Test
+	public void testScanResistance() {
+		SegmentedLruCache<String> cache = new SegmentedLruCache<String>(16 * 10, null);
+		// Keys that are read twice are protected
+		ArrayList<Integer> hot = new ArrayList<Integer>();
+		for(int i = 0; i < 64; i++){
+			cache.get(i, loader);
+			cache.get(i, loader);
+			hot.add(i);
+		}
+		// A scan over keys that are read only once
+		for(int i = 1000; i < 3000; i++)
+			cache.get(i, loader);
+		int found = 0;
+		for(int key : hot)
+			if(cache.getIfPresent(key) != null)
+				found++;
+		assertTrue(found > 32);
+	}
+
+	@Test
+	public void testCoalescing() throws InterruptedException {
+		final SegmentedLruCache<String> cache = new SegmentedLruCache<String>(1000, null);
+		final AtomicInteger loads = new AtomicInteger(0);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final SegmentedLruCache.Loader<String> slowLoader = new SegmentedLruCache.Loader<String>(){
+			@Override
+			public String load(int key){
+				loads.incrementAndGet();
+				started.countDown();
+				try{
+					release.await();
+				} catch(InterruptedException e){
+					throw new RuntimeException(e);
+				}
+				return "v" + key;
+			}
+		};
+
+		final String[] results = new String[8];
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		for(int t = 0; t < results.length; t++){
+			final int index = t;
+			Thread thread = new Thread(new Runnable(){
+				public void run(){
+					results[index] = cache.get(42, slowLoader);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+			if(t == 0)
+				started.await();
+		}
+		// Give the other threads time to reach the cache
+		Thread.sleep(100);
+		release.countDown();
+		for(Thread thread : threads)
+			thread.join();
+
+		assertEquals(1, loads.get());
+		for(String result : results)
+			assertEquals("v42", result);
+	}
+
+	@Test
+	public void testLoaderException() {
+		SegmentedLruCache<String> cache = new SegmentedLruCache<String>(1000, null);
+		try{
+			cache.get(3, new SegmentedLruCache.Loader<String>(){
+				@Override
+				public String load(int key){
+					throw new IllegalStateException("failed");
+				}
+			});
+			fail();
+		} catch(IllegalStateException e){
+		}
+		// A failed load is not cached, and the key can be loaded again
+		assertNull(cache.getIfPresent(3));
+		assertEquals("v3", cache.get(3, loader));
+	}
+
+	@Test
+	public void testHotKeys() {
+		SegmentedLruCache<String> cache = new SegmentedLruCache<String>(1000, null);
+		for(int key = 0; key < 50; key++)
+			cache.get(key, loader);
+		// Keys that are read again move into the protected segments, and come first
+		for(int key : new int[]{7, 21, 40})
+			cache.get(key, loader);
+		int[] hotKeys = cache.getHotKeys(100);
+		assertEquals(50, hotKeys.length);
+		ArrayList<Integer> first = new ArrayList<Integer>();
+		for(int i = 0; i < 3; i++)
+			first.add(hotKeys[i]);
+		assertTrue(first.contains(7) && first.contains(21) && first.contains(40));
+		assertEquals(3, cache.getHotKeys(3).length);
+		assertEquals(0, cache.getHotKeys(0).length);
+	}
+
+	@Test
+	public void testClearDuringLoad() throws InterruptedException {
+		final SegmentedLruCache<String> cache = new SegmentedLruCache<String>(1000, null);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final String[] result = new String[1];
+		Thread thread = new Thread(new Runnable(){
+			public void run(){
+				result[0] = cache.get(8, new SegmentedLruCache.Loader<String>(){
+					@Override
+					public String load(int key){
+						started.countDown();
+						try{
+							release.await();
+						} catch(InterruptedException e){
+							throw new RuntimeException(e);
+						}
+						return "stale";
+					}
+				});
+			}
+		});
+		thread.start();
+		started.await();
+		cache.clear();
+		// A load that starts after clear() does not wait for the old one
+		assertEquals("v8", cache.get(8, loader));
+		release.countDown();
+		thread.join();
+
+		// The old load gets its value, but does not replace the new one
+		assertEquals("stale", result[0]);
+		assertEquals("v8", cache.getIfPresent(8));
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+}
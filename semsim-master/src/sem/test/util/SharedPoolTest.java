@@ -0,0 +1,57 @@
+package sem.test.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+import sem.util.SharedPool;
+
+public class SharedPoolTest {
+
+	@Test
+	public void testRun() {
+		for(int numThreads : new int[]{1, 2, 3}){
+			final AtomicIntegerArray runs = new AtomicIntegerArray(200);
+			final AtomicInteger running = new AtomicInteger(0);
+			final AtomicInteger maxRunning = new AtomicInteger(0);
+			SharedPool.run(runs.length(), numThreads, new SharedPool.Chunks(){
+				@Override
+				public void run(int chunk){
+					int count = running.incrementAndGet();
+					int max;
+					while(count > (max = maxRunning.get()) && !maxRunning.compareAndSet(max, count));
+					try{
+						Thread.sleep(1);
+					} catch(InterruptedException e){
+						throw new RuntimeException(e);
+					}
+					runs.incrementAndGet(chunk);
+					running.decrementAndGet();
+				}
+			});
+			// Every chunk is run once, and never by more threads than asked for
+			for(int i = 0; i < runs.length(); i++)
+				assertEquals(1, runs.get(i));
+			assertTrue(maxRunning.get() <= numThreads);
+		}
+		SharedPool.run(0, 4, null);
+	}
+
+	@Test
+	public void testException() {
+		try{
+			SharedPool.run(10, 2, new SharedPool.Chunks(){
+				@Override
+				public void run(int chunk){
+					if(chunk == 7)
+						throw new IllegalStateException("failed");
+				}
+			});
+			fail();
+		} catch(IllegalStateException e){
+		}
+	}
+}
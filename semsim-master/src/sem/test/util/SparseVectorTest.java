@@ -0,0 +1,134 @@
+package sem.test.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sem.sim.MultiMeasureScorer;
+import sem.sim.SimMeasure;
+import sem.util.SparseVector;
+import sem.util.Tools;
+
+public class SparseVectorTest {
+	
+	private LinkedHashMap<Integer,Double> createMap(Random random, int size, boolean positive){
+		LinkedHashMap<Integer,Double> map = new LinkedHashMap<Integer,Double>();
+		while(map.size() < size){
+			double value = random.nextInt(10) / 2.0;
+			if(!positive && random.nextBoolean())
+				value = -value;
+			map.put(1 + random.nextInt(40), value);
+		}
+		return Tools.sort(map, true);
+	}
+	
+	@Test
+	public void testFromMap(){
+		LinkedHashMap<Integer,Double> map = new LinkedHashMap<Integer,Double>();
+		map.put(7, 3.0);
+		map.put(2, 2.0);
+		map.put(9, 2.0);
+		map.put(4, -1.0);
+		map.put(5, 0.0);
+		SparseVector vector = SparseVector.fromMap(map);
+		
+		assertArrayEquals(new int[]{2, 4, 5, 7, 9}, vector.getIds());
+		assertEquals(-1.0, vector.get(4), 0.0);
+		assertEquals(0.0, vector.get(3), 0.0);
+		assertTrue(vector.contains(5));
+		assertFalse(vector.contains(6));
+		assertEquals(6.0, vector.getSum(), 0.0);
+		assertEquals(18.0, vector.getSumOfSquares(), 0.0);
+		assertEquals(7.0, vector.getPositiveSum(), 0.0);
+		assertEquals(4, vector.getNonZeroCount());
+		
+		// Same order as sorting the map, ties keep the order of the map
+		assertEquals(new ArrayList<Integer>(Tools.sort(map, true).keySet()), new ArrayList<Integer>(vector.toMap().keySet()));
+		assertEquals(map, vector.toMap());
+	}
+	
+	@Test
+	public void testRankOrder(){
+		SparseVector vector = new SparseVector(new int[]{1, 3, 8}, new double[]{1.0, 5.0, 1.0});
+		assertArrayEquals(new int[]{1, 0, 2}, vector.getRankOrder());
+		assertEquals(1.0, SimMeasure.cosine(vector, vector), 0.0);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testUnsorted(){
+		new SparseVector(new int[]{3, 1}, new double[]{1.0, 1.0});
+	}
+	
+	@Test
+	public void testMeasures(){
+		Random random = new Random(11);
+		for(int r = 0; r < 200; r++){
+			boolean positive = (r % 2 == 0);
+			LinkedHashMap<Integer,Double> a = createMap(random, random.nextInt(15), positive);
+			LinkedHashMap<Integer,Double> b = createMap(random, random.nextInt(15), positive);
+			SparseVector sa = SparseVector.fromMap(a);
+			SparseVector sb = SparseVector.fromMap(b);
+			for(SimMeasure simMeasure : SimMeasure.values()){
+				double expected, actual;
+				try{
+					expected = simMeasure.sim(a, b);
+				} catch(RuntimeException e){
+					// Some measures are not defined for every pair of vectors
+					continue;
+				}
+				actual = simMeasure.sim(sa, sb);
+				assertEquals(simMeasure.getLabel(), expected, actual, 1e-9 * Math.max(1.0, Math.abs(expected)));
+			}
+		}
+	}
+	
+	@Test
+	public void testMultiMeasureScorer(){
+		Random random = new Random(13);
+		for(int r = 0; r < 200; r++){
+			boolean positive = (r % 2 == 0);
+			SparseVector sa = SparseVector.fromMap(createMap(random, random.nextInt(15), positive));
+			SparseVector sb = SparseVector.fromMap(createMap(random, random.nextInt(15), positive));
+			ArrayList<SimMeasure> measures = new ArrayList<SimMeasure>();
+			ArrayList<Double> expected = new ArrayList<Double>();
+			for(SimMeasure simMeasure : SimMeasure.values()){
+				try{
+					expected.add(simMeasure.sim(sa, sb));
+					measures.add(simMeasure);
+				} catch(RuntimeException e){
+					continue;
+				}
+			}
+			double[] scores = new MultiMeasureScorer(measures).score(sa, sb);
+			assertEquals(measures.size(), scores.length);
+			for(int i = 0; i < scores.length; i++)
+				assertEquals(measures.get(i).getLabel(), expected.get(i), scores[i], 1e-9 * Math.max(1.0, Math.abs(expected.get(i))));
+		}
+	}
+	
+	@Test
+	public void testScratchGrowth(){
+		// The rank-based measures reuse work arrays, which have to grow for larger vectors
+		Random random = new Random(5);
+		for(int size : new int[]{3, 300, 10, 1000}){
+			LinkedHashMap<Integer,Double> a = new LinkedHashMap<Integer,Double>();
+			LinkedHashMap<Integer,Double> b = new LinkedHashMap<Integer,Double>();
+			for(int i = 0; i < size; i++){
+				a.put(random.nextInt(3 * size), (double)random.nextInt(20));
+				b.put(random.nextInt(3 * size), (double)random.nextInt(20));
+			}
+			a = Tools.sort(a, true);
+			b = Tools.sort(b, true);
+			SparseVector sa = SparseVector.fromMap(a);
+			SparseVector sb = SparseVector.fromMap(b);
+			for(SimMeasure simMeasure : new SimMeasure[]{SimMeasure.PEARSON, SimMeasure.SPEARMAN, SimMeasure.KENDALLS_TAU, SimMeasure.AP_INC, SimMeasure.WEIGHTED_COSINE}){
+				double expected = simMeasure.sim(a, b);
+				assertEquals(simMeasure.getLabel(), expected, simMeasure.sim(sa, sb), 1e-9 * Math.max(1.0, Math.abs(expected)));
+			}
+		}
+	}
+}
@@ -1,11 +1,13 @@
 package sem.test.util;
 
 import java.io.File;
+import java.util.Random;
 
 import org.junit.*;
 
 import static org.junit.Assert.*;
 
+import sem.util.CompressedTensor;
 import sem.util.Tensor;
 
 public class TensorTest {
@@ -104,4 +106,99 @@ public class TensorTest {
 	}
 	
 	
+	@Test
+	public void testFreezeWildcard(){
+		Tensor tensor = new Tensor();
+		tensor.add(3, 2, 1, 5.0);
+		tensor.add(1, 2, 1, 2.0);
+		tensor.add(19, 2, 1, 10.0);
+		tensor.add(3, 15, 1, 3.0);
+		tensor.add(3, 0, 1, 25.0);
+		tensor.add(3, 2, 3, 7.0);
+		tensor.add(3, 2, 6, 2.0);
+		
+		Tensor frozen = tensor.freeze();
+		assertTrue(frozen.get(3, 2, 1) == 5.0);
+		assertTrue(frozen.get(3, 2, 4) == 0.0);
+		assertTrue(frozen.get(4, 2, 1) == 0.0);
+		assertTrue(frozen.get(null, 2, 1) == 17.0);
+		assertTrue(frozen.get(3, null, 1) == 33.0);
+		assertTrue(frozen.get(3, 2, null) == 14.0);
+		assertTrue(frozen.get(3, null, null) == 42.0);
+		assertTrue(frozen.get(null, 2, null) == 26.0);
+		assertTrue(frozen.get(null, null, 1) == 45.0);
+		assertTrue(frozen.get(null, null, null) == 54.0);
+		assertTrue(frozen.get(null, 7, null) == 0.0);
+		assertTrue(frozen.getKeys(3).length == 3);
+		assertTrue(frozen.getKeys(3, 2).length == 3);
+		assertTrue(frozen.getKeys(4) == null);
+		assertTrue(frozen.containsKey(19));
+		assertTrue(!frozen.containsKey(2));
+	}
+	
+	@Test
+	public void testFreezeRandom(){
+		Random random = new Random(7);
+		Tensor tensor = new Tensor();
+		for(int i = 0; i < 5000; i++)
+			tensor.add(random.nextInt(50), random.nextInt(10), random.nextInt(50), 0.5 + random.nextInt(4));
+		CompressedTensor frozen = tensor.freeze();
+		
+		for(int i = 0; i < 2000; i++){
+			Integer key1 = random.nextBoolean()?null:random.nextInt(52);
+			Integer key2 = random.nextBoolean()?null:random.nextInt(12);
+			Integer key3 = random.nextBoolean()?null:random.nextInt(52);
+			assertEquals(tensor.get(key1, key2, key3), frozen.get(key1, key2, key3), 1e-9);
+		}
+		
+		frozen.save(file);
+		Tensor loaded = new Tensor(file);
+		assertEquals(tensor.get(null, null, null), loaded.get(null, null, null), 1e-9);
+		assertEquals(tensor.get(7, 3, 11), loaded.get(7, 3, 11), 1e-9);
+	}
+	
+	private static double scan(Tensor tensor, Integer key1, Integer key2, Integer key3){
+		double sum = 0.0;
+		for(int k1 : tensor.getKeys())
+			for(int k2 : tensor.getKeys(k1))
+				for(int k3 : tensor.getKeys(k1, k2))
+					if((key1 == null || key1 == k1) && (key2 == null || key2 == k2) && (key3 == null || key3 == k3))
+						sum += tensor.get(k1, k2, k3);
+		return sum;
+	}
+	
+	@Test
+	public void testMarginals(){
+		Random random = new Random(11);
+		Tensor tensor = new Tensor();
+		for(int i = 0; i < 3000; i++){
+			if(random.nextInt(5) == 0)
+				tensor.set(random.nextInt(30), random.nextInt(8), random.nextInt(30), (double)random.nextInt(6));
+			else
+				tensor.add(random.nextInt(30), random.nextInt(8), random.nextInt(30), 1.0 + random.nextInt(4));
+		}
+		
+		for(int i = 0; i < 1000; i++){
+			Integer key1 = random.nextBoolean()?null:random.nextInt(32);
+			Integer key2 = random.nextBoolean()?null:random.nextInt(10);
+			Integer key3 = random.nextBoolean()?null:random.nextInt(32);
+			assertEquals(scan(tensor, key1, key2, key3), tensor.get(key1, key2, key3), 1e-9);
+		}
+		
+		tensor.save(file);
+		Tensor loaded = new Tensor(file);
+		assertEquals(tensor.get(null, null, null), loaded.get(null, null, null), 1e-9);
+		assertEquals(tensor.get(null, 3, 5), loaded.get(null, 3, 5), 1e-9);
+		
+		tensor.clear();
+		assertTrue(tensor.get(null, null, null) == 0.0);
+		assertTrue(tensor.get(null, 3, null) == 0.0);
+	}
+	
+	@Test(expected=RuntimeException.class)
+	public void testFreezeReadOnly(){
+		Tensor tensor = new Tensor();
+		tensor.add(1, 1, 1, 1.0);
+		tensor.freeze().add(1, 1, 1, 1.0);
+	}
 }
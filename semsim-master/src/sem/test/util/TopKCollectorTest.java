@@ -0,0 +1,99 @@
+package sem.test.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sem.apps.hypgen.HyponymGeneration;
+import sem.util.Tools;
+import sem.util.TopKCollector;
+
+public class TopKCollectorTest {
+
+	private static LinkedHashMap<String,Double> createScores(Random random, int size){
+		// Few distinct values, so that there are many ties
+		LinkedHashMap<String,Double> scores = new LinkedHashMap<String,Double>();
+		for(int i = 0; i < size; i++)
+			scores.put("w" + i, (double)random.nextInt(10) / 4.0);
+		return scores;
+	}
+
+	private static LinkedHashMap<String,Double> sortAndCut(LinkedHashMap<String,Double> scores, int k, boolean desc){
+		LinkedHashMap<String,Double> result = new LinkedHashMap<String,Double>();
+		for(Entry<String,Double> e : Tools.sort(scores, desc).entrySet()){
+			if(result.size() >= k)
+				break;
+			result.put(e.getKey(), e.getValue());
+		}
+		return result;
+	}
+
+	@Test
+	public void testSelect() {
+		Random random = new Random(3);
+		for(int size : new int[]{0, 1, 7, 100}){
+			LinkedHashMap<String,Double> scores = createScores(random, size);
+			for(int k : new int[]{0, 1, 5, 100, 200}){
+				for(boolean desc : new boolean[]{true, false}){
+					LinkedHashMap<String,Double> expected = sortAndCut(scores, k, desc);
+					assertEquals(new ArrayList<Entry<String,Double>>(expected.entrySet()), new ArrayList<Entry<String,Double>>(TopKCollector.select(scores, k, desc).entrySet()));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testAddAll() {
+		Random random = new Random(5);
+		double[] values = new double[500];
+		for(int i = 0; i < values.length; i++)
+			values[i] = random.nextInt(20);
+
+		TopKCollector merged = new TopKCollector(30, true);
+		for(int start = 0; start < values.length; start += 64){
+			TopKCollector part = new TopKCollector(30, true);
+			for(int i = start; i < Math.min(values.length, start + 64); i++)
+				part.add(i, values[i]);
+			merged.addAll(part);
+		}
+		int[] expected = TopKCollector.select(values, 30, true);
+		assertArrayEquals(expected, merged.getPositions());
+		for(int i = 1; i < expected.length; i++)
+			assertTrue(values[expected[i-1]] > values[expected[i]] || (values[expected[i-1]] == values[expected[i]] && expected[i-1] < expected[i]));
+
+		try{
+			merged.add(1000, 100.0);
+			fail("Adding after reading the result should fail");
+		} catch(IllegalStateException e){
+		}
+	}
+
+	@Test
+	public void testCalculateAP() {
+		Random random = new Random(11);
+		for(int size : new int[]{1, 10, 200}){
+			LinkedHashMap<String,Double> scores = createScores(random, size);
+			LinkedHashSet<String> gold = new LinkedHashSet<String>();
+			for(int i = 0; i < size; i += 3)
+				gold.add("w" + i);
+			gold.add("missing");
+			for(boolean isDistance : new boolean[]{true, false}){
+				double countReturned = 0.0, countCorrectReturned = 0.0, sumP = 0.0;
+				for(String w : Tools.sort(scores, !isDistance).keySet()){
+					countReturned++;
+					if(gold.contains(w)){
+						countCorrectReturned++;
+						sumP += countCorrectReturned / countReturned;
+					}
+				}
+				assertEquals(sumP / gold.size(), HyponymGeneration.calculateAP(isDistance, scores, gold), 0.0);
+			}
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package sem.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a file created by BinaryWriter.
+ * Arrays are not copied into memory. Every array is returned as a read-only view of a memory-mapped region of the file, so the data is paged in by the operating system only when it is accessed.
+ * Each array is mapped separately, which means a single array can be at most 2GB.
+ * Single values are read from one mapped window at a time, so the header of a file is mapped only once.
+ * <p>The reader should be closed in a finally block, also when the file turns out to be invalid.
+ */
+public class BinaryReader implements Closeable {
+	// Size of the window that single values are read from
+	private static final int WINDOW_SIZE = 4096;
+	
+	private String path;
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private long size;
+	private long position;
+	private ByteBuffer window;
+	private long windowStart;
+	
+	public BinaryReader(String path){
+		this.path = path;
+		try{
+			this.file = new RandomAccessFile(path, "r");
+		} catch(IOException e){
+			throw new RuntimeException(e);
+		}
+		try{
+			this.channel = this.file.getChannel();
+			this.size = this.channel.size();
+		} catch(IOException e){
+			close();
+			throw new RuntimeException(e);
+		}
+		this.position = 0;
+		this.window = null;
+		this.windowStart = 0;
+	}
+	
+	private void checkBounds(long bytes){
+		if(this.position + bytes > this.size)
+			throw new RuntimeException("Truncated binary file: " + this.path + " has " + this.size + " bytes, but " + (this.position + bytes) + " are needed");
+	}
+	
+	private ByteBuffer map(long start, long bytes){
+		try{
+			return this.channel.map(FileChannel.MapMode.READ_ONLY, start, bytes).order(ByteOrder.LITTLE_ENDIAN);
+		} catch(IOException e){
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private ByteBuffer map(long bytes){
+		checkBounds(bytes);
+		ByteBuffer buffer = map(this.position, bytes);
+		this.position += bytes;
+		return buffer;
+	}
+	
+	/**
+	 * Get the offset of a single value of the given size in the window, and move past it. A new window is mapped if the value is not in the current one.
+	 */
+	private int nextInWindow(int bytes){
+		checkBounds(bytes);
+		if(this.window == null || this.position < this.windowStart || this.position + bytes > this.windowStart + this.window.limit()){
+			this.windowStart = this.position;
+			this.window = map(this.position, Math.min(WINDOW_SIZE, this.size - this.position));
+		}
+		int offset = (int)(this.position - this.windowStart);
+		this.position += bytes;
+		return offset;
+	}
+	
+	public void align(){
+		this.position = (this.position + 7) / 8 * 8;
+	}
+	
+	public int readInt(){
+		int offset = nextInWindow(4);
+		return this.window.getInt(offset);
+	}
+	
+	public long readLong(){
+		int offset = nextInWindow(8);
+		return this.window.getLong(offset);
+	}
+	
+	public double readDouble(){
+		int offset = nextInWindow(8);
+		return this.window.getDouble(offset);
+	}
+	
+	private int readLength(int elementSize){
+		long length = readLong();
+		if(length < 0 || length * elementSize > Integer.MAX_VALUE)
+			throw new RuntimeException("Illegal array length in binary file: " + length);
+		return (int)length;
+	}
+	
+	public IntBuffer readInts(){
+		int length = readLength(4);
+		IntBuffer buffer = map(4L * length).asIntBuffer();
+		align();
+		return buffer;
+	}
+	
+	public FloatBuffer readFloats(){
+		int length = readLength(4);
+		FloatBuffer buffer = map(4L * length).asFloatBuffer();
+		align();
+		return buffer;
+	}
+	
+	public DoubleBuffer readDoubles(){
+		int length = readLength(8);
+		DoubleBuffer buffer = map(8L * length).asDoubleBuffer();
+		align();
+		return buffer;
+	}
+	
+	public ByteBuffer readBytes(){
+		int length = readLength(1);
+		ByteBuffer buffer = map(length);
+		align();
+		return buffer;
+	}
+	
+	/**
+	 * Close the file. The mapped buffers stay valid after this.
+	 */
+	@Override
+	public void close(){
+		try{
+			// Closing the file also closes its channel
+			this.file.close();
+		} catch(IOException e){
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package sem.util;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes primitive values and arrays into a little-endian binary file, which can later be memory-mapped with BinaryReader.
+ * Arrays are written as a length followed by the data, and every array is aligned to 8 bytes.
+ */
+public class BinaryWriter {
+	private FileOutputStream stream;
+	private FileChannel channel;
+	private ByteBuffer buffer;
+	private long position;
+	
+	public BinaryWriter(String file){
+		try{
+			this.stream = new FileOutputStream(file);
+			this.channel = this.stream.getChannel();
+			this.buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+			this.position = 0;
+		} catch(IOException e){
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private void ensure(int bytes){
+		if(this.buffer.remaining() < bytes)
+			this.flush();
+	}
+	
+	private void flush(){
+		try{
+			this.buffer.flip();
+			while(this.buffer.hasRemaining())
+				this.channel.write(this.buffer);
+			this.buffer.clear();
+		} catch(IOException e){
+			throw new RuntimeException(e);
+		}
+	}
+	
+	public void writeInt(int value){
+		ensure(4);
+		this.buffer.putInt(value);
+		this.position += 4;
+	}
+	
+	public void writeLong(long value){
+		ensure(8);
+		this.buffer.putLong(value);
+		this.position += 8;
+	}
+	
+	public void writeFloat(float value){
+		ensure(4);
+		this.buffer.putFloat(value);
+		this.position += 4;
+	}
+	
+	public void writeDouble(double value){
+		ensure(8);
+		this.buffer.putDouble(value);
+		this.position += 8;
+	}
+	
+	public void writeByte(byte value){
+		ensure(1);
+		this.buffer.put(value);
+		this.position += 1;
+	}
+	
+	/**
+	 * Pad the file with zeros, so that the next value starts at a multiple of 8 bytes.
+	 */
+	public void align(){
+		while(this.position % 8 != 0)
+			writeByte((byte)0);
+	}
+	
+	public void writeInts(IntBuffer values){
+		int length = values.limit();
+		writeLong(length);
+		for(int i = 0; i < length; i++)
+			writeInt(values.get(i));
+		align();
+	}
+	
+	public void writeInts(int[] values){
+		writeInts(IntBuffer.wrap(values));
+	}
+	
+	public void writeFloats(FloatBuffer values){
+		int length = values.limit();
+		writeLong(length);
+		for(int i = 0; i < length; i++)
+			writeFloat(values.get(i));
+		align();
+	}
+	
+	public void writeDoubles(DoubleBuffer values){
+		int length = values.limit();
+		writeLong(length);
+		for(int i = 0; i < length; i++)
+			writeDouble(values.get(i));
+		align();
+	}
+	
+	public void writeDoubles(double[] values){
+		writeDoubles(DoubleBuffer.wrap(values));
+	}
+	
+	public void writeBytes(byte[] values){
+		writeLong(values.length);
+		for(byte b : values)
+			writeByte(b);
+		align();
+	}
+	
+	public void close(){
+		try{
+			this.flush();
+			this.channel.close();
+			this.stream.close();
+		} catch(IOException e){
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package sem.util;
+
+import java.nio.IntBuffer;
+
+/**
+ * A Bloom filter over long keys, which answers whether a key might have been added.
+ * <p>A key that has been added is always reported, but a key that has not been added can be reported by mistake, with a probability that depends on the number of bits per key.
+ * With the default of 10 bits and 7 hash functions per key, about 1% of the other keys are reported.
+ * <p>The bits are stored as ints, so the filter can be saved with a BinaryWriter and memory-mapped when it is read back. A filter can be read by many threads at the same time, but not while keys are added.
+ */
+public class BloomFilter {
+
+	public static final int DEFAULT_BITS_PER_KEY = 10;
+
+	private static final int MAGIC = 0x53454D42;
+	private static final int VERSION = 1;
+
+	private IntBuffer bits;
+	private long numBits;
+	private int numHashes;
+
+	/**
+	 * Create an empty filter.
+	 * @param expectedKeys Number of keys that will be added
+	 * @param bitsPerKey Number of bits for every key
+	 */
+	public BloomFilter(long expectedKeys, int bitsPerKey){
+		long length = Math.max(2, (Math.max(1, expectedKeys) * bitsPerKey + 31) / 32);
+		if(length > Integer.MAX_VALUE / 4)
+			throw new RuntimeException("Too many keys for a Bloom filter: " + expectedKeys);
+		this.bits = IntBuffer.wrap(new int[(int)length]);
+		this.numBits = length * 32;
+		// ln(2) * bits per key minimises the false positive rate
+		this.numHashes = Math.max(1, (int)Math.round(bitsPerKey * Math.log(2)));
+	}
+
+	/**
+	 * Read a filter that has been written with write().
+	 * @param reader Reader positioned at the filter
+	 */
+	public BloomFilter(BinaryReader reader){
+		if(reader.readInt() != MAGIC)
+			throw new RuntimeException("Not a Bloom filter");
+		int version = reader.readInt();
+		if(version != VERSION)
+			throw new RuntimeException("Unsupported Bloom filter version " + version);
+		this.numHashes = reader.readInt();
+		this.bits = reader.readInts();
+		this.numBits = 32L * this.bits.limit();
+	}
+
+	/**
+	 * Write the filter with a BinaryWriter.
+	 * @param writer Writer
+	 */
+	public void write(BinaryWriter writer){
+		writer.writeInt(MAGIC);
+		writer.writeInt(VERSION);
+		writer.writeInt(this.numHashes);
+		writer.writeInts(this.bits);
+	}
+
+	/**
+	 * Add a key to the filter.
+	 * @param key Key
+	 */
+	public void add(long key){
+		// The positions are h1 + i * h2 for the different hash functions
+		long hash1 = Hashing.mix(key), hash2 = Hashing.mix(hash1) | 1L;
+		for(int i = 0; i < this.numHashes; i++){
+			long bit = ((hash1 + i * hash2) >>> 1) % this.numBits;
+			int index = (int)(bit >>> 5);
+			this.bits.put(index, this.bits.get(index) | (1 << (bit & 31)));
+		}
+	}
+
+	/**
+	 * Check whether a key might have been added.
+	 * @param key Key
+	 * @return False if the key has certainly not been added
+	 */
+	public boolean mightContain(long key){
+		long hash1 = Hashing.mix(key), hash2 = Hashing.mix(hash1) | 1L;
+		for(int i = 0; i < this.numHashes; i++){
+			long bit = ((hash1 + i * hash2) >>> 1) % this.numBits;
+			if((this.bits.get((int)(bit >>> 5)) & (1 << (bit & 31))) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	public long getNumBits(){
+		return this.numBits;
+	}
+
+	public int getNumHashes(){
+		return this.numHashes;
+	}
+}
@@ -0,0 +1,552 @@
+package sem.util;
+
+import gnu.trove.map.hash.TIntDoubleHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * An immutable, compressed version of the Tensor, created by Tensor.freeze().
+ * <p>The entries are stored in sorted primitive arrays with offsets (similar to a compressed sparse row matrix), in two orders:
+ * head-major (key1, key2, key3), which serves lookups with a specified key1, and dep-major (key3, key2, key1), which serves lookups where key1 is a wildcard.
+ * The sums over every key1, every (key1, key2), every key3 and every (key3, key2), and the totals for every key2, are precomputed.
+ * This means every wildcard pattern in get() is answered with binary searches instead of a scan over the tensor.
+ * <p>The values are kept as floats when this is lossless (e.g. for counts), otherwise as doubles.
+ * The tensor can be saved in a binary format and memory-mapped back with open(), without parsing or copying.
+ * Any attempt to modify the tensor throws an exception.
+ */
+public class CompressedTensor extends Tensor{
+
+	/**
+	 * Three-level sorted layout for one permutation of the keys.
+	 * The arrays are held as buffers, so they can either wrap arrays on the heap or point directly into a memory-mapped file.
+	 */
+	private static class Layout{
+		IntBuffer keysA;
+		IntBuffer offsetsA;
+		DoubleBuffer sumsA;
+		IntBuffer keysB;
+		IntBuffer offsetsB;
+		DoubleBuffer sumsB;
+		IntBuffer keysC;
+		FloatBuffer floatValues;
+		DoubleBuffer doubleValues;
+
+		/**
+		 * Build the layout from entries that are sorted by (a, b, c).
+		 */
+		Layout(int[] a, int[] b, int[] c, double[] values, int[] order, boolean useFloat){
+			int n = order.length;
+			int countA = 0, countB = 0;
+			for(int i = 0; i < n; i++){
+				boolean newA = (i == 0 || a[order[i]] != a[order[i-1]]);
+				if(newA)
+					countA++;
+				if(newA || b[order[i]] != b[order[i-1]])
+					countB++;
+			}
+
+			int[] keysA = new int[countA];
+			int[] offsetsA = new int[countA + 1];
+			double[] sumsA = new double[countA];
+			int[] keysB = new int[countB];
+			int[] offsetsB = new int[countB + 1];
+			double[] sumsB = new double[countB];
+			int[] keysC = new int[n];
+			float[] floatValues = useFloat?new float[n]:null;
+			double[] doubleValues = useFloat?null:new double[n];
+
+			int posA = -1, posB = -1;
+			for(int i = 0; i < n; i++){
+				int e = order[i];
+				boolean newA = (i == 0 || a[e] != a[order[i-1]]);
+				if(newA){
+					posA++;
+					keysA[posA] = a[e];
+					offsetsA[posA] = posB + 1;
+				}
+				if(newA || b[e] != b[order[i-1]]){
+					posB++;
+					keysB[posB] = b[e];
+					offsetsB[posB] = i;
+				}
+				keysC[i] = c[e];
+				if(useFloat)
+					floatValues[i] = (float)values[e];
+				else
+					doubleValues[i] = values[e];
+				sumsA[posA] += values[e];
+				sumsB[posB] += values[e];
+			}
+			offsetsA[countA] = countB;
+			offsetsB[countB] = n;
+
+			this.keysA = IntBuffer.wrap(keysA);
+			this.offsetsA = IntBuffer.wrap(offsetsA);
+			this.sumsA = DoubleBuffer.wrap(sumsA);
+			this.keysB = IntBuffer.wrap(keysB);
+			this.offsetsB = IntBuffer.wrap(offsetsB);
+			this.sumsB = DoubleBuffer.wrap(sumsB);
+			this.keysC = IntBuffer.wrap(keysC);
+			this.floatValues = useFloat?FloatBuffer.wrap(floatValues):null;
+			this.doubleValues = useFloat?null:DoubleBuffer.wrap(doubleValues);
+		}
+
+		/**
+		 * Map the layout from a binary file.
+		 */
+		Layout(BinaryReader reader, boolean useFloat){
+			this.keysA = reader.readInts();
+			this.offsetsA = reader.readInts();
+			this.sumsA = reader.readDoubles();
+			this.keysB = reader.readInts();
+			this.offsetsB = reader.readInts();
+			this.sumsB = reader.readDoubles();
+			this.keysC = reader.readInts();
+			if(useFloat)
+				this.floatValues = reader.readFloats();
+			else
+				this.doubleValues = reader.readDoubles();
+		}
+
+		void write(BinaryWriter writer){
+			writer.writeInts(this.keysA);
+			writer.writeInts(this.offsetsA);
+			writer.writeDoubles(this.sumsA);
+			writer.writeInts(this.keysB);
+			writer.writeInts(this.offsetsB);
+			writer.writeDoubles(this.sumsB);
+			writer.writeInts(this.keysC);
+			if(this.floatValues != null)
+				writer.writeFloats(this.floatValues);
+			else
+				writer.writeDoubles(this.doubleValues);
+		}
+
+		double value(int pos){
+			return (this.floatValues != null)?this.floatValues.get(pos):this.doubleValues.get(pos);
+		}
+
+		int sizeA(){
+			return this.keysA.limit();
+		}
+
+		int startB(int posA){
+			return this.offsetsA.get(posA);
+		}
+
+		int endB(int posA){
+			return this.offsetsA.get(posA+1);
+		}
+
+		int startC(int posB){
+			return this.offsetsB.get(posB);
+		}
+
+		int endC(int posB){
+			return this.offsetsB.get(posB+1);
+		}
+
+		int findA(int key){
+			return binarySearch(this.keysA, 0, this.keysA.limit(), key);
+		}
+
+		int findB(int posA, int key){
+			return binarySearch(this.keysB, startB(posA), endB(posA), key);
+		}
+
+		int findC(int posB, int key){
+			return binarySearch(this.keysC, startC(posB), endC(posB), key);
+		}
+	}
+
+	/**
+	 * Binary search in a sorted range of the buffer.
+	 * @return The position of the key, or -1 if it is not found.
+	 */
+	private static int binarySearch(IntBuffer keys, int from, int to, int key){
+		int low = from, high = to - 1;
+		while(low <= high){
+			int mid = (low + high) >>> 1;
+			int value = keys.get(mid);
+			if(value < key)
+				low = mid + 1;
+			else if(value > key)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	private static int[] copyRange(IntBuffer keys, int from, int to){
+		int[] result = new int[to - from];
+		for(int i = from; i < to; i++)
+			result[i - from] = keys.get(i);
+		return result;
+	}
+
+	private static final int MAGIC = 0x53454D54;
+	private static final int VERSION = 1;
+
+	private Layout headMajor;
+	private Layout depMajor;
+	private IntBuffer relationKeys;
+	private DoubleBuffer relationSums;
+	private double total;
+	private int entryCount;
+
+	private CompressedTensor(){
+		super();
+	}
+
+	/**
+	 * Create a compressed copy of the tensor.
+	 * @param tensor The source tensor. It is not modified.
+	 */
+	public CompressedTensor(Tensor tensor){
+		super();
+
+		// Collecting the entries in head-major order
+		int n = 0;
+		for(int key1 : tensor.getKeys())
+			for(int key2 : tensor.getKeys(key1))
+				n += tensor.getKeys(key1, key2).length;
+
+		int[] heads = new int[n], relations = new int[n], deps = new int[n];
+		double[] values = new double[n];
+		boolean useFloat = true;
+		int maxKey = 0;
+		int pos = 0;
+		int[] keys1 = tensor.getKeys();
+		Arrays.sort(keys1);
+		for(int key1 : keys1){
+			int[] keys2 = tensor.getKeys(key1);
+			Arrays.sort(keys2);
+			for(int key2 : keys2){
+				int[] keys3 = tensor.getKeys(key1, key2);
+				Arrays.sort(keys3);
+				for(int key3 : keys3){
+					heads[pos] = key1;
+					relations[pos] = key2;
+					deps[pos] = key3;
+					values[pos] = tensor.get(key1, key2, key3);
+					if((double)(float)values[pos] != values[pos])
+						useFloat = false;
+					maxKey = Math.max(maxKey, Math.max(key1, Math.max(key2, key3)));
+					pos++;
+				}
+			}
+		}
+
+		int[] order = new int[n];
+		for(int i = 0; i < n; i++)
+			order[i] = i;
+		this.headMajor = new Layout(heads, relations, deps, values, order, useFloat);
+
+		// The entries are already sorted by head, so two stable counting sorts give the (dep, relation, head) order
+		order = countingSort(relations, order, maxKey);
+		order = countingSort(deps, order, maxKey);
+		this.depMajor = new Layout(deps, relations, heads, values, order, useFloat);
+
+		// A full relation-major permutation would only serve get(null, key2, null), so we just keep the totals
+		order = countingSort(relations, order, maxKey);
+		int countR = 0;
+		for(int i = 0; i < n; i++)
+			if(i == 0 || relations[order[i]] != relations[order[i-1]])
+				countR++;
+		int[] relationKeys = new int[countR];
+		double[] relationSums = new double[countR];
+		int posR = -1;
+		for(int i = 0; i < n; i++){
+			if(i == 0 || relations[order[i]] != relations[order[i-1]]){
+				posR++;
+				relationKeys[posR] = relations[order[i]];
+			}
+			relationSums[posR] += values[order[i]];
+			this.total += values[order[i]];
+		}
+		this.relationKeys = IntBuffer.wrap(relationKeys);
+		this.relationSums = DoubleBuffer.wrap(relationSums);
+		this.entryCount = n;
+	}
+
+	/**
+	 * Stable counting sort of the entries in 'order' by the given key column.
+	 */
+	private static int[] countingSort(int[] keys, int[] order, int maxKey){
+		int[] counts = new int[maxKey + 2];
+		for(int e : order)
+			counts[keys[e] + 1]++;
+		for(int i = 1; i < counts.length; i++)
+			counts[i] += counts[i-1];
+		int[] sorted = new int[order.length];
+		for(int e : order)
+			sorted[counts[keys[e]]++] = e;
+		return sorted;
+	}
+
+	/**
+	 * Counts the values in the tensor
+	 * If any of the three keys is null, this function will interpret that as a wildcard and sum over the appropriate columns
+	 * @param key1 Key 1
+	 * @param key2 Key 2
+	 * @param key3 Key 3
+	 * @return The correct value from the tensor, 0.0 if it does not exist, or a sum over the columns if some keys are null.
+	 */
+	@Override
+	public double get(Integer key1, Integer key2, Integer key3){
+		int posA, posB, posC;
+		if(key1 != null){
+			if((posA = this.headMajor.findA(key1)) < 0)
+				return 0.0;
+			if(key2 != null){
+				if((posB = this.headMajor.findB(posA, key2)) < 0)
+					return 0.0;
+				if(key3 == null)
+					return this.headMajor.sumsB.get(posB);
+				if((posC = this.headMajor.findC(posB, key3)) < 0)
+					return 0.0;
+				return this.headMajor.value(posC);
+			}
+			else if(key3 != null){
+				double sum = 0.0;
+				for(posB = this.headMajor.startB(posA); posB < this.headMajor.endB(posA); posB++)
+					if((posC = this.headMajor.findC(posB, key3)) >= 0)
+						sum += this.headMajor.value(posC);
+				return sum;
+			}
+			else
+				return this.headMajor.sumsA.get(posA);
+		}
+		else if(key3 != null){
+			if((posA = this.depMajor.findA(key3)) < 0)
+				return 0.0;
+			if(key2 == null)
+				return this.depMajor.sumsA.get(posA);
+			if((posB = this.depMajor.findB(posA, key2)) < 0)
+				return 0.0;
+			return this.depMajor.sumsB.get(posB);
+		}
+		else if(key2 != null){
+			int pos = binarySearch(this.relationKeys, 0, this.relationKeys.limit(), key2);
+			return pos < 0?0.0:this.relationSums.get(pos);
+		}
+		else
+			return this.total;
+	}
+
+	@Override
+	public int[] getKeys(){
+		return copyRange(this.headMajor.keysA, 0, this.headMajor.sizeA());
+	}
+
+	@Override
+	public int[] getKeys(Integer key1){
+		int posA = this.headMajor.findA(key1);
+		if(posA < 0)
+			return null;
+		return copyRange(this.headMajor.keysB, this.headMajor.startB(posA), this.headMajor.endB(posA));
+	}
+
+	@Override
+	public int[] getKeys(Integer key1, Integer key2){
+		int posA = this.headMajor.findA(key1);
+		if(posA < 0)
+			return null;
+		int posB = this.headMajor.findB(posA, key2);
+		if(posB < 0)
+			return null;
+		return copyRange(this.headMajor.keysC, this.headMajor.startC(posB), this.headMajor.endC(posB));
+	}
+
+	@Override
+	public boolean containsKey(int key1){
+		return this.headMajor.findA(key1) >= 0;
+	}
+
+	/**
+	 * Get the keys that occur in the third position, sorted. Used by SymmetricTensor for the reverse direction.
+	 */
+	int[] getDepKeys(){
+		return copyRange(this.depMajor.keysA, 0, this.depMajor.sizeA());
+	}
+
+	/**
+	 * Get the keys in the second position of the entries that have key3 in the third position, sorted.
+	 * @return The keys, or null if key3 does not occur.
+	 */
+	int[] getDepKeys(int key3){
+		int posA = this.depMajor.findA(key3);
+		if(posA < 0)
+			return null;
+		return copyRange(this.depMajor.keysB, this.depMajor.startB(posA), this.depMajor.endB(posA));
+	}
+
+	/**
+	 * Get the keys in the first position of the entries (?, key2, key3), sorted.
+	 * @return The keys, or null if there are no such entries.
+	 */
+	int[] getDepKeys(int key3, int key2){
+		int posA = this.depMajor.findA(key3);
+		if(posA < 0)
+			return null;
+		int posB = this.depMajor.findB(posA, key2);
+		if(posB < 0)
+			return null;
+		return copyRange(this.depMajor.keysC, this.depMajor.startC(posB), this.depMajor.endC(posB));
+	}
+
+	/**
+	 * Count the entries for every key in the second position.
+	 * @return Array indexed by key2, with the number of entries
+	 */
+	public int[] getEntryCountsByKey2(){
+		Layout l = this.headMajor;
+		int maxKey = 0;
+		for(int posB = 0; posB < l.keysB.limit(); posB++)
+			maxKey = Math.max(maxKey, l.keysB.get(posB));
+		int[] counts = new int[maxKey + 1];
+		for(int posB = 0; posB < l.keysB.limit(); posB++)
+			counts[l.keysB.get(posB)] += l.endC(posB) - l.startC(posB);
+		return counts;
+	}
+
+	/**
+	 * Get the size of the first dimension in the tensor.
+	 * @return the size of the first dimension
+	 */
+	@Override
+	public int size(){
+		return this.headMajor.sizeA();
+	}
+
+	/**
+	 * Get the number of non-empty positions in the tensor.
+	 * @return The number of entries
+	 */
+	public int getEntryCount(){
+		return this.entryCount;
+	}
+
+	@Override
+	public CompressedTensor freeze(){
+		return this;
+	}
+
+	/**
+	 * Save the tensor into a text file, in the same format as Tensor.save().
+	 * @param file File path
+	 */
+	@Override
+	public void save(String file)
+	{
+		Layout l = this.headMajor;
+		try{
+			FileWriter fstream = new FileWriter(file);
+		    BufferedWriter out = new BufferedWriter(fstream);
+		    for(int posA = 0; posA < l.sizeA(); posA++){
+		    	out.write("" + l.keysA.get(posA));
+		    	for(int posB = l.startB(posA); posB < l.endB(posA); posB++){
+		    		for(int posC = l.startC(posB); posC < l.endC(posB); posC++){
+		    			out.write("\t" + l.keysB.get(posB) + ":" + l.keysC.get(posC) + ":" + l.value(posC));
+		    		}
+		    	}
+		    	out.write("\n");
+		    }
+		    out.close();
+		}catch (Exception e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Save the tensor into a versioned binary file, which can be opened with open().
+	 * @param file File path
+	 */
+	public void saveBinary(String file){
+		BinaryWriter writer = new BinaryWriter(file);
+		writer.writeInt(MAGIC);
+		writer.writeInt(VERSION);
+		writer.writeInt(this.headMajor.floatValues != null?1:0);
+		writer.writeInt(this.entryCount);
+		writer.writeDouble(this.total);
+		this.headMajor.write(writer);
+		this.depMajor.write(writer);
+		writer.writeInts(this.relationKeys);
+		writer.writeDoubles(this.relationSums);
+		writer.close();
+	}
+
+	/**
+	 * Open a tensor that was saved with saveBinary().
+	 * The file is memory-mapped, so this returns almost immediately and the data is only read from disk when it is accessed.
+	 * @param file File path
+	 * @return The tensor
+	 */
+	public static CompressedTensor open(String file){
+		BinaryReader reader = new BinaryReader(file);
+		try{
+			if(reader.readInt() != MAGIC)
+				throw new RuntimeException("Not a binary tensor file: " + file);
+			int version = reader.readInt();
+			if(version != VERSION)
+				throw new RuntimeException("Unsupported binary tensor version " + version + " in " + file);
+			CompressedTensor tensor = new CompressedTensor();
+			boolean useFloat = (reader.readInt() == 1);
+			tensor.entryCount = reader.readInt();
+			tensor.total = reader.readDouble();
+			tensor.headMajor = new Layout(reader, useFloat);
+			tensor.depMajor = new Layout(reader, useFloat);
+			tensor.relationKeys = reader.readInts();
+			tensor.relationSums = reader.readDoubles();
+			return tensor;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Create a mutable copy of this tensor.
+	 * @return A new Tensor with the same values
+	 */
+	public Tensor thaw(){
+		Tensor tensor = new Tensor();
+		Layout l = this.headMajor;
+		for(int posA = 0; posA < l.sizeA(); posA++)
+			for(int posB = l.startB(posA); posB < l.endB(posA); posB++)
+				for(int posC = l.startC(posB); posC < l.endC(posB); posC++)
+					tensor.add(l.keysA.get(posA), l.keysB.get(posB), l.keysC.get(posC), l.value(posC));
+		return tensor;
+	}
+
+	@Override
+	public TIntObjectHashMap<TIntObjectHashMap<TIntDoubleHashMap>> getMap(){
+		throw new RuntimeException("CompressedTensor does not have an underlying map");
+	}
+
+	@Override
+	public void set(Integer key1, Integer key2, Integer key3, Double value){
+		throw new RuntimeException("CompressedTensor is read-only");
+	}
+
+	@Override
+	public void add(Integer key1, Integer key2, Integer key3, Double value){
+		throw new RuntimeException("CompressedTensor is read-only");
+	}
+
+	@Override
+	public void clear(){
+		throw new RuntimeException("CompressedTensor is read-only");
+	}
+
+	@Override
+	public void load(String file){
+		throw new RuntimeException("CompressedTensor is read-only");
+	}
+}
@@ -0,0 +1,358 @@
+package sem.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An Index that can be updated from multiple threads without a global lock.
+ * <p>Counts and labels are kept in dense arrays indexed by the ID, split into fixed-size pages so that the storage can grow without copying.
+ * Adding to an existing label is lock-free (a CAS on the count), and only the first insertion of a new label takes a lock, which is striped by the hash of the label.
+ * The total count is kept in striped counters next to the counts, so getTotalCount() does not iterate over the index.
+ * IDs are assigned in the same way as in Index, starting from 1 without gaps, and the file format is identical.
+ * <p>The map accessors (getIdMap(), getCountMap(), getLabelMap()) return snapshots, not the live data.
+ */
+public class ConcurrentIndex extends Index{
+
+	private static final int PAGE_BITS = 12;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	private static final int STRIPES = 64;
+	// The striped totals are spaced 8 longs (one cache line) apart
+	private static final int TOTAL_SPACING = 8;
+
+	private static class Page{
+		AtomicLongArray counts = new AtomicLongArray(PAGE_SIZE);
+		AtomicReferenceArray<String> labels = new AtomicReferenceArray<String>(PAGE_SIZE);
+	}
+
+	private ConcurrentHashMap<String,Integer> idMap;
+	private volatile Page[] pages;
+	private AtomicInteger maxId;
+	private Object[] locks;
+	private AtomicLongArray totals;
+
+	/**
+	 * Create a new ConcurrentIndex.
+	 */
+	public ConcurrentIndex(){
+		super();
+		this.idMap = new ConcurrentHashMap<String,Integer>();
+		this.pages = new Page[16];
+		this.maxId = new AtomicInteger(0);
+		this.locks = new Object[STRIPES];
+		for(int i = 0; i < STRIPES; i++)
+			this.locks[i] = new Object();
+		this.totals = new AtomicLongArray(STRIPES * TOTAL_SPACING);
+	}
+
+	/**
+	 * Create a new ConcurrentIndex from file. The file should be created by the save() method.
+	 * @param file Input file
+	 */
+	public ConcurrentIndex(String file){
+		this();
+		this.load(file);
+	}
+
+	/**
+	 * Create a new ConcurrentIndex with the same items, IDs and counts as another index.
+	 * @param index Source index
+	 */
+	public ConcurrentIndex(Index index){
+		this();
+		for(Entry<Integer,String> e : index.getLabelMap().entrySet())
+			this.put(e.getValue(), e.getKey(), index.getCount(e.getKey()));
+	}
+
+	/**
+	 * Add an item to the index. If the item already exists, the counts are added up.
+	 * @param label Label
+	 * @param count Added count
+	 * @return The ID of the item that was just added.
+	 */
+	@Override
+	public int add(String label, Double count){
+		Integer id = this.idMap.get(label);
+		if(id == null)
+			id = this.insert(label);
+		this.addCount(id, count);
+		return id;
+	}
+
+	/**
+	 * Add an item to the index with count 1. If the item already exists, the counts are added up.
+	 * @param label	Label
+	 * @return The ID of the item that was just added.
+	 */
+	@Override
+	public int add(String label){
+		return this.add(label, 1.0);
+	}
+
+	private int insert(String label){
+		synchronized(this.locks[(label.hashCode() & 0x7fffffff) % STRIPES]){
+			Integer id = this.idMap.get(label);
+			if(id != null)
+				return id;
+			int newId = this.maxId.incrementAndGet();
+			this.getPage(newId, true).labels.set(newId & PAGE_MASK, label);
+			this.idMap.put(label, newId);
+			return newId;
+		}
+	}
+
+	private void addCount(int id, double count){
+		AtomicLongArray counts = this.getPage(id, false).counts;
+		int offset = id & PAGE_MASK;
+		long oldBits, newBits;
+		do {
+			oldBits = counts.get(offset);
+			newBits = Double.doubleToRawLongBits(Double.longBitsToDouble(oldBits) + count);
+		} while(!counts.compareAndSet(offset, oldBits, newBits));
+		this.addTotal(id, count);
+	}
+
+	private void addTotal(int id, double count){
+		int offset = (id & (STRIPES - 1)) * TOTAL_SPACING;
+		long oldBits, newBits;
+		do {
+			oldBits = this.totals.get(offset);
+			newBits = Double.doubleToRawLongBits(Double.longBitsToDouble(oldBits) + count);
+		} while(!this.totals.compareAndSet(offset, oldBits, newBits));
+	}
+
+	/**
+	 * Find the page that holds the given ID.
+	 * @param id ID
+	 * @param create Create the page if it does not exist yet
+	 * @return The page, or null if it does not exist and create is false.
+	 */
+	private Page getPage(int id, boolean create){
+		int pageId = id >>> PAGE_BITS;
+		Page[] tempPages = this.pages;
+		if(pageId < tempPages.length && tempPages[pageId] != null)
+			return tempPages[pageId];
+		if(!create)
+			return null;
+
+		synchronized(this){
+			tempPages = this.pages;
+			if(pageId < tempPages.length && tempPages[pageId] != null)
+				return tempPages[pageId];
+			// Copy-on-write, so that readers always see a fully published directory
+			Page[] newPages = new Page[Math.max(tempPages.length, pageId + 1)];
+			System.arraycopy(tempPages, 0, newPages, 0, tempPages.length);
+			newPages[pageId] = new Page();
+			this.pages = newPages;
+			return newPages[pageId];
+		}
+	}
+
+	/**
+	 * Get the Id corresponding to the label.
+	 * @param label Key
+	 * @return The ID belonging to the key. Null if the label does not exist in the index.
+	 */
+	@Override
+	public Integer getId(String label){
+		return this.idMap.get(label);
+	}
+
+	/**
+	 * Get the count of an object using their ID.
+	 * @param id ID
+	 * @return The count of the object. 0 if it does not exist.
+	 */
+	@Override
+	public Double getCount(Integer id){
+		if(id == null || id <= 0)
+			return 0.0;
+		Page page = this.getPage(id, false);
+		if(page == null)
+			return 0.0;
+		return Double.longBitsToDouble(page.counts.get(id & PAGE_MASK));
+	}
+
+	/**
+	 * Get the count of an object using their label.
+	 * @param label Label
+	 * @return The count of the object. 0 if it does not exist.
+	 */
+	@Override
+	public Double getCount(String label){
+		Integer id = this.idMap.get(label);
+		if(id != null)
+			return this.getCount(id);
+		return 0.0;
+	}
+
+	/**
+	 * Get the label using their ID. This is a direct array lookup.
+	 * @param id	ID
+	 * @return 	The label, null if the ID does not exist.
+	 */
+	@Override
+	public String getLabel(Integer id){
+		if(id == null || id <= 0)
+			return null;
+		Page page = this.getPage(id, false);
+		if(page == null)
+			return null;
+		return page.labels.get(id & PAGE_MASK);
+	}
+
+	/**
+	 * Get the number of elements in the index.
+	 * @return The number of elements in the index.
+	 */
+	@Override
+	public int size(){
+		return this.idMap.size();
+	}
+
+	/**
+	 * Get the largest ID that has been assigned. IDs run from 1 to getMaxId().
+	 * @return The largest ID
+	 */
+	public int getMaxId(){
+		return this.maxId.get();
+	}
+
+	/**
+	 * Remove all elements from the index.
+	 */
+	@Override
+	public synchronized void clear(){
+		this.idMap.clear();
+		this.pages = new Page[16];
+		this.maxId.set(0);
+		this.totals = new AtomicLongArray(STRIPES * TOTAL_SPACING);
+	}
+
+	/**
+	 * Get a snapshot of the Label-to-ID map.
+	 * @return Label-to-ID map
+	 */
+	@Override
+	public HashMap<String, Integer> getIdMap(){
+		return new HashMap<String,Integer>(this.idMap);
+	}
+
+	/**
+	 * Get a snapshot of the ID-to-Count map.
+	 * @return ID-to-Count map
+	 */
+	@Override
+	public HashMap<Integer, Double> getCountMap(){
+		HashMap<Integer,Double> countMap = new HashMap<Integer,Double>();
+		for(Integer id : this.idMap.values())
+			countMap.put(id, this.getCount(id));
+		return countMap;
+	}
+
+	/**
+	 * Get a snapshot of the ID-to-Label map. Use getLabel() for single lookups.
+	 * @return ID-to-Label map
+	 */
+	@Override
+	public HashMap<Integer,String> getLabelMap(){
+		HashMap<Integer,String> labelMap = new HashMap<Integer,String>();
+		for(Entry<String,Integer> e : this.idMap.entrySet())
+			labelMap.put(e.getValue(), e.getKey());
+		return labelMap;
+	}
+
+	/**
+	 * Put an item into the index with a specific ID. Used when loading or copying.
+	 */
+	private synchronized void put(String label, int id, double count){
+		if(id <= 0)
+			throw new RuntimeException("Illegal ID in the input file: " + id);
+		Page page = this.getPage(id, true);
+		page.labels.set(id & PAGE_MASK, label);
+		double oldCount = Double.longBitsToDouble(page.counts.getAndSet(id & PAGE_MASK, Double.doubleToRawLongBits(count)));
+		this.addTotal(id, count - oldCount);
+		if(id > this.maxId.get())
+			this.maxId.set(id);
+		this.idMap.put(label, id);
+	}
+
+	/**
+	 * Load the index from a file.
+	 * @param file Input file
+	 */
+	private void load(String file)
+	{
+		String[] temp;
+		try{
+			FileInputStream fstream = new FileInputStream(file);
+			DataInputStream in = new DataInputStream(fstream);
+			BufferedReader br = new BufferedReader(new InputStreamReader(in));
+			String strLine;
+
+			while ((strLine = br.readLine()) != null)   {
+				temp = strLine.split("\\t+");
+				if(temp.length == 3)
+					this.put(temp[1], Integer.parseInt(temp[0]), Double.parseDouble(temp[2]));
+				else
+					throw new RuntimeException("Illegal number of columns in the input file.");
+			}
+			in.close();
+		}catch (Exception e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Save the index to a file, in the same format as Index.
+	 * @param file Output file
+	 */
+	@Override
+	public void save(String file)
+	{
+		try{
+			FileWriter fstream = new FileWriter(file);
+		    BufferedWriter out = new BufferedWriter(fstream);
+		    for(Entry<String,Integer> e : this.idMap.entrySet()){
+		    	out.write(e.getValue() + "\t" + e.getKey()+"\t"+this.getCount(e.getValue()) + "\n");
+		    }
+		    out.close();
+		    fstream.close();
+		}catch (Exception e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public boolean contains(String label){
+		return this.idMap.containsKey(label);
+	}
+
+	@Override
+	public boolean contains(Integer id){
+		return this.getLabel(id) != null;
+	}
+
+	/**
+	 * Get the sum of all the counts, from the striped totals.
+	 * While other threads are adding, the result includes some of their additions.
+	 * @return Total count
+	 */
+	@Override
+	public Double getTotalCount(){
+		double total = 0.0;
+		for(int stripe = 0; stripe < STRIPES; stripe++)
+			total += Double.longBitsToDouble(this.totals.get(stripe * TOTAL_SPACING));
+		return total;
+	}
+}
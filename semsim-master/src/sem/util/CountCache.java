@@ -0,0 +1,203 @@
+package sem.util;
+
+/**
+ * A thread-safe cache from long keys to double values, with a fixed capacity.
+ * <p>The entries are kept in an open-addressing table of primitive arrays, so lookups and insertions do not allocate any objects.
+ * The table is split into buckets of 8 slots, and a key can only be stored in the bucket given by its hash.
+ * When a bucket is full, an entry is evicted with the CLOCK algorithm: entries that have been read since the hand last passed them get a second chance.
+ * <p>The buckets are protected by striped locks. Hits, misses and evictions are counted under the same locks.
+ * NaN values cannot be stored, because get() uses NaN for missing keys.
+ */
+public class CountCache {
+
+	private static final int BUCKET_BITS = 3;
+	private static final int BUCKET_SIZE = 1 << BUCKET_BITS;
+	private static final int STRIPES = 64;
+
+	private static final byte EMPTY = 0;
+	private static final byte USED = 1;
+	private static final byte REFERENCED = 2;
+
+	private long[] keys;
+	private double[] values;
+	private byte[] states;
+	private byte[] hands;
+	private int bucketMask;
+
+	private Object[] locks;
+	private long[] hitCounts;
+	private long[] missCounts;
+	private long[] evictionCounts;
+
+	/**
+	 * Create a new cache.
+	 * @param capacity Maximum number of entries. It is rounded up to a power of 2, and at least 512.
+	 */
+	public CountCache(int capacity){
+		int buckets = STRIPES;
+		while((long)buckets * BUCKET_SIZE < capacity && buckets < (1 << 24))
+			buckets <<= 1;
+		this.keys = new long[buckets * BUCKET_SIZE];
+		this.values = new double[buckets * BUCKET_SIZE];
+		this.states = new byte[buckets * BUCKET_SIZE];
+		this.hands = new byte[buckets];
+		this.bucketMask = buckets - 1;
+
+		this.locks = new Object[STRIPES];
+		for(int i = 0; i < STRIPES; i++)
+			this.locks[i] = new Object();
+		this.hitCounts = new long[STRIPES];
+		this.missCounts = new long[STRIPES];
+		this.evictionCounts = new long[STRIPES];
+	}
+
+	private int getBucket(long key){
+		// Mix the bits (from MurmurHash3), as the keys are packed IDs with many zero bits
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int)key & this.bucketMask;
+	}
+
+	/**
+	 * Get a value from the cache.
+	 * @param key Key
+	 * @return The value, or NaN if the key is not in the cache.
+	 */
+	public double get(long key){
+		int bucket = getBucket(key);
+		int stripe = bucket & (STRIPES - 1);
+		synchronized(this.locks[stripe]){
+			int start = bucket << BUCKET_BITS;
+			for(int i = start; i < start + BUCKET_SIZE; i++){
+				if(this.states[i] != EMPTY && this.keys[i] == key){
+					this.states[i] = REFERENCED;
+					this.hitCounts[stripe]++;
+					return this.values[i];
+				}
+			}
+			this.missCounts[stripe]++;
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Add a value to the cache, replacing the old value of the key. If the bucket of the key is full, another entry is evicted.
+	 * @param key Key
+	 * @param value Value, not NaN
+	 */
+	public void put(long key, double value){
+		if(Double.isNaN(value))
+			throw new IllegalArgumentException("NaN values cannot be cached");
+		int bucket = getBucket(key);
+		int stripe = bucket & (STRIPES - 1);
+		synchronized(this.locks[stripe]){
+			int start = bucket << BUCKET_BITS;
+			int free = -1;
+			for(int i = start; i < start + BUCKET_SIZE; i++){
+				if(this.states[i] == EMPTY){
+					if(free < 0)
+						free = i;
+				}
+				else if(this.keys[i] == key){
+					this.values[i] = value;
+					return;
+				}
+			}
+
+			if(free < 0){
+				// CLOCK: clear the referenced bits until an entry without one is found
+				int hand = this.hands[bucket];
+				while(this.states[start + hand] == REFERENCED){
+					this.states[start + hand] = USED;
+					hand = (hand + 1) & (BUCKET_SIZE - 1);
+				}
+				free = start + hand;
+				this.hands[bucket] = (byte)((hand + 1) & (BUCKET_SIZE - 1));
+				this.evictionCounts[stripe]++;
+			}
+			this.keys[free] = key;
+			this.values[free] = value;
+			this.states[free] = USED;
+		}
+	}
+
+	/**
+	 * Remove all the entries. The counters are not reset.
+	 */
+	public void clear(){
+		for(int stripe = 0; stripe < STRIPES; stripe++){
+			synchronized(this.locks[stripe]){
+				for(int bucket = stripe; bucket <= this.bucketMask; bucket += STRIPES){
+					int start = bucket << BUCKET_BITS;
+					for(int i = start; i < start + BUCKET_SIZE; i++)
+						this.states[i] = EMPTY;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the maximum number of entries.
+	 */
+	public int getCapacity(){
+		return this.keys.length;
+	}
+
+	/**
+	 * Get the number of entries in the cache.
+	 */
+	public int size(){
+		int size = 0;
+		for(int stripe = 0; stripe < STRIPES; stripe++){
+			synchronized(this.locks[stripe]){
+				for(int bucket = stripe; bucket <= this.bucketMask; bucket += STRIPES){
+					int start = bucket << BUCKET_BITS;
+					for(int i = start; i < start + BUCKET_SIZE; i++)
+						if(this.states[i] != EMPTY)
+							size++;
+				}
+			}
+		}
+		return size;
+	}
+
+	private long sum(long[] counts){
+		long total = 0;
+		for(int stripe = 0; stripe < STRIPES; stripe++){
+			synchronized(this.locks[stripe]){
+				total += counts[stripe];
+			}
+		}
+		return total;
+	}
+
+	public long getHitCount(){
+		return sum(this.hitCounts);
+	}
+
+	public long getMissCount(){
+		return sum(this.missCounts);
+	}
+
+	public long getEvictionCount(){
+		return sum(this.evictionCounts);
+	}
+
+	/**
+	 * Get the proportion of lookups that found the value.
+	 * @return Hit rate, or 0.0 if there have been no lookups.
+	 */
+	public double getHitRate(){
+		long hits = getHitCount();
+		long total = hits + getMissCount();
+		return (total == 0)?0.0:(double)hits / total;
+	}
+
+	@Override
+	public String toString(){
+		return "size=" + size() + "/" + getCapacity() + " hits=" + getHitCount() + " misses=" + getMissCount() + " evictions=" + getEvictionCount() + " hitrate=" + String.format("%.3f", getHitRate());
+	}
+}
@@ -0,0 +1,31 @@
+package sem.util;
+
+/**
+ * Hash functions for the random projections and signatures that are built from sparse vectors.
+ */
+public class Hashing {
+
+	// 2^64 divided by the golden ratio, which spreads consecutive numbers over the whole range
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * The finaliser of the SplitMix64 generator, which turns consecutive numbers into independent looking ones.
+	 * @param value Value
+	 * @return Hash of the value
+	 */
+	public static long mix(long value){
+		value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+		value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+		return value ^ (value >>> 31);
+	}
+
+	/**
+	 * Hash a feature ID with a seed. Further hashes of the feature are mix(featureHash + i).
+	 * @param seed Seed of the projection
+	 * @param featureId Feature ID
+	 * @return Hash of the feature
+	 */
+	public static long featureHash(long seed, int featureId){
+		return mix(seed + featureId * GOLDEN_GAMMA);
+	}
+}
@@ -18,6 +18,7 @@ public class Index{
 	private HashMap<String,Integer> idMap;
 	private HashMap<Integer,Double> countMap;
 	private HashMap<Integer,String> labelMap;
+	private double totalCount;
 	
 	/**
 	 * Create a new Index.
@@ -26,6 +27,7 @@ public class Index{
 		this.idMap = new HashMap<String,Integer>();
 		this.countMap = new HashMap<Integer,Double>();
 		this.labelMap = null;
+		this.totalCount = 0.0;
 	}
 	
 	/**
@@ -49,12 +51,14 @@ public class Index{
 			int newId = this.getNextId();
 			idMap.put(label, newId);
 			countMap.put(newId, count);
+			this.totalCount += count;
 			if(this.labelMap != null)
 				this.labelMap.put(newId, label);
 			return newId;
 		}
 		else {
 			countMap.put(tempInt, countMap.get(tempInt) + count);
+			this.totalCount += count;
 			return tempInt;
 		}
 	}
@@ -128,6 +132,7 @@ public class Index{
 			this.countMap.clear();
 		if(this.labelMap != null)
 			this.labelMap.clear();
+		this.totalCount = 0.0;
 	}
 	
 	private int getNextId(){
@@ -143,7 +148,7 @@ public class Index{
 	}
 
 	/**
-	 * Get the ID-to-Count map.
+	 * Get the ID-to-Count map. The counts should only be changed through add(), otherwise getTotalCount() will be out of date.
 	 * @return ID-to-Count map
 	 */
 	public HashMap<Integer, Double> getCountMap() {
@@ -170,6 +175,7 @@ public class Index{
 	private void load(String file)
 	{
 		Integer tempInt;
+		double tempDouble;
 		String[] temp;
 		try{
 			FileInputStream fstream = new FileInputStream(file);
@@ -182,7 +188,9 @@ public class Index{
 				if(temp.length == 3){
 					tempInt = Integer.parseInt(temp[0]);
 					this.idMap.put(temp[1], tempInt);
-					this.countMap.put(tempInt, Double.parseDouble(temp[2]));
+					tempDouble = Double.parseDouble(temp[2]);
+					this.countMap.put(tempInt, tempDouble);
+					this.totalCount += tempDouble;
 				}
 				else{
 					throw new RuntimeException("Illegal number of columns in the input file.");
@@ -222,10 +230,11 @@ public class Index{
 		return this.idMap.containsValue(id);
 	}
 	
+	/**
+	 * Get the sum of all the counts. It is updated in add(), so this does not iterate over the index.
+	 * @return Total count
+	 */
 	public Double getTotalCount(){
-		double total = 0.0;
-		for(Double value : this.countMap.values())
-			total += value;
-		return total;
+		return this.totalCount;
 	}
 }
@@ -0,0 +1,107 @@
+package sem.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of latencies, with buckets that double in size.
+ * <p>Bucket i counts the latencies from 2^(i-1) to 2^i - 1 microseconds, and bucket 0 the latencies under one microsecond.
+ * Percentiles are reported as the upper bound of the bucket they fall into, so they are at most twice the real value.
+ * Recording only updates a few atomic counters, so it can be done on every request.
+ */
+public class LatencyHistogram {
+
+	private static final int BUCKETS = 64;
+
+	private AtomicLongArray buckets;
+	private AtomicLong count;
+	private AtomicLong sum;
+	private AtomicLong max;
+
+	public LatencyHistogram(){
+		this.buckets = new AtomicLongArray(BUCKETS);
+		this.count = new AtomicLong();
+		this.sum = new AtomicLong();
+		this.max = new AtomicLong();
+	}
+
+	/**
+	 * Record one latency.
+	 * @param nanos Latency in nanoseconds, as measured with System.nanoTime()
+	 */
+	public void record(long nanos){
+		long micros = Math.max(0, nanos / 1000);
+		this.buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(micros));
+		this.count.incrementAndGet();
+		this.sum.addAndGet(micros);
+		long currentMax;
+		while(micros > (currentMax = this.max.get()))
+			if(this.max.compareAndSet(currentMax, micros))
+				break;
+	}
+
+	/**
+	 * Get the number of latencies that have been recorded.
+	 * @return Count
+	 */
+	public long getCount(){
+		return this.count.get();
+	}
+
+	/**
+	 * Get the mean latency.
+	 * @return Mean in microseconds, 0 if nothing has been recorded
+	 */
+	public double getMean(){
+		long count = this.count.get();
+		return (count == 0)?0.0:((double)this.sum.get() / count);
+	}
+
+	/**
+	 * Get the largest latency.
+	 * @return Maximum in microseconds
+	 */
+	public long getMax(){
+		return this.max.get();
+	}
+
+	/**
+	 * Get an upper bound of a percentile of the latencies.
+	 * @param percentile Percentile between 0 and 100
+	 * @return Upper bound of the bucket that contains the percentile, in microseconds. 0 if nothing has been recorded.
+	 */
+	public long getPercentile(double percentile){
+		long count = 0;
+		long[] snapshot = new long[BUCKETS];
+		for(int i = 0; i < BUCKETS; i++){
+			snapshot[i] = this.buckets.get(i);
+			count += snapshot[i];
+		}
+		if(count == 0)
+			return 0;
+		long rank = Math.max(1, (long)Math.ceil(count * percentile / 100.0));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++){
+			seen += snapshot[i];
+			if(seen >= rank)
+				return (i == 0)?0:Math.min((1L << i) - 1, getMax());
+		}
+		return getMax();
+	}
+
+	/**
+	 * Forget all the recorded latencies.
+	 */
+	public void clear(){
+		for(int i = 0; i < BUCKETS; i++)
+			this.buckets.set(i, 0);
+		this.count.set(0);
+		this.sum.set(0);
+		this.max.set(0);
+	}
+
+	@Override
+	public String toString(){
+		return "count=" + getCount() + " mean=" + String.format("%.1f", getMean()) + "us p50=" + getPercentile(50) + "us p90=" + getPercentile(90) + "us p99=" + getPercentile(99) + "us max=" + getMax() + "us";
+	}
+}
@@ -0,0 +1,270 @@
+package sem.util;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map.Entry;
+
+/**
+ * A read-only Index that is memory-mapped from a binary file, created with MappedIndex.write().
+ * <p>The file contains the counts as an array indexed by ID, the labels as UTF-8 bytes with an offset table, and an open-addressing hash table from labels to IDs.
+ * Nothing is parsed when the index is opened, and every lookup reads directly from the mapped file.
+ * Any attempt to modify the index throws an exception.
+ */
+public class MappedIndex extends Index{
+
+	private static final int MAGIC = 0x53454D49;
+	private static final int VERSION = 1;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private int maxId;
+	private int size;
+	private double totalCount;
+	private DoubleBuffer counts;
+	private IntBuffer labelOffsets;
+	private IntBuffer table;
+	private ByteBuffer labelBytes;
+
+	/**
+	 * Open a binary index file.
+	 * @param file Input file
+	 */
+	public MappedIndex(String file){
+		super();
+		BinaryReader reader = new BinaryReader(file);
+		try{
+			if(reader.readInt() != MAGIC)
+				throw new RuntimeException("Not a binary index file: " + file);
+			int version = reader.readInt();
+			if(version != VERSION)
+				throw new RuntimeException("Unsupported binary index version " + version + " in " + file);
+			this.maxId = reader.readInt();
+			this.size = reader.readInt();
+			this.totalCount = reader.readDouble();
+			this.counts = reader.readDoubles();
+			this.labelOffsets = reader.readInts();
+			this.table = reader.readInts();
+			this.labelBytes = reader.readBytes();
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static int hash(String label){
+		int h = label.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Write any Index into the binary format.
+	 * @param index The index
+	 * @param file Output file
+	 */
+	public static void write(Index index, String file){
+		HashMap<Integer,String> labelMap = index.getLabelMap();
+		int maxId = 0;
+		for(Integer id : labelMap.keySet())
+			maxId = Math.max(maxId, id);
+
+		double[] counts = new double[maxId + 1];
+		int[] labelOffsets = new int[maxId + 2];
+		byte[][] encoded = new byte[maxId + 1][];
+		int tableSize = 2;
+		while(tableSize < 2 * labelMap.size())
+			tableSize *= 2;
+		int[] table = new int[tableSize];
+		double totalCount = 0.0;
+
+		long byteCount = 0;
+		for(int id = 1; id <= maxId; id++){
+			labelOffsets[id] = (int)byteCount;
+			String label = labelMap.get(id);
+			if(label == null)
+				continue;
+			encoded[id] = label.getBytes(UTF8);
+			byteCount += encoded[id].length;
+			if(byteCount > Integer.MAX_VALUE)
+				throw new RuntimeException("Labels are too large for the binary index format");
+			counts[id] = index.getCount(id);
+			totalCount += counts[id];
+
+			int slot = hash(label) & (tableSize - 1);
+			while(table[slot] != 0)
+				slot = (slot + 1) & (tableSize - 1);
+			table[slot] = id;
+		}
+		labelOffsets[maxId + 1] = (int)byteCount;
+
+		byte[] labelBytes = new byte[(int)byteCount];
+		for(int id = 1; id <= maxId; id++)
+			if(encoded[id] != null)
+				System.arraycopy(encoded[id], 0, labelBytes, labelOffsets[id], encoded[id].length);
+
+		BinaryWriter writer = new BinaryWriter(file);
+		writer.writeInt(MAGIC);
+		writer.writeInt(VERSION);
+		writer.writeInt(maxId);
+		writer.writeInt(labelMap.size());
+		writer.writeDouble(totalCount);
+		writer.writeDoubles(counts);
+		writer.writeInts(labelOffsets);
+		writer.writeInts(table);
+		writer.writeBytes(labelBytes);
+		writer.close();
+	}
+
+	private boolean labelEquals(int id, byte[] bytes){
+		int start = this.labelOffsets.get(id);
+		int end = this.labelOffsets.get(id + 1);
+		if(end - start != bytes.length)
+			return false;
+		for(int i = 0; i < bytes.length; i++)
+			if(this.labelBytes.get(start + i) != bytes[i])
+				return false;
+		return true;
+	}
+
+	/**
+	 * Get the Id corresponding to the label.
+	 * @param label Key
+	 * @return The ID belonging to the key. Null if the label does not exist in the index.
+	 */
+	@Override
+	public Integer getId(String label){
+		if(label == null)
+			return null;
+		byte[] bytes = label.getBytes(UTF8);
+		int mask = this.table.limit() - 1;
+		int slot = hash(label) & mask;
+		int id;
+		while((id = this.table.get(slot)) != 0){
+			if(labelEquals(id, bytes))
+				return id;
+			slot = (slot + 1) & mask;
+		}
+		return null;
+	}
+
+	@Override
+	public Double getCount(Integer id){
+		if(id == null || id <= 0 || id > this.maxId)
+			return 0.0;
+		return this.counts.get(id);
+	}
+
+	@Override
+	public Double getCount(String label){
+		Integer id = this.getId(label);
+		if(id != null)
+			return this.getCount(id);
+		return 0.0;
+	}
+
+	@Override
+	public String getLabel(Integer id){
+		if(id == null || id <= 0 || id > this.maxId)
+			return null;
+		int start = this.labelOffsets.get(id);
+		int end = this.labelOffsets.get(id + 1);
+		if(start == end && this.counts.get(id) == 0.0)
+			return null;
+		byte[] bytes = new byte[end - start];
+		for(int i = 0; i < bytes.length; i++)
+			bytes[i] = this.labelBytes.get(start + i);
+		return new String(bytes, UTF8);
+	}
+
+	@Override
+	public int size(){
+		return this.size;
+	}
+
+	/**
+	 * Get the largest ID in the index.
+	 * @return The largest ID
+	 */
+	public int getMaxId(){
+		return this.maxId;
+	}
+
+	@Override
+	public HashMap<String, Integer> getIdMap(){
+		HashMap<String,Integer> idMap = new HashMap<String,Integer>();
+		for(Entry<Integer,String> e : this.getLabelMap().entrySet())
+			idMap.put(e.getValue(), e.getKey());
+		return idMap;
+	}
+
+	@Override
+	public HashMap<Integer, Double> getCountMap(){
+		HashMap<Integer,Double> countMap = new HashMap<Integer,Double>();
+		for(Integer id : this.getLabelMap().keySet())
+			countMap.put(id, this.getCount(id));
+		return countMap;
+	}
+
+	@Override
+	public HashMap<Integer,String> getLabelMap(){
+		HashMap<Integer,String> labelMap = new HashMap<Integer,String>();
+		for(int slot = 0; slot < this.table.limit(); slot++){
+			int id = this.table.get(slot);
+			if(id != 0)
+				labelMap.put(id, this.getLabel(id));
+		}
+		return labelMap;
+	}
+
+	@Override
+	public boolean contains(String label){
+		return this.getId(label) != null;
+	}
+
+	@Override
+	public boolean contains(Integer id){
+		return this.getLabel(id) != null;
+	}
+
+	@Override
+	public Double getTotalCount(){
+		return this.totalCount;
+	}
+
+	/**
+	 * Save the index to a text file, in the same format as Index.save().
+	 * @param file Output file
+	 */
+	@Override
+	public void save(String file)
+	{
+		try{
+			FileWriter fstream = new FileWriter(file);
+		    BufferedWriter out = new BufferedWriter(fstream);
+		    for(Entry<Integer,String> e : this.getLabelMap().entrySet()){
+		    	out.write(e.getKey() + "\t" + e.getValue()+"\t"+this.getCount(e.getKey()) + "\n");
+		    }
+		    out.close();
+		    fstream.close();
+		}catch (Exception e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public int add(String label, Double count){
+		throw new RuntimeException("MappedIndex is read-only");
+	}
+
+	@Override
+	public int add(String label){
+		throw new RuntimeException("MappedIndex is read-only");
+	}
+
+	@Override
+	public void clear(){
+		throw new RuntimeException("MappedIndex is read-only");
+	}
+}
@@ -0,0 +1,457 @@
+package sem.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+
+/**
+ * Stores, for every key, the sorted list of sentences it occurs in, with the number of occurrences in each sentence.
+ * <p>Every list is compressed into a byte array: each entry is a variable-length encoded gap from the previous sentence, followed by the number of occurrences.
+ * Every SKIP_INTERVAL entries a skip point (the preceding sentence and the byte offset) is recorded, so that intersections can gallop over long lists instead of decoding them.
+ * <p>The sentences of a key have to be added in increasing order. The length of every sentence and the total number of co-occurrences are updated in add().
+ * The number of co-occurrences of every key with all the others is computed once, after the last addition.
+ * <p>The file format is the same as IntegerMultiMap: a key, followed by the sentence of every occurrence, separated by tabs.
+ * The sentence lengths can be saved into a separate binary file, so that the total is available without loading the lists.
+ */
+public class PostingLists {
+
+	private static final int SKIP_INTERVAL = 32;
+	private static final int MAGIC = 0x53454D4C;
+	private static final int VERSION = 1;
+
+	private static class List{
+		byte[] data = new byte[8];
+		int length;
+		// Entries that have been written into data, and the last sentence among them
+		int entries;
+		int lastSentence;
+		// The last entry is kept out of data until the next sentence arrives, as its count can still grow
+		int pendingSentence;
+		int pendingCount;
+		int[] skipSentences = new int[1];
+		int[] skipOffsets = new int[1];
+
+		int getSentenceCount(){
+			return this.entries + (this.pendingCount > 0?1:0);
+		}
+
+		void writeVarInt(int value){
+			if(this.length + 5 > this.data.length)
+				this.data = Arrays.copyOf(this.data, Math.max(this.data.length * 2, this.length + 5));
+			while((value & ~0x7F) != 0){
+				this.data[this.length++] = (byte)((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			this.data[this.length++] = (byte)value;
+		}
+
+		void flush(){
+			if(this.pendingCount == 0)
+				return;
+			if(this.entries % SKIP_INTERVAL == 0){
+				int skip = this.entries / SKIP_INTERVAL;
+				if(skip >= this.skipSentences.length){
+					this.skipSentences = Arrays.copyOf(this.skipSentences, this.skipSentences.length * 2);
+					this.skipOffsets = Arrays.copyOf(this.skipOffsets, this.skipOffsets.length * 2);
+				}
+				this.skipSentences[skip] = this.lastSentence;
+				this.skipOffsets[skip] = this.length;
+			}
+			this.writeVarInt(this.pendingSentence - this.lastSentence);
+			this.writeVarInt(this.pendingCount);
+			this.lastSentence = this.pendingSentence;
+			this.entries++;
+			this.pendingCount = 0;
+		}
+
+		void add(int sentence, int count){
+			if(this.pendingCount > 0){
+				if(sentence == this.pendingSentence){
+					this.pendingCount += count;
+					return;
+				}
+				if(sentence < this.pendingSentence)
+					throw new RuntimeException("Sentences have to be added in increasing order: " + sentence + " after " + this.pendingSentence);
+				this.flush();
+			}
+			this.pendingSentence = sentence;
+			this.pendingCount = count;
+		}
+	}
+
+	/**
+	 * Reads the entries of a list in order.
+	 */
+	private static class Cursor{
+		private List list;
+		private int offset;
+		private int entry;
+		int sentence;
+		int count;
+
+		Cursor(List list){
+			this.list = list;
+		}
+
+		private int readVarInt(){
+			byte[] data = this.list.data;
+			int value = 0, shift = 0;
+			byte b;
+			do {
+				b = data[this.offset++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while(b < 0);
+			return value;
+		}
+
+		/**
+		 * Move to the next entry.
+		 * @return False if there are no more entries
+		 */
+		boolean next(){
+			if(this.entry < this.list.entries){
+				this.sentence += readVarInt();
+				this.count = readVarInt();
+			}
+			else if(this.entry == this.list.entries && this.list.pendingCount > 0){
+				this.sentence = this.list.pendingSentence;
+				this.count = this.list.pendingCount;
+			}
+			else
+				return false;
+			this.entry++;
+			return true;
+		}
+
+		/**
+		 * Move to the first entry with a sentence equal to or larger than the target, using the skip points if the target is beyond the current block.
+		 * @return False if there is no such entry
+		 */
+		boolean advanceTo(int target){
+			if(this.entry > 0 && this.sentence >= target)
+				return true;
+			int[] skipSentences = this.list.skipSentences;
+			int skips = (this.list.entries + SKIP_INTERVAL - 1) / SKIP_INTERVAL;
+			int skip = this.entry / SKIP_INTERVAL + 1;
+			if(skip < skips && skipSentences[skip] < target){
+				// Gallop to find the last block that starts before the target
+				int low = skip, step = 1;
+				while(low + step < skips && skipSentences[low + step] < target){
+					low += step;
+					step <<= 1;
+				}
+				int high = Math.min(low + step, skips);
+				while(high - low > 1){
+					int middle = (low + high) >>> 1;
+					if(skipSentences[middle] < target)
+						low = middle;
+					else
+						high = middle;
+				}
+				this.entry = low * SKIP_INTERVAL;
+				this.offset = this.list.skipOffsets[low];
+				this.sentence = skipSentences[low];
+			}
+			while(next())
+				if(this.sentence >= target)
+					return true;
+			return false;
+		}
+	}
+
+	private List[] lists;
+	private int size;
+	private int maxSentence;
+	private int[] sentenceLengths;
+	private long totalCoocCount;
+
+	// Computed on demand, and discarded when a sentence is added
+	private volatile long[] coocCounts;
+
+	public PostingLists(){
+		this.lists = new List[16];
+		this.size = 0;
+		this.maxSentence = 0;
+		this.sentenceLengths = new int[16];
+		this.totalCoocCount = 0;
+	}
+
+	/**
+	 * Load the lists from a file. The file should be created by the save() method, or by IntegerMultiMap.save().
+	 * @param file Input file
+	 */
+	public PostingLists(String file){
+		this();
+		this.load(file);
+	}
+
+	private List getList(int key){
+		return (key >= 0 && key < this.lists.length)?this.lists[key]:null;
+	}
+
+	/**
+	 * Add one occurrence of the key in a sentence. The sentence can not be smaller than the previous sentence of this key.
+	 * @param key Key
+	 * @param sentence Sentence, at least 1
+	 */
+	public synchronized void add(int key, int sentence){
+		if(key < 0 || sentence <= 0)
+			throw new RuntimeException("Keys can not be negative and sentences have to be positive: " + key + ", " + sentence);
+		if(key >= this.lists.length)
+			this.lists = Arrays.copyOf(this.lists, Math.max(this.lists.length * 2, key + 1));
+		List list = this.lists[key];
+		if(list == null){
+			list = new List();
+			this.lists[key] = list;
+			this.size++;
+		}
+		list.add(sentence, 1);
+		this.maxSentence = Math.max(this.maxSentence, sentence);
+		if(sentence >= this.sentenceLengths.length)
+			this.sentenceLengths = Arrays.copyOf(this.sentenceLengths, Math.max(this.sentenceLengths.length * 2, sentence + 1));
+		// A sentence of length n has n*(n-1) ordered pairs, so one more occurrence adds 2n
+		this.totalCoocCount += 2L * this.sentenceLengths[sentence]++;
+		this.coocCounts = null;
+	}
+
+	/**
+	 * Add the occurrences of a key in several sentences.
+	 * @param key Key
+	 * @param sentences Sentences, sorted, with one element for every occurrence
+	 */
+	public synchronized void addAll(int key, int[] sentences){
+		for(int sentence : sentences)
+			this.add(key, sentence);
+	}
+
+	public boolean containsKey(int key){
+		return getList(key) != null;
+	}
+
+	/**
+	 * Get the number of keys.
+	 */
+	public int size(){
+		return this.size;
+	}
+
+	/**
+	 * Get all the keys, sorted.
+	 */
+	public int[] keys(){
+		int[] keys = new int[this.size];
+		int n = 0;
+		for(int key = 0; key < this.lists.length; key++)
+			if(this.lists[key] != null)
+				keys[n++] = key;
+		return keys;
+	}
+
+	/**
+	 * Get the sentences of a key, with one element for every occurrence.
+	 * @param key Key
+	 * @return Sorted sentences, or null if the key does not exist.
+	 */
+	public int[] get(int key){
+		List list = getList(key);
+		if(list == null)
+			return null;
+		int length = 0;
+		Cursor cursor = new Cursor(list);
+		while(cursor.next())
+			length += cursor.count;
+		int[] sentences = new int[length];
+		int n = 0;
+		cursor = new Cursor(list);
+		while(cursor.next())
+			for(int i = 0; i < cursor.count; i++)
+				sentences[n++] = cursor.sentence;
+		return sentences;
+	}
+
+	/**
+	 * Get the number of distinct sentences that a key occurs in.
+	 */
+	public int getSentenceCount(int key){
+		List list = getList(key);
+		return (list == null)?0:list.getSentenceCount();
+	}
+
+	/**
+	 * Count how many times two keys occur together in a sentence.
+	 * For different keys, this is the sum of the products of their numbers of occurrences in every sentence.
+	 * For the same key, every pair of occurrences in the same sentence is counted once.
+	 * @param key1 Key 1
+	 * @param key2 Key 2
+	 * @return The number of co-occurrences
+	 */
+	public double getMatchCount(int key1, int key2){
+		List list1 = getList(key1), list2 = getList(key2);
+		if(list1 == null || list2 == null)
+			return 0.0;
+
+		long total = 0;
+		if(key1 == key2){
+			Cursor cursor = new Cursor(list1);
+			while(cursor.next())
+				total += (long)cursor.count * (cursor.count - 1) / 2;
+			return total;
+		}
+
+		// Step through the shorter list and gallop in the longer one
+		if(list1.getSentenceCount() > list2.getSentenceCount()){
+			List temp = list1;
+			list1 = list2;
+			list2 = temp;
+		}
+		Cursor cursor1 = new Cursor(list1), cursor2 = new Cursor(list2);
+		while(cursor1.next()){
+			if(!cursor2.advanceTo(cursor1.sentence))
+				break;
+			if(cursor2.sentence == cursor1.sentence)
+				total += (long)cursor1.count * cursor2.count;
+		}
+		return total;
+	}
+
+	/**
+	 * Count how many times a key occurs together with any other key in a sentence.
+	 * For every sentence of the key, this is the number of occurrences of the other keys in that sentence.
+	 * @param key Key
+	 * @return The number of co-occurrences
+	 */
+	public double getMatchCount(int key){
+		long[] counts = getCoocCounts();
+		return (key >= 0 && key < counts.length)?counts[key]:0.0;
+	}
+
+	/**
+	 * Get the number of ordered pairs of different occurrences in the same sentence, summed over all sentences.
+	 */
+	public double getTotalCoocCount(){
+		return this.totalCoocCount;
+	}
+
+	/**
+	 * Get the number of occurrences in every sentence, indexed by the sentence.
+	 */
+	public synchronized int[] getSentenceLengths(){
+		return Arrays.copyOf(this.sentenceLengths, this.maxSentence + 1);
+	}
+
+	private long[] getCoocCounts(){
+		long[] counts = this.coocCounts;
+		if(counts == null){
+			synchronized(this){
+				counts = this.coocCounts;
+				if(counts == null){
+					int[] lengths = this.sentenceLengths;
+					counts = new long[this.lists.length];
+					for(int key = 0; key < this.lists.length; key++){
+						if(this.lists[key] == null)
+							continue;
+						Cursor cursor = new Cursor(this.lists[key]);
+						while(cursor.next())
+							counts[key] += lengths[cursor.sentence] - cursor.count;
+					}
+					this.coocCounts = counts;
+				}
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Get the number of bytes used by the compressed lists.
+	 */
+	public long getByteCount(){
+		long bytes = 0;
+		for(List list : this.lists)
+			if(list != null)
+				bytes += list.length + 4 * (list.skipSentences.length + list.skipOffsets.length);
+		return bytes;
+	}
+
+	/**
+	 * Load the lists from a file. The sentences on a line do not have to be sorted.
+	 * @param file Input file
+	 */
+	public void load(String file){
+		try{
+			BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
+			String strLine;
+			String[] chunks;
+			while((strLine = br.readLine()) != null){
+				chunks = strLine.trim().split("\\t+");
+				if(chunks.length <= 1)
+					continue;
+				int[] sentences = new int[chunks.length - 1];
+				for(int i = 1; i < chunks.length; i++)
+					sentences[i-1] = Integer.parseInt(chunks[i]);
+				Arrays.sort(sentences);
+				this.addAll(Integer.parseInt(chunks[0]), sentences);
+			}
+			br.close();
+		}catch (Exception e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Save the lists into a text file, in the same format as IntegerMultiMap.
+	 * @param file Output file
+	 */
+	public synchronized void save(String file){
+		try{
+			BufferedWriter out = new BufferedWriter(new FileWriter(file));
+			for(int key : keys()){
+				out.write("" + key);
+				Cursor cursor = new Cursor(this.lists[key]);
+				while(cursor.next())
+					for(int i = 0; i < cursor.count; i++)
+						out.write("\t" + cursor.sentence);
+				out.write("\n");
+			}
+			out.close();
+		}catch (Exception e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Save the sentence lengths and the total number of co-occurrences into a binary file.
+	 * @param file Output file
+	 */
+	public synchronized void saveSentenceLengths(String file){
+		BinaryWriter writer = new BinaryWriter(file);
+		writer.writeInt(MAGIC);
+		writer.writeInt(VERSION);
+		writer.writeLong(this.totalCoocCount);
+		writer.writeInts(getSentenceLengths());
+		writer.close();
+	}
+
+	/**
+	 * Read the total number of co-occurrences from a file created by saveSentenceLengths(). The sentence lengths themselves are not read.
+	 * @param file Input file
+	 * @return The total number of co-occurrences
+	 */
+	public static double readTotalCoocCount(String file){
+		BinaryReader reader = new BinaryReader(file);
+		try{
+			if(reader.readInt() != MAGIC)
+				throw new RuntimeException("Not a sentence length file: " + file);
+			int version = reader.readInt();
+			if(version != VERSION)
+				throw new RuntimeException("Unsupported sentence length file version " + version + " in " + file);
+			long total = reader.readLong();
+			return total;
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,409 @@
+package sem.util;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe cache with int keys, bounded by the total weight of the values.
+ * <p>The cache is split into shards by the hash of the key, and every shard has its own lock and its own part of the weight limit.
+ * Inside a shard, the eviction policy is segmented LRU: new entries go into a probation segment, and entries that are read again are moved into a protected segment, which takes up to 80% of the weight.
+ * Entries are evicted from the end of the probation segment first, so a scan over many keys that are used only once does not push out the entries that are used often.
+ * <p>get(key, loader) coalesces concurrent misses: if several threads ask for the same missing key at the same time, the value is loaded only once and the other threads wait for it.
+ * The loader is called without holding the lock of the shard.
+ * @param <V> Type of the values
+ */
+public class SegmentedLruCache<V> {
+
+	/**
+	 * Creates the value for a key that is not in the cache.
+	 */
+	public interface Loader<V>{
+		public V load(int key);
+	}
+
+	/**
+	 * Gives the weight of a value, which counts towards the limit of the cache.
+	 */
+	public interface Weigher<V>{
+		public long weigh(V value);
+	}
+
+	private static final int SHARD_BITS = 4;
+	private static final int SHARDS = 1 << SHARD_BITS;
+	private static final double PROTECTED_RATIO = 0.8;
+
+	private static class Node<V>{
+		int key;
+		V value;
+		long weight;
+		boolean isProtected;
+		Node<V> previous;
+		Node<V> next;
+	}
+
+	/**
+	 * A doubly linked list of nodes, from the most recently used to the least recently used.
+	 */
+	private static class NodeList<V>{
+		Node<V> head;
+		long weight;
+
+		NodeList(){
+			this.head = new Node<V>();
+			this.head.previous = this.head;
+			this.head.next = this.head;
+			this.weight = 0;
+		}
+
+		void addFirst(Node<V> node){
+			node.previous = this.head;
+			node.next = this.head.next;
+			this.head.next.previous = node;
+			this.head.next = node;
+			this.weight += node.weight;
+		}
+
+		void remove(Node<V> node){
+			node.previous.next = node.next;
+			node.next.previous = node.previous;
+			node.previous = null;
+			node.next = null;
+			this.weight -= node.weight;
+		}
+
+		Node<V> getLast(){
+			return (this.head.previous == this.head)?null:this.head.previous;
+		}
+
+		void clear(){
+			this.head.previous = this.head;
+			this.head.next = this.head;
+			this.weight = 0;
+		}
+	}
+
+	private static class Shard<V>{
+		long maxWeight;
+		long maxProtectedWeight;
+		long evictionCount;
+		// Increased by clear(), so that loads that started before it do not add their values
+		long epoch;
+		TIntObjectHashMap<Node<V>> nodes = new TIntObjectHashMap<Node<V>>();
+		TIntObjectHashMap<FutureTask<V>> loading = new TIntObjectHashMap<FutureTask<V>>();
+		NodeList<V> probation = new NodeList<V>();
+		NodeList<V> protectedList = new NodeList<V>();
+
+		/**
+		 * Record a read of a node: promote it into the protected segment, or move it to the front of it.
+		 */
+		void access(Node<V> node){
+			if(node.isProtected){
+				this.protectedList.remove(node);
+				this.protectedList.addFirst(node);
+				return;
+			}
+			this.probation.remove(node);
+			node.isProtected = true;
+			this.protectedList.addFirst(node);
+			// Demote from the protected segment back into probation, where they get a second chance
+			Node<V> last;
+			while(this.protectedList.weight > this.maxProtectedWeight && (last = this.protectedList.getLast()) != node){
+				this.protectedList.remove(last);
+				last.isProtected = false;
+				this.probation.addFirst(last);
+			}
+		}
+
+		void remove(Node<V> node){
+			if(node.isProtected)
+				this.protectedList.remove(node);
+			else
+				this.probation.remove(node);
+			this.nodes.remove(node.key);
+		}
+
+		void put(int key, V value, long weight){
+			Node<V> old = this.nodes.get(key);
+			if(old != null)
+				remove(old);
+			if(weight > this.maxWeight)
+				return;
+
+			Node<V> node = new Node<V>();
+			node.key = key;
+			node.value = value;
+			node.weight = weight;
+			node.isProtected = false;
+			this.nodes.put(key, node);
+			this.probation.addFirst(node);
+
+			while(this.probation.weight + this.protectedList.weight > this.maxWeight){
+				Node<V> victim = this.probation.getLast();
+				if(victim == null)
+					victim = this.protectedList.getLast();
+				remove(victim);
+				this.evictionCount++;
+			}
+		}
+	}
+
+	private Shard<V>[] shards;
+	private Weigher<V> weigher;
+	private long maxWeight;
+
+	private AtomicLong hitCount;
+	private AtomicLong missCount;
+	private AtomicLong loadCount;
+
+	/**
+	 * Create a new cache.
+	 * @param maxWeight Maximum total weight of the values
+	 * @param weigher Weigher for the values, or null to give every value a weight of 1
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public SegmentedLruCache(long maxWeight, Weigher<V> weigher){
+		this.weigher = weigher;
+		this.maxWeight = maxWeight;
+		this.shards = new Shard[SHARDS];
+		for(int i = 0; i < SHARDS; i++){
+			this.shards[i] = new Shard<V>();
+			this.shards[i].maxWeight = Math.max(1, maxWeight / SHARDS);
+			this.shards[i].maxProtectedWeight = (long)(this.shards[i].maxWeight * PROTECTED_RATIO);
+		}
+
+		this.hitCount = new AtomicLong(0);
+		this.missCount = new AtomicLong(0);
+		this.loadCount = new AtomicLong(0);
+	}
+
+	private Shard<V> getShard(int key){
+		// Fibonacci hashing, so that consecutive keys go to different shards
+		return this.shards[(key * 0x9E3779B9) >>> (32 - SHARD_BITS)];
+	}
+
+	private long weigh(V value){
+		return (this.weigher == null)?1:this.weigher.weigh(value);
+	}
+
+	/**
+	 * Get a value from the cache, without loading it.
+	 * @param key Key
+	 * @return The value, or null if it is not in the cache.
+	 */
+	public V getIfPresent(int key){
+		Shard<V> shard = getShard(key);
+		synchronized(shard){
+			Node<V> node = shard.nodes.get(key);
+			if(node == null){
+				this.missCount.incrementAndGet();
+				return null;
+			}
+			shard.access(node);
+			this.hitCount.incrementAndGet();
+			return node.value;
+		}
+	}
+
+	/**
+	 * Get a value from the cache, loading it if it is not there.
+	 * If another thread is already loading the same key, this waits for its result instead of loading it again.
+	 * @param key Key
+	 * @param loader Creates the value. It should not return null.
+	 * @return The value
+	 */
+	public V get(final int key, final Loader<V> loader){
+		Shard<V> shard = getShard(key);
+		FutureTask<V> task;
+		boolean isLoader = false;
+		long epoch;
+		synchronized(shard){
+			epoch = shard.epoch;
+			Node<V> node = shard.nodes.get(key);
+			if(node != null){
+				shard.access(node);
+				this.hitCount.incrementAndGet();
+				return node.value;
+			}
+			this.missCount.incrementAndGet();
+			task = shard.loading.get(key);
+			if(task == null){
+				task = new FutureTask<V>(new Callable<V>(){
+					@Override
+					public V call(){
+						return loader.load(key);
+					}
+				});
+				shard.loading.put(key, task);
+				isLoader = true;
+			}
+		}
+
+		if(isLoader){
+			task.run();
+			V value = null;
+			try{
+				value = getResult(task);
+			} finally {
+				synchronized(shard){
+					if(shard.loading.get(key) == task)
+						shard.loading.remove(key);
+					if(value != null && shard.epoch == epoch)
+						shard.put(key, value, weigh(value));
+				}
+			}
+			this.loadCount.incrementAndGet();
+			return value;
+		}
+		return getResult(task);
+	}
+
+	private V getResult(FutureTask<V> task){
+		try{
+			return task.get();
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch(ExecutionException e){
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Add a value to the cache, replacing the old value of the key. Values that are heavier than the limit of a shard are not cached.
+	 * @param key Key
+	 * @param value Value
+	 */
+	public void put(int key, V value){
+		long weight = weigh(value);
+		Shard<V> shard = getShard(key);
+		synchronized(shard){
+			shard.put(key, value, weight);
+		}
+	}
+
+	/**
+	 * Remove all the values. Values that are still being loaded are returned to their callers, but not added to the cache. The counters are not reset.
+	 */
+	public void clear(){
+		for(Shard<V> shard : this.shards){
+			synchronized(shard){
+				shard.epoch++;
+				shard.loading.clear();
+				shard.nodes.clear();
+				shard.probation.clear();
+				shard.protectedList.clear();
+			}
+		}
+	}
+
+	/**
+	 * Get the keys of the values that are used the most, for example for warming up another cache.
+	 * The keys in the protected segments, which have been read more than once, come before the keys in probation.
+	 * Inside a segment the most recently used keys come first, and the shards take turns.
+	 * @param limit Maximum number of keys
+	 * @return Keys from the hottest to the coldest
+	 */
+	public int[] getHotKeys(int limit){
+		int[][] protectedKeys = new int[SHARDS][];
+		int[][] probationKeys = new int[SHARDS][];
+		for(int i = 0; i < SHARDS; i++){
+			Shard<V> shard = this.shards[i];
+			synchronized(shard){
+				protectedKeys[i] = getKeys(shard.protectedList);
+				probationKeys[i] = getKeys(shard.probation);
+			}
+		}
+		TIntArrayList keys = new TIntArrayList();
+		for(int[][] segment : new int[][][]{protectedKeys, probationKeys}){
+			for(int position = 0; keys.size() < limit; position++){
+				boolean found = false;
+				for(int i = 0; i < SHARDS && keys.size() < limit; i++){
+					if(position < segment[i].length){
+						keys.add(segment[i][position]);
+						found = true;
+					}
+				}
+				if(!found)
+					break;
+			}
+		}
+		return keys.toArray();
+	}
+
+	private static <V> int[] getKeys(NodeList<V> list){
+		TIntArrayList keys = new TIntArrayList();
+		for(Node<V> node = list.head.next; node != list.head; node = node.next)
+			keys.add(node.key);
+		return keys.toArray();
+	}
+
+	/**
+	 * Get the number of values in the cache.
+	 */
+	public int size(){
+		int size = 0;
+		for(Shard<V> shard : this.shards){
+			synchronized(shard){
+				size += shard.nodes.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Get the total weight of the values in the cache.
+	 */
+	public long getWeight(){
+		long weight = 0;
+		for(Shard<V> shard : this.shards){
+			synchronized(shard){
+				weight += shard.probation.weight + shard.protectedList.weight;
+			}
+		}
+		return weight;
+	}
+
+	public long getMaxWeight(){
+		return this.maxWeight;
+	}
+
+	public long getHitCount(){
+		return this.hitCount.get();
+	}
+
+	/**
+	 * Get the number of lookups that did not find the value. Threads that waited for another thread to load the same value are also counted.
+	 */
+	public long getMissCount(){
+		return this.missCount.get();
+	}
+
+	/**
+	 * Get the number of values that have been created with a loader.
+	 */
+	public long getLoadCount(){
+		return this.loadCount.get();
+	}
+
+	public long getEvictionCount(){
+		long count = 0;
+		for(Shard<V> shard : this.shards){
+			synchronized(shard){
+				count += shard.evictionCount;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public String toString(){
+		return "size=" + size() + " weight=" + getWeight() + "/" + this.maxWeight + " hits=" + getHitCount() + " misses=" + getMissCount() + " loads=" + getLoadCount() + " evictions=" + getEvictionCount();
+	}
+}
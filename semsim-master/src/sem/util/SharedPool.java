@@ -0,0 +1,69 @@
+package sem.util;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fork-join pool that is shared by all the parallel work of the library, with one thread per processor.
+ * <p>The pool is created on first use and lives as long as the process; its threads are daemon threads, so it never needs to be shut down.
+ * A call does not get a pool of its own size. Instead, run() splits the work into numbered chunks, and at most the given number of workers take the chunks in turn.
+ */
+public class SharedPool {
+
+	/**
+	 * Work that is split into chunks, which can be run in any order and in different threads.
+	 */
+	public interface Chunks{
+		public void run(int chunk);
+	}
+
+	private static ForkJoinPool pool;
+
+	/**
+	 * Get the shared pool.
+	 */
+	public static synchronized ForkJoinPool getPool(){
+		if(pool == null)
+			pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		return pool;
+	}
+
+	/**
+	 * Run every chunk once, and wait until they have all finished.
+	 * With one thread or one chunk, the chunks are run in the calling thread, without the pool.
+	 * @param chunkCount Number of chunks
+	 * @param numThreads Maximum number of chunks that are run at the same time. The size of the pool is also a limit.
+	 * @param chunks The work
+	 */
+	public static void run(final int chunkCount, int numThreads, final Chunks chunks){
+		int workerCount = Math.min(numThreads, chunkCount);
+		if(workerCount <= 1){
+			for(int chunk = 0; chunk < chunkCount; chunk++)
+				chunks.run(chunk);
+			return;
+		}
+
+		final AtomicInteger next = new AtomicInteger(0);
+		final ArrayList<RecursiveAction> workers = new ArrayList<RecursiveAction>();
+		for(int i = 0; i < workerCount; i++){
+			workers.add(new RecursiveAction(){
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected void compute(){
+					int chunk;
+					while((chunk = next.getAndIncrement()) < chunkCount)
+						chunks.run(chunk);
+				}
+			});
+		}
+		getPool().invoke(new RecursiveAction(){
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected void compute(){
+				invokeAll(workers);
+			}
+		});
+	}
+}
@@ -0,0 +1,254 @@
+package sem.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+/**
+ * A sparse feature vector, stored as two parallel arrays of feature IDs and weights, sorted by the ID.
+ * <p>Two vectors can be compared with a merge-join over the sorted IDs, without any lookups or boxing.
+ * The sums that many similarity measures need (sum, sum of squares, sum of positive weights, number of non-zero weights) are calculated once when the vector is created.
+ * <p>The vector also keeps the order of the features by decreasing weight, which is the same order as Tools.sort(vector, true) gives for the map representation. This is used by the rank-based measures.
+ * The vector should not be modified after it has been created.
+ */
+public class SparseVector {
+	private int[] ids;
+	private double[] weights;
+	private volatile int[] rankOrder;
+	private volatile int[] rankPositions;
+
+	private double sum;
+	private double sumOfSquares;
+	private double positiveSum;
+	private int nonZeroCount;
+
+	/**
+	 * Create a vector from arrays. The arrays are not copied.
+	 * @param ids Feature IDs, sorted in increasing order and without duplicates
+	 * @param weights Weights of the features
+	 */
+	public SparseVector(int[] ids, double[] weights){
+		if(ids.length != weights.length)
+			throw new IllegalArgumentException("The arrays of IDs and weights have different lengths");
+		for(int i = 1; i < ids.length; i++)
+			if(ids[i] <= ids[i-1])
+				throw new IllegalArgumentException("Feature IDs have to be sorted and unique");
+		this.ids = ids;
+		this.weights = weights;
+		this.rankOrder = null;
+		calculateSums();
+	}
+
+	private SparseVector(){
+	}
+
+	/**
+	 * Create a vector from the map representation that VectorSpace.getVector() returns.
+	 * Ties in the weight order are broken by the iteration order of the map, so that the rank-based measures give the same results as with the map.
+	 * @param map Map from feature IDs to weights
+	 * @return The vector
+	 */
+	public static SparseVector fromMap(LinkedHashMap<Integer,Double> map){
+		int size = map.size();
+		int[] mapIds = new int[size];
+		double[] mapWeights = new double[size];
+		int i = 0;
+		for(Entry<Integer,Double> e : map.entrySet()){
+			mapIds[i] = e.getKey();
+			mapWeights[i] = e.getValue();
+			i++;
+		}
+		SparseVector vector = fromOrder(mapIds, mapWeights);
+		vector.rankOrder = vector.sortByWeight(vector.rankOrder);
+		return vector;
+	}
+
+	/**
+	 * Create a vector from features that are already sorted by decreasing weight, for example as stored in a VectorStore.
+	 * The rank order is taken from the order of the arrays, without sorting. The arrays are not modified.
+	 * @param ids Feature IDs, without duplicates
+	 * @param weights Weights of the features, in decreasing order
+	 * @return The vector
+	 */
+	public static SparseVector fromWeightOrder(int[] ids, double[] weights){
+		if(ids.length != weights.length)
+			throw new IllegalArgumentException("The arrays of IDs and weights have different lengths");
+		return fromOrder(ids, weights);
+	}
+
+	/**
+	 * Create a vector from features in any order. The rank order is set to the original order of the features.
+	 */
+	private static SparseVector fromOrder(int[] orderIds, double[] orderWeights){
+		SparseVector vector = new SparseVector();
+		int size = orderIds.length;
+		long[] keys = new long[size];
+		for(int i = 0; i < size; i++){
+			// Sort by ID, remembering the original position
+			keys[i] = ((long)orderIds[i] << 32) | i;
+		}
+		Arrays.sort(keys);
+
+		vector.ids = new int[size];
+		vector.weights = new double[size];
+		int[] orderToSorted = new int[size];
+		for(int i = 0; i < size; i++){
+			int position = (int)(keys[i] & 0xffffffffL);
+			vector.ids[i] = orderIds[position];
+			vector.weights[i] = orderWeights[position];
+			orderToSorted[position] = i;
+		}
+		vector.calculateSums();
+		vector.rankOrder = orderToSorted;
+		return vector;
+	}
+
+	/**
+	 * Calculate the cached sums. They are added up in the order of the IDs, the same order as in a merge-join, so that for example the cosine of a vector with itself is exactly 1.
+	 */
+	private void calculateSums(){
+		this.sum = 0.0;
+		this.sumOfSquares = 0.0;
+		this.positiveSum = 0.0;
+		this.nonZeroCount = 0;
+		for(double weight : this.weights){
+			this.sum += weight;
+			this.sumOfSquares += weight * weight;
+			if(weight > 0.0)
+				this.positiveSum += weight;
+			if(weight != 0.0)
+				this.nonZeroCount++;
+		}
+	}
+
+	/**
+	 * Stable sort of the positions by decreasing weight.
+	 */
+	private int[] sortByWeight(int[] order){
+		Integer[] boxed = new Integer[order.length];
+		for(int i = 0; i < order.length; i++)
+			boxed[i] = order[i];
+		Arrays.sort(boxed, new Comparator<Integer>(){
+			@Override
+			public int compare(Integer i1, Integer i2){
+				if(weights[i1] > weights[i2])
+					return -1;
+				else if(weights[i1] < weights[i2])
+					return 1;
+				return 0;
+			}
+		});
+		int[] sorted = new int[order.length];
+		for(int i = 0; i < order.length; i++)
+			sorted[i] = boxed[i];
+		return sorted;
+	}
+
+	/**
+	 * Get the positions of the features, ordered by decreasing weight. Ties are in the order the vector was created in.
+	 * @return Positions in the getIds() and getWeights() arrays
+	 */
+	public int[] getRankOrder(){
+		if(this.rankOrder == null){
+			int[] order = new int[this.ids.length];
+			for(int i = 0; i < order.length; i++)
+				order[i] = i;
+			this.rankOrder = sortByWeight(order);
+		}
+		return this.rankOrder;
+	}
+
+	/**
+	 * Get the rank of every feature, which is the inverse of getRankOrder().
+	 * @return For every position in the getIds() array, the 0-based position of that feature in getRankOrder()
+	 */
+	public int[] getRankPositions(){
+		if(this.rankPositions == null){
+			int[] order = getRankOrder();
+			int[] positions = new int[order.length];
+			for(int i = 0; i < order.length; i++)
+				positions[order[i]] = i;
+			this.rankPositions = positions;
+		}
+		return this.rankPositions;
+	}
+
+	/**
+	 * Find the position of a feature in the getIds() array.
+	 * @param id Feature ID
+	 * @return The position, or a negative value if the feature is not in the vector (see Arrays.binarySearch()).
+	 */
+	public int indexOf(int id){
+		return Arrays.binarySearch(this.ids, id);
+	}
+
+	/**
+	 * Convert the vector back into a map, with the features ordered by decreasing weight.
+	 * @return Map from feature IDs to weights
+	 */
+	public LinkedHashMap<Integer,Double> toMap(){
+		LinkedHashMap<Integer,Double> map = new LinkedHashMap<Integer,Double>();
+		for(int position : getRankOrder())
+			map.put(this.ids[position], this.weights[position]);
+		return map;
+	}
+
+	/**
+	 * Get the weight of a feature, using binary search.
+	 * @param id Feature ID
+	 * @return The weight, or 0.0 if the feature is not in the vector.
+	 */
+	public double get(int id){
+		int position = Arrays.binarySearch(this.ids, id);
+		return (position >= 0)?this.weights[position]:0.0;
+	}
+
+	public boolean contains(int id){
+		return Arrays.binarySearch(this.ids, id) >= 0;
+	}
+
+	/**
+	 * Feature IDs in increasing order. The array should not be modified.
+	 */
+	public int[] getIds(){
+		return this.ids;
+	}
+
+	/**
+	 * Weights, in the same order as getIds(). The array should not be modified.
+	 */
+	public double[] getWeights(){
+		return this.weights;
+	}
+
+	public int size(){
+		return this.ids.length;
+	}
+
+	public double getSum(){
+		return this.sum;
+	}
+
+	public double getSumOfSquares(){
+		return this.sumOfSquares;
+	}
+
+	public double getNorm(){
+		return Math.sqrt(this.sumOfSquares);
+	}
+
+	/**
+	 * Get the sum of the weights that are larger than 0.
+	 */
+	public double getPositiveSum(){
+		return this.positiveSum;
+	}
+
+	/**
+	 * Get the number of weights that are not 0.
+	 */
+	public int getNonZeroCount(){
+		return this.nonZeroCount;
+	}
+}
@@ -0,0 +1,231 @@
+package sem.util;
+
+import gnu.trove.map.hash.TIntDoubleHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.util.Arrays;
+
+/**
+ * A read-only view of a CompressedTensor that also contains every entry in the reverse direction, without storing it twice.
+ * <p>For every entry (key1, key2, key3) where key2 has a reverse key, the view also has the entry (key3, reverse(key2), key1) with the same value.
+ * These entries are computed from the dep-major layout of the CompressedTensor. If the tensor already has entries with a reverse key, the values are added together.
+ * The view contains the same values as the tensor that SemModel.makeTensorSymmetric() creates, and the keys are returned in the same (sorted) order as from a frozen tensor.
+ * <p>freeze() and save() create a materialised copy of the symmetric tensor.
+ */
+public class SymmetricTensor extends Tensor{
+
+	private CompressedTensor base;
+	// For every key2 in the base tensor, the key of its reverse direction, or 0 if it is not reversed
+	private int[] reverseKeys;
+	// For every reverse key, the key2 that it reverses, or 0
+	private int[] forwardKeys;
+	// Keys in the second position of the base tensor that are not reversed
+	private int[] nonReversibleKeys;
+
+	/**
+	 * Create a symmetric view of a tensor.
+	 * @param base The tensor
+	 * @param reverseKeys For every key in the second position, the key used for the reverse direction, or 0 if entries with this key are not reversed.
+	 */
+	public SymmetricTensor(CompressedTensor base, int[] reverseKeys){
+		super();
+		this.base = base;
+		this.reverseKeys = reverseKeys;
+
+		int maxReverseKey = 0;
+		for(int reverseKey : reverseKeys)
+			maxReverseKey = Math.max(maxReverseKey, reverseKey);
+		this.forwardKeys = new int[maxReverseKey + 1];
+		for(int key2 = 0; key2 < reverseKeys.length; key2++)
+			if(reverseKeys[key2] > 0)
+				this.forwardKeys[reverseKeys[key2]] = key2;
+
+		int[] counts = base.getEntryCountsByKey2();
+		int nonReversibleCount = 0;
+		for(int key2 = 0; key2 < counts.length; key2++)
+			if(counts[key2] > 0 && getReverseKey(key2) == 0)
+				nonReversibleCount++;
+		this.nonReversibleKeys = new int[nonReversibleCount];
+		nonReversibleCount = 0;
+		for(int key2 = 0; key2 < counts.length; key2++)
+			if(counts[key2] > 0 && getReverseKey(key2) == 0)
+				this.nonReversibleKeys[nonReversibleCount++] = key2;
+	}
+
+	/**
+	 * Get the tensor that this view is based on.
+	 */
+	public CompressedTensor getBase(){
+		return this.base;
+	}
+
+	private int getReverseKey(int key2){
+		return (key2 >= 0 && key2 < this.reverseKeys.length)?this.reverseKeys[key2]:0;
+	}
+
+	private int getForwardKey(int key2){
+		return (key2 >= 0 && key2 < this.forwardKeys.length)?this.forwardKeys[key2]:0;
+	}
+
+	/**
+	 * Merge two sorted arrays without duplicates. Either of them can be null.
+	 * @return The merged array, or null if both are null or empty
+	 */
+	private static int[] union(int[] keys1, int[] keys2){
+		if(keys1 == null || keys1.length == 0)
+			return (keys2 == null || keys2.length == 0)?null:keys2;
+		if(keys2 == null || keys2.length == 0)
+			return keys1;
+		int[] result = new int[keys1.length + keys2.length];
+		int i = 0, j = 0, n = 0;
+		while(i < keys1.length || j < keys2.length){
+			if(j >= keys2.length || (i < keys1.length && keys1[i] < keys2[j]))
+				result[n++] = keys1[i++];
+			else if(i >= keys1.length || keys1[i] > keys2[j])
+				result[n++] = keys2[j++];
+			else {
+				result[n++] = keys1[i++];
+				j++;
+			}
+		}
+		if(n == result.length)
+			return result;
+		int[] trimmed = new int[n];
+		System.arraycopy(result, 0, trimmed, 0, n);
+		return trimmed;
+	}
+
+	/**
+	 * Counts the values in the tensor
+	 * If any of the three keys is null, this function will interpret that as a wildcard and sum over the appropriate columns
+	 * @param key1 Key 1
+	 * @param key2 Key 2
+	 * @param key3 Key 3
+	 * @return The correct value from the tensor, 0.0 if it does not exist, or a sum over the columns if some keys are null.
+	 */
+	@Override
+	public double get(Integer key1, Integer key2, Integer key3){
+		double value = this.base.get(key1, key2, key3);
+		if(key2 != null){
+			int forwardKey = getForwardKey(key2);
+			if(forwardKey > 0)
+				value += this.base.get(key3, forwardKey, key1);
+		}
+		else {
+			double reverse = this.base.get(key3, null, key1);
+			for(int nonReversibleKey : this.nonReversibleKeys)
+				reverse -= this.base.get(key3, nonReversibleKey, key1);
+			value += reverse;
+		}
+		return value;
+	}
+
+	@Override
+	public int[] getKeys(){
+		int[] depKeys = this.base.getDepKeys();
+		if(this.nonReversibleKeys.length > 0){
+			// Only the deps that have at least one entry with a reversed key
+			int n = 0;
+			for(int key3 : depKeys)
+				if(getReverseKeys(key3) != null)
+					depKeys[n++] = key3;
+			int[] trimmed = new int[n];
+			System.arraycopy(depKeys, 0, trimmed, 0, n);
+			depKeys = trimmed;
+		}
+		int[] keys = union(this.base.getKeys(), depKeys);
+		return (keys == null)?new int[0]:keys;
+	}
+
+	/**
+	 * Get the reverse keys in the second position for key1, sorted.
+	 */
+	private int[] getReverseKeys(int key1){
+		int[] forward = this.base.getDepKeys(key1);
+		if(forward == null)
+			return null;
+		int n = 0;
+		int[] reverse = new int[forward.length];
+		for(int key2 : forward){
+			int reverseKey = getReverseKey(key2);
+			if(reverseKey > 0)
+				reverse[n++] = reverseKey;
+		}
+		if(n == 0)
+			return null;
+		int[] trimmed = new int[n];
+		System.arraycopy(reverse, 0, trimmed, 0, n);
+		Arrays.sort(trimmed);
+		return trimmed;
+	}
+
+	@Override
+	public int[] getKeys(Integer key1){
+		return union(this.base.getKeys(key1), getReverseKeys(key1));
+	}
+
+	@Override
+	public int[] getKeys(Integer key1, Integer key2){
+		int forwardKey = getForwardKey(key2);
+		if(forwardKey == 0)
+			return this.base.getKeys(key1, key2);
+		return union(this.base.getKeys(key1, key2), this.base.getDepKeys(key1, forwardKey));
+	}
+
+	@Override
+	public boolean containsKey(int key1){
+		return this.base.containsKey(key1) || getReverseKeys(key1) != null;
+	}
+
+	/**
+	 * Get the size of the first dimension in the tensor.
+	 * @return the size of the first dimension
+	 */
+	@Override
+	public int size(){
+		return getKeys().length;
+	}
+
+	/**
+	 * Create a compressed tensor that stores both directions.
+	 * @return The materialised tensor
+	 */
+	@Override
+	public CompressedTensor freeze(){
+		return new CompressedTensor(this);
+	}
+
+	/**
+	 * Save the materialised tensor into a text file, in the same format as Tensor.save().
+	 * @param file File path
+	 */
+	@Override
+	public void save(String file){
+		freeze().save(file);
+	}
+
+	@Override
+	public TIntObjectHashMap<TIntObjectHashMap<TIntDoubleHashMap>> getMap(){
+		throw new RuntimeException("SymmetricTensor does not have an underlying map");
+	}
+
+	@Override
+	public void set(Integer key1, Integer key2, Integer key3, Double value){
+		throw new RuntimeException("SymmetricTensor is read-only");
+	}
+
+	@Override
+	public void add(Integer key1, Integer key2, Integer key3, Double value){
+		throw new RuntimeException("SymmetricTensor is read-only");
+	}
+
+	@Override
+	public void clear(){
+		throw new RuntimeException("SymmetricTensor is read-only");
+	}
+
+	@Override
+	public void load(String file){
+		throw new RuntimeException("SymmetricTensor is read-only");
+	}
+}
@@ -2,6 +2,7 @@ package sem.util;
 
 import gnu.trove.map.hash.TIntDoubleHashMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongDoubleHashMap;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
@@ -13,15 +14,30 @@ import java.io.InputStreamReader;
 /**
  * Holds a three-dimensional tensor.
  * The three keys that specify a position in the tensor are integers, and the value in a specific position is a double.
+ * <p>The sums over every key1, key2, key3, (key1, key2) and (key2, key3), and the total, are updated in add() and set(),
+ * so wildcard queries do not scan the map. Only get(key1, null, key3) iterates, over the key2 entries of key1.
+ * Changes made directly through getMap() are not reflected in these sums.
  */
 public class Tensor{
 	private TIntObjectHashMap<TIntObjectHashMap<TIntDoubleHashMap>> map;
+	private TIntDoubleHashMap sums1;
+	private TIntDoubleHashMap sums2;
+	private TIntDoubleHashMap sums3;
+	private TLongDoubleHashMap sums12;
+	private TLongDoubleHashMap sums23;
+	private double total;
 	
 	/**
 	 * Creates a new tensor.
 	 */
 	public Tensor(){
 		map = new TIntObjectHashMap<TIntObjectHashMap<TIntDoubleHashMap>>();
+		sums1 = new TIntDoubleHashMap();
+		sums2 = new TIntDoubleHashMap();
+		sums3 = new TIntDoubleHashMap();
+		sums12 = new TLongDoubleHashMap();
+		sums23 = new TLongDoubleHashMap();
+		total = 0.0;
 	}
 	
 	/**
@@ -65,7 +81,9 @@ public class Tensor{
 			tempMap2 = new TIntDoubleHashMap();
 			tempMap1.put(key2, tempMap2);
 		}
-		tempMap2.put(key3, value);
+		// put() returns the no-entry value 0.0 if there was no previous entry
+		double oldValue = tempMap2.put(key3, value);
+		addToSums(key1, key2, key3, value - oldValue);
 	}
 	
 	/**
@@ -91,11 +109,21 @@ public class Tensor{
 			tempMap1.put(key2, tempMap2);
 		}
 		
-		Double oldVal = tempMap2.get(key3);
-		if(oldVal == null)
-			tempMap2.put(key3, value);
-		else
-			tempMap2.put(key3, oldVal + value);
+		tempMap2.adjustOrPutValue(key3, value, value);
+		addToSums(key1, key2, key3, value);
+	}
+	
+	private static long pairKey(int keyA, int keyB){
+		return ((long)keyA << 32) | (keyB & 0xffffffffL);
+	}
+	
+	private void addToSums(int key1, int key2, int key3, double value){
+		this.sums1.adjustOrPutValue(key1, value, value);
+		this.sums2.adjustOrPutValue(key2, value, value);
+		this.sums3.adjustOrPutValue(key3, value, value);
+		this.sums12.adjustOrPutValue(pairKey(key1, key2), value, value);
+		this.sums23.adjustOrPutValue(pairKey(key2, key3), value, value);
+		this.total += value;
 	}
 	
 	/**
@@ -103,6 +131,12 @@ public class Tensor{
 	 */
 	public synchronized void clear(){
 		this.map.clear();
+		this.sums1.clear();
+		this.sums2.clear();
+		this.sums3.clear();
+		this.sums12.clear();
+		this.sums23.clear();
+		this.total = 0.0;
 	}
 	
 	/**
@@ -167,14 +201,15 @@ public class Tensor{
 					}
 				}
 				else{
-					System.out.println("Error in Tensor.load(): Unknown num of columns: " + chunks.length);
-					System.exit(1);
+					br.close();
+					throw new RuntimeException("Error in Tensor.load(): Unknown num of columns: " + chunks.length);
 				}
 			}
 			in.close();
+		}catch (RuntimeException e){
+			throw e;
 		}catch (Exception e){
-			e.printStackTrace();
-			System.exit(1);
+			throw new RuntimeException(e);
 		}
 	}
 	
@@ -203,16 +238,8 @@ public class Tensor{
 					else
 						return 0.0;
 				}
-				else {
-					double sum = 0.0;
-					if(((tempMap1 = this.map.get(key1)) != null) 
-							&& ((tempMap2 = tempMap1.get(key2)) != null)) {
-						for(double d : tempMap2.values()){
-							sum += d;
-						}
-					}
-					return sum;
-				}
+				else
+					return this.sums12.get(pairKey(key1, key2));
 			}
 			else if(key3 != null){
 				double sum = 0.0;
@@ -224,99 +251,19 @@ public class Tensor{
 				}
 				return sum;
 			}
-			else {
-				double sum = 0.0;
-				if(((tempMap1 = this.map.get(key1)) != null)){
-					/*for(TIntDoubleHashMap tMap2 : tempMap1.values()){
-						for(double d : tMap2.values())
-							sum += d;
-					}*/
-					for(int tempKey2 : tempMap1.keys()){
-						for(double d : tempMap1.get(tempKey2).values())
-							sum += d;
-					}
-				}
-				return sum;
-			}
+			else
+				return this.sums1.get(key1);
 		}
 		else if(key2 != null){
-			if(key3 != null){
-				double sum = 0.0;
-				
-				/*for(TIntObjectHashMap<TIntDoubleHashMap> tMap1 : this.map.values()){
-					if(((tempMap2 = tMap1.get(key2)) != null)
-							&& ((tempValue = tempMap2.get(key3)) != this.map.getNoEntryValue())){
-						sum += tempValue;
-					}
-				}
-				*/
-				
-				for(int tempKey1 : this.map.keys()){
-					if(((tempMap2 = this.map.get(tempKey1).get(key2)) != null)
-							&& ((tempValue = tempMap2.get(key3)) != this.map.getNoEntryValue())){
-						sum += tempValue;
-					}
-				}
-				return sum;
-			}
-			else{
-				double sum = 0.0;
-				/*
-				for(TIntObjectHashMap<TIntDoubleHashMap> tMap1 : this.map.values()){
-					if(((tempMap2 = tMap1.get(key2)) != null)){
-						for(double d : tempMap2.values())
-							sum += d;
-					}
-				}
-				*/
-				for(int tempKey1 : this.map.keys()){
-					if(((tempMap2 = this.map.get(tempKey1).get(key2)) != null)){
-						for(double d : tempMap2.values())
-							sum += d;
-					}
-				}
-				return sum;
-			}
-		}
-		else if(key3 != null){
-			double sum = 0.0;
-			/*
-			for(TIntObjectHashMap<TIntDoubleHashMap> tMap1 : this.map.values()){
-				for(TIntDoubleHashMap tMap2 : tMap1.values()){
-					if((tempValue = tMap2.get(key3)) != this.map.getNoEntryValue())
-						sum += tempValue;
-				}
-			}
-			*/
-			for(int tempKey1 : this.map.keys()){
-				tempMap1 = this.map.get(tempKey1);
-				for(int tempKey2 : tempMap1.keys()){
-					tempMap2 = tempMap1.get(tempKey2);
-					if((tempValue = tempMap2.get(key3)) != this.map.getNoEntryValue())
-						sum += tempValue;
-				}
-			}
-			return sum;
-		}
-		else {
-			double sum = 0.0;
-			/*
-			for(TIntObjectHashMap<TIntDoubleHashMap> tMap1 : this.map.values()){
-				for(TIntDoubleHashMap tMap2 : tMap1.values()){
-					for(double d : tMap2.values())
-						sum += d;
-				}
-			}
-			*/
-			for(int tempKey1 : this.map.keys()){
-				tempMap1 = this.map.get(tempKey1);
-				for(int tempKey2 : tempMap1.keys()){
-					for(double d : tempMap1.get(tempKey2).values())
-						sum += d;
-				}
-			}
-			return sum;
+			if(key3 != null)
+				return this.sums23.get(pairKey(key2, key3));
+			else
+				return this.sums2.get(key2);
 		}
+		else if(key3 != null)
+			return this.sums3.get(key3);
+		else
+			return this.total;
 	}
 	
 	public int[] getKeys(){
@@ -338,5 +285,14 @@ public class Tensor{
 	public boolean containsKey(int key1){
 		return this.map.containsKey(key1);
 	}
+	
+	/**
+	 * Create an immutable, compressed copy of the tensor. It uses less memory and answers wildcard queries without scanning.
+	 * This tensor is not modified.
+	 * @return The compressed tensor
+	 */
+	public CompressedTensor freeze(){
+		return new CompressedTensor(this);
+	}
 }
 
@@ -0,0 +1,190 @@
+package sem.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+/**
+ * Selects the k best scores from a stream of (position, score) pairs, without keeping or sorting the other scores.
+ * <p>The positions and scores are kept in primitive arrays, which form a binary heap with the worst kept score at the root.
+ * A new score only has to be compared with the root, unless it is good enough to replace it.
+ * Ties are broken by position, so the result is the same as sorting all the scores with a stable sort and taking the first k.
+ * <p>A collector is not thread-safe. Several collectors can be filled in parallel and merged with addAll().
+ */
+public class TopKCollector {
+
+	private int k;
+	private boolean desc;
+	private int[] positions;
+	private double[] scores;
+	private int size;
+	// The arrays are ordered from best to worst once the result has been read
+	private boolean sorted;
+
+	/**
+	 * @param k Maximum number of scores to keep
+	 * @param desc True if higher scores are better, false for distances
+	 */
+	public TopKCollector(int k, boolean desc){
+		this.k = Math.max(0, k);
+		this.desc = desc;
+		this.positions = new int[Math.min(this.k, 16)];
+		this.scores = new double[this.positions.length];
+		this.size = 0;
+		this.sorted = false;
+	}
+
+	/**
+	 * Check whether the first score should come after the second one.
+	 */
+	private boolean isWorse(double score1, int position1, double score2, int position2){
+		if(score1 < score2)
+			return this.desc;
+		else if(score1 > score2)
+			return !this.desc;
+		return position1 > position2;
+	}
+
+	/**
+	 * Offer a score to the collector.
+	 * @param position Position of the item, for example in the order of the candidates. Has to be unique.
+	 * @param score Score of the item
+	 */
+	public void add(int position, double score){
+		if(this.sorted)
+			throw new IllegalStateException("Scores cannot be added after the result has been read");
+		if(this.size < this.k){
+			if(this.size == this.positions.length){
+				int newLength = (int)Math.min(this.k, 2L * this.positions.length);
+				this.positions = Arrays.copyOf(this.positions, newLength);
+				this.scores = Arrays.copyOf(this.scores, newLength);
+			}
+			int i = this.size++;
+			// Sift up: move the parents that are better than the new score down
+			while(i > 0){
+				int parent = (i - 1) >>> 1;
+				if(!isWorse(score, position, this.scores[parent], this.positions[parent]))
+					break;
+				this.positions[i] = this.positions[parent];
+				this.scores[i] = this.scores[parent];
+				i = parent;
+			}
+			this.positions[i] = position;
+			this.scores[i] = score;
+		}
+		else if(this.k > 0 && isWorse(this.scores[0], this.positions[0], score, position))
+			replaceRoot(position, score, this.size);
+	}
+
+	/**
+	 * Put a score at the root of the heap, and sift it down to its place among the first size entries.
+	 */
+	private void replaceRoot(int position, double score, int size){
+		int i = 0;
+		while(true){
+			int child = 2 * i + 1;
+			if(child >= size)
+				break;
+			if(child + 1 < size && isWorse(this.scores[child + 1], this.positions[child + 1], this.scores[child], this.positions[child]))
+				child++;
+			if(!isWorse(this.scores[child], this.positions[child], score, position))
+				break;
+			this.positions[i] = this.positions[child];
+			this.scores[i] = this.scores[child];
+			i = child;
+		}
+		this.positions[i] = position;
+		this.scores[i] = score;
+	}
+
+	/**
+	 * Offer all the scores that another collector has kept.
+	 * @param other Collector
+	 */
+	public void addAll(TopKCollector other){
+		for(int i = 0; i < other.size; i++)
+			add(other.positions[i], other.scores[i]);
+	}
+
+	/**
+	 * Order the kept scores from best to worst, by taking the worst one from the heap repeatedly and putting it after the remaining ones.
+	 */
+	private void sort(){
+		if(this.sorted)
+			return;
+		for(int end = this.size - 1; end > 0; end--){
+			int position = this.positions[end];
+			double score = this.scores[end];
+			this.positions[end] = this.positions[0];
+			this.scores[end] = this.scores[0];
+			replaceRoot(position, score, end);
+		}
+		this.sorted = true;
+	}
+
+	/**
+	 * Get the positions of the kept scores. No more scores can be added after this.
+	 * @return Positions from best to worst
+	 */
+	public int[] getPositions(){
+		sort();
+		return Arrays.copyOf(this.positions, this.size);
+	}
+
+	/**
+	 * Get the kept scores. No more scores can be added after this.
+	 * @return Scores from best to worst, in the same order as getPositions()
+	 */
+	public double[] getScores(){
+		sort();
+		return Arrays.copyOf(this.scores, this.size);
+	}
+
+	/**
+	 * Get the number of scores that are kept, at most k.
+	 * @return Number of scores
+	 */
+	public int size(){
+		return this.size;
+	}
+
+	/**
+	 * Find the positions of the k best values in an array.
+	 * @param values Scores
+	 * @param k Maximum number of positions
+	 * @param desc True if higher scores are better
+	 * @return Positions from best to worst
+	 */
+	public static int[] select(double[] values, int k, boolean desc){
+		TopKCollector collector = new TopKCollector(k, desc);
+		for(int i = 0; i < values.length; i++)
+			collector.add(i, values[i]);
+		return collector.getPositions();
+	}
+
+	/**
+	 * Take the k best entries of a map, which gives the same result as sorting the map with Tools.sort() and keeping the first k entries.
+	 * @param map Map of scores
+	 * @param k Maximum number of entries
+	 * @param desc True if higher scores are better
+	 * @return The best entries from best to worst
+	 */
+	public static <T> LinkedHashMap<T,Double> select(LinkedHashMap<T,Double> map, int k, boolean desc){
+		TopKCollector collector = new TopKCollector(k, desc);
+		Object[] keys = new Object[map.size()];
+		int i = 0;
+		for(Entry<T,Double> e : map.entrySet()){
+			keys[i] = e.getKey();
+			collector.add(i++, e.getValue());
+		}
+		int[] best = collector.getPositions();
+		double[] bestScores = collector.getScores();
+		LinkedHashMap<T,Double> result = new LinkedHashMap<T,Double>();
+		for(int j = 0; j < best.length; j++){
+			@SuppressWarnings("unchecked")
+			T key = (T)keys[best[j]];
+			result.put(key, bestScores[j]);
+		}
+		return result;
+	}
+}